@@ -3,17 +3,16 @@ package ec.research.gp.layers;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Vector;
 
 import org.apache.log4j.Logger;
 
 import ec.research.gp.simple.gp.GP;
 import ec.research.gp.simple.representation.Individual;
+import ec.research.gp.simple.representation.TreeTable;
 import ec.research.gp.simple.util.Config;
 import ec.research.gp.simple.util.Context;
 import ec.research.gp.statistics.LayeredGPStatistics;
@@ -52,17 +51,14 @@ public class LayeredGP extends GP {
 	// Keeps track of the last generation where we added a new layer.
 	protected int lastLayerAdd;
 
-	// Maps the individuals generated to the number of times we generated them.
-	private Map<String, Integer[]> generatedExpressions;
+	// Counts the number of times we generated each tree.
+	private TreeTable generatedTrees;
 
 	// Total number of (global) attempts to generate unique individuals.
 	private int uniqueRetries;
 
 	// The maximum number of unique individual creation attempts we can make.
-	private static int MAX_UNIQUE_RETRIES;
-
-	// Lock for threading.
-	private Object lock = new Object();
+	private int maxUniqueRetries;
 
 	// Log4j logger for any output messages.
 	private static final Logger logger = Logger.getLogger(LayeredGP.class);
@@ -143,12 +139,22 @@ public class LayeredGP extends GP {
 	 *            the second parent
 	 */
 	private void addParents(Individual parent1, Individual parent2) {
-		if (!this.parents.contains(parent1)) {
-			this.parents.add(parent1);
-		}
+		addParent(parent1);
+		addParent(parent2);
+	}
 
-		if (!this.parents.contains(parent2)) {
-			this.parents.add(parent2);
+	/**
+	 * Adds the parent to this generation's parents, unless it's already there.
+	 * The layers' blocks are bred on several threads, so this is synchronized.
+	 * 
+	 * @param parent
+	 *            the parent
+	 */
+	private void addParent(Individual parent) {
+		synchronized (this.parents) {
+			if (!this.parents.contains(parent)) {
+				this.parents.add(parent);
+			}
 		}
 	}
 
@@ -233,9 +239,7 @@ public class LayeredGP extends GP {
 		child.ageIncr();
 
 		// Add the parent to the current generation parents
-		if (!this.parents.contains(parent)) {
-			this.parents.add(parent);
-		}
+		addParent(parent);
 
 		// Add the child to the layer.
 		layer.add(child);
@@ -262,9 +266,9 @@ public class LayeredGP extends GP {
 				/ maxNumLayers;
 		this.parents = new ArrayList<Individual>();
 
-		this.generatedExpressions = new HashMap<String, Integer[]>();
+		this.generatedTrees = new TreeTable();
 		this.uniqueRetries = 0;
-		MAX_UNIQUE_RETRIES = context.getConfig().getMaxUniqueRetries();
+		this.maxUniqueRetries = context.getConfig().getMaxUniqueRetries();
 	}
 
 	/**
@@ -278,40 +282,13 @@ public class LayeredGP extends GP {
 	 */
 	@Override
 	public void evaluatePop() {
-		int numThreads = this.context.getConfig().getNumThreads();
-		int start = 0, end = 0;
-		Thread[] threads = new Thread[numThreads];
-
 		// Put all the individuals into a collection so we can break into chunks
 		Vector<Individual> allInds = new Vector<Individual>();
 		for (Vector<Individual> layer : this.population) {
 			allInds.addAll(layer);
 		}
 
-		// Now we can break the evals into multiple threads
-		int chunkSize = allInds.size() / numThreads;
-
-		// Fire off all the evaluation threads
-		for (int i = 0; i < numThreads; i++) {
-			start = i * chunkSize;
-
-			// Set the end index (account for uneven popSize/numThreads)
-			end = (i == numThreads - 1) ? allInds.size() : (start + chunkSize);
-
-			EvalThread thread = new EvalThread(allInds.subList(start, end));
-			threads[i] = new Thread(thread);
-			threads[i].start();
-		}
-
-		// Join them all together
-		for (int i = 0; i < numThreads; i++) {
-			try {
-				threads[i].join();
-			} catch (InterruptedException e) {
-				logger.error(e);
-				System.exit(1);
-			}
-		}
+		evaluate(allInds);
 
 		// Calculate some population averages
 		calculateAverages();
@@ -331,32 +308,7 @@ public class LayeredGP extends GP {
 	 * @throws CloneNotSupportedException
 	 */
 	public void evaluateLayer(Vector<Individual> layer) {
-		int numThreads = this.context.getConfig().getNumThreads();
-		int chunkSize = layer.size() / numThreads;
-		int start = 0, end = 0;
-		Thread[] threads = new Thread[numThreads];
-
-		// Fire off all the evaluation threads
-		for (int i = 0; i < numThreads; i++) {
-			start = i * chunkSize;
-
-			// Set the end index (account for uneven popSize/numThreads)
-			end = (i == numThreads - 1) ? layer.size() : (start + chunkSize);
-
-			EvalThread thread = new EvalThread(layer.subList(start, end));
-			threads[i] = new Thread(thread);
-			threads[i].start();
-		}
-
-		// Join them all together
-		for (int i = 0; i < numThreads; i++) {
-			try {
-				threads[i].join();
-			} catch (InterruptedException e) {
-				logger.error(e);
-				System.exit(1);
-			}
-		}
+		evaluate(layer);
 
 		// Calculate the population averages.
 		calculateAverages();
@@ -486,15 +438,19 @@ public class LayeredGP extends GP {
 		// Temporary holder for the new population.
 		List<Vector<Individual>> tmpNewPop = new ArrayList<Vector<Individual>>();
 
+		// The offspring slots of each layer (null if it isn't bred), and the
+		// tasks that breed all the layers' blocks at once.
+		List<Individual[]> offspring = new ArrayList<Individual[]>();
+		List<Runnable> tasks = new ArrayList<Runnable>();
+
 		// Breed in each layer separately, but be sure to look at the old pop!
 		for (int i = 0; i < population.size(); i++) {
+			Individual[] layerOffspring = null;
+
 			// don't breed the last layer if it was just created with addLayer()
 			if (!(i == population.size() - 1 && this.addedLayer && this.population
 					.get(i).size() == this.numIndividualsPerLayer)) {
 
-				// Temporary holder for the newly-bred layer
-				Vector<Individual> tmpNewLayer = new Vector<Individual>();
-
 				// Make a temporary combined super "layer" to make selection
 				// easy.
 				Vector<Individual> previousLayer = (i > 0) ? population
@@ -514,29 +470,34 @@ public class LayeredGP extends GP {
 							- currentLayerSize
 							: (this.numIndividualsPerLayer - numElites);
 
-					while (tmpNewLayer.size() < fillSize) {
-						// Figure out whether to do crossover or replication
-						if (this.context.nextBool(this.context.getConfig()
-								.getCrossProbability())) {
-							doCrossover(combinedLayer, tmpNewLayer, fillSize);
-						} else {
-							doReplication(combinedLayer, tmpNewLayer, fillSize);
-						}
-					}
+					layerOffspring = new Individual[fillSize];
+					indexNodes(combinedLayer);
+					addBreedTasks(tasks, layerOffspring,
+							layerBreeder(combinedLayer));
+				}
+			}
 
-					// Probabilistically mutate the individuals
-					doMutation(tmpNewLayer, this.context);
+			offspring.add(layerOffspring);
+		}
 
-					// Add elites if necessary
-					addElitesToLayer(i, tmpNewLayer, numElites);
+		// Breed (and probabilistically mutate) the new layers.
+		this.context.runAll(tasks);
 
-					// Add the newly-bred layer to the new population
-					tmpNewPop.add(tmpNewLayer);
-				} else {
-					// The layer is empty, nothing to breed.
-					tmpNewPop.add(population.get(i));
-				}
+		for (int i = 0; i < population.size(); i++) {
+			if (offspring.get(i) != null) {
+				renumber(offspring.get(i));
+
+				// Temporary holder for the newly-bred layer
+				Vector<Individual> tmpNewLayer = new Vector<Individual>(
+						Arrays.asList(offspring.get(i)));
+
+				// Add elites if necessary
+				addElitesToLayer(i, tmpNewLayer, numElites);
+
+				// Add the newly-bred layer to the new population
+				tmpNewPop.add(tmpNewLayer);
 			} else {
+				// The layer is empty or was just added, nothing to breed.
 				tmpNewPop.add(population.get(i));
 			}
 		}
@@ -549,6 +510,35 @@ public class LayeredGP extends GP {
 		evaluatePop();
 	}
 
+	/**
+	 * Returns a breeder that breeds a block of a new layer from the given
+	 * parents with crossover and replication, then mutates it.
+	 * 
+	 * @param parents
+	 *            the parents from which to select
+	 * @return the breeder
+	 */
+	private Breeder layerBreeder(final Vector<Individual> parents) {
+		return new Breeder() {
+			@Override
+			public void breed(Vector<Individual> block, int size)
+					throws CloneNotSupportedException {
+				while (block.size() < size) {
+					// Figure out whether to do crossover or replication
+					if (context.nextBool(context.getConfig()
+							.getCrossProbability())) {
+						doCrossover(parents, block, size);
+					} else {
+						doReplication(parents, block, size);
+					}
+				}
+
+				// Probabilistically mutate the individuals
+				doMutation(block, context);
+			}
+		};
+	}
+
 	/**
 	 * Adds a new layer to the population, placing only the individual in it
 	 * (i.e. it doesn't immediately get filled).
@@ -906,23 +896,12 @@ public class LayeredGP extends GP {
 
 			Individual individual = getRandomIndividual(mode);
 
-			// Avoid duplicates until we run out of tries.
-			String expression = individual.toString();
-			int numNodes = individual.getNumNodes();
-			Integer numDups[] = this.generatedExpressions.get(expression);
-
-			boolean isUnique = (numDups == null);
-
-			// Remember the expression we just regenerated.
-			if (isUnique) {
-				this.generatedExpressions.put(expression, new Integer[] { 1,
-						numNodes });
-			} else {
-				this.generatedExpressions.get(expression)[0] += 1;
-			}
+			// Avoid duplicates until we run out of tries, remembering the
+			// tree we just generated.
+			boolean isUnique = (this.generatedTrees.add(individual) == 1);
 
 			// Allow duplicates if we've run out of retries.
-			if (isUnique || this.uniqueRetries > MAX_UNIQUE_RETRIES) {
+			if (isUnique || this.uniqueRetries > this.maxUniqueRetries) {
 				// Set the individual's ID and add the individual.
 				individual.setId(this.generation);
 
@@ -1004,91 +983,37 @@ public class LayeredGP extends GP {
 	}
 
 	/**
-	 * Helper class for multi-threading the fitness evaluations.
-	 * 
+	 * Same as GP.getEmigrants(), but over all the layers.
 	 */
-	public class EvalThread implements Runnable {
-		// Reference to the individuals to evaluate.
-		private Collection<Individual> individuals;
-
-		/**
-		 * Creates a new {@link EvalThread} for evaluating the given subset of
-		 * individuals
-		 * 
-		 * @param individuals
-		 *            the subset of individuals to evaluate
-		 */
-		public EvalThread(Collection<Individual> individuals) {
-			this.individuals = individuals;
+	@Override
+	public List<Individual> getEmigrants(int n)
+			throws CloneNotSupportedException {
+		List<Individual> sorted = new ArrayList<Individual>();
+		for (Vector<Individual> layer : this.population) {
+			sorted.addAll(layer);
 		}
+		Collections.sort(sorted, Collections.reverseOrder());
 
-		@Override
-		public void run() {
-			for (Individual individual : this.individuals) {
-				if (!individual.isEvaluated()) {
-					problem.fitness(individual);
-
-					synchronized (lock) {
-						if (!(foundOptimal && context.getConfig()
-								.stopOnOptimal())) {
-							numEvaluations++;
-						}
-
-						// See if the best individual of the generation is the
-						// best overall
-						if (individual.getFitness() > bestFitness
-								|| bestIndividual == null) {
-							bestFitness = individual.getFitness();
-
-							try {
-								bestIndividual = individual.clone();
-							} catch (Exception e) {
-								logger.error(e);
-							}
-						}
-
-						// See if the best fitness is the optimal fitness (force
-						// 1.0 as best)
-						if (bestFitness == 1.0) {
-							foundOptimal = true;
-						}
-
-						// Handle fitness stats logging
-						if (stopOn.equals(STOP_ON.EVALUATIONS)) {
-							// Output fitness every X evals
-							boolean doLogFitness = (numEvaluations != lastFitnessOutput && (numEvaluations % context
-									.getConfig().getStatCollectEvals()) == 0);
-
-							boolean loggingOptimal = foundOptimal
-									&& doStopOnOptimal && !loggedOptimal;
-
-							// Output fitness info every X evaluations
-							if (doLogFitness || loggingOptimal) {
-								// Calculate some population averages
-								calculateAverages();
-
-								((LayeredGPStatistics) statistics)
-										.setNumEvaluations(numEvaluations);
-
-								((LayeredGPStatistics) statistics)
-										.postEvaluationStats(generation);
-								lastFitnessOutput = numEvaluations;
-
-								if (loggingOptimal) {
-									loggedOptimal = true;
-								}
-							}
-						} else {
-							// Calculate some population averages
-							calculateAverages();
-
-							((LayeredGPStatistics) statistics)
-									.setNumEvaluations(numEvaluations);
-							lastFitnessOutput = numEvaluations;
-						}
-					}
-				}
-			}
+		List<Individual> emigrants = new ArrayList<Individual>(n);
+		for (int i = 0; i < n && i < sorted.size(); i++) {
+			emigrants.add(sorted.get(i).clone());
 		}
+
+		return emigrants;
+	}
+
+	/**
+	 * Puts the immigrants in place of the worst individuals of the top layer,
+	 * which is where the fittest individuals end up, whatever their age. The
+	 * layer scheme then moves them as usual.
+	 */
+	@Override
+	public void immigrate(List<Individual> immigrants) {
+		int top = this.population.size() - 1;
+		for (Individual immigrant : immigrants) {
+			immigrant.setCurrentLayer(top);
+		}
+
+		replaceWorst(this.population.get(top), immigrants);
 	}
 }
@@ -1,8 +1,10 @@
 package ec.research.gp.pareto;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
@@ -12,6 +14,7 @@ import org.apache.log4j.Logger;
 import ec.research.gp.simple.representation.Individual;
 import ec.research.gp.simple.representation.Node;
 import ec.research.gp.simple.util.Config;
+import ec.research.gp.simple.util.Context;
 
 
 
@@ -40,6 +43,10 @@ public class DiversityUtils {
 	// Lock for the TagThread
 	private Object lock = new Object();
 
+	// The Context whose workers run the TagThreads (if null, they run on the
+	// calling thread).
+	private Context context;
+
 	/**
 	 * Initialize a new {@link DiversityUtils} object
 	 */
@@ -53,6 +60,17 @@ public class DiversityUtils {
 		this.allTags = new HashMap<Integer, Set<String>>();
 	}
 
+	/**
+	 * Sets the Context whose worker threads do the tagging. Without one, the
+	 * tagging is done on the calling thread.
+	 * 
+	 * @param context
+	 *            the Context for the run
+	 */
+	public void setContext(Context context) {
+		this.context = context;
+	}
+
 	/**
 	 * Convenience method to recursively generate a tag for the individual by
 	 * traversing the tree in-order up unto the specified depth. Function nodes
@@ -82,6 +100,17 @@ public class DiversityUtils {
 	 */
 	private String buildIndividualTag(Node node, int tagLevel, int tagDepth,
 			int currentDepth, StringBuilder buffer) {
+		appendIndividualTag(node, tagLevel, tagDepth, currentDepth, buffer);
+
+		return buffer.toString();
+	}
+
+	/**
+	 * Recursive helper for buildIndividualTag(), which appends the tag of the
+	 * subtree rooted at the given node to the buffer.
+	 */
+	private void appendIndividualTag(Node node, int tagLevel, int tagDepth,
+			int currentDepth, StringBuilder buffer) {
 		// Is the node in the tag range?
 		boolean inRange = tagLevel <= currentDepth
 				&& currentDepth <= tagLevel + tagDepth;
@@ -90,24 +119,24 @@ public class DiversityUtils {
 			// If it's a terminal, just add the node to the output
 			if (node.isTerminal() && inRange) {
 				buffer.append(node.toString());
-				return buffer.toString();
+				return;
 			}
 
 			// Otherwise, it's a function, add it
-			buffer.append("(" + node.toString());
+			buffer.append('(').append(node.toString());
 
 			// Add it's children unless we've reached the end of the range
 			if (currentDepth < tagLevel + tagDepth) {
 				for (Node child : node.getChildren()) {
-					buffer.append(" ");
-					buildIndividualTag(child, tagLevel, tagDepth,
+					buffer.append(' ');
+					appendIndividualTag(child, tagLevel, tagDepth,
 							currentDepth + 1, buffer);
 				}
 			}
 
 			// Add closing parenthesis even if we didn't add the whole subtree
 			if (node.getNumChildren() > 0) {
-				buffer.append(")");
+				buffer.append(')');
 			}
 		}
 
@@ -121,16 +150,14 @@ public class DiversityUtils {
 				// Add a comma to the fragments if the children are the first
 				// level in the tag
 				if (nextUp && (i > 0 || buffer.length() > 0)) {
-					buffer.append(",");
+					buffer.append(',');
 				}
 
 				Node child = node.getChild(i);
-				buildIndividualTag(child, tagLevel, tagDepth, currentDepth + 1,
+				appendIndividualTag(child, tagLevel, tagDepth, currentDepth + 1,
 						buffer);
 			}
 		}
-
-		return buffer.toString();
 	}
 
 	/**
@@ -362,6 +389,54 @@ public class DiversityUtils {
 		return tagStats;
 	}
 
+	/**
+	 * Same as getIndividualTags(individuals, tagLevel, tagDepth), but on the
+	 * calling thread and with the given fitness values, e.g. ones saved
+	 * earlier, while the individuals may have been evaluated since.
+	 * 
+	 * @param individuals
+	 *            the individuals to tag
+	 * 
+	 * @param fitness
+	 *            the individuals' fitness values, in the same order
+	 * 
+	 * @param tagLevel
+	 *            the tag level
+	 * 
+	 * @param tagDepth
+	 *            the tag depth
+	 * 
+	 * @return the set of generated tags, mapped to their density and average
+	 *         fitness
+	 */
+	public Map<String, double[]> getIndividualTags(Individual[] individuals,
+			double[] fitness, int tagLevel, int tagDepth) {
+		Map<String, double[]> tagStats = new HashMap<String, double[]>();
+
+		for (int i = 0; i < individuals.length; i++) {
+			String tag = buildIndividualTag(individuals[i].getRoot(),
+					tagLevel, tagDepth, 0, new StringBuilder());
+
+			double[] stats = tagStats.get(tag);
+			if (stats == null) {
+				stats = new double[] { 0.0, 0.0 };
+				tagStats.put(tag, stats);
+			}
+			stats[0]++;
+			stats[1] += fitness[i];
+		}
+
+		for (double[] stats : tagStats.values()) {
+			// First set the average fitness
+			stats[1] /= stats[0];
+
+			// Now transform the counts into a density
+			stats[0] /= individuals.length;
+		}
+
+		return tagStats;
+	}
+
 	/**
 	 * Convenience method to tag the given collection of individuals.
 	 * 
@@ -384,7 +459,7 @@ public class DiversityUtils {
 		int numThreads = config.getNumThreads();
 		int chunkSize = individuals.size() / numThreads;
 		int start = 0, end = 0;
-		Thread[] threads = new Thread[numThreads];
+		List<Runnable> threads = new ArrayList<Runnable>(numThreads);
 		Map<String, double[]> tagStats = null; // holds the tags (if not setting
 												// them)
 
@@ -405,17 +480,15 @@ public class DiversityUtils {
 
 			TagThread thread = new TagThread(individuals.subList(start, end),
 					tagStats, tagLevel, tagDepth, doSetTags, tagMethod);
-			threads[i] = new Thread(thread);
-			threads[i].start();
+			threads.add(thread);
 		}
 
-		// Join them all together
-		for (int i = 0; i < numThreads; i++) {
-			try {
-				threads[i].join();
-			} catch (InterruptedException e) {
-				logger.error(e);
-				System.exit(1);
+		// Run them all
+		if (this.context != null) {
+			this.context.runAll(threads);
+		} else {
+			for (Runnable thread : threads) {
+				thread.run();
 			}
 		}
 
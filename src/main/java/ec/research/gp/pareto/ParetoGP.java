@@ -165,6 +165,7 @@ public class ParetoGP extends GP {
 
 		// Setup the {@link DiversityUtils} object
 		this.diversityUtils = new DiversityUtils(this.context.getConfig());
+		this.diversityUtils.setContext(this.context);
 
 		// Simply set each individual's tag and age.
 		for (Individual individual : this.population) {
@@ -193,25 +194,27 @@ public class ParetoGP extends GP {
 	 */
 	public Vector<Individual> breedAndMutate()
 			throws CloneNotSupportedException {
-		int fillSize = context.getConfig().getPopSize() - 1;
-
-		// Temporary place-holder for the newly-bred individuals.
-		Vector<Individual> tmpNewPopulation = new Vector<Individual>();
-
 		// Fill the population, leaving one extra spot.
-		while (tmpNewPopulation.size() < fillSize) {
+		return breedOffspring(context.getConfig().getPopSize() - 1);
+	}
+
+	/**
+	 * Same as GP.breedBlock(), but with random mating instead of crossover.
+	 */
+	@Override
+	protected void breedBlock(Vector<Individual> block, int size)
+			throws CloneNotSupportedException {
+		while (block.size() < size) {
 			// Determine whether to do random mating & crossover or replication
 			if (context.nextBool(context.getConfig().getCrossProbability())) {
-				doRandomMating(tmpNewPopulation, fillSize);
+				doRandomMating(block, size);
 			} else {
-				doReplication(tmpNewPopulation, fillSize);
+				doReplication(block, size);
 			}
 		}
 
 		// Probabilistically mutate the individuals
-		doMutation(tmpNewPopulation, context);
-
-		return tmpNewPopulation;
+		doMutation(block, context);
 	}
 
 	@Override
@@ -302,33 +305,7 @@ public class ParetoGP extends GP {
 	 * @throws CloneNotSupportedException
 	 */
 	public void evaluateOffspring(Vector<Individual> offspring) {
-		int numThreads = this.context.getConfig().getNumThreads();
-		int chunkSize = offspring.size() / numThreads;
-		int start = 0, end = 0;
-		Thread[] threads = new Thread[numThreads];
-
-		// Fire off all the evaluation threads
-		for (int i = 0; i < numThreads; i++) {
-			start = i * chunkSize;
-
-			// Set the end index (account for uneven popSize/numThreads)
-			end = (i == numThreads - 1) ? offspring.size()
-					: (start + chunkSize); // subList end is exclusive so no -1
-
-			EvalThread thread = new EvalThread(offspring.subList(start, end));
-			threads[i] = new Thread(thread);
-			threads[i].start();
-		}
-
-		// Join them all together
-		for (int i = 0; i < numThreads; i++) {
-			try {
-				threads[i].join();
-			} catch (InterruptedException e) {
-				logger.error(e);
-				System.exit(1);
-			}
-		}
+		evaluate(offspring);
 
 		// Calculate some population averages
 		calculateAverages();
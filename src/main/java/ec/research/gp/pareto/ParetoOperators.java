@@ -296,7 +296,9 @@ public class ParetoOperators {
 	 */
 	public static Set<Individual> getGlobalNonDominatedFront(Context context,
 			Vector<Individual> population, ParetoGP.OBJECTIVES objectives) {
-		HashSet<Individual> paretoFront = new HashSet<Individual>();
+		// Insertion ordered, so the front comes out in population order
+		// rather than in the order of the individuals' (run-wide) IDs.
+		Set<Individual> paretoFront = new LinkedHashSet<Individual>();
 
 		// Maps the indices of individuals to their set of dominated indices
 		HashMap<Integer, Set<Integer>> dominationMap = new HashMap<Integer, Set<Integer>>();
@@ -369,7 +371,7 @@ public class ParetoOperators {
 		while (population.size() > targetSize
 				&& population.size() > nonDominatedFront.size()) {
 			// Holds the set of indices of dominated individuals this round.
-			HashSet<Individual> dominated = new HashSet<Individual>();
+			Set<Individual> dominated = new LinkedHashSet<Individual>();
 
 			// Get the set of individuals for the tournament.
 			Vector<Individual> tournamentIndividuals = new Vector<Individual>();
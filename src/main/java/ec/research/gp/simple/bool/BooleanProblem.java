@@ -1,19 +1,185 @@
 package ec.research.gp.simple.bool;
 
+import ec.research.gp.simple.compiler.BooleanProgram;
+import ec.research.gp.simple.compiler.PostfixProgram;
+import ec.research.gp.simple.compiler.TreeCompiler;
 import ec.research.gp.simple.problem.Problem;
 import ec.research.gp.simple.representation.Individual;
+import ec.research.gp.simple.representation.Node;
 import ec.research.gp.simple.util.Context;
 
 /**
- * 
+ *
  * Abstract {@link Problem} for boolean GP problems
  *         (such as multiplexer and parity).
- * 
+ *
+ * Subclasses that call {@link #setupColumns(int, boolean[])} from init() (after
+ * setting the context) can evaluate whole trees bit-sliced, 64 fitness cases
+ * per word operation, via {@link #columnHits(Node)}. With enough fitness cases
+ * the trees are compiled first (see {@link Problem#shouldCompile(int)}).
+ *
  */
 public abstract class BooleanProblem extends Problem {
+	// Input bit columns: inputColumns[bit][word] holds input bit "bit" of
+	// fitness cases word*64 through word*64+63.
+	private long[][] inputColumns;
+
+	// The packed target values, laid out like a single input column.
+	private long[] targetBits;
+
+	// All-false column for input bits past the problem's inputs (e.g. D3 on
+	// 2-parity), which are always false in the case-by-case evaluation too.
+	private long[] zeroColumn;
+
+	// Mask of the valid cases in the last word (the case count might not be a
+	// multiple of 64).
+	private long lastWordMask;
+
+	// The number of fitness cases.
+	private int numCases;
+
+	// Compiles trees when there are enough fitness cases.
+	private TreeCompiler compiler;
+
+	// Per-thread scratch columns, grown as deeper trees show up.
+	private final ThreadLocal<long[][]> scratch = new ThreadLocal<long[][]>();
+
 	@Override
 	public abstract void init(Context c);
 
 	@Override
 	public abstract void fitness(Individual individual);
+
+	/**
+	 * Packs the inputs and target values into bit columns. Fitness case i is
+	 * the input bit string i (bit b of i is input bit b).
+	 *
+	 * @param numInputs
+	 *            the number of input bits
+	 * @param targets
+	 *            the target value for each fitness case
+	 */
+	protected void setupColumns(int numInputs, boolean[] targets) {
+		int numCases = targets.length;
+		int numWords = (numCases + 63) / 64;
+
+		this.numCases = numCases;
+		this.compiler = new TreeCompiler(this, context.getConfig()
+				.getCompileCacheSize());
+
+		this.inputColumns = new long[numInputs][numWords];
+		this.targetBits = new long[numWords];
+		this.zeroColumn = new long[numWords];
+
+		for (int i = 0; i < numCases; i++) {
+			int word = i >>> 6;
+			long bit = 1L << (i & 63);
+
+			for (int b = 0; b < numInputs; b++) {
+				if (((i >> b) & 1) != 0) {
+					this.inputColumns[b][word] |= bit;
+				}
+			}
+
+			if (targets[i]) {
+				this.targetBits[word] |= bit;
+			}
+		}
+
+		int rem = numCases & 63;
+		this.lastWordMask = (rem == 0) ? -1L : (1L << rem) - 1;
+	}
+
+	/**
+	 * Gets the column for the requested input bit. The returned array is
+	 * shared and must not be modified. Bits beyond the problem's inputs are
+	 * always false.
+	 *
+	 * @param bit
+	 *            the (zero-based) index of the input bit
+	 * @return the bit column for the input
+	 */
+	public long[] getInputColumn(int bit) {
+		if (bit >= this.inputColumns.length) {
+			return this.zeroColumn;
+		}
+
+		return this.inputColumns[bit];
+	}
+
+	/**
+	 * Evaluates the tree on all fitness cases at once and counts the cases
+	 * where it matches the target. The tree is compiled, flattened (POSTFIX
+	 * eval mode) or evaluated column by column.
+	 *
+	 * @param root
+	 *            the root of the tree to evaluate
+	 * @return the number of hits
+	 */
+	protected int columnHits(Node root) {
+		int numWords = this.targetBits.length;
+		long[] res = null;
+
+		// Run the compiled tree if there are enough cases to make it pay off.
+		if (shouldCompile(this.numCases)) {
+			BooleanProgram program = this.compiler.compileBoolean(root);
+
+			if (program != null) {
+				res = getScratch(1)[0];
+				program.evaluate(this.inputColumns, res);
+			}
+		}
+
+		// Otherwise run the flattened tree, if that's the eval mode.
+		if (res == null
+				&& context.getConfig().getEvalMode() == EVAL_MODE.POSTFIX) {
+			PostfixProgram program = PostfixProgram.compile(root, this);
+
+			if (program != null) {
+				res = getScratch(1)[0];
+				program.evaluate(this.inputColumns, res);
+			}
+		}
+
+		if (res == null) {
+			res = root.evaluateColumn(this, getScratch(3 * root.depthFrom() + 1),
+					0);
+		}
+
+		int hits = 0;
+		int last = numWords - 1;
+		for (int w = 0; w < last; w++) {
+			hits += Long.bitCount(~(res[w] ^ this.targetBits[w]));
+		}
+		hits += Long.bitCount(~(res[last] ^ this.targetBits[last])
+				& this.lastWordMask);
+
+		return hits;
+	}
+
+	/**
+	 * Gets this thread's scratch columns, making sure there are at least the
+	 * given number of rows.
+	 *
+	 * @param rows
+	 *            the number of rows needed
+	 * @return the scratch columns
+	 */
+	private long[][] getScratch(int rows) {
+		long[][] buffer = this.scratch.get();
+
+		if (buffer == null || buffer.length < rows) {
+			buffer = new long[rows][this.targetBits.length];
+			this.scratch.set(buffer);
+		}
+
+		return buffer;
+	}
+
+	/**
+	 * @return the number of input bits of the problem
+	 */
+	public int getNumInputs() {
+		return this.inputColumns.length;
+	}
 }
@@ -1,5 +1,6 @@
 package ec.research.gp.simple.bool.nodes;
 
+import ec.research.gp.simple.bool.BooleanProblem;
 import ec.research.gp.simple.problem.Problem;
 import ec.research.gp.simple.representation.Node;
 
@@ -11,7 +12,17 @@ public class D2 extends Node {
 
 	@Override
 	public Boolean evaluate(Problem p, Object data) {
-		return (((1 << 2) & (Integer) data) > 0);
+		return evaluateBoolean(p, (Integer) data);
+	}
+
+	@Override
+	public boolean evaluateBoolean(Problem p, int data) {
+		return (((1 << 2) & data) > 0);
+	}
+
+	@Override
+	public long[] evaluateColumn(Problem p, long[][] scratch, int slot) {
+		return ((BooleanProblem) p).getInputColumn(2);
 	}
 
 	@Override
@@ -1,5 +1,6 @@
 package ec.research.gp.simple.bool.nodes;
 
+import ec.research.gp.simple.bool.BooleanProblem;
 import ec.research.gp.simple.problem.Problem;
 import ec.research.gp.simple.representation.Node;
 
@@ -10,6 +11,9 @@ public class Di extends Node {
 	// bit string
 	private int i;
 
+	// The node's name (STR followed by the index), built once per index.
+	private String name = STR + 0;
+
 	public Di() {
 		super(0);
 	}
@@ -22,7 +26,11 @@ public class Di extends Node {
 	 *            the index of the bit in the input string.
 	 */
 	public void setIndex(int index) {
-		this.i = index;
+		if (index != this.i) {
+			this.i = index;
+			this.name = STR + index;
+			labelChanged();
+		}
 	}
 
 	/**
@@ -34,7 +42,17 @@ public class Di extends Node {
 
 	@Override
 	public Boolean evaluate(Problem p, Object data) {
-		return (((1 << this.i) & (Integer) data) > 0);
+		return evaluateBoolean(p, (Integer) data);
+	}
+
+	@Override
+	public boolean evaluateBoolean(Problem p, int data) {
+		return (((1 << this.i) & data) > 0);
+	}
+
+	@Override
+	public long[] evaluateColumn(Problem p, long[][] scratch, int slot) {
+		return ((BooleanProblem) p).getInputColumn(this.i);
 	}
 
 	@Override
@@ -55,7 +73,7 @@ public class Di extends Node {
 
 	@Override
 	public String toString() {
-		return String.format("%s%d", STR, this.i);
+		return this.name;
 	}
 
 }
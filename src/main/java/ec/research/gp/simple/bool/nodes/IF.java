@@ -18,20 +18,41 @@ public class IF extends Node {
 
 	@Override
 	public Boolean evaluate(Problem p, Object data) {
+		return evaluateBoolean(p, (Integer) data);
+	}
+
+	@Override
+	public boolean evaluateBoolean(Problem p, int data) {
 		// Evaluate the first child.
-		Boolean c1Result = (Boolean) children[0].evaluate(p, data);
+		boolean c1Result = children[0].evaluateBoolean(p, data);
 
 		// If the first child is true, return it.
 		if (c1Result) {
-			return (Boolean) children[1].evaluate(p, data);
+			return children[1].evaluateBoolean(p, data);
 		}
 
 		// Otherwise return the third child
 		else {
-			return (Boolean) children[2].evaluate(p, data);
+			return children[2].evaluateBoolean(p, data);
 		}
 	}
 
+	@Override
+	public long[] evaluateColumn(Problem p, long[][] scratch, int slot) {
+		long[] cond = children[0].evaluateColumn(p, scratch, slot + 1);
+		long[] c2 = children[1].evaluateColumn(p, scratch, slot + 2);
+		long[] c3 = children[2].evaluateColumn(p, scratch, slot + 3);
+		long[] res = scratch[slot];
+
+		// Take the second child's bits where the condition holds, otherwise
+		// the third child's.
+		for (int w = 0; w < res.length; w++) {
+			res[w] = (cond[w] & c2[w]) | (~cond[w] & c3[w]);
+		}
+
+		return res;
+	}
+
 	@Override
 	public String toString() {
 		return "IF";
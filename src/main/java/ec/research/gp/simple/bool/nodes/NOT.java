@@ -11,15 +11,32 @@ public class NOT extends Node {
 
 	@Override
 	public Boolean evaluate(Problem p, Object data) {
+		return evaluateBoolean(p, (Integer) data);
+	}
+
+	@Override
+	public boolean evaluateBoolean(Problem p, int data) {
 		Node[] children = getChildren();
 		
 		//Evaluate the child
-		Boolean c1Result = (Boolean) children[0].evaluate(p, data);
+		boolean c1Result = children[0].evaluateBoolean(p, data);
 		
 		//Return the NOT of the result
 		return (!c1Result);
 	}
 
+	@Override
+	public long[] evaluateColumn(Problem p, long[][] scratch, int slot) {
+		long[] c1 = children[0].evaluateColumn(p, scratch, slot + 1);
+		long[] res = scratch[slot];
+
+		for (int w = 0; w < res.length; w++) {
+			res[w] = ~c1[w];
+		}
+
+		return res;
+	}
+
 	@Override
 	public String toString() {
 		return "NOT";
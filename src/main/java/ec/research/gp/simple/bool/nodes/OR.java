@@ -11,18 +11,36 @@ public class OR extends Node {
 
 	@Override
 	public Boolean evaluate(Problem p, Object data) {
+		return evaluateBoolean(p, (Integer) data);
+	}
+
+	@Override
+	public boolean evaluateBoolean(Problem p, int data) {
 		Node[] children = getChildren();
 		
 		//Evaluate the first child
-		Boolean c1Result = (Boolean) children[0].evaluate(p, data);
+		boolean c1Result = children[0].evaluateBoolean(p, data);
 		
 		//Evaluate the second child
-		Boolean c2Result = (Boolean) children[1].evaluate(p, data);
+		boolean c2Result = children[1].evaluateBoolean(p, data);
 		
 		//Return the OR result of the two children
 		return (c1Result | c2Result);
 	}
 
+	@Override
+	public long[] evaluateColumn(Problem p, long[][] scratch, int slot) {
+		long[] c1 = children[0].evaluateColumn(p, scratch, slot + 1);
+		long[] c2 = children[1].evaluateColumn(p, scratch, slot + 2);
+		long[] res = scratch[slot];
+
+		for (int w = 0; w < res.length; w++) {
+			res[w] = c1[w] | c2[w];
+		}
+
+		return res;
+	}
+
 	@Override
 	public String toString() {
 		return "OR";
@@ -0,0 +1,20 @@
+package ec.research.gp.simple.compiler;
+
+/**
+ * A boolean tree compiled by {@link TreeCompiler}. Evaluates the tree
+ * bit-sliced, 64 fitness cases per word, on the same input columns as
+ * {@link ec.research.gp.simple.representation.Node#evaluateColumn(ec.research.gp.simple.problem.Problem, long[][], int)}.
+ * 
+ */
+public interface BooleanProgram {
+	/**
+	 * Evaluates the compiled tree on all the fitness cases.
+	 * 
+	 * @param inputs
+	 *            the input bit columns (inputs[bit][word])
+	 * @param out
+	 *            receives the result column; its length is the number of
+	 *            words to evaluate
+	 */
+	public void evaluate(long[][] inputs, long[] out);
+}
@@ -0,0 +1,523 @@
+package ec.research.gp.simple.compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bare-bones class file writer, just enough to generate the small evaluation
+ * classes built by {@link TreeCompiler}. Classes are written as version 49
+ * (Java 5) class files, so the JVM verifies them by type inference and we
+ * don't need to emit stack map frames.
+ *
+ */
+class ClassWriter {
+	// Class file version (Java 5, no stack map frames needed).
+	private static final int VERSION = 49;
+
+	// Access flags
+	static final int ACC_PUBLIC = 0x0001;
+	static final int ACC_FINAL = 0x0010;
+	static final int ACC_SUPER = 0x0020;
+
+	// Opcodes used by the compiler
+	static final int ICONST_0 = 0x03;
+	static final int LCONST_0 = 0x09;
+	static final int DCONST_0 = 0x0e;
+	static final int BIPUSH = 0x10;
+	static final int SIPUSH = 0x11;
+	static final int LDC2_W = 0x14;
+	static final int ILOAD = 0x15;
+	static final int LLOAD = 0x16;
+	static final int DLOAD = 0x18;
+	static final int ALOAD = 0x19;
+	static final int LALOAD = 0x2f;
+	static final int DALOAD = 0x31;
+	static final int AALOAD = 0x32;
+	static final int ISTORE = 0x36;
+	static final int LSTORE = 0x37;
+	static final int DSTORE = 0x39;
+	static final int LASTORE = 0x50;
+	static final int DASTORE = 0x52;
+	static final int POP2 = 0x58;
+	static final int DUP2 = 0x5c;
+	static final int DADD = 0x63;
+	static final int DSUB = 0x67;
+	static final int DMUL = 0x6b;
+	static final int DDIV = 0x6f;
+	static final int LAND = 0x7f;
+	static final int LOR = 0x81;
+	static final int LXOR = 0x83;
+	static final int IINC = 0x84;
+	static final int DCMPL = 0x97;
+	static final int IFEQ = 0x99;
+	static final int IF_ICMPGE = 0xa2;
+	static final int GOTO = 0xa7;
+	static final int RETURN = 0xb1;
+	static final int INVOKESPECIAL = 0xb7;
+	static final int INVOKESTATIC = 0xb8;
+	static final int ARRAYLENGTH = 0xbe;
+	static final int WIDE = 0xc4;
+
+	// Constant pool tags
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_LONG = 5;
+	private static final int CONSTANT_DOUBLE = 6;
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_METHODREF = 10;
+	private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+	// The constant pool entries, already serialized.
+	private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+	private final DataOutputStream pool = new DataOutputStream(poolBytes);
+
+	// Maps each constant's key to its index in the pool.
+	private final Map<String, Integer> poolIndex = new HashMap<String, Integer>();
+
+	// Next free constant pool index (index 0 is unused).
+	private int nextPoolIndex = 1;
+
+	// Internal (slash-separated) names of the class, super class and interface.
+	private final int thisClass;
+	private final int superClass;
+	private final int iface;
+
+	// The methods written so far.
+	private final List<MethodWriter> methods = new ArrayList<MethodWriter>();
+
+	/**
+	 * Starts a new public final class.
+	 *
+	 * @param name
+	 *            the internal name of the class (e.g. a/b/C)
+	 * @param superName
+	 *            the internal name of the super class
+	 * @param interfaceName
+	 *            the internal name of the (single) interface it implements
+	 */
+	ClassWriter(String name, String superName, String interfaceName) {
+		this.thisClass = classConstant(name);
+		this.superClass = classConstant(superName);
+		this.iface = classConstant(interfaceName);
+	}
+
+	/**
+	 * Adds a new method to the class.
+	 *
+	 * @param access
+	 *            the access flags
+	 * @param name
+	 *            the method name
+	 * @param desc
+	 *            the method descriptor
+	 * @param numArgSlots
+	 *            the number of local slots taken by "this" and the arguments
+	 * @return the writer for the method's code
+	 */
+	MethodWriter addMethod(int access, String name, String desc,
+			int numArgSlots) {
+		MethodWriter method = new MethodWriter(access, utf8Constant(name),
+				utf8Constant(desc), numArgSlots);
+		this.methods.add(method);
+
+		return method;
+	}
+
+	/**
+	 * Serializes the class.
+	 *
+	 * @return the class file bytes
+	 */
+	byte[] toByteArray() {
+		// Make sure the attribute name is in the pool before writing it out.
+		int codeName = utf8Constant("Code");
+
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);
+			out.writeShort(VERSION);
+
+			out.writeShort(this.nextPoolIndex);
+			this.pool.flush();
+			this.poolBytes.writeTo(out);
+
+			out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+			out.writeShort(this.thisClass);
+			out.writeShort(this.superClass);
+			out.writeShort(1);
+			out.writeShort(this.iface);
+
+			// No fields
+			out.writeShort(0);
+
+			out.writeShort(this.methods.size());
+			for (MethodWriter method : this.methods) {
+				method.write(out, codeName);
+			}
+
+			// No class attributes
+			out.writeShort(0);
+			out.flush();
+
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			// Can't happen when writing to memory.
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Gets the pool index of the given UTF8 constant, adding it if needed.
+	 */
+	int utf8Constant(String value) {
+		String key = "U" + value;
+		Integer index = this.poolIndex.get(key);
+
+		if (index == null) {
+			index = newEntry(key, 1);
+			try {
+				this.pool.writeByte(CONSTANT_UTF8);
+				this.pool.writeUTF(value);
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		return index;
+	}
+
+	/**
+	 * Gets the pool index of the given class constant, adding it if needed.
+	 */
+	int classConstant(String internalName) {
+		String key = "C" + internalName;
+		Integer index = this.poolIndex.get(key);
+
+		if (index == null) {
+			int name = utf8Constant(internalName);
+			index = newEntry(key, 1);
+			try {
+				this.pool.writeByte(CONSTANT_CLASS);
+				this.pool.writeShort(name);
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		return index;
+	}
+
+	/**
+	 * Gets the pool index of the given method reference, adding it if needed.
+	 */
+	int methodConstant(String owner, String name, String desc) {
+		String key = "M" + owner + "." + name + desc;
+		Integer index = this.poolIndex.get(key);
+
+		if (index == null) {
+			int ownerIndex = classConstant(owner);
+			int nameIndex = utf8Constant(name);
+			int descIndex = utf8Constant(desc);
+
+			int nameAndType = newEntry("N" + name + desc, 1);
+			index = newEntry(key, 1);
+			try {
+				this.pool.writeByte(CONSTANT_NAME_AND_TYPE);
+				this.pool.writeShort(nameIndex);
+				this.pool.writeShort(descIndex);
+
+				this.pool.writeByte(CONSTANT_METHODREF);
+				this.pool.writeShort(ownerIndex);
+				this.pool.writeShort(nameAndType);
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		return index;
+	}
+
+	/**
+	 * Gets the pool index of the given long constant, adding it if needed.
+	 */
+	int longConstant(long value) {
+		String key = "J" + value;
+		Integer index = this.poolIndex.get(key);
+
+		if (index == null) {
+			// Longs and doubles take up two pool slots.
+			index = newEntry(key, 2);
+			try {
+				this.pool.writeByte(CONSTANT_LONG);
+				this.pool.writeLong(value);
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		return index;
+	}
+
+	/**
+	 * Gets the pool index of the given double constant, adding it if needed.
+	 * Constants are keyed on their exact bits, so -0.0 and 0.0 (or different
+	 * NaNs) stay distinct.
+	 */
+	int doubleConstant(double value) {
+		long bits = Double.doubleToRawLongBits(value);
+		String key = "D" + bits;
+		Integer index = this.poolIndex.get(key);
+
+		if (index == null) {
+			index = newEntry(key, 2);
+			try {
+				this.pool.writeByte(CONSTANT_DOUBLE);
+				this.pool.writeLong(bits);
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		return index;
+	}
+
+	/**
+	 * Reserves the next pool index for the given key.
+	 */
+	private int newEntry(String key, int slots) {
+		int index = this.nextPoolIndex;
+		this.nextPoolIndex += slots;
+		this.poolIndex.put(key, index);
+
+		return index;
+	}
+
+	/**
+	 * A branch target inside a method.
+	 */
+	static class Label {
+		// Position of the label in the code, or -1 if not placed yet.
+		private int position = -1;
+
+		// Pairs of (instruction position, operand position) to patch once the
+		// label is placed.
+		private final List<int[]> fixups = new ArrayList<int[]>();
+	}
+
+	/**
+	 * Writes the code of a single method, tracking the operand stack depth
+	 * (in slots) so that max_stack comes out right.
+	 */
+	class MethodWriter {
+		private final int access;
+		private final int name;
+		private final int desc;
+
+		// The code, grown as needed.
+		private byte[] code = new byte[256];
+		private int length;
+
+		// Current and max operand stack depth (in slots).
+		private int stack;
+		private int maxStack;
+
+		// Max number of local slots used.
+		private int maxLocals;
+
+		private MethodWriter(int access, int name, int desc, int numArgSlots) {
+			this.access = access;
+			this.name = name;
+			this.desc = desc;
+			this.maxLocals = numArgSlots;
+		}
+
+		/**
+		 * Emits a no-operand instruction.
+		 *
+		 * @param opcode
+		 *            the opcode
+		 * @param stackDelta
+		 *            the change in operand stack depth (in slots)
+		 */
+		void op(int opcode, int stackDelta) {
+			putByte(opcode);
+			adjustStack(stackDelta);
+		}
+
+		/**
+		 * Emits a load/store of a local, using the wide form if needed.
+		 */
+		void local(int opcode, int index, int stackDelta) {
+			if (index > 255) {
+				putByte(WIDE);
+				putByte(opcode);
+				putShort(index);
+			} else {
+				putByte(opcode);
+				putByte(index);
+			}
+			adjustStack(stackDelta);
+		}
+
+		/**
+		 * Emits an iinc of the given local.
+		 */
+		void iinc(int index, int amount) {
+			putByte(IINC);
+			putByte(index);
+			putByte(amount);
+		}
+
+		/**
+		 * Pushes the given int constant.
+		 */
+		void pushInt(int value) {
+			if (value >= -1 && value <= 5) {
+				putByte(ICONST_0 + value);
+			} else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+				putByte(BIPUSH);
+				putByte(value);
+			} else {
+				putByte(SIPUSH);
+				putShort(value);
+			}
+			adjustStack(1);
+		}
+
+		/**
+		 * Pushes the given long constant.
+		 */
+		void pushLong(long value) {
+			if (value == 0L) {
+				putByte(LCONST_0);
+			} else {
+				putByte(LDC2_W);
+				putShort(longConstant(value));
+			}
+			adjustStack(2);
+		}
+
+		/**
+		 * Pushes the given double constant (exactly, from the pool).
+		 */
+		void pushDouble(double value) {
+			putByte(LDC2_W);
+			putShort(doubleConstant(value));
+			adjustStack(2);
+		}
+
+		/**
+		 * Emits a static or special method call.
+		 */
+		void invoke(int opcode, String owner, String name, String desc,
+				int stackDelta) {
+			putByte(opcode);
+			putShort(methodConstant(owner, name, desc));
+			adjustStack(stackDelta);
+		}
+
+		/**
+		 * Emits a branch to the given label.
+		 */
+		void branch(int opcode, Label target, int stackDelta) {
+			int position = this.length;
+			putByte(opcode);
+
+			if (target.position >= 0) {
+				putShort(target.position - position);
+			} else {
+				target.fixups.add(new int[] { position, this.length });
+				putShort(0);
+			}
+			adjustStack(stackDelta);
+		}
+
+		/**
+		 * Places the label at the current position.
+		 */
+		void mark(Label label) {
+			label.position = this.length;
+
+			for (int[] fixup : label.fixups) {
+				int offset = label.position - fixup[0];
+				this.code[fixup[1]] = (byte) (offset >> 8);
+				this.code[fixup[1] + 1] = (byte) offset;
+			}
+			label.fixups.clear();
+		}
+
+		/**
+		 * Gets the current stack depth, for code that merges at a label.
+		 */
+		int getStack() {
+			return this.stack;
+		}
+
+		/**
+		 * Resets the current stack depth, e.g. after an unconditional jump.
+		 */
+		void setStack(int stack) {
+			this.stack = stack;
+		}
+
+		/**
+		 * Makes sure max_locals covers the given number of slots.
+		 */
+		void useLocals(int numSlots) {
+			this.maxLocals = Math.max(this.maxLocals, numSlots);
+		}
+
+		/**
+		 * @return the size of the code emitted so far, in bytes
+		 */
+		int getCodeLength() {
+			return this.length;
+		}
+
+		private void adjustStack(int delta) {
+			this.stack += delta;
+			this.maxStack = Math.max(this.maxStack, this.stack);
+		}
+
+		private void putByte(int b) {
+			if (this.length == this.code.length) {
+				byte[] grown = new byte[this.code.length * 2];
+				System.arraycopy(this.code, 0, grown, 0, this.length);
+				this.code = grown;
+			}
+			this.code[this.length++] = (byte) b;
+		}
+
+		private void putShort(int s) {
+			putByte(s >> 8);
+			putByte(s);
+		}
+
+		private void write(DataOutputStream out, int codeName)
+				throws IOException {
+			out.writeShort(this.access);
+			out.writeShort(this.name);
+			out.writeShort(this.desc);
+
+			// Just the Code attribute
+			out.writeShort(1);
+			out.writeShort(codeName);
+			out.writeInt(12 + this.length);
+			out.writeShort(this.maxStack);
+			out.writeShort(this.maxLocals);
+			out.writeInt(this.length);
+			out.write(this.code, 0, this.length);
+
+			// No exception table, no code attributes
+			out.writeShort(0);
+			out.writeShort(0);
+		}
+	}
+}
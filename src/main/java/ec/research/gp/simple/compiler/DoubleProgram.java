@@ -0,0 +1,17 @@
+package ec.research.gp.simple.compiler;
+
+/**
+ * A numeric tree compiled by {@link TreeCompiler}.
+ * 
+ */
+public interface DoubleProgram {
+	/**
+	 * Evaluates the compiled tree on all the fitness cases.
+	 * 
+	 * @param xs
+	 *            the input value for each fitness case
+	 * @param out
+	 *            receives the tree's output for each fitness case
+	 */
+	public void evaluate(double[] xs, double[] out);
+}
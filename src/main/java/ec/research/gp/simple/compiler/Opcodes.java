@@ -0,0 +1,174 @@
+package ec.research.gp.simple.compiler;
+
+import ec.research.gp.simple.bool.BooleanProblem;
+import ec.research.gp.simple.bool.nodes.AND;
+import ec.research.gp.simple.bool.nodes.D0;
+import ec.research.gp.simple.bool.nodes.D1;
+import ec.research.gp.simple.bool.nodes.D2;
+import ec.research.gp.simple.bool.nodes.D3;
+import ec.research.gp.simple.bool.nodes.D4;
+import ec.research.gp.simple.bool.nodes.D5;
+import ec.research.gp.simple.bool.nodes.D6;
+import ec.research.gp.simple.bool.nodes.D7;
+import ec.research.gp.simple.bool.nodes.Di;
+import ec.research.gp.simple.bool.nodes.IF;
+import ec.research.gp.simple.bool.nodes.NAND;
+import ec.research.gp.simple.bool.nodes.NOR;
+import ec.research.gp.simple.bool.nodes.NOT;
+import ec.research.gp.simple.bool.nodes.OR;
+import ec.research.gp.simple.bool.nodes.XOR;
+import ec.research.gp.simple.multiplexer.Multiplexer;
+import ec.research.gp.simple.multiplexer.nodes.A0;
+import ec.research.gp.simple.multiplexer.nodes.A1;
+import ec.research.gp.simple.multiplexer.nodes.A2;
+import ec.research.gp.simple.multiplexer.nodes.Ai;
+import ec.research.gp.simple.problem.Problem;
+import ec.research.gp.simple.regression.nodes.ADD;
+import ec.research.gp.simple.regression.nodes.COS;
+import ec.research.gp.simple.regression.nodes.DIV;
+import ec.research.gp.simple.regression.nodes.EXP;
+import ec.research.gp.simple.regression.nodes.MULT;
+import ec.research.gp.simple.regression.nodes.R;
+import ec.research.gp.simple.regression.nodes.RLOG;
+import ec.research.gp.simple.regression.nodes.SIN;
+import ec.research.gp.simple.regression.nodes.SUB;
+import ec.research.gp.simple.regression.nodes.X;
+import ec.research.gp.simple.representation.Node;
+
+/**
+ * Opcodes for the node types known to the compilers ({@link TreeCompiler} and
+ * {@link PostfixProgram}), along with the mapping from nodes to opcodes.
+ *
+ */
+public final class Opcodes {
+	// Boolean functions
+	public static final int AND = 0;
+	public static final int OR = 1;
+	public static final int NAND = 2;
+	public static final int NOR = 3;
+	public static final int XOR = 4;
+	public static final int NOT = 5;
+	public static final int IF = 6;
+
+	// Boolean terminals: an input bit (D and A nodes), or the all-false input
+	// read by bits past the problem's inputs.
+	public static final int BIT = 7;
+	public static final int FALSE = 8;
+
+	// Numeric functions
+	public static final int ADD = 9;
+	public static final int SUB = 10;
+	public static final int MULT = 11;
+	public static final int DIV = 12;
+	public static final int SIN = 13;
+	public static final int COS = 14;
+	public static final int EXP = 15;
+	public static final int RLOG = 16;
+
+	// Numeric terminals: the input and an ephemeral random constant.
+	public static final int X = 17;
+	public static final int CONST = 18;
+
+	private Opcodes() {
+	}
+
+	/**
+	 * Gets the opcode for the given node. Boolean terminals map to BIT or
+	 * FALSE depending on whether their input bit exists in the problem.
+	 *
+	 * @param node
+	 *            the node
+	 * @param problem
+	 *            the problem the node is evaluated on
+	 * @return the node's opcode
+	 * @throws UnsupportedOperationException
+	 *             if the node type isn't known
+	 */
+	public static int of(Node node, Problem problem) {
+		if (node instanceof AND) {
+			return AND;
+		} else if (node instanceof OR) {
+			return OR;
+		} else if (node instanceof NAND) {
+			return NAND;
+		} else if (node instanceof NOR) {
+			return NOR;
+		} else if (node instanceof XOR) {
+			return XOR;
+		} else if (node instanceof NOT) {
+			return NOT;
+		} else if (node instanceof IF) {
+			return IF;
+		} else if (node instanceof ADD) {
+			return ADD;
+		} else if (node instanceof SUB) {
+			return SUB;
+		} else if (node instanceof MULT) {
+			return MULT;
+		} else if (node instanceof DIV) {
+			return DIV;
+		} else if (node instanceof SIN) {
+			return SIN;
+		} else if (node instanceof COS) {
+			return COS;
+		} else if (node instanceof EXP) {
+			return EXP;
+		} else if (node instanceof RLOG) {
+			return RLOG;
+		} else if (node instanceof X) {
+			return X;
+		} else if (node instanceof R) {
+			return CONST;
+		}
+
+		// Must be a boolean terminal (or unknown).
+		int bit = inputBit(node, problem);
+
+		return (bit < ((BooleanProblem) problem).getNumInputs()) ? BIT : FALSE;
+	}
+
+	/**
+	 * Gets the input bit read by a boolean terminal.
+	 *
+	 * @param node
+	 *            the terminal (D or A node)
+	 * @param problem
+	 *            the problem the node is evaluated on
+	 * @return the (zero-based) input bit
+	 * @throws UnsupportedOperationException
+	 *             if the node isn't a known boolean terminal
+	 */
+	public static int inputBit(Node node, Problem problem) {
+		if (node instanceof D0) {
+			return 0;
+		} else if (node instanceof D1) {
+			return 1;
+		} else if (node instanceof D2) {
+			return 2;
+		} else if (node instanceof D3) {
+			return 3;
+		} else if (node instanceof D4) {
+			return 4;
+		} else if (node instanceof D5) {
+			return 5;
+		} else if (node instanceof D6) {
+			return 6;
+		} else if (node instanceof D7) {
+			return 7;
+		} else if (node instanceof Di) {
+			return ((Di) node).getIndex();
+		} else if (node instanceof A0) {
+			return ((Multiplexer) problem).getNumDataBits();
+		} else if (node instanceof A1) {
+			return ((Multiplexer) problem).getNumDataBits() + 1;
+		} else if (node instanceof A2) {
+			return ((Multiplexer) problem).getNumDataBits() + 2;
+		} else if (node instanceof Ai) {
+			return ((Multiplexer) problem).getNumDataBits()
+					+ ((Ai) node).getIndex();
+		}
+
+		throw new UnsupportedOperationException("unknown node "
+				+ node.getClass().getName());
+	}
+}
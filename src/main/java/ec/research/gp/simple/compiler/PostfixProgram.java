@@ -0,0 +1,241 @@
+package ec.research.gp.simple.compiler;
+
+import ec.research.gp.simple.problem.Problem;
+import ec.research.gp.simple.regression.nodes.R;
+import ec.research.gp.simple.representation.Node;
+
+/**
+ * A tree flattened into a postfix array of {@link Opcodes}, run by a
+ * switch-dispatched stack interpreter. Flattening walks the tree once; after
+ * that, every fitness case is evaluated by a tight loop over a small int
+ * array instead of a pointer chase (and virtual call) per node.
+ *
+ * Boolean programs are run bit-sliced, 64 fitness cases per word, on the
+ * same input columns as the column evaluation. The tree itself isn't
+ * touched, so a program is just a throwaway view of it for one fitness()
+ * call.
+ *
+ */
+public class PostfixProgram implements BooleanProgram, DoubleProgram {
+	// The opcodes in postfix order. BIT and CONST are followed by their
+	// operand (the input bit or the index in the constant pool).
+	private final int[] code;
+
+	// The values of the tree's R nodes.
+	private final double[] constants;
+
+	// The max stack depth the program needs.
+	private final int maxStack;
+
+	private PostfixProgram(int[] code, double[] constants, int maxStack) {
+		this.code = code;
+		this.constants = constants;
+		this.maxStack = maxStack;
+	}
+
+	/**
+	 * Flattens the tree rooted at the given node.
+	 *
+	 * @param root
+	 *            the root of the tree
+	 * @param problem
+	 *            the problem the tree is evaluated on
+	 * @return the program, or null if the tree has nodes without an opcode
+	 */
+	public static PostfixProgram compile(Node root, Problem problem) {
+		Builder builder = new Builder(problem);
+
+		try {
+			builder.append(root);
+		} catch (UnsupportedOperationException e) {
+			return null;
+		}
+
+		return builder.build();
+	}
+
+	/**
+	 * Accumulates the code and constants while walking the tree.
+	 */
+	private static class Builder {
+		private final Problem problem;
+
+		private int[] code = new int[64];
+		private int codeLength;
+
+		private double[] constants = new double[8];
+		private int numConstants;
+
+		private int stack;
+		private int maxStack;
+
+		Builder(Problem problem) {
+			this.problem = problem;
+		}
+
+		void append(Node node) {
+			int opcode = Opcodes.of(node, this.problem);
+
+			// Children first (postfix)
+			for (int i = 0; i < node.getNumChildren(); i++) {
+				append(node.getChild(i));
+			}
+
+			add(opcode);
+
+			if (opcode == Opcodes.BIT) {
+				add(Opcodes.inputBit(node, this.problem));
+			} else if (opcode == Opcodes.CONST) {
+				if (this.numConstants == this.constants.length) {
+					double[] grown = new double[this.constants.length * 2];
+					System.arraycopy(this.constants, 0, grown, 0,
+							this.numConstants);
+					this.constants = grown;
+				}
+				this.constants[this.numConstants] = ((R) node).getValue();
+				add(this.numConstants++);
+			}
+
+			// Each node pops its children and pushes its result.
+			this.stack += 1 - node.getNumChildren();
+			this.maxStack = Math.max(this.maxStack, this.stack);
+		}
+
+		private void add(int value) {
+			if (this.codeLength == this.code.length) {
+				int[] grown = new int[this.code.length * 2];
+				System.arraycopy(this.code, 0, grown, 0, this.codeLength);
+				this.code = grown;
+			}
+			this.code[this.codeLength++] = value;
+		}
+
+		PostfixProgram build() {
+			int[] finalCode = new int[this.codeLength];
+			System.arraycopy(this.code, 0, finalCode, 0, this.codeLength);
+
+			double[] finalConstants = new double[this.numConstants];
+			System.arraycopy(this.constants, 0, finalConstants, 0,
+					this.numConstants);
+
+			return new PostfixProgram(finalCode, finalConstants,
+					this.maxStack);
+		}
+	}
+
+	@Override
+	public void evaluate(long[][] inputs, long[] out) {
+		final int[] code = this.code;
+		long[] stack = new long[this.maxStack];
+
+		for (int w = 0; w < out.length; w++) {
+			int sp = 0;
+
+			for (int pc = 0; pc < code.length; pc++) {
+				switch (code[pc]) {
+				case Opcodes.AND:
+					sp--;
+					stack[sp - 1] &= stack[sp];
+					break;
+				case Opcodes.OR:
+					sp--;
+					stack[sp - 1] |= stack[sp];
+					break;
+				case Opcodes.NAND:
+					sp--;
+					stack[sp - 1] = ~(stack[sp - 1] & stack[sp]);
+					break;
+				case Opcodes.NOR:
+					sp--;
+					stack[sp - 1] = ~(stack[sp - 1] | stack[sp]);
+					break;
+				case Opcodes.XOR:
+					sp--;
+					stack[sp - 1] ^= stack[sp];
+					break;
+				case Opcodes.NOT:
+					stack[sp - 1] = ~stack[sp - 1];
+					break;
+				case Opcodes.IF:
+					// Condition, then and else are the top three entries.
+					sp -= 2;
+					long cond = stack[sp - 1];
+					stack[sp - 1] = (cond & stack[sp]) | (~cond & stack[sp + 1]);
+					break;
+				case Opcodes.BIT:
+					stack[sp++] = inputs[code[++pc]][w];
+					break;
+				case Opcodes.FALSE:
+					stack[sp++] = 0L;
+					break;
+				default:
+					throw new IllegalStateException("not a boolean opcode: "
+							+ code[pc]);
+				}
+			}
+
+			out[w] = stack[0];
+		}
+	}
+
+	@Override
+	public void evaluate(double[] xs, double[] out) {
+		final int[] code = this.code;
+		double[] stack = new double[this.maxStack];
+
+		for (int i = 0; i < out.length; i++) {
+			double x = xs[i];
+			int sp = 0;
+
+			for (int pc = 0; pc < code.length; pc++) {
+				switch (code[pc]) {
+				case Opcodes.ADD:
+					sp--;
+					stack[sp - 1] += stack[sp];
+					break;
+				case Opcodes.SUB:
+					sp--;
+					stack[sp - 1] -= stack[sp];
+					break;
+				case Opcodes.MULT:
+					sp--;
+					stack[sp - 1] *= stack[sp];
+					break;
+				case Opcodes.DIV:
+					// Protected division, as in DIV.
+					sp--;
+					if (stack[sp] != 0.0) {
+						stack[sp - 1] /= stack[sp];
+					}
+					break;
+				case Opcodes.SIN:
+					stack[sp - 1] = Math.sin(stack[sp - 1]);
+					break;
+				case Opcodes.COS:
+					stack[sp - 1] = Math.cos(stack[sp - 1]);
+					break;
+				case Opcodes.EXP:
+					stack[sp - 1] = Math.exp(stack[sp - 1]);
+					break;
+				case Opcodes.RLOG:
+					// Protected log, as in RLOG.
+					if (stack[sp - 1] != 0.0) {
+						stack[sp - 1] = Math.log(Math.abs(stack[sp - 1]));
+					}
+					break;
+				case Opcodes.X:
+					stack[sp++] = x;
+					break;
+				case Opcodes.CONST:
+					stack[sp++] = this.constants[code[++pc]];
+					break;
+				default:
+					throw new IllegalStateException("not a numeric opcode: "
+							+ code[pc]);
+				}
+			}
+
+			out[i] = stack[0];
+		}
+	}
+}
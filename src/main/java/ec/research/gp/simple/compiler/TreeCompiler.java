@@ -0,0 +1,525 @@
+package ec.research.gp.simple.compiler;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import ec.research.gp.simple.compiler.ClassWriter.Label;
+import ec.research.gp.simple.compiler.ClassWriter.MethodWriter;
+import ec.research.gp.simple.problem.Problem;
+import ec.research.gp.simple.regression.nodes.R;
+import ec.research.gp.simple.representation.Node;
+
+/**
+ * Compiles GP trees into JVM classes so that evaluating a tree on many fitness
+ * cases is a single tight loop the JIT can optimize, rather than a virtual
+ * call per node per case. Boolean trees compile to a loop over 64-case words
+ * (see {@link BooleanProgram}), numeric trees to a loop over the input points
+ * (see {@link DoubleProgram}). The compiled code computes exactly what the
+ * interpreted nodes compute.
+ *
+ * Compiled programs are cached per genotype (LRU), looked up by the trees'
+ * structural hashes and checked against a copy of the tree, so no genotype
+ * strings are built. Each generated class gets
+ * its own class loader, so evicted programs can be garbage collected.
+ *
+ * Trees containing nodes the compiler doesn't know about, or that are too big
+ * for a single method, aren't compiled; the compile methods return null and
+ * the caller should fall back to interpretation.
+ *
+ */
+public class TreeCompiler {
+	private static final Logger logger = Logger.getLogger(TreeCompiler.class);
+
+	// Cache marker for trees that can't be compiled.
+	private static final Object NOT_COMPILABLE = new Object();
+
+	// Keep well under the 32K reach of the loop's backwards goto.
+	private static final int MAX_CODE_LENGTH = 30000;
+
+	// Used to give every generated class a unique name.
+	private static final AtomicLong classCounter = new AtomicLong();
+
+	// Package and internal names used in the generated classes.
+	private static final String PACKAGE = "ec/research/gp/simple/compiler/";
+	private static final String OBJECT = "java/lang/Object";
+	private static final String MATH = "java/lang/Math";
+
+	// Locals of the generated boolean evaluate(long[][], long[]) method.
+	private static final int BOOL_INPUTS = 1;
+	private static final int BOOL_OUT = 2;
+	private static final int BOOL_WORD = 3;
+	private static final int BOOL_FIRST_TEMP = 4;
+
+	// Locals of the generated double evaluate(double[], double[]) method.
+	private static final int DOUBLE_XS = 1;
+	private static final int DOUBLE_OUT = 2;
+	private static final int DOUBLE_INDEX = 3;
+	private static final int DOUBLE_X = 4;
+
+	// The problem the trees are evaluated on (terminals may depend on it).
+	private final Problem problem;
+
+	// Compiled programs by structural hash, in LRU order.
+	private final Map<Long, CacheEntry> cache;
+
+	/**
+	 * A compiled program (or NOT_COMPILABLE) and a copy of the tree it was
+	 * compiled from, to tell trees whose hashes collide apart.
+	 */
+	private static class CacheEntry {
+		final Node tree;
+		final Object program;
+
+		CacheEntry(Node tree, Object program) {
+			this.tree = tree;
+			this.program = program;
+		}
+	}
+
+	/**
+	 * Creates a compiler for trees evaluated on the given problem.
+	 *
+	 * @param problem
+	 *            the problem
+	 * @param cacheSize
+	 *            the max number of compiled genotypes to keep around
+	 */
+	public TreeCompiler(Problem problem, final int cacheSize) {
+		this.problem = problem;
+		this.cache = new LinkedHashMap<Long, CacheEntry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<Long, CacheEntry> eldest) {
+				return size() > cacheSize;
+			}
+		};
+	}
+
+	/**
+	 * Gets the compiled program for the boolean tree rooted at the given node,
+	 * compiling it if it isn't cached yet.
+	 *
+	 * @param root
+	 *            the root of the tree
+	 * @return the compiled program, or null if the tree can't be compiled
+	 */
+	public BooleanProgram compileBoolean(Node root) {
+		Object program = lookup(root);
+
+		if (program == null) {
+			program = NOT_COMPILABLE;
+			try {
+				program = buildBoolean(root);
+			} catch (UnsupportedOperationException e) {
+				logger.debug(String.format("Not compiling %s: %s",
+						root.subtreeToString(), e.getMessage()));
+			}
+			store(root, program);
+		}
+
+		return (program == NOT_COMPILABLE) ? null : (BooleanProgram) program;
+	}
+
+	/**
+	 * Gets the compiled program for the numeric tree rooted at the given node,
+	 * compiling it if it isn't cached yet.
+	 *
+	 * @param root
+	 *            the root of the tree
+	 * @return the compiled program, or null if the tree can't be compiled
+	 */
+	public DoubleProgram compileDouble(Node root) {
+		Object program = lookup(root);
+
+		if (program == null) {
+			program = NOT_COMPILABLE;
+			try {
+				program = buildDouble(root);
+			} catch (UnsupportedOperationException e) {
+				logger.debug(String.format("Not compiling %s: %s",
+						root.subtreeToString(), e.getMessage()));
+			}
+			store(root, program);
+		}
+
+		return (program == NOT_COMPILABLE) ? null : (DoubleProgram) program;
+	}
+
+	/**
+	 * @return the number of genotypes currently cached
+	 */
+	public int getCacheSize() {
+		synchronized (this.cache) {
+			return this.cache.size();
+		}
+	}
+
+	/**
+	 * @return the cached program for the tree, or null if it isn't cached
+	 */
+	private Object lookup(Node root) {
+		CacheEntry entry;
+		synchronized (this.cache) {
+			entry = this.cache.get(root.getStructuralHash());
+		}
+
+		// On a hash collision, the tree just isn't cached.
+		if (entry == null || !entry.tree.subtreeEquals(root)) {
+			return null;
+		}
+
+		return entry.program;
+	}
+
+	/**
+	 * Caches the program for the tree, replacing any tree with the same hash.
+	 */
+	private void store(Node root, Object program) {
+		Node tree;
+		try {
+			tree = root.clone();
+		} catch (CloneNotSupportedException e) {
+			// Then just don't cache it.
+			return;
+		}
+
+		synchronized (this.cache) {
+			this.cache.put(root.getStructuralHash(), new CacheEntry(tree,
+					program));
+		}
+	}
+
+	/**
+	 * Generates and loads the class for a boolean tree.
+	 */
+	private BooleanProgram buildBoolean(Node root) {
+		String name = PACKAGE + "CompiledBooleanTree"
+				+ classCounter.incrementAndGet();
+		ClassWriter cw = new ClassWriter(name, OBJECT, PACKAGE
+				+ "BooleanProgram");
+		addConstructor(cw);
+
+		MethodWriter mw = cw.addMethod(ClassWriter.ACC_PUBLIC, "evaluate",
+				"([[J[J)V", 3);
+		mw.useLocals(BOOL_FIRST_TEMP);
+		Label top = new Label();
+		Label end = new Label();
+
+		// for (int w = 0; w < out.length; w++)
+		mw.pushInt(0);
+		mw.local(ClassWriter.ISTORE, BOOL_WORD, -1);
+		mw.mark(top);
+		mw.local(ClassWriter.ILOAD, BOOL_WORD, 1);
+		mw.local(ClassWriter.ALOAD, BOOL_OUT, 1);
+		mw.op(ClassWriter.ARRAYLENGTH, 0);
+		mw.branch(ClassWriter.IF_ICMPGE, end, -2);
+
+		// out[w] = <tree>
+		mw.local(ClassWriter.ALOAD, BOOL_OUT, 1);
+		mw.local(ClassWriter.ILOAD, BOOL_WORD, 1);
+		emitBoolean(mw, root, BOOL_FIRST_TEMP);
+		mw.op(ClassWriter.LASTORE, -4);
+
+		mw.iinc(BOOL_WORD, 1);
+		mw.branch(ClassWriter.GOTO, top, 0);
+		mw.mark(end);
+		mw.op(ClassWriter.RETURN, 0);
+
+		checkCodeLength(mw);
+
+		return (BooleanProgram) load(name, cw.toByteArray());
+	}
+
+	/**
+	 * Emits the code computing one 64-case word of the given subtree, leaving
+	 * the long result on the stack. IF nodes keep their condition in a temp
+	 * local; nextTemp is the first free one.
+	 */
+	private void emitBoolean(MethodWriter mw, Node node, int nextTemp) {
+		Node[] children = node.getChildren();
+		int opcode = Opcodes.of(node, this.problem);
+
+		switch (opcode) {
+		case Opcodes.AND:
+		case Opcodes.OR:
+		case Opcodes.XOR:
+		case Opcodes.NAND:
+		case Opcodes.NOR:
+			emitBoolean(mw, children[0], nextTemp);
+			emitBoolean(mw, children[1], nextTemp);
+
+			if (opcode == Opcodes.AND || opcode == Opcodes.NAND) {
+				mw.op(ClassWriter.LAND, -2);
+			} else if (opcode == Opcodes.OR || opcode == Opcodes.NOR) {
+				mw.op(ClassWriter.LOR, -2);
+			} else {
+				mw.op(ClassWriter.LXOR, -2);
+			}
+
+			if (opcode == Opcodes.NAND || opcode == Opcodes.NOR) {
+				emitNot(mw);
+			}
+			break;
+
+		case Opcodes.NOT:
+			emitBoolean(mw, children[0], nextTemp);
+			emitNot(mw);
+			break;
+
+		case Opcodes.IF:
+			// (cond & c2) | (~cond & c3), with cond kept in a temp local.
+			int cond = nextTemp;
+			mw.useLocals(cond + 2);
+
+			emitBoolean(mw, children[0], cond + 2);
+			mw.local(ClassWriter.LSTORE, cond, -2);
+
+			emitBoolean(mw, children[1], cond + 2);
+			mw.local(ClassWriter.LLOAD, cond, 2);
+			mw.op(ClassWriter.LAND, -2);
+
+			emitBoolean(mw, children[2], cond + 2);
+			mw.local(ClassWriter.LLOAD, cond, 2);
+			emitNot(mw);
+			mw.op(ClassWriter.LAND, -2);
+
+			mw.op(ClassWriter.LOR, -2);
+			break;
+
+		case Opcodes.BIT:
+			// inputs[bit][w]
+			mw.local(ClassWriter.ALOAD, BOOL_INPUTS, 1);
+			mw.pushInt(Opcodes.inputBit(node, this.problem));
+			mw.op(ClassWriter.AALOAD, -1);
+			mw.local(ClassWriter.ILOAD, BOOL_WORD, 1);
+			mw.op(ClassWriter.LALOAD, 0);
+			break;
+
+		case Opcodes.FALSE:
+			// Just like BooleanProblem.getInputColumn() for missing bits.
+			mw.pushLong(0L);
+			break;
+
+		default:
+			throw new UnsupportedOperationException("not a boolean node: "
+					+ node.getClass().getName());
+		}
+	}
+
+	/**
+	 * Emits ~x for the long on top of the stack.
+	 */
+	private void emitNot(MethodWriter mw) {
+		mw.pushLong(-1L);
+		mw.op(ClassWriter.LXOR, -2);
+	}
+
+	/**
+	 * Generates and loads the class for a numeric tree.
+	 */
+	private DoubleProgram buildDouble(Node root) {
+		String name = PACKAGE + "CompiledDoubleTree"
+				+ classCounter.incrementAndGet();
+		ClassWriter cw = new ClassWriter(name, OBJECT, PACKAGE
+				+ "DoubleProgram");
+		addConstructor(cw);
+
+		MethodWriter mw = cw.addMethod(ClassWriter.ACC_PUBLIC, "evaluate",
+				"([D[D)V", 3);
+		mw.useLocals(DOUBLE_X + 2);
+		Label top = new Label();
+		Label end = new Label();
+
+		// for (int i = 0; i < out.length; i++)
+		mw.pushInt(0);
+		mw.local(ClassWriter.ISTORE, DOUBLE_INDEX, -1);
+		mw.mark(top);
+		mw.local(ClassWriter.ILOAD, DOUBLE_INDEX, 1);
+		mw.local(ClassWriter.ALOAD, DOUBLE_OUT, 1);
+		mw.op(ClassWriter.ARRAYLENGTH, 0);
+		mw.branch(ClassWriter.IF_ICMPGE, end, -2);
+
+		// x = xs[i]
+		mw.local(ClassWriter.ALOAD, DOUBLE_XS, 1);
+		mw.local(ClassWriter.ILOAD, DOUBLE_INDEX, 1);
+		mw.op(ClassWriter.DALOAD, 0);
+		mw.local(ClassWriter.DSTORE, DOUBLE_X, -2);
+
+		// out[i] = <tree>
+		mw.local(ClassWriter.ALOAD, DOUBLE_OUT, 1);
+		mw.local(ClassWriter.ILOAD, DOUBLE_INDEX, 1);
+		emitDouble(mw, root);
+		mw.op(ClassWriter.DASTORE, -4);
+
+		mw.iinc(DOUBLE_INDEX, 1);
+		mw.branch(ClassWriter.GOTO, top, 0);
+		mw.mark(end);
+		mw.op(ClassWriter.RETURN, 0);
+
+		checkCodeLength(mw);
+
+		return (DoubleProgram) load(name, cw.toByteArray());
+	}
+
+	/**
+	 * Emits the code computing the given subtree for the current point,
+	 * leaving the double result on the stack.
+	 */
+	private void emitDouble(MethodWriter mw, Node node) {
+		Node[] children = node.getChildren();
+		int opcode = Opcodes.of(node, this.problem);
+
+		switch (opcode) {
+		case Opcodes.ADD:
+			emitDouble(mw, children[0]);
+			emitDouble(mw, children[1]);
+			mw.op(ClassWriter.DADD, -2);
+			break;
+
+		case Opcodes.SUB:
+			emitDouble(mw, children[0]);
+			emitDouble(mw, children[1]);
+			mw.op(ClassWriter.DSUB, -2);
+			break;
+
+		case Opcodes.MULT:
+			emitDouble(mw, children[0]);
+			emitDouble(mw, children[1]);
+			mw.op(ClassWriter.DMUL, -2);
+			break;
+
+		case Opcodes.DIV: {
+			// c2 != 0.0 ? c1 / c2 : c1
+			Label skip = new Label();
+			Label done = new Label();
+
+			emitDouble(mw, children[0]);
+			emitDouble(mw, children[1]);
+			mw.op(ClassWriter.DUP2, 2);
+			mw.op(ClassWriter.DCONST_0, 2);
+			mw.op(ClassWriter.DCMPL, -3);
+			mw.branch(ClassWriter.IFEQ, skip, -1);
+
+			int bothOnStack = mw.getStack();
+			mw.op(ClassWriter.DDIV, -2);
+			mw.branch(ClassWriter.GOTO, done, 0);
+
+			mw.setStack(bothOnStack);
+			mw.mark(skip);
+			mw.op(ClassWriter.POP2, -2);
+			mw.mark(done);
+			break;
+		}
+
+		case Opcodes.RLOG: {
+			// c1 != 0.0 ? log(abs(c1)) : c1
+			Label done = new Label();
+
+			emitDouble(mw, children[0]);
+			mw.op(ClassWriter.DUP2, 2);
+			mw.op(ClassWriter.DCONST_0, 2);
+			mw.op(ClassWriter.DCMPL, -3);
+			mw.branch(ClassWriter.IFEQ, done, -1);
+			emitMath(mw, "abs");
+			emitMath(mw, "log");
+			mw.mark(done);
+			break;
+		}
+
+		case Opcodes.SIN:
+			emitDouble(mw, children[0]);
+			emitMath(mw, "sin");
+			break;
+
+		case Opcodes.COS:
+			emitDouble(mw, children[0]);
+			emitMath(mw, "cos");
+			break;
+
+		case Opcodes.EXP:
+			emitDouble(mw, children[0]);
+			emitMath(mw, "exp");
+			break;
+
+		case Opcodes.X:
+			mw.local(ClassWriter.DLOAD, DOUBLE_X, 2);
+			break;
+
+		case Opcodes.CONST:
+			mw.pushDouble(((R) node).getValue());
+			break;
+
+		default:
+			throw new UnsupportedOperationException("not a numeric node: "
+					+ node.getClass().getName());
+		}
+	}
+
+	/**
+	 * Emits a call to the given double -> double method of java.lang.Math.
+	 */
+	private void emitMath(MethodWriter mw, String function) {
+		mw.invoke(ClassWriter.INVOKESTATIC, MATH, function, "(D)D", 0);
+	}
+
+	/**
+	 * Adds the public no-arg constructor to the class.
+	 */
+	private void addConstructor(ClassWriter cw) {
+		MethodWriter init = cw.addMethod(ClassWriter.ACC_PUBLIC, "<init>",
+				"()V", 1);
+		init.local(ClassWriter.ALOAD, 0, 1);
+		init.invoke(ClassWriter.INVOKESPECIAL, OBJECT, "<init>", "()V", -1);
+		init.op(ClassWriter.RETURN, 0);
+	}
+
+	/**
+	 * Makes sure the generated method isn't too big to load (or to jump
+	 * over).
+	 */
+	private void checkCodeLength(MethodWriter mw) {
+		if (mw.getCodeLength() > MAX_CODE_LENGTH) {
+			throw new UnsupportedOperationException(String.format(
+					"generated code too long (%d bytes)", mw.getCodeLength()));
+		}
+	}
+
+	/**
+	 * Defines the generated class in its own loader and instantiates it.
+	 */
+	private Object load(String internalName, byte[] bytes) {
+		String name = internalName.replace('/', '.');
+
+		try {
+			return new ProgramLoader(TreeCompiler.class.getClassLoader())
+					.define(name, bytes).getConstructor().newInstance();
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException(e);
+		} catch (InvocationTargetException e) {
+			throw new IllegalStateException(e.getCause());
+		} catch (InstantiationException e) {
+			throw new IllegalStateException(e);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Class loader for a single generated class.
+	 */
+	private static class ProgramLoader extends ClassLoader {
+		ProgramLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		Class<?> define(String name, byte[] bytes) {
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package ec.research.gp.simple.gp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ec.research.gp.simple.representation.Individual;
+
+/**
+ * A queue of individuals waiting to be evaluated, shared by the evaluation
+ * threads: each iterator over the queue claims the next individual nobody has
+ * taken yet, so a thread that gets cheap individuals just takes more of them
+ * and no thread sits idle while there's work left.
+ *
+ * Evaluation costs about the tree's size times the number of fitness cases,
+ * so the queue can hand out the largest trees first, which leaves the small
+ * ones to even out the threads' finishing times at the end. Individuals that
+ * are already evaluated are left out.
+ *
+ */
+public class EvalQueue implements Iterable<Individual> {
+	// Orders individuals by decreasing size.
+	private static final Comparator<Individual> LARGEST_FIRST = new Comparator<Individual>() {
+		@Override
+		public int compare(Individual ind1, Individual ind2) {
+			int size1 = ind1.getNumNodes();
+			int size2 = ind2.getNumNodes();
+
+			return (size1 > size2) ? -1 : ((size1 == size2) ? 0 : 1);
+		}
+	};
+
+	// The individuals to evaluate, in the order they're handed out.
+	private final List<Individual> individuals;
+
+	// The position of the next individual to hand out.
+	private final AtomicInteger next = new AtomicInteger();
+
+	/**
+	 * Creates a queue of the unevaluated individuals among the given ones.
+	 *
+	 * @param individuals
+	 *            the individuals
+	 * @param largestFirst
+	 *            whether to hand out the largest trees first (otherwise they go
+	 *            in the given order)
+	 */
+	public EvalQueue(List<Individual> individuals, boolean largestFirst) {
+		this.individuals = new ArrayList<Individual>(individuals.size());
+		for (Individual individual : individuals) {
+			if (!individual.isEvaluated()) {
+				this.individuals.add(individual);
+			}
+		}
+
+		if (largestFirst) {
+			Collections.sort(this.individuals, LARGEST_FIRST);
+		}
+	}
+
+	/**
+	 * @return the number of individuals in the queue
+	 */
+	public int size() {
+		return this.individuals.size();
+	}
+
+	/**
+	 * Returns an iterator over the individuals nobody has claimed yet. Each
+	 * individual is returned by exactly one of the queue's iterators.
+	 */
+	@Override
+	public Iterator<Individual> iterator() {
+		return new Iterator<Individual>() {
+			// The individual claimed by hasNext() but not yet returned.
+			private Individual claimed;
+
+			@Override
+			public boolean hasNext() {
+				if (this.claimed == null) {
+					int pos = next.getAndIncrement();
+					if (pos < individuals.size()) {
+						this.claimed = individuals.get(pos);
+					}
+				}
+
+				return this.claimed != null;
+			}
+
+			@Override
+			public Individual next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+
+				Individual individual = this.claimed;
+				this.claimed = null;
+				return individual;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+}
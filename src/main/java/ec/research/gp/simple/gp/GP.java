@@ -1,11 +1,14 @@
 package ec.research.gp.simple.gp;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.log4j.Logger;
 
@@ -15,7 +18,9 @@ import ec.research.gp.simple.operators.TournamentSelection;
 import ec.research.gp.simple.problem.Problem;
 import ec.research.gp.simple.regression.nodes.R;
 import ec.research.gp.simple.representation.Individual;
+import ec.research.gp.simple.representation.Individual.REPRESENTATION;
 import ec.research.gp.simple.representation.Node;
+import ec.research.gp.simple.representation.TreeTable;
 import ec.research.gp.simple.util.Context;
 import ec.research.gp.statistics.SimpleGPStatistics;
 import ec.research.gp.statistics.Statistics;
@@ -38,25 +43,49 @@ public class GP {
 	// Holds the instance of the problem
 	protected Problem problem;
 
-	// Holds the best individual seen over the run
-	protected Individual bestIndividual;
+	// Holds the best individual seen over the run (volatile since the
+	// evaluation threads check it without the lock)
+	protected volatile Individual bestIndividual;
 
 	// Holds the best fitness seen over the run
-	protected double bestFitness;
+	protected volatile double bestFitness;
 
 	// Whether or not we've found the optimal fitness value.
-	protected boolean foundOptimal;
+	protected volatile boolean foundOptimal;
 
 	// Whether or not we should stop when we find an individual with optimal
 	// fitness
 	protected boolean doStopOnOptimal;
 
-	// Lock for threading.
-	private Object lock = new Object();
+	// Lock for updating the best individual and logging stats during a batch
+	// of evaluations.
+	protected final Object lock = new Object();
 
 	// The selection scheme we're using for reproduction.
 	protected Selection selection;
 
+	// The number of offspring bred by each breeding task. Each block of the
+	// next population gets its own random stream, so a seed breeds the same
+	// offspring however many threads there are.
+	protected static final int BREED_BLOCK_SIZE = 64;
+
+	/**
+	 * Breeds (and mutates) the offspring for one block of the next population.
+	 * Breeders run on several threads at once, so they may only read the
+	 * current population.
+	 */
+	protected interface Breeder {
+		/**
+		 * @param block
+		 *            where the offspring go
+		 * @param size
+		 *            the number of offspring to breed
+		 * @throws CloneNotSupportedException
+		 */
+		void breed(Vector<Individual> block, int size)
+				throws CloneNotSupportedException;
+	}
+
 	// Whether we're stopping the run based on numGenerations or numEvaluations
 	public static enum STOP_ON {
 		GENERATIONS, EVALUATIONS
@@ -72,6 +101,10 @@ public class GP {
 	// Holds the number of evaluations performed
 	protected long numEvaluations;
 
+	// Counts the evaluations during a batch; numEvaluations is caught up once
+	// the batch is done.
+	protected final AtomicLong evaluationCount = new AtomicLong();
+
 	// Holds the evaluation number at which we last output fitness info (so we
 	// don't keep doing it over and over)
 	protected long lastFitnessOutput;
@@ -144,7 +177,7 @@ public class GP {
 	public GP(Context c) throws Exception {
 		this.context = c;
 		this.problem = this.context.getConfig().getProblem();
-		this.problem.init(this.context);
+		this.context.initProblem(this.problem);
 		this.population = new Vector<Individual>();
 		this.doStopOnOptimal = this.context.getConfig().stopOnOptimal();
 		this.numEvaluations = 0;
@@ -164,7 +197,7 @@ public class GP {
 		int half = popSize / 2;
 		int uniqueRetries = 0;
 		int maxUniqueRetries = context.getConfig().getMaxUniqueRetries();
-		HashSet<String> expressions = new HashSet<String>();
+		TreeTable trees = new TreeTable();
 
 		while (population.size() < popSize) {
 			// Use the grow method for half, and the full method for the other
@@ -174,8 +207,7 @@ public class GP {
 			Individual individual = getRandomIndividual(mode);
 
 			// Avoid duplicates until we run out of tries
-			String expression = individual.toString();
-			boolean isUnique = expressions.add(expression);
+			boolean isUnique = (trees.add(individual) == 1);
 
 			// Allow duplicates if we've run out of retries.
 			if (isUnique || uniqueRetries > maxUniqueRetries) {
@@ -333,34 +365,7 @@ public class GP {
 	 * @throws CloneNotSupportedException
 	 */
 	public void evaluatePop() {
-		int numThreads = this.context.getConfig().getNumThreads();
-		int chunkSize = this.population.size() / numThreads;
-		int start = 0, end = 0;
-		Thread[] threads = new Thread[numThreads];
-
-		// Fire off all the evaluation threads
-		for (int i = 0; i < numThreads; i++) {
-			start = i * chunkSize;
-
-			// Set the end index (account for uneven popSize/numThreads)
-			end = (i == numThreads - 1) ? this.population.size()
-					: (start + chunkSize); // subList end is exclusive so no -1
-
-			EvalThread thread = new EvalThread(this.population.subList(start,
-					end));
-			threads[i] = new Thread(thread);
-			threads[i].start();
-		}
-
-		// Join them all together
-		for (int i = 0; i < numThreads; i++) {
-			try {
-				threads[i].join();
-			} catch (InterruptedException e) {
-				logger.error(e);
-				System.exit(1);
-			}
-		}
+		evaluate(this.population);
 
 		// Calculate some population averages
 		calculateAverages();
@@ -409,10 +414,22 @@ public class GP {
 	 * @throws CloneNotSupportedException
 	 */
 	public void evolve() throws CloneNotSupportedException {
-		while (!doTerminate()) {
-			step();
+		try {
+			while (!doTerminate()) {
+				step();
+			}
+
+			report();
+		} finally {
+			close();
 		}
+	}
 
+	/**
+	 * Outputs the best solution found and does the post evolution stats, once
+	 * the run is over.
+	 */
+	protected void report() {
 		// Output the best solution found
 		logger.info(String.format(
 				"Best fitness overall=%s Hits=%s Total nodes=%s",
@@ -426,6 +443,77 @@ public class GP {
 		statistics.postEvolutionStats(generation);
 	}
 
+	/**
+	 * Waits for the last stats to be written, and stops the worker threads,
+	 * which aren't needed once the run is over.
+	 */
+	protected void close() {
+		this.statistics.finish();
+		this.context.shutdown();
+	}
+
+	/**
+	 * Copies the given number of best individuals in the population, e.g. to
+	 * send them to another island.
+	 * 
+	 * @param n
+	 *            the number of individuals
+	 * @return copies of the n best individuals, best first
+	 * @throws CloneNotSupportedException
+	 */
+	public List<Individual> getEmigrants(int n)
+			throws CloneNotSupportedException {
+		List<Individual> sorted = new ArrayList<Individual>(this.population);
+		Collections.sort(sorted, Collections.reverseOrder());
+
+		List<Individual> emigrants = new ArrayList<Individual>(n);
+		for (int i = 0; i < n && i < sorted.size(); i++) {
+			emigrants.add(sorted.get(i).clone());
+		}
+
+		return emigrants;
+	}
+
+	/**
+	 * Puts the given (evaluated) individuals, e.g. from another island, in
+	 * place of the worst individuals in the population.
+	 * 
+	 * @param immigrants
+	 *            the individuals to add
+	 */
+	public void immigrate(List<Individual> immigrants) {
+		replaceWorst(this.population, immigrants);
+	}
+
+	/**
+	 * Puts the given individuals in place of the worst individuals in the
+	 * given population (or layer), keeping the population's order otherwise.
+	 * 
+	 * @param population
+	 *            the population
+	 * @param immigrants
+	 *            the individuals to add
+	 */
+	protected static void replaceWorst(final List<Individual> population,
+			List<Individual> immigrants) {
+		List<Integer> indices = new ArrayList<Integer>(population.size());
+		for (int i = 0; i < population.size(); i++) {
+			indices.add(i);
+		}
+
+		// Worst first
+		Collections.sort(indices, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer i1, Integer i2) {
+				return population.get(i1).compareTo(population.get(i2));
+			}
+		});
+
+		for (int i = 0; i < immigrants.size() && i < indices.size(); i++) {
+			population.set(indices.get(i), immigrants.get(i));
+		}
+	}
+
 	/**
 	 * Simply calculates the current average fitness, depth and size of the
 	 * individuals in the population.
@@ -487,6 +575,13 @@ public class GP {
 		return this.numEvaluations;
 	}
 
+	/**
+	 * @return the best individual seen over the run
+	 */
+	public Individual getBestIndividual() {
+		return this.bestIndividual;
+	}
+
 	/**
 	 * Displays the current generation fitness info.
 	 */
@@ -613,6 +708,16 @@ public class GP {
 		// Set the tree depth, so we don't have to calculate it later!
 		individual.setDepth(depth);
 
+		// Flatten the tree if the run uses linear trees, or mark it as shared
+		// if the run uses persistent trees.
+		REPRESENTATION representation = context.getConfig()
+				.getRepresentation();
+		if (representation == REPRESENTATION.LINEAR) {
+			individual.linearize(context.getConfig().getPrimitives());
+		} else if (representation == REPRESENTATION.PERSISTENT) {
+			individual.setIsPersistent(true);
+		}
+
 		return individual;
 	}
 
@@ -627,37 +732,141 @@ public class GP {
 	/**
 	 * Breeds the parents to create a new generation.
 	 * 
-	 * @param parent1Index
-	 *            the index of the first parent in the current population
-	 * @param parent2Index
-	 *            the index of the second parent in the current population
 	 * @throws CloneNotSupportedException
 	 */
 	public void breed() throws CloneNotSupportedException {
 		// Temporary holder for the new population
-		Vector<Individual> tmpNewPopulation = new Vector<Individual>();
-		int fillSize = context.getConfig().getPopSize()
-				- context.getConfig().getNumElites();
+		Vector<Individual> tmpNewPopulation = breedOffspring(context
+				.getConfig().getPopSize() - context.getConfig().getNumElites());
+
+		// Add elites if necessary
+		addElites(tmpNewPopulation, context.getConfig().getNumElites());
+
+		// Replace the old population with the new population.
+		population.clear();
+		population.addAll(tmpNewPopulation);
+	}
+
+	/**
+	 * Breeds and mutates the given number of offspring from the population,
+	 * a block at a time with breedBlock(), on the Context's worker threads.
+	 * 
+	 * @param fillSize
+	 *            the number of offspring
+	 * @return the offspring
+	 */
+	protected Vector<Individual> breedOffspring(int fillSize) {
+		Individual[] offspring = new Individual[fillSize];
+		List<Runnable> tasks = new ArrayList<Runnable>();
+
+		indexNodes(this.population);
+		addBreedTasks(tasks, offspring, new Breeder() {
+			@Override
+			public void breed(Vector<Individual> block, int size)
+					throws CloneNotSupportedException {
+				breedBlock(block, size);
+			}
+		});
+		this.context.runAll(tasks);
+		renumber(offspring);
+
+		return new Vector<Individual>(Arrays.asList(offspring));
+	}
 
-		while (tmpNewPopulation.size() < fillSize) {
+	/**
+	 * Breeds a block of offspring from the population with crossover and
+	 * replication, then mutates them. This runs on the worker threads.
+	 * 
+	 * @param block
+	 *            where the offspring go
+	 * @param size
+	 *            the number of offspring to breed
+	 * @throws CloneNotSupportedException
+	 */
+	protected void breedBlock(Vector<Individual> block, int size)
+			throws CloneNotSupportedException {
+		while (block.size() < size) {
 			// Figure out whether to do crossover or replication
 			if (this.context.nextBool(this.context.getConfig()
 					.getCrossProbability())) {
-				doCrossover(tmpNewPopulation, fillSize);
+				doCrossover(block, size);
 			} else {
-				doReplication(tmpNewPopulation, fillSize);
+				doReplication(block, size);
 			}
 		}
 
 		// Probabilistically mutate the individuals
-		doMutation(tmpNewPopulation, this.context);
+		doMutation(block, this.context);
+	}
 
-		// Add elites if necessary
-		addElites(tmpNewPopulation, context.getConfig().getNumElites());
+	/**
+	 * Splits the given offspring slots into blocks of BREED_BLOCK_SIZE and adds
+	 * a task for each block to the list. Each task has its own random stream,
+	 * whose seed is drawn here in block order, and breeds its block with the
+	 * breeder straight into its slots.
+	 * 
+	 * @param tasks
+	 *            the list to add the tasks to
+	 * @param offspring
+	 *            the slots to fill
+	 * @param breeder
+	 *            the breeder for the blocks
+	 */
+	protected void addBreedTasks(List<Runnable> tasks,
+			final Individual[] offspring, final Breeder breeder) {
+		for (int start = 0; start < offspring.length; start += BREED_BLOCK_SIZE) {
+			final int offset = start;
+			final int size = Math.min(BREED_BLOCK_SIZE, offspring.length
+					- start);
+
+			tasks.add(this.context.withStream(this.context.nextSeed(),
+					new Runnable() {
+						@Override
+						public void run() {
+							Vector<Individual> block = new Vector<Individual>(
+									size);
+							try {
+								breeder.breed(block, size);
+							} catch (CloneNotSupportedException e) {
+								logger.fatal(e);
+								System.exit(1);
+							}
 
-		// Replace the old population with the new population.
-		population.clear();
-		population.addAll(tmpNewPopulation);
+							for (int i = 0; i < size; i++) {
+								offspring[offset + i] = block.get(i);
+							}
+						}
+					}));
+		}
+	}
+
+	/**
+	 * In deterministic mode, gives the offspring new IDs in slot order. The
+	 * breeding threads draw theirs from the IdGenerator in whatever order
+	 * they run.
+	 * 
+	 * @param offspring
+	 *            the bred offspring
+	 */
+	protected void renumber(Individual[] offspring) {
+		if (this.context.getConfig().isDeterministic()) {
+			for (Individual individual : offspring) {
+				individual.setId(this.generation);
+			}
+		}
+	}
+
+	/**
+	 * Builds the node indexes of the given parents before they're bred from
+	 * on several threads.
+	 * 
+	 * @param parents
+	 *            the individuals to breed from
+	 */
+	protected static void indexNodes(Collection<Individual> parents) {
+		for (Individual parent : parents) {
+			parent.indexNodes();
+		}
 	}
 
 	/**
@@ -668,29 +877,277 @@ public class GP {
 	 */
 	public void setIds() {
 		for (Individual individual : population) {
-			if (individual.getId() == null) {
+			if (!individual.hasId()) {
 				individual.setId(generation);
 			}
 		}
 	}
 
+	/**
+	 * Evaluates the given individuals on the Context's worker threads. The
+	 * threads share an {@link EvalQueue} of the unevaluated individuals,
+	 * largest first, so they stay busy until the whole batch is done however
+	 * the sizes are spread.
+	 * 
+	 * In deterministic mode, the threads only compute the fitness, and the
+	 * evaluations are recorded afterwards in the given order, so the counts,
+	 * the best individual and the stop-on-optimal cutoff don't depend on
+	 * which thread finished first.
+	 * 
+	 * If numWorkers is set, the individuals are evaluated on the worker
+	 * processes instead (see evaluateRemotely()).
+	 * 
+	 * @param individuals
+	 *            the individuals to evaluate
+	 */
+	protected void evaluate(List<Individual> individuals) {
+		if (this.context.getConfig().getNumWorkers() > 0) {
+			evaluateRemotely(individuals);
+			return;
+		}
+
+		int numThreads = this.context.getConfig().getNumThreads();
+		boolean deterministic = this.context.getConfig().isDeterministic();
+
+		// A single thread evaluates in the population's order.
+		EvalQueue queue = new EvalQueue(individuals, numThreads > 1);
+		int numTasks = Math.min(numThreads, queue.size());
+		List<Runnable> tasks = new ArrayList<Runnable>(numTasks);
+
+		for (int i = 0; i < numTasks; i++) {
+			tasks.add(new EvalThread(queue, !deterministic));
+		}
+
+		if (!tasks.isEmpty()) {
+			// Remember the population's order for recording the evaluations.
+			List<Individual> batch = null;
+			if (deterministic) {
+				batch = new ArrayList<Individual>(queue.size());
+				for (Individual individual : individuals) {
+					if (!individual.isEvaluated()) {
+						batch.add(individual);
+					}
+				}
+			}
+
+			this.evaluationCount.set(this.numEvaluations);
+			this.context.runAll(tasks);
+
+			if (deterministic) {
+				for (Individual individual : batch) {
+					recordEvaluation(individual);
+				}
+			}
+			this.numEvaluations = this.evaluationCount.get();
+		}
+	}
+
+	/**
+	 * Evaluates the given individuals on the run's worker processes, then
+	 * records the evaluations in the given order, as in deterministic mode.
+	 * 
+	 * @param individuals
+	 *            the individuals to evaluate
+	 */
+	protected void evaluateRemotely(List<Individual> individuals) {
+		List<Individual> batch = new ArrayList<Individual>();
+		for (Individual individual : individuals) {
+			if (!individual.isEvaluated()) {
+				batch.add(individual);
+			}
+		}
+
+		if (!batch.isEmpty()) {
+			this.context.getRemoteEvaluator().evaluate(batch, this.problem);
+
+			this.evaluationCount.set(this.numEvaluations);
+			for (Individual individual : batch) {
+				recordEvaluation(individual);
+			}
+			this.numEvaluations = this.evaluationCount.get();
+		}
+	}
+
+	/**
+	 * Records the evaluation of the given (just evaluated) individual: counts
+	 * it, checks for a new best individual and outputs the stats if it's time.
+	 * 
+	 * @param individual
+	 *            the individual
+	 */
+	protected void recordEvaluation(Individual individual) {
+		long evaluation = countEvaluation(false);
+
+		// The count is a stats checkpoint: take it under the lock, and output
+		// the stats before letting go, so that no later checkpoint can be
+		// claimed (or output) before this one.
+		if (evaluation < 0) {
+			synchronized (this.lock) {
+				evaluation = countEvaluation(true);
+				updateBest(individual, evaluation);
+				checkEvaluationStats(evaluation);
+			}
+			return;
+		}
+
+		updateBest(individual, evaluation);
+
+		// Handle fitness stats logging
+		if (this.stopOn == STOP_ON.EVALUATIONS) {
+			checkEvaluationStats(evaluation);
+		}
+	}
+
+	/**
+	 * Counts an evaluation, unless the run has found the optimal fitness and
+	 * is stopping on it.
+	 * 
+	 * @param locked
+	 *            whether or not the caller holds the lock, which it must to
+	 *            take a count that's a stats checkpoint
+	 * @return the number of evaluations so far, including this one, or 0 if
+	 *         it wasn't counted, or -1 if the next count is a stats checkpoint
+	 *         and the caller doesn't hold the lock
+	 */
+	protected long countEvaluation(boolean locked) {
+		while (true) {
+			if (this.foundOptimal && this.context.getConfig().stopOnOptimal()) {
+				return 0;
+			}
+
+			long current = this.evaluationCount.get();
+			if (!locked && isStatsCheckpoint(current + 1)) {
+				return -1;
+			}
+			if (this.evaluationCount.compareAndSet(current, current + 1)) {
+				return current + 1;
+			}
+		}
+	}
+
+	/**
+	 * @return whether or not the fitness stats are output at the given
+	 *         evaluation: in EVALUATIONS mode, at every multiple of
+	 *         statCollectEvals within numEvaluations
+	 */
+	private boolean isStatsCheckpoint(long evaluation) {
+		return this.stopOn == STOP_ON.EVALUATIONS
+				&& evaluation > 0
+				&& evaluation <= this.context.getConfig().getNumEvaluations()
+				&& evaluation % this.context.getConfig().getStatCollectEvals() == 0;
+	}
+
+	/**
+	 * Makes the given (evaluated) individual the best of the run if it's
+	 * better than the best so far. New bests are rare, so the lock is only
+	 * taken for those.
+	 * 
+	 * @param individual
+	 *            the individual
+	 * @param evaluation
+	 *            the individual's evaluation number, from countEvaluation()
+	 */
+	protected void updateBest(Individual individual, long evaluation) {
+		double fitness = individual.getFitness();
+		if (fitness <= this.bestFitness && this.bestIndividual != null) {
+			return;
+		}
+
+		synchronized (this.lock) {
+			if (fitness > this.bestFitness || this.bestIndividual == null) {
+				try {
+					this.bestIndividual = individual.clone();
+				} catch (Exception e) {
+					logger.error(e);
+				}
+				this.bestFitness = fitness;
+				this.lastFitnessImprovementGen = this.generation;
+				this.lastFitnessImprovementEval = (evaluation > 0) ? evaluation
+						: this.evaluationCount.get();
+
+				// See if the best fitness is the optimal fitness (force 1.0 as
+				// best)
+				if (this.bestFitness == 1.0) {
+					this.foundOptimal = true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * In EVALUATIONS mode, outputs the fitness stats if the given evaluation
+	 * is a stats checkpoint, or if the optimal fitness was just found and the
+	 * run stops on it. Each count is handed to exactly one thread, and a
+	 * checkpoint only while holding the lock (see recordEvaluation()), so
+	 * every checkpoint is output exactly once, with its count, and in order.
+	 * 
+	 * @param evaluation
+	 *            the evaluation number, from countEvaluation()
+	 */
+	protected void checkEvaluationStats(long evaluation) {
+		boolean doLogFitness = isStatsCheckpoint(evaluation);
+		boolean loggingOptimal = this.foundOptimal && this.doStopOnOptimal
+				&& !this.loggedOptimal;
+
+		if (!doLogFitness && !loggingOptimal) {
+			return;
+		}
+
+		synchronized (this.lock) {
+			if (!doLogFitness && this.loggedOptimal) {
+				return;
+			}
+
+			this.numEvaluations = doLogFitness ? evaluation
+					: this.evaluationCount.get();
+
+			// Calculate some population averages
+			calculateAverages();
+
+			this.statistics.postEvaluationStats(this.generation);
+			this.lastFitnessOutput = this.numEvaluations;
+
+			if (loggingOptimal) {
+				this.loggedOptimal = true;
+			}
+		}
+	}
+
 	/**
 	 * Helper class for multi-threading the fitness evaluations.
 	 * 
 	 */
 	public class EvalThread implements Runnable {
 		// Reference to the individuals to evaluate.
-		private Collection<Individual> individuals;
+		private Iterable<Individual> individuals;
+
+		// Whether or not the thread records the evaluations itself.
+		private boolean doRecord;
 
 		/**
 		 * Creates a new {@link EvalThread} for evaluating the given subset of
 		 * individuals
 		 * 
 		 * @param individuals
-		 *            the subset of individuals to evaluate
+		 *            the individuals to evaluate (e.g. a shared EvalQueue)
 		 */
-		public EvalThread(Collection<Individual> individuals) {
+		public EvalThread(Iterable<Individual> individuals) {
+			this(individuals, true);
+		}
+
+		/**
+		 * Creates a new {@link EvalThread} for evaluating the given subset of
+		 * individuals
+		 * 
+		 * @param individuals
+		 *            the individuals to evaluate (e.g. a shared EvalQueue)
+		 * @param doRecord
+		 *            whether or not to record each evaluation as it's done
+		 *            (otherwise the caller does it)
+		 */
+		public EvalThread(Iterable<Individual> individuals, boolean doRecord) {
 			this.individuals = individuals;
+			this.doRecord = doRecord;
 		}
 
 		@Override
@@ -699,59 +1156,8 @@ public class GP {
 				if (!individual.isEvaluated()) {
 					problem.fitness(individual);
 
-					synchronized (lock) {
-						if (!(foundOptimal && context.getConfig()
-								.stopOnOptimal())) {
-							numEvaluations++;
-						}
-
-						// See if the best individual of the generation is the
-						// best overall
-						if (individual.getFitness() > bestFitness
-								|| bestIndividual == null) {
-							bestFitness = individual.getFitness();
-							lastFitnessImprovementGen = generation;
-							lastFitnessImprovementEval = numEvaluations;
-
-							try {
-								bestIndividual = individual.clone();
-							} catch (Exception e) {
-								logger.error(e);
-							}
-						}
-
-						// See if the best fitness is the optimal fitness (force
-						// 1.0 as best)
-						if (bestFitness == 1.0) {
-							foundOptimal = true;
-						}
-
-						// Handle fitness stats logging
-						if (stopOn.equals(STOP_ON.EVALUATIONS)) {
-							// Output fitness every X evals
-							boolean doLogFitness = (numEvaluations <= context
-									.getConfig().getNumEvaluations()
-									&& numEvaluations != lastFitnessOutput && (numEvaluations % context
-									.getConfig().getStatCollectEvals()) == 0);
-
-							boolean loggingOptimal = foundOptimal
-									&& doStopOnOptimal && !loggedOptimal;
-
-							if (doLogFitness || loggingOptimal) {
-								// Calculate some population averages
-								calculateAverages();
-
-								((SimpleGPStatistics) statistics)
-										.postEvaluationStats(generation);
-								lastFitnessOutput = numEvaluations;
-
-								if (loggingOptimal) {
-									loggedOptimal = true;
-								}
-							}
-						} else {
-							calculateAverages();
-						}
+					if (this.doRecord) {
+						recordEvaluation(individual);
 					}
 				}
 			}
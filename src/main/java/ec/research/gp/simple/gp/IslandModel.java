@@ -0,0 +1,269 @@
+package ec.research.gp.simple.gp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.log4j.Logger;
+
+import ec.research.gp.simple.gp.GP.STOP_ON;
+import ec.research.gp.simple.problem.ProblemRunner;
+import ec.research.gp.simple.representation.Individual;
+import ec.research.gp.simple.util.Config;
+import ec.research.gp.simple.util.Context;
+
+/**
+ * Island-model GP: runs numIslands independent GPs (of the class given by the
+ * "gp" property, as for a single run), each on its own thread with its own
+ * Context and random number generator, and has them send copies of their
+ * best individuals to each other every migrationInterval generations. The
+ * islands never wait for each other: migrants are left in the receiving
+ * island's mailbox (a lock-free queue) and taken in by that island between
+ * two of its own generations.
+ *
+ * The numEvaluations budget and stop-on-optimal are shared: each island adds
+ * its evaluations to a global count after each of its generations, and all
+ * the islands stop once the count reaches the budget or one of them found
+ * the optimal fitness. numGenerations applies to each island. As with a
+ * single GP, which only stops between generations, a generation is never cut
+ * short, so the islands that are mid-generation when the budget runs out
+ * finish it: the total can go over numEvaluations by up to
+ * numIslands*popSize evaluations (getNumEvaluations() has the actual count).
+ *
+ * Each island writes its stats to its own directory, islandN, in the output
+ * directory.
+ *
+ */
+public class IslandModel {
+	// Where islands send their migrants.
+	public static enum TOPOLOGY {
+		RING, RANDOM
+	};
+
+	// Holds the config for the run
+	private Config config;
+
+	// Holds the islands
+	private GP[] islands;
+
+	// Holds each island's incoming migrants
+	private List<ConcurrentLinkedQueue<List<Individual>>> mailboxes;
+
+	// Counts the evaluations done by all the islands
+	private final AtomicLong totalEvaluations = new AtomicLong();
+
+	// Whether or not the islands should stop (shared budget or optimal found)
+	private final AtomicBoolean stop = new AtomicBoolean();
+
+	// The first error of an island, if any
+	private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+	// Log4j logger for any output messages.
+	private static final Logger logger = Logger.getLogger(IslandModel.class);
+
+	/**
+	 * Creates the islands for the given config.
+	 *
+	 * @param config
+	 *            the config for the run
+	 * @throws Exception
+	 */
+	public IslandModel(Config config) throws Exception {
+		this.config = config;
+
+		int numIslands = config.getNumIslands();
+		this.islands = new GP[numIslands];
+		this.mailboxes = new ArrayList<ConcurrentLinkedQueue<List<Individual>>>(
+				numIslands);
+
+		// The islands' seeds are drawn from the run's seed.
+		Random seeds = new Random(config.getSeed());
+
+		for (int i = 0; i < numIslands; i++) {
+			Config islandConfig = new Config(config);
+			islandConfig.setOutputDir(config.getOutputDir() + "/island" + i);
+			islandConfig.setNumThreads(Math.max(1, config.getNumThreads()
+					/ numIslands));
+			ProblemRunner.checkDirs(islandConfig.getOutputDir());
+
+			// Every island starts with the run's seed, so that the problem
+			// sets up the same fitness cases on all of them, then gets its
+			// own.
+			Context context = new Context(islandConfig);
+			this.islands[i] = ProblemRunner.getGP(context);
+
+			long seed = seeds.nextLong();
+			islandConfig.setSeed(seed);
+			context.setSeed(seed);
+
+			this.mailboxes.add(new ConcurrentLinkedQueue<List<Individual>>());
+		}
+	}
+
+	/**
+	 * Runs all the islands, each on its own thread, until they're done. If an
+	 * island fails, the others are stopped, and once they're done its
+	 * exception is thrown (or an IllegalStateException if it isn't
+	 * unchecked).
+	 *
+	 * @throws InterruptedException
+	 */
+	public void evolve() throws InterruptedException {
+		Thread[] threads = new Thread[this.islands.length];
+
+		for (int i = 0; i < this.islands.length; i++) {
+			final int island = i;
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						runIsland(island);
+					} catch (Throwable e) {
+						logger.error("Island " + island + " failed", e);
+						failure.compareAndSet(null, e);
+						stop.set(true);
+					}
+				}
+			}, "island-" + i);
+			threads[i].start();
+		}
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		Throwable error = this.failure.get();
+		if (error instanceof RuntimeException) {
+			throw (RuntimeException) error;
+		} else if (error instanceof Error) {
+			throw (Error) error;
+		} else if (error != null) {
+			throw new IllegalStateException("Island failed", error);
+		}
+
+		// Output the best solution found
+		Individual best = getBestIndividual();
+		logger.info(String.format(
+				"Best fitness over all islands=%s Hits=%s Total nodes=%s",
+				best.getFitness(), best.getHits(), best.getNumNodes()));
+		logger.info(String.format("Genotype of best individual: %s",
+				best.toString()));
+	}
+
+	/**
+	 * Runs the given island until it terminates or all the islands stop,
+	 * taking in its migrants and sending its own between generations.
+	 *
+	 * @param i
+	 *            the island's index
+	 * @throws Exception
+	 */
+	protected void runIsland(int i) throws Exception {
+		GP island = this.islands[i];
+		ConcurrentLinkedQueue<List<Individual>> mailbox = this.mailboxes
+				.get(i);
+		int interval = this.config.getMigrationInterval();
+
+		try {
+			island.init();
+			long counted = countEvaluations(island, 0);
+
+			while (!this.stop.get() && !island.doTerminate()) {
+				island.step();
+				counted = countEvaluations(island, counted);
+
+				// Take in whatever migrants have arrived.
+				List<Individual> migrants;
+				while ((migrants = mailbox.poll()) != null) {
+					island.immigrate(migrants);
+				}
+
+				if (this.islands.length > 1 && interval > 0
+						&& island.generation % interval == 0) {
+					this.mailboxes.get(getDestination(i)).offer(
+							island.getEmigrants(this.config.getMigrationSize()));
+				}
+			}
+
+			island.report();
+		} finally {
+			island.close();
+		}
+	}
+
+	/**
+	 * Adds the island's new evaluations to the global count, and tells all the
+	 * islands to stop if that uses up the budget or the island found the
+	 * optimal fitness. The other islands see it at the end of their current
+	 * generation.
+	 *
+	 * @param island
+	 *            the island
+	 * @param counted
+	 *            the island's evaluations that are already counted
+	 * @return the island's evaluations, now all counted
+	 */
+	private long countEvaluations(GP island, long counted) {
+		long evaluations = island.getNumEvaluations();
+		long total = this.totalEvaluations.addAndGet(evaluations - counted);
+
+		if ((this.config.getStopOn() == STOP_ON.EVALUATIONS && total >= this.config
+				.getNumEvaluations())
+				|| (island.doStopOnOptimal && island.foundOptimal)) {
+			this.stop.set(true);
+		}
+
+		return evaluations;
+	}
+
+	/**
+	 * @param i
+	 *            the sending island's index
+	 * @return the index of the island to send the migrants to
+	 */
+	protected int getDestination(int i) {
+		if (this.config.getMigrationTopology() == TOPOLOGY.RING) {
+			return (i + 1) % this.islands.length;
+		}
+
+		// Any island but the sender, drawn from the sender's generator.
+		int destination = this.islands[i].context.randBetween(0,
+				this.islands.length - 2);
+		return (destination >= i) ? destination + 1 : destination;
+	}
+
+	/**
+	 * @return the islands
+	 */
+	public GP[] getIslands() {
+		return this.islands;
+	}
+
+	/**
+	 * @return the total number of evaluations done by all the islands
+	 */
+	public long getNumEvaluations() {
+		return this.totalEvaluations.get();
+	}
+
+	/**
+	 * @return the best individual found by any of the islands
+	 */
+	public Individual getBestIndividual() {
+		Individual best = null;
+		for (GP island : this.islands) {
+			Individual individual = island.getBestIndividual();
+			if (best == null
+					|| (individual != null && individual.getFitness() > best
+							.getFitness())) {
+				best = individual;
+			}
+		}
+
+		return best;
+	}
+}
@@ -0,0 +1,297 @@
+package ec.research.gp.simple.gp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import ec.research.gp.simple.operators.PointMutation;
+import ec.research.gp.simple.representation.Individual;
+import ec.research.gp.simple.util.Context;
+
+/**
+ * Steady-state GP: instead of breeding a whole new population and waiting for
+ * all of it to be evaluated, each worker thread keeps selecting parents from
+ * the shared population, breeding and evaluating one offspring and putting it
+ * back in place of the loser of a reverse tournament. No thread ever waits for
+ * another one's evaluations, so a large individual only holds up its own
+ * thread.
+ *
+ * A "generation" is popSize births, which is what numGenerations,
+ * statCollectGens and the generation numbers in the stats count. The
+ * numEvaluations budget is handed out one evaluation at a time, so it's never
+ * exceeded. Runs aren't reproducible with more than one thread, even in
+ * deterministic mode, since the population changes in whatever order the
+ * threads finish.
+ *
+ * Select it with gp=ec.research.gp.simple.gp.SteadyStateGP.
+ *
+ */
+public class SteadyStateGP extends GP {
+	// The number of births since init() (those claimed, not necessarily done).
+	private final AtomicLong births = new AtomicLong();
+
+	// The number of births done (their offspring are in the population).
+	private final AtomicLong inserted = new AtomicLong();
+
+	// The number of evaluations handed out to the workers, so the workers
+	// don't go over numEvaluations.
+	private final AtomicLong claimedEvaluations = new AtomicLong();
+
+	// The number of births at which the run ends (GENERATIONS mode).
+	private long maxBirths;
+
+	// Log4j logger for any output messages.
+	private static final Logger logger = Logger.getLogger(SteadyStateGP.class);
+
+	/**
+	 * Create a new SteadyStateGP to run with the given Context.
+	 *
+	 * @param c
+	 *            the Context for the GP
+	 * @throws Exception
+	 */
+	public SteadyStateGP(Context c) throws Exception {
+		super(c);
+	}
+
+	@Override
+	public void init() throws Exception {
+		super.init();
+
+		// init() is generation 0, the rest of the run is births.
+		if (this.stopOn == STOP_ON.GENERATIONS) {
+			this.maxBirths = (long) (this.context.getConfig()
+					.getNumGenerations() - 1) * this.population.size();
+		} else {
+			this.maxBirths = Long.MAX_VALUE;
+		}
+		this.claimedEvaluations.set(this.numEvaluations);
+	}
+
+	/**
+	 * Runs the next generation's worth of births (popSize of them). The
+	 * workers are only stopped in between because the caller asked for a
+	 * single step; evolve() runs them until the end of the run.
+	 */
+	@Override
+	public void step() throws CloneNotSupportedException {
+		if (!doTerminate()) {
+			run(Math.min(this.maxBirths,
+					this.births.get() + this.population.size()));
+		}
+	}
+
+	/**
+	 * Runs the workers, without stopping, until the run terminates.
+	 */
+	@Override
+	public void evolve() throws CloneNotSupportedException {
+		run(this.maxBirths);
+
+		// Nothing left to run, so this just reports and cleans up.
+		super.evolve();
+	}
+
+	/**
+	 * Starts numThreads workers, each with its own random stream, and waits
+	 * until they've done the given number of births or the run terminated.
+	 *
+	 * @param birthLimit
+	 *            the number of births (since init()) to stop at
+	 */
+	protected void run(final long birthLimit) {
+		int numThreads = Math.max(1, this.context.getConfig().getNumThreads());
+		List<Runnable> tasks = new ArrayList<Runnable>(numThreads);
+
+		// Parents must be indexed before they're bred from on several threads.
+		indexNodes(this.population);
+
+		for (int i = 0; i < numThreads; i++) {
+			tasks.add(this.context.withStream(this.context.nextSeed(),
+					new Runnable() {
+						@Override
+						public void run() {
+							try {
+								while (birth(birthLimit)) {
+								}
+							} catch (CloneNotSupportedException e) {
+								logger.fatal(e);
+								System.exit(1);
+							}
+						}
+					}));
+		}
+		this.context.runAll(tasks);
+
+		this.numEvaluations = this.evaluationCount.get();
+		calculateAverages();
+	}
+
+	/**
+	 * Breeds one offspring, evaluates it and puts it in the population, unless
+	 * the run is over.
+	 *
+	 * @param birthLimit
+	 *            the number of births (since init()) to stop at
+	 * @return whether or not there was a birth
+	 * @throws CloneNotSupportedException
+	 */
+	protected boolean birth(long birthLimit) throws CloneNotSupportedException {
+		if (this.doStopOnOptimal && this.foundOptimal) {
+			return false;
+		}
+
+		long birth = claim(this.births, birthLimit);
+		if (birth < 0) {
+			return false;
+		}
+
+		// The generation the offspring belongs to.
+		int generation = (int) (birth / this.population.size()) + 1;
+		Individual child = breedOne(generation);
+
+		if (!child.isEvaluated()) {
+			if (this.stopOn == STOP_ON.EVALUATIONS
+					&& claim(this.claimedEvaluations, this.context
+							.getConfig().getNumEvaluations()) < 0) {
+				return false;
+			}
+
+			this.problem.fitness(child);
+			recordEvaluation(child);
+		}
+
+		child.indexNodes();
+		replace(child);
+
+		long done = this.inserted.incrementAndGet();
+		if (done % this.population.size() == 0) {
+			endGeneration((int) (done / this.population.size()));
+		}
+
+		return true;
+	}
+
+	/**
+	 * Takes the next number from the counter, unless it's reached the limit.
+	 *
+	 * @return the number taken, or -1 if the counter is at the limit
+	 */
+	private static long claim(AtomicLong counter, long limit) {
+		while (true) {
+			long current = counter.get();
+			if (current >= limit) {
+				return -1;
+			}
+			if (counter.compareAndSet(current, current + 1)) {
+				return current;
+			}
+		}
+	}
+
+	/**
+	 * Breeds (and maybe mutates) a single offspring from parents selected in
+	 * the current population, with crossover or replication.
+	 *
+	 * @param generation
+	 *            the generation of the offspring, for its ID
+	 * @return the offspring
+	 * @throws CloneNotSupportedException
+	 */
+	protected Individual breedOne(int generation)
+			throws CloneNotSupportedException {
+		Individual child;
+
+		if (this.context.nextBool(this.context.getConfig()
+				.getCrossProbability())) {
+			int[] parents = this.selection.select(this.context,
+					this.population);
+			child = this.population.get(parents[0]).crossover(
+					this.population.get(parents[1]), this.context)[0];
+		} else {
+			child = this.population.get(
+					this.selection.selectOne(this.context, this.population))
+					.replicate();
+		}
+		child.setId(generation);
+
+		if (this.context.nextBool(this.context.getConfig()
+				.getMutationProbability())) {
+			child = PointMutation.mutate(child, this.context);
+			child.setId(generation);
+		}
+
+		return child;
+	}
+
+	/**
+	 * Puts the given offspring in place of the worst of tournamentSize random
+	 * individuals. If another worker replaced that individual in the meantime,
+	 * another tournament is held.
+	 *
+	 * @param child
+	 *            the (evaluated) offspring
+	 */
+	protected void replace(Individual child) {
+		int tournamentSize = this.context.getConfig().getTournamentSize();
+		int size = this.population.size();
+
+		while (true) {
+			int worst = this.context.randBetween(0, size - 1);
+			Individual loser = this.population.get(worst);
+
+			for (int i = 1; i < tournamentSize; i++) {
+				int index = this.context.randBetween(0, size - 1);
+				Individual individual = this.population.get(index);
+
+				if (individual.getFitness() < loser.getFitness()) {
+					worst = index;
+					loser = individual;
+				}
+			}
+
+			synchronized (this.population) {
+				if (this.population.get(worst) == loser) {
+					this.population.set(worst, child);
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Does what GP.step() does at the end of a generation: the averages and
+	 * the per-generation stats.
+	 *
+	 * @param generation
+	 *            the generation that's just been completed
+	 */
+	protected void endGeneration(int generation) {
+		synchronized (this.lock) {
+			// Another worker may have ended a later one first.
+			if (generation <= this.generation) {
+				return;
+			}
+
+			this.statistics.preGenerationStats(this.generation);
+			this.generation = generation;
+			this.numEvaluations = this.evaluationCount.get();
+			calculateAverages();
+
+			// Output generation fitness info to STDOUT every 100 generations
+			if (this.generation % 100 == 0) {
+				outputGenerationFitnessInfo();
+			}
+
+			if (this.stopOn.equals(STOP_ON.GENERATIONS)
+					&& this.generation
+							% this.context.getConfig().getStatCollectGens() == 0) {
+				this.statistics.postEvaluationStats(this.generation);
+			}
+
+			this.statistics.postGenerationStats(this.generation);
+		}
+	}
+}
@@ -4,6 +4,7 @@ import org.apache.log4j.Logger;
 
 import ec.research.gp.simple.bool.BooleanProblem;
 import ec.research.gp.simple.representation.Individual;
+import ec.research.gp.simple.representation.Node;
 import ec.research.gp.simple.util.Context;
 
 
@@ -64,6 +65,9 @@ public class Multiplexer extends BooleanProblem {
 			targetValues[i] = (((1 << outputIndex) & i) > 0);
 		}
 
+		// Pack the inputs and targets for column evaluation.
+		setupColumns(this.n, targetValues);
+
 		logger.info(String.format("n=%s k=%s data bits=%s combinations=%s", n,
 				k, numDataBits, combinations));
 	}
@@ -73,11 +77,20 @@ public class Multiplexer extends BooleanProblem {
 		if (!individual.isEvaluated()) {
 			double hits = 0; // Hits also is the raw fitness in this case.
 
-			for (int i = 0; i < combinations; i++) {
-				Boolean res = (Boolean) individual.getRoot().evaluate(this, i);
+			// Grab the root once; linear individuals build it on request.
+			Node root = individual.getRoot();
+
+			if (context.getConfig().getEvalMode() != EVAL_MODE.TREE
+					|| shouldCompile((int) combinations)) {
+				// Evaluate all the cases at once, 64 per word.
+				hits = columnHits(root);
+			} else {
+				for (int i = 0; i < combinations; i++) {
+					boolean res = root.evaluateBoolean(this, i);
 
-				if (res == targetValues[i]) {
-					hits++;
+					if (res == targetValues[i]) {
+						hits++;
+					}
 				}
 			}
 
@@ -12,8 +12,19 @@ public class A2 extends Node {
 
 	@Override
 	public Boolean evaluate(Problem p, Object data) {
+		return evaluateBoolean(p, (Integer) data);
+	}
+
+	@Override
+	public boolean evaluateBoolean(Problem p, int data) {
+		Multiplexer mux = (Multiplexer) p;
+		return (((1 << (mux.getNumDataBits() + 2)) & data) > 0);
+	}
+
+	@Override
+	public long[] evaluateColumn(Problem p, long[][] scratch, int slot) {
 		Multiplexer mux = (Multiplexer) p;
-		return (((1 << (mux.getNumDataBits() + 2)) & (Integer) data) > 0);
+		return mux.getInputColumn(mux.getNumDataBits() + 2);
 	}
 
 	@Override
@@ -16,6 +16,9 @@ public class Ai extends Node {
 	// the string, not the beginning.
 	private int i;
 
+	// The node's name (STR followed by the index), built once per index.
+	private String name = STR + 0;
+
 	public Ai() {
 		super(0);
 	}
@@ -28,7 +31,11 @@ public class Ai extends Node {
 	 *            the index of the bit in the input string.
 	 */
 	public void setIndex(int index) {
-		this.i = index;
+		if (index != this.i) {
+			this.i = index;
+			this.name = STR + index;
+			labelChanged();
+		}
 	}
 
 	/**
@@ -40,13 +47,24 @@ public class Ai extends Node {
 
 	@Override
 	public Boolean evaluate(Problem p, Object data) {
+		return evaluateBoolean(p, (Integer) data);
+	}
+
+	@Override
+	public boolean evaluateBoolean(Problem p, int data) {
+		Multiplexer mux = (Multiplexer) p;
+		return (((1 << (mux.getNumDataBits() + this.i)) & data) > 0);
+	}
+
+	@Override
+	public long[] evaluateColumn(Problem p, long[][] scratch, int slot) {
 		Multiplexer mux = (Multiplexer) p;
-		return (((1 << (mux.getNumDataBits() + this.i)) & (Integer) data) > 0);
+		return mux.getInputColumn(mux.getNumDataBits() + this.i);
 	}
 
 	@Override
 	public String toString() {
-		return String.format("%s%d", STR, this.i);
+		return this.name;
 	}
 
 }
@@ -1,11 +1,12 @@
 package ec.research.gp.simple.operators;
 
-import java.util.HashSet;
 import java.util.List;
 
 import ec.research.gp.simple.regression.nodes.R;
 import ec.research.gp.simple.representation.Individual;
+import ec.research.gp.simple.representation.LinearTree;
 import ec.research.gp.simple.representation.Node;
+import ec.research.gp.simple.representation.Primitives;
 import ec.research.gp.simple.util.Context;
 
 
@@ -16,26 +17,28 @@ import ec.research.gp.simple.util.Context;
  */
 public class PointMutation {
 
+	/**
+	 * Gets a random function with the same arity as the given node, from the
+	 * run's function set.
+	 * 
+	 * @param oldNode
+	 *            the function being replaced
+	 * @param context
+	 *            the Context for the run
+	 * @return a new node, or null if there's no function with the arity
+	 * @throws CloneNotSupportedException
+	 */
 	public static Node getRandomFunctionNode(Node oldNode, Context context)
 			throws CloneNotSupportedException {
-		List<Node> functionSet = context.getConfig().getFunctionSet();
-
-		// We'll keep trying until we've run out of nodes in the set
-		HashSet<String> triedNodes = new HashSet<String>();
-
-		while (triedNodes.size() < functionSet.size()) {
-			Node newNode = functionSet.get(context.randBetween(0,
-					functionSet.size() - 1));
+		Primitives primitives = context.getConfig().getPrimitives();
+		int opcode = primitives.getRandomFunction(oldNode.getNumChildren(),
+				context);
 
-			// Did we find something with the same arity?
-			if (newNode.getNumChildren() == oldNode.getNumChildren()) {
-				return newNode.clone();
-			} else {
-				triedNodes.add(newNode.toString());
-			}
+		if (opcode < 0) {
+			return null;
 		}
 
-		return null;
+		return primitives.getNode(opcode).clone();
 	}
 
 	public static Node getRandomTerminalNode(Node oldNode, Context context)
@@ -46,8 +49,46 @@ public class PointMutation {
 				.clone();
 	}
 
+	/**
+	 * Skips to the next node to mutate. Mutating each node with probability p
+	 * means that the number of nodes skipped between two mutations follows a
+	 * geometric distribution, so it is drawn directly: one random number per
+	 * mutation rather than one per node.
+	 * 
+	 * @param pos
+	 *            the position (preorder number) of the last mutated node, or
+	 *            -1 to start
+	 * @param size
+	 *            the number of nodes in the tree
+	 * @param context
+	 *            the Context for the run
+	 * @return the position of the next node to mutate, or size if there are
+	 *         no more
+	 */
+	public static int nextSite(int pos, int size, Context context) {
+		double p = context.getConfig().getMutationProbability();
+
+		if (p <= 0.0) {
+			return size;
+		} else if (p >= 1.0) {
+			return pos + 1;
+		}
+
+		// u is in (0, 1], so the skip is >= 0.
+		double u = 1.0 - context.randDouble();
+		double skip = Math.floor(Math.log(u) / Math.log(1.0 - p));
+
+		if (skip >= size - pos - 1) {
+			return size;
+		}
+
+		return pos + 1 + (int) skip;
+	}
+
 	public static void replaceNode(Individual individual, Node oldNode,
 			Node newNode) {
+		individual.clearNodeIndex();
+
 		// Take the old node's parent
 		Node parent = oldNode.getParent();
 		if (parent != null) {
@@ -83,8 +124,10 @@ public class PointMutation {
 	}
 
 	/**
-	 * Performs point mutation on the given individual. Assumes that the
-	 * individual has it's numNodes set, and that all the nodes are numbered.
+	 * Performs point mutation on the given individual, mutating each node with
+	 * the mutation probability. The nodes are indexed once (in preorder) and
+	 * the mutated ones are found with nextSite(), so the work is proportional
+	 * to the number of mutations rather than the size of the tree.
 	 * 
 	 * @param individual
 	 *            the individual to mutate
@@ -102,41 +145,55 @@ public class PointMutation {
 		mutant.setFitness(0.0);
 		mutant.setHits(0);
 
-		// Probabilistically mutate each node
-		for (int i = 0; i < individual.getNumNodes(); i++) {
-			if (context.nextBool(context.getConfig().getMutationProbability())) {
-				// Try to mutate the ith node.
-				Node node = mutant.findNode(i);
+		if (mutant.isLinear()) {
+			mutateLinear(mutant.getGenome(), context);
+			return mutant;
+		}
+
+		if (mutant.isPersistent()) {
+			mutatePersistent(mutant, context);
+			return mutant;
+		}
 
-				// If replacing a function, match arity.
-				if (!node.isTerminal()) {
-					Node newNode = getRandomFunctionNode(node, context);
+		// Index the nodes once, in preorder
+		List<Node> nodes = mutant.getAllNodes();
+		int size = nodes.size();
 
-					// If we could find a node, go ahead and replace it
-					if (newNode != null) {
-						replaceNode(mutant, node, newNode);
-					}
-				}
+		// Mutate the chosen nodes
+		for (int i = nextSite(-1, size, context); i < size; i = nextSite(i,
+				size, context)) {
+			Node node = nodes.get(i);
 
-				// If it's a constant, just change the value
-				else if (node instanceof R) {
-					((R) node).setValue(context.getRand().nextGaussian());
+			// If replacing a function, match arity.
+			if (!node.isTerminal()) {
+				Node newNode = getRandomFunctionNode(node, context);
+
+				// If we could find a node, go ahead and replace it
+				if (newNode != null) {
+					replaceNode(mutant, node, newNode);
+					nodes.set(i, newNode);
 				}
+			}
 
-				// Otherwise, replace the terminal with another terminal node
-				else {
-					Node newNode = getRandomTerminalNode(node, context);
-
-					// If we actually have other terminals, replace it.
-					if (newNode != null) {
-						// If the new terminal is a random ephemeral constant,
-						// we need to set it.
-						if (newNode instanceof R) {
-							((R) newNode).setValue(context.getRand()
-									.nextGaussian());
-						}
-						replaceNode(mutant, node, newNode);
+			// If it's a constant, just change the value
+			else if (node instanceof R) {
+				((R) node).setValue(context.getRand().nextGaussian());
+			}
+
+			// Otherwise, replace the terminal with another terminal node
+			else {
+				Node newNode = getRandomTerminalNode(node, context);
+
+				// If we actually have other terminals, replace it.
+				if (newNode != null) {
+					// If the new terminal is a random ephemeral constant,
+					// we need to set it.
+					if (newNode instanceof R) {
+						((R) newNode).setValue(context.getRand()
+								.nextGaussian());
 					}
+					replaceNode(mutant, node, newNode);
+					nodes.set(i, newNode);
 				}
 			}
 		}
@@ -144,4 +201,108 @@ public class PointMutation {
 		return mutant;
 
 	}
+
+	/**
+	 * Performs point mutation on a PERSISTENT individual, making the same
+	 * choices (and random draws) as mutate() does on a Node tree. Since the
+	 * mutant shares its nodes, each replaced node is copied on write: only the
+	 * path from the root to it is copied.
+	 * 
+	 * @param mutant
+	 *            the individual to mutate
+	 * @param context
+	 *            the Context for the run
+	 * @throws CloneNotSupportedException
+	 */
+	private static void mutatePersistent(Individual mutant, Context context)
+			throws CloneNotSupportedException {
+		Node root = mutant.getRoot();
+
+		// Mutate the chosen nodes
+		int size = root.getSubtreeSize();
+		for (int i = nextSite(-1, size, context); i < size; i = nextSite(i,
+				size, context)) {
+			Node node = root.getNodeAt(i);
+			Node newNode = null;
+
+			// If replacing a function, match arity and keep the children.
+			if (!node.isTerminal()) {
+				newNode = getRandomFunctionNode(node, context);
+
+				if (newNode != null) {
+					for (int j = 0; j < node.getNumChildren(); j++) {
+						newNode.setChild(j, node.getChild(j));
+					}
+				}
+			}
+
+			// If it's a constant, change the value of a copy
+			else if (node instanceof R) {
+				newNode = node.lightClone();
+				((R) newNode).setValue(context.getRand().nextGaussian());
+			}
+
+			// Otherwise, replace the terminal with another terminal node
+			else {
+				newNode = getRandomTerminalNode(node, context);
+
+				// A new random ephemeral constant needs its value.
+				if (newNode instanceof R) {
+					((R) newNode).setValue(context.getRand().nextGaussian());
+				}
+			}
+
+			if (newNode != null) {
+				root = root.replaceAt(i, newNode);
+			}
+		}
+
+		mutant.setRoot(root);
+	}
+
+	/**
+	 * Performs point mutation in place on a linear tree, making the same
+	 * choices (and random draws) as mutate() does on a Node tree.
+	 * 
+	 * @param genome
+	 *            the linear tree to mutate
+	 * @param context
+	 *            the Context for the run
+	 */
+	private static void mutateLinear(LinearTree genome, Context context) {
+		Primitives primitives = genome.getPrimitives();
+
+		// Mutate the chosen nodes
+		int size = genome.size();
+		for (int i = nextSite(-1, size, context); i < size; i = nextSite(i,
+				size, context)) {
+			int opcode = genome.getOpcode(i);
+
+			// If replacing a function, match arity.
+			if (!primitives.isTerminal(opcode)) {
+				int newOpcode = primitives.getRandomFunction(
+						primitives.getArity(opcode), context);
+
+				if (newOpcode >= 0) {
+					genome.setOpcode(i, newOpcode);
+				}
+			}
+
+			// If it's a constant, just change the value
+			else if (primitives.isConstant(opcode)) {
+				genome.setConstant(i, context.getRand().nextGaussian());
+			}
+
+			// Otherwise, replace the terminal with another terminal
+			else {
+				int newOpcode = primitives.getRandomTerminal(context);
+				genome.setOpcode(i, newOpcode);
+
+				// A new random ephemeral constant needs its value.
+				if (primitives.isConstant(newOpcode)) {
+					genome.setConstant(i, context.getRand().nextGaussian());
+				}
+			}
+		}
+	}
 }
@@ -4,6 +4,7 @@ import org.apache.log4j.Logger;
 
 import ec.research.gp.simple.bool.BooleanProblem;
 import ec.research.gp.simple.representation.Individual;
+import ec.research.gp.simple.representation.Node;
 import ec.research.gp.simple.util.Context;
 
 
@@ -64,6 +65,9 @@ public class NParity extends BooleanProblem {
 			this.correctValues[testPoint] = (numOnes % 2 == 0);
 		}
 
+		// Pack the inputs and answers for column evaluation.
+		setupColumns(this.n, this.correctValues);
+
 		logger.info(String.format("n=%s combinations=%s", n, combinations));
 	}
 
@@ -72,11 +76,20 @@ public class NParity extends BooleanProblem {
 		if (!individual.isEvaluated()) {
 			double hits = 0; // Hits also is the raw fitness in this case.
 
-			for (int i = 0; i < combinations; i++) {
-				Boolean res = (Boolean) individual.getRoot().evaluate(this, i);
+			// Grab the root once; linear individuals build it on request.
+			Node root = individual.getRoot();
+
+			if (context.getConfig().getEvalMode() != EVAL_MODE.TREE
+					|| shouldCompile(combinations)) {
+				// Evaluate all the cases at once, 64 per word.
+				hits = columnHits(root);
+			} else {
+				for (int i = 0; i < combinations; i++) {
+					boolean res = root.evaluateBoolean(this, i);
 
-				if (res == this.correctValues[i]) {
-					hits++;
+					if (res == this.correctValues[i]) {
+						hits++;
+					}
 				}
 			}
 
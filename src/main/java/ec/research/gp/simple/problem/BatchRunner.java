@@ -0,0 +1,233 @@
+package ec.research.gp.simple.problem;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+
+import ec.research.gp.simple.gp.GP;
+import ec.research.gp.simple.gp.IslandModel;
+import ec.research.gp.simple.representation.Individual;
+import ec.research.gp.simple.util.Config;
+import ec.research.gp.simple.util.Context;
+import ec.research.gp.util.Utils;
+
+/**
+ * Runs numTrials independent trials of the same configuration in this JVM,
+ * up to trialThreads of them at once, so the trials share the JVM's startup
+ * and JIT warmup. Each trial gets its own Config, Context and seed (drawn
+ * from the run's seed), and writes its output to its own directory, trialN,
+ * in the output directory.
+ *
+ * When they're all done, the result of each trial (tab-delimited: trial,
+ * seed, best fitness, hits, size, evaluations, seconds) is written to the
+ * trials file in the output directory.
+ *
+ */
+public class BatchRunner {
+	// Log4J Logger for any output messages.
+	private static final Logger logger = Logger.getLogger(BatchRunner.class);
+
+	// The path to the trial results file.
+	private static final String TRIALS_FILE = "trials";
+
+	// Holds the config for the batch
+	private Config config;
+
+	/**
+	 * The result of one trial.
+	 */
+	public static class TrialResult {
+		// The trial's number and seed
+		public final int trial;
+		public final long seed;
+
+		// The best individual of the trial, or null if it failed
+		public final Individual best;
+
+		// The trial's evaluations
+		public final long evaluations;
+
+		// How long the trial took (s)
+		public final double seconds;
+
+		TrialResult(int trial, long seed, Individual best, long evaluations,
+				double seconds) {
+			this.trial = trial;
+			this.seed = seed;
+			this.best = best;
+			this.evaluations = evaluations;
+			this.seconds = seconds;
+		}
+
+		@Override
+		public String toString() {
+			if (this.best == null) {
+				return String.format("%s\t%s\tFAILED", this.trial, this.seed);
+			}
+
+			return String.format("%s\t%s\t%s\t%s\t%s\t%s\t%.3f", this.trial,
+					this.seed, this.best.getFitness(), this.best.getHits(),
+					this.best.getNumNodes(), this.evaluations, this.seconds);
+		}
+	}
+
+	/**
+	 * Creates a new BatchRunner for the given config.
+	 *
+	 * @param config
+	 *            the config for all the trials
+	 */
+	public BatchRunner(Config config) {
+		this.config = config;
+	}
+
+	/**
+	 * Runs all the trials and writes their results.
+	 *
+	 * @return the trials' results, in trial order
+	 * @throws IOException
+	 *             if the results can't be written
+	 */
+	public List<TrialResult> run() throws IOException {
+		int numTrials = this.config.getNumTrials();
+		int cores = Runtime.getRuntime().availableProcessors();
+		int trialThreads = this.config.getTrialThreads();
+		if (trialThreads <= 0) {
+			trialThreads = cores;
+		}
+		trialThreads = Math.min(trialThreads, numTrials);
+
+		// Share the cores between the trials running at once.
+		final int numThreads = Math.max(1,
+				Math.min(this.config.getNumThreads(), cores / trialThreads));
+
+		// The trials' seeds are drawn from the run's seed.
+		Random seeds = new Random(this.config.getSeed());
+
+		ExecutorService executor = Executors.newFixedThreadPool(trialThreads);
+		List<Future<TrialResult>> futures = new ArrayList<Future<TrialResult>>(
+				numTrials);
+		for (int i = 0; i < numTrials; i++) {
+			final int trial = i;
+			final long seed = seeds.nextLong();
+
+			futures.add(executor.submit(new Callable<TrialResult>() {
+				@Override
+				public TrialResult call() {
+					return runTrial(trial, seed, numThreads);
+				}
+			}));
+		}
+
+		List<TrialResult> results = new ArrayList<TrialResult>(numTrials);
+		try {
+			for (Future<TrialResult> future : futures) {
+				results.add(future.get());
+			}
+		} catch (InterruptedException e) {
+			logger.fatal(e);
+			System.exit(1);
+		} catch (ExecutionException e) {
+			logger.fatal("Trial failed", e.getCause());
+			System.exit(1);
+		} finally {
+			executor.shutdown();
+		}
+
+		writeResults(results);
+
+		return results;
+	}
+
+	/**
+	 * Runs one trial to the end.
+	 *
+	 * @param trial
+	 *            the trial's number
+	 * @param seed
+	 *            the trial's seed
+	 * @param numThreads
+	 *            the number of threads the trial evaluates with
+	 * @return the trial's result
+	 */
+	protected TrialResult runTrial(int trial, long seed, int numThreads) {
+		long start = System.nanoTime();
+
+		try {
+			Config trialConfig = new Config(this.config);
+			trialConfig.setSeed(seed);
+			trialConfig.setNumTrials(1);
+			trialConfig.setNumThreads(numThreads);
+			trialConfig.setOutputDir(this.config.getOutputDir() + "/trial"
+					+ trial);
+			ProblemRunner.checkDirs(trialConfig.getOutputDir());
+
+			Individual best;
+			long evaluations;
+
+			if (trialConfig.getNumIslands() > 1) {
+				IslandModel islands = new IslandModel(trialConfig);
+				islands.evolve();
+				best = islands.getBestIndividual();
+				evaluations = islands.getNumEvaluations();
+			} else {
+				Context context = new Context(trialConfig);
+				try {
+					GP gp = ProblemRunner.getGP(context);
+					gp.init();
+					gp.evolve();
+					best = gp.getBestIndividual();
+					evaluations = gp.getNumEvaluations();
+				} finally {
+					// evolve() does this, but not if the trial failed first.
+					context.shutdown();
+				}
+			}
+
+			TrialResult result = new TrialResult(trial, seed, best,
+					evaluations, (System.nanoTime() - start) / 1e9);
+			logger.info("Trial " + result);
+
+			return result;
+		} catch (Exception e) {
+			logger.error("Trial " + trial + " failed", e);
+
+			return new TrialResult(trial, seed, null, 0,
+					(System.nanoTime() - start) / 1e9);
+		}
+	}
+
+	/**
+	 * Writes the trials' results to the trials file in the output directory.
+	 *
+	 * @param results
+	 *            the results
+	 * @throws IOException
+	 */
+	private void writeResults(List<TrialResult> results) throws IOException {
+		String timestamp = new SimpleDateFormat("yyyy-MM-dd-HHmm.ssS")
+				.format(new Date());
+		BufferedWriter output = new BufferedWriter(new FileWriter(
+				this.config.getOutputDir() + "/" + TRIALS_FILE + timestamp));
+
+		try {
+			for (TrialResult result : results) {
+				Utils.writeOutput(result.toString(), output);
+			}
+		} finally {
+			output.close();
+		}
+	}
+}
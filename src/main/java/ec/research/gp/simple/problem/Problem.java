@@ -10,6 +10,13 @@ import ec.research.gp.simple.util.Context;
 public abstract class Problem {
 	protected Context context;
 
+	// How a tree is run over the fitness cases: one case at a time by walking
+	// the tree (TREE), all cases at once, one column per node (COLUMN), or
+	// flattened into a postfix program that is run on every case (POSTFIX).
+	public static enum EVAL_MODE {
+		TREE, COLUMN, POSTFIX
+	};
+
 	/**
 	 * Sets this problem's context.
 	 * 
@@ -20,6 +27,22 @@ public abstract class Problem {
 		this.context = c;
 	}
 
+	/**
+	 * Whether trees should be compiled (see
+	 * {@link ec.research.gp.simple.compiler.TreeCompiler}) rather than
+	 * interpreted for the given number of fitness cases. Compiling only pays
+	 * off once there are enough cases to amortize the compile time.
+	 * 
+	 * @param numCases
+	 *            the number of fitness cases
+	 * @return true if compileThreshold is set and numCases reaches it
+	 */
+	protected boolean shouldCompile(int numCases) {
+		int threshold = this.context.getConfig().getCompileThreshold();
+
+		return threshold > 0 && numCases >= threshold;
+	}
+
 	/**
 	 * Performs any post-construction initialization that needs to be done,
 	 * specific to the actual problem. This should be used for things like
@@ -7,6 +7,7 @@ import org.apache.log4j.Logger;
 import org.apache.log4j.PropertyConfigurator;
 
 import ec.research.gp.simple.gp.GP;
+import ec.research.gp.simple.gp.IslandModel;
 import ec.research.gp.simple.util.Config;
 import ec.research.gp.simple.util.Context;
 
@@ -115,11 +116,23 @@ public class ProblemRunner implements Runnable {
 			// Default to top-level project dir (or same dir as jar).
 			PropertyConfigurator.configure("log4j.properties");
 
-			Context context = new Context(config);
-
 			// Make sure the output directories exist.
 			checkDirs(config.getOutputDir());
 
+			// Several trials each run with their own seed.
+			if (config.getNumTrials() > 1) {
+				new BatchRunner(config).run();
+				return;
+			}
+
+			// Several islands each run their own GP.
+			if (config.getNumIslands() > 1) {
+				new IslandModel(config).evolve();
+				return;
+			}
+
+			Context context = new Context(config);
+
 			// Fire up the GP!
 			GP gp = getGP(context);
 
@@ -3,8 +3,12 @@ package ec.research.gp.simple.regression;
 import java.util.HashSet;
 import java.util.Set;
 
+import ec.research.gp.simple.compiler.DoubleProgram;
+import ec.research.gp.simple.compiler.PostfixProgram;
+import ec.research.gp.simple.compiler.TreeCompiler;
 import ec.research.gp.simple.problem.Problem;
 import ec.research.gp.simple.representation.Individual;
+import ec.research.gp.simple.representation.Node;
 import ec.research.gp.simple.util.Context;
 
 
@@ -12,15 +16,23 @@ import ec.research.gp.simple.util.Context;
 /**
  * Symbolic Regression problem for the function: 4x^4 + x^3 + x^2 + x as in Koza
  * '92 (with coefficients added) using 20 (unique) random points in the range
- * [-1, 1].
+ * [-1, 1]. The number of points can be changed with the numTestPoints
+ * parameter.
  * 
  */
 public class SymbolicRegression extends Problem {
 	// Holds the randomly-generated test points in the range [-1, 1] as in Koza.
-	private static Double[] TEST_POINTS = new Double[20];
+	private double[] testPoints = new double[20];
 
 	// Holds the calculated target values for the test points.
-	private static Double[] TARGET_VALUES = new Double[20];
+	private double[] targetValues = new double[20];
+
+	// Per-thread scratch columns for column evaluation, grown as deeper trees
+	// show up.
+	private final ThreadLocal<double[][]> scratch = new ThreadLocal<double[][]>();
+
+	// Compiles trees when there are enough test points.
+	private TreeCompiler compiler;
 
 	// Smallest acceptable error to reward a hit in the fitness function.
 	public static final double HITS_CRITERION = 0.01;
@@ -35,20 +47,36 @@ public class SymbolicRegression extends Problem {
 	public void init(Context c) {
 		setContext(c);
 
+		// Set the number of test points (default to 20).
+		int numTestPoints = 20;
+		String numTestPointsParam = context.getConfig().getParameter(
+				"numTestPoints");
+
+		if (numTestPointsParam != null) {
+			numTestPoints = Integer.parseInt(numTestPointsParam);
+		}
+
+		// Setup the compiler, in case there are enough points to use it.
+		this.compiler = new TreeCompiler(this, context.getConfig()
+				.getCompileCacheSize());
+
+		this.testPoints = new double[numTestPoints];
+		this.targetValues = new double[numTestPoints];
+
 		// Tracks the points we added so we can make sure they're unique
 		Set<Double> addedPoints = new HashSet<Double>();
 
-		// Initialize the 20 test points. Make them all unique.
+		// Initialize the test points. Make them all unique.
 		int i = 0;
 
-		while (i < 20) {
+		while (i < numTestPoints) {
 			Double randPoint = this.context.randBetween(-1.0, 1.0);
 			if (addedPoints.add(randPoint)) {
 				// Add the test point.
-				TEST_POINTS[i] = randPoint;
+				testPoints[i] = randPoint;
 
 				// Calculate the target function value.
-				TARGET_VALUES[i] = (4.0 * Math.pow(randPoint, 4))
+				targetValues[i] = (4.0 * Math.pow(randPoint, 4))
 						+ (3.0 * Math.pow(randPoint, 3))
 						+ (2.0 * Math.pow(randPoint, 2)) + randPoint;
 
@@ -68,13 +96,36 @@ public class SymbolicRegression extends Problem {
 			// Total error
 			double totalError = 0.0;
 
-			for (int i = 0; i < TEST_POINTS.length; i++) {
-				// Let the individual loose on the input and get the result
-				Double result = (Double) individual.getRoot().evaluate(this,
-						TEST_POINTS[i]);
+			// Run the compiled tree if there are enough points to make it pay
+			// off, otherwise evaluate all the points in one pass if we're in
+			// column or postfix mode.
+			double[] results = null;
+			EVAL_MODE evalMode = context.getConfig().getEvalMode();
+
+			// Grab the root once; linear individuals build it on request.
+			Node root = individual.getRoot();
+			if (shouldCompile(testPoints.length)) {
+				results = evaluateCompiled(root);
+			}
+			if (results == null && evalMode == EVAL_MODE.POSTFIX) {
+				results = evaluatePostfix(root);
+			}
+			if (results == null && evalMode == EVAL_MODE.COLUMN) {
+				results = evaluateColumn(root);
+			}
+
+			for (int i = 0; i < testPoints.length; i++) {
+				double result;
+
+				if (results != null) {
+					result = results[i];
+				} else {
+					// Let the individual loose on the input and get the result
+					result = root.evaluateDouble(this, testPoints[i]);
+				}
 
 				// Get the abs error and potentially reward a hit
-				double error = Math.abs(TARGET_VALUES[i] - result);
+				double error = Math.abs(targetValues[i] - result);
 
 				// Normalize the error value to avoid getting NaN, as in ECJ.
 				if (!(error < LARGE)) {
@@ -102,9 +153,97 @@ public class SymbolicRegression extends Problem {
 			individual.setIsEvaluated(true);
 
 			// See if the individual is ideal on all of the test cases.
-			if (hits == TEST_POINTS.length) {
+			if (hits == testPoints.length) {
 				individual.setIsOptimal(true);
 			}
 		}
 	}
+
+	/**
+	 * Evaluates the tree on all of the test points at once.
+	 * 
+	 * @param root
+	 *            the root of the tree to evaluate
+	 * @return the tree's output for each test point (only valid until the
+	 *         next evaluation on this thread)
+	 */
+	private double[] evaluateColumn(Node root) {
+		return root.evaluateColumn(this, getScratch(3 * root.depthFrom() + 1),
+				0);
+	}
+
+	/**
+	 * Runs the compiled tree on all of the test points.
+	 * 
+	 * @param root
+	 *            the root of the tree to evaluate
+	 * @return the tree's output for each test point (only valid until the
+	 *         next evaluation on this thread), or null if the tree couldn't be
+	 *         compiled
+	 */
+	private double[] evaluateCompiled(Node root) {
+		DoubleProgram program = this.compiler.compileDouble(root);
+
+		if (program == null) {
+			return null;
+		}
+
+		double[] results = getScratch(1)[0];
+		program.evaluate(testPoints, results);
+
+		return results;
+	}
+
+	/**
+	 * Flattens the tree into a postfix program and runs it on all of the test
+	 * points.
+	 * 
+	 * @param root
+	 *            the root of the tree to evaluate
+	 * @return the tree's output for each test point (only valid until the
+	 *         next evaluation on this thread), or null if the tree couldn't be
+	 *         flattened
+	 */
+	private double[] evaluatePostfix(Node root) {
+		PostfixProgram program = PostfixProgram.compile(root, this);
+
+		if (program == null) {
+			return null;
+		}
+
+		double[] results = getScratch(1)[0];
+		program.evaluate(testPoints, results);
+
+		return results;
+	}
+
+	/**
+	 * Gets this thread's scratch columns, making sure there are at least the
+	 * given number of rows.
+	 * 
+	 * @param rows
+	 *            the number of rows needed
+	 * @return the scratch columns
+	 */
+	private double[][] getScratch(int rows) {
+		double[][] buffer = this.scratch.get();
+
+		if (buffer == null || buffer.length < rows
+				|| buffer[0].length != testPoints.length) {
+			buffer = new double[rows][testPoints.length];
+			this.scratch.set(buffer);
+		}
+
+		return buffer;
+	}
+
+	/**
+	 * Gets the test points as a column. The returned array is shared and must
+	 * not be modified.
+	 * 
+	 * @return the test points
+	 */
+	public double[] getTestPoints() {
+		return testPoints;
+	}
 }
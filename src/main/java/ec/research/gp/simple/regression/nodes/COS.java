@@ -20,8 +20,25 @@ public class COS extends Node {
 
 	@Override
 	public Double evaluate(Problem p, Object data) {
+		return evaluateDouble(p, (Double) data);
+	}
+
+	@Override
+	public double evaluateDouble(Problem p, double data) {
 		// Evaluate the first child and return sin of it.
-		return Math.cos((Double) children[0].evaluate(p, data));
+		return Math.cos(children[0].evaluateDouble(p, data));
+	}
+
+	@Override
+	public double[] evaluateColumn(Problem p, double[][] scratch, int slot) {
+		double[] c1 = children[0].evaluateColumn(p, scratch, slot + 1);
+		double[] res = scratch[slot];
+
+		for (int i = 0; i < res.length; i++) {
+			res[i] = Math.cos(c1[i]);
+		}
+
+		return res;
 	}
 
 	@Override
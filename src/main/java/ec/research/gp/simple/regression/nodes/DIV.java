@@ -22,11 +22,16 @@ public class DIV extends Node {
 
 	@Override
 	public Double evaluate(Problem p, Object data) {
+		return evaluateDouble(p, (Double) data);
+	}
+
+	@Override
+	public double evaluateDouble(Problem p, double data) {
 		// Evaluate the 1st child
-		Double res = (Double) children[0].evaluate(p, data);
+		double res = children[0].evaluateDouble(p, data);
 
 		// Evaluate the 2nd child
-		double c2Res = (Double) children[1].evaluate(p, data);
+		double c2Res = children[1].evaluateDouble(p, data);
 
 		// Divide 1st by 2nd if 2nd is not zero, otherwise divide by 1 (i.e.
 		// don't divide at all).
@@ -37,6 +42,20 @@ public class DIV extends Node {
 		return res;
 	}
 
+	@Override
+	public double[] evaluateColumn(Problem p, double[][] scratch, int slot) {
+		double[] c1 = children[0].evaluateColumn(p, scratch, slot + 1);
+		double[] c2 = children[1].evaluateColumn(p, scratch, slot + 2);
+		double[] res = scratch[slot];
+
+		// Same protection as above, point by point.
+		for (int i = 0; i < res.length; i++) {
+			res[i] = (c2[i] != 0.0) ? c1[i] / c2[i] : c1[i];
+		}
+
+		return res;
+	}
+
 	@Override
 	public String toString() {
 		return STR;
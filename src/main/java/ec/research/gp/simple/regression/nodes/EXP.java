@@ -20,11 +20,28 @@ public class EXP extends Node {
 
 	@Override
 	public Double evaluate(Problem p, Object data) {
+		return evaluateDouble(p, (Double) data);
+	}
+
+	@Override
+	public double evaluateDouble(Problem p, double data) {
 		// Evaluate the child
-		Double res = (Double) children[0].evaluate(p, data);
+		double res = children[0].evaluateDouble(p, data);
 
 		// Now do e^res and return it.
-		return (Double)Math.exp(res);
+		return Math.exp(res);
+	}
+
+	@Override
+	public double[] evaluateColumn(Problem p, double[][] scratch, int slot) {
+		double[] c1 = children[0].evaluateColumn(p, scratch, slot + 1);
+		double[] res = scratch[slot];
+
+		for (int i = 0; i < res.length; i++) {
+			res[i] = Math.exp(c1[i]);
+		}
+
+		return res;
 	}
 
 	@Override
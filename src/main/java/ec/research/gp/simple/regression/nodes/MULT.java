@@ -21,12 +21,30 @@ public class MULT extends Node {
 
 	@Override
 	public Double evaluate(Problem p, Object data) {
+		return evaluateDouble(p, (Double) data);
+	}
+
+	@Override
+	public double evaluateDouble(Problem p, double data) {
 		// Evaluate the first child
-		Double res = (Double) children[0].evaluate(p, data);
+		double res = children[0].evaluateDouble(p, data);
 
 		// Evaluate the second child and multiply it with the result of the
 		// first
-		res *= (Double) children[1].evaluate(p, data);
+		res *= children[1].evaluateDouble(p, data);
+
+		return res;
+	}
+
+	@Override
+	public double[] evaluateColumn(Problem p, double[][] scratch, int slot) {
+		double[] c1 = children[0].evaluateColumn(p, scratch, slot + 1);
+		double[] c2 = children[1].evaluateColumn(p, scratch, slot + 2);
+		double[] res = scratch[slot];
+
+		for (int i = 0; i < res.length; i++) {
+			res[i] = c1[i] * c2[i];
+		}
 
 		return res;
 	}
@@ -1,5 +1,7 @@
 package ec.research.gp.simple.regression.nodes;
 
+import java.util.Arrays;
+
 import ec.research.gp.simple.problem.Problem;
 import ec.research.gp.simple.representation.Node;
 
@@ -25,11 +27,31 @@ public class R extends Node {
 		return (Double) this.value;
 	}
 
+	@Override
+	public double evaluateDouble(Problem p, double data) {
+		// Simply return the value of the node.
+		return this.value;
+	}
+
+	@Override
+	public double[] evaluateColumn(Problem p, double[][] scratch, int slot) {
+		// Fill the column with the node's value.
+		double[] res = scratch[slot];
+		Arrays.fill(res, this.value);
+
+		return res;
+	}
+
 	@Override
 	public String toString() {
 		return Double.toString(this.value);
 	}
 
+	@Override
+	protected long labelHash() {
+		return Double.doubleToLongBits(this.value);
+	}
+
 	/**
 	 * Sets the ephemeral random constant node's value to the given value. This
 	 * should only be used for initializing or mutating, and the range of values
@@ -39,7 +61,19 @@ public class R extends Node {
 	 *            the value to which to set this node
 	 */
 	public void setValue(double value) {
-		this.value = value;
+		if (Double.doubleToLongBits(value) != Double
+				.doubleToLongBits(this.value)) {
+			this.value = value;
+			labelChanged();
+		}
+	}
+
+	/**
+	 * 
+	 * @return the ephemeral random constant node's value
+	 */
+	public double getValue() {
+		return this.value;
 	}
 
 	@Override
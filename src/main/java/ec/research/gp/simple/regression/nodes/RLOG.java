@@ -22,13 +22,31 @@ public class RLOG extends Node {
 
 	@Override
 	public Double evaluate(Problem p, Object data) {
+		return evaluateDouble(p, (Double) data);
+	}
+
+	@Override
+	public double evaluateDouble(Problem p, double data) {
 		// Evaluate the child
-		Double res = (Double) children[0].evaluate(p, data);
+		double res = children[0].evaluateDouble(p, data);
 
 		// If the result is nonzero, return the natural log of its absolute
 		// value (Otherwise return 0)
 		if (res != 0.0) {
-			res = (Double)Math.log(Math.abs(res));
+			res = Math.log(Math.abs(res));
+		}
+
+		return res;
+	}
+
+	@Override
+	public double[] evaluateColumn(Problem p, double[][] scratch, int slot) {
+		double[] c1 = children[0].evaluateColumn(p, scratch, slot + 1);
+		double[] res = scratch[slot];
+
+		// Same protection as above, point by point.
+		for (int i = 0; i < res.length; i++) {
+			res[i] = (c1[i] != 0.0) ? Math.log(Math.abs(c1[i])) : c1[i];
 		}
 
 		return res;
@@ -1,6 +1,7 @@
 package ec.research.gp.simple.regression.nodes;
 
 import ec.research.gp.simple.problem.Problem;
+import ec.research.gp.simple.regression.SymbolicRegression;
 import ec.research.gp.simple.representation.Node;
 
 /**
@@ -19,8 +20,19 @@ public class X extends Node {
 
 	@Override
 	public Object evaluate(Problem p, Object data) {
+		return evaluateDouble(p, (Double) data);
+	}
+
+	@Override
+	public double evaluateDouble(Problem p, double data) {
 		// Simply return the current input from the problem.
-		return (Double) data;
+		return data;
+	}
+
+	@Override
+	public double[] evaluateColumn(Problem p, double[][] scratch, int slot) {
+		// The input column is simply the problem's test points.
+		return ((SymbolicRegression) p).getTestPoints();
 	}
 
 	@Override
@@ -0,0 +1,94 @@
+package ec.research.gp.simple.remote;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.log4j.PropertyConfigurator;
+
+import ec.research.gp.simple.problem.Problem;
+import ec.research.gp.simple.representation.GenomeCodec;
+import ec.research.gp.simple.representation.Individual;
+import ec.research.gp.simple.util.Config;
+import ec.research.gp.simple.util.Context;
+
+/**
+ * Main entry point of a worker process, started by a
+ * {@link RemoteEvaluator}. It connects back to the run, sets up the
+ * configured problem with the run's parameters and the seed the run's problem
+ * was set up with (so it gets the same fitness cases), then evaluates the
+ * batches of individuals it's sent until the connection is closed.
+ *
+ */
+public class EvalWorker {
+	/**
+	 * Runs the worker.
+	 *
+	 * @param args
+	 *            the run's port on the loopback interface, and the worker's
+	 *            index
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		PropertyConfigurator.configure("log4j.properties");
+
+		Socket socket = new Socket(InetAddress.getByName("127.0.0.1"),
+				Integer.parseInt(args[0]));
+		socket.setTcpNoDelay(true);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				socket.getInputStream()));
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				socket.getOutputStream()));
+
+		// Say who we are, and get the run's parameters and seed.
+		out.writeInt(Integer.parseInt(args[1]));
+		out.flush();
+
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		Properties params = new Properties();
+		params.load(new ByteArrayInputStream(bytes));
+		Config config = new Config(params, in.readLong());
+
+		// Set up the problem as the run did.
+		Context context = new Context(config);
+		Problem problem = config.getProblem();
+		context.initProblem(problem);
+		GenomeCodec codec = new GenomeCodec(config);
+
+		while (true) {
+			int length;
+			try {
+				length = in.readInt();
+			} catch (EOFException e) {
+				// The run is over.
+				break;
+			}
+
+			bytes = new byte[length];
+			in.readFully(bytes);
+			List<Individual> batch = codec.decode(ByteBuffer.wrap(bytes));
+
+			out.writeInt(batch.size());
+			for (Individual individual : batch) {
+				problem.fitness(individual);
+
+				out.writeDouble(individual.getFitness());
+				out.writeInt(individual.getHits());
+				out.writeBoolean(individual.isOptimal());
+			}
+			out.flush();
+		}
+
+		socket.close();
+		context.shutdown();
+	}
+}
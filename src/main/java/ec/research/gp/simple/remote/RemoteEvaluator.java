@@ -0,0 +1,474 @@
+package ec.research.gp.simple.remote;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StreamCorruptedException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.log4j.Logger;
+
+import ec.research.gp.simple.problem.Problem;
+import ec.research.gp.simple.representation.GenomeCodec;
+import ec.research.gp.simple.representation.Individual;
+import ec.research.gp.simple.util.Config;
+
+/**
+ * Evaluates individuals on numWorkers worker processes ({@link EvalWorker}s)
+ * started on this machine, which set up the configured problem (and its
+ * fitness cases) for themselves, so the fitness cases don't have to fit in
+ * this JVM along with the population.
+ *
+ * The individuals are sent over loopback TCP in batches of workerBatchSize,
+ * encoded with the {@link GenomeCodec}, and the fitness comes back for each
+ * batch in the order the batches were sent. Each worker has up to
+ * PIPELINE_DEPTH batches in flight, so it doesn't sit idle waiting for the
+ * next one.
+ *
+ * If a worker dies (or its connection does), or doesn't answer within
+ * workerTimeout, its unfinished batches go back to the others, and it's
+ * restarted at the next call to evaluate(). If no worker is left, the rest of
+ * the batches are evaluated in this process.
+ *
+ */
+public class RemoteEvaluator {
+	// The number of batches a worker can have in flight.
+	private static final int PIPELINE_DEPTH = 4;
+
+	// How long to wait for a worker process to connect (ms).
+	private static final int CONNECT_TIMEOUT = 60000;
+
+	// Holds the config for the run
+	private final Config config;
+
+	// The seed the workers set up the problem with
+	private final long seed;
+
+	// The codec for the batches of individuals
+	private final GenomeCodec codec;
+
+	// Where the workers connect
+	private final ServerSocket server;
+
+	// Holds the workers
+	private final Worker[] workers;
+
+	// The threads talking to the workers, one per worker.
+	private final ExecutorService links;
+
+	// Log4J logger for any output messages.
+	private static final Logger logger = Logger
+			.getLogger(RemoteEvaluator.class);
+
+	/**
+	 * A worker process and its connection.
+	 */
+	private static class Worker {
+		// The worker's index
+		final int index;
+
+		// The worker's process
+		Process process;
+
+		// The connection to the worker
+		Socket socket;
+		DataInputStream in;
+		DataOutputStream out;
+
+		Worker(int index) {
+			this.index = index;
+		}
+
+		/**
+		 * @return whether or not the worker is up
+		 */
+		boolean isAlive() {
+			return this.socket != null;
+		}
+
+		/**
+		 * Closes the connection and kills the process.
+		 */
+		void kill() {
+			if (this.socket != null) {
+				try {
+					this.socket.close();
+				} catch (IOException e) {
+					logger.debug(e);
+				}
+				this.socket = null;
+			}
+			if (this.process != null) {
+				this.process.destroy();
+				this.process = null;
+			}
+		}
+	}
+
+	/**
+	 * Starts the worker processes for the given config and waits for them to
+	 * connect.
+	 *
+	 * @param config
+	 *            the config for the run, whose parameters the workers get
+	 * @param seed
+	 *            the seed the run's problem was set up with (see
+	 *            Context.getProblemSeed()), so the workers set up the same
+	 *            fitness cases
+	 * @throws IOException
+	 *             if the server socket can't be opened
+	 */
+	public RemoteEvaluator(Config config, long seed) throws IOException {
+		this.config = config;
+		this.seed = seed;
+		this.codec = new GenomeCodec(config);
+		this.server = new ServerSocket(0, 50,
+				InetAddress.getByName("127.0.0.1"));
+		this.server.setSoTimeout(CONNECT_TIMEOUT);
+
+		this.workers = new Worker[config.getNumWorkers()];
+		for (int i = 0; i < this.workers.length; i++) {
+			this.workers[i] = new Worker(i);
+		}
+
+		// Daemon threads, so a run that never calls shutdown() can exit.
+		this.links = Executors.newFixedThreadPool(this.workers.length,
+				new ThreadFactory() {
+					private int count;
+
+					@Override
+					public synchronized Thread newThread(Runnable task) {
+						Thread thread = new Thread(task, "gp-worker-link-"
+								+ (++count));
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+
+		startWorkers();
+	}
+
+	/**
+	 * Evaluates the given (unevaluated) individuals on the workers, and waits
+	 * until they're all evaluated.
+	 *
+	 * @param individuals
+	 *            the individuals to evaluate
+	 * @param problem
+	 *            the problem, for evaluating here if no worker is left
+	 * @throws IllegalStateException
+	 *             if a link to a worker fails other than by an I/O error
+	 */
+	public void evaluate(List<Individual> individuals, Problem problem) {
+		Queue<List<Individual>> pending = new ConcurrentLinkedQueue<List<Individual>>();
+		int batchSize = Math.max(1, this.config.getWorkerBatchSize());
+		for (int start = 0; start < individuals.size(); start += batchSize) {
+			pending.add(individuals.subList(start,
+					Math.min(individuals.size(), start + batchSize)));
+		}
+
+		startWorkers();
+
+		// Batches of workers that die after the others are done go round
+		// again.
+		while (!pending.isEmpty() && serveAll(pending)) {
+		}
+
+		// No worker left, so do the rest here.
+		List<Individual> batch;
+		while ((batch = pending.poll()) != null) {
+			for (Individual individual : batch) {
+				problem.fitness(individual);
+			}
+		}
+	}
+
+	/**
+	 * Has every live worker take batches from the queue until it's empty.
+	 *
+	 * @param pending
+	 *            the batches to evaluate
+	 * @return whether or not there were any live workers
+	 * @throws IllegalStateException
+	 *             if a link fails other than by an I/O error (once all the
+	 *             links are done)
+	 */
+	private boolean serveAll(final Queue<List<Individual>> pending) {
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (final Worker worker : this.workers) {
+			if (worker.isAlive()) {
+				futures.add(this.links.submit(new Runnable() {
+					@Override
+					public void run() {
+						serve(worker, pending);
+					}
+				}));
+			}
+		}
+
+		Throwable failure = null;
+		for (Future<?> future : futures) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				failure = e;
+			} catch (ExecutionException e) {
+				failure = e.getCause();
+			}
+		}
+		if (failure != null) {
+			throw new IllegalStateException("Worker link failed", failure);
+		}
+
+		return !futures.isEmpty();
+	}
+
+	/**
+	 * Sends batches from the queue to the worker, keeping up to
+	 * PIPELINE_DEPTH of them in flight, and reads back their fitness, until
+	 * the queue is empty. If the worker fails or times out, its unfinished
+	 * batches are put back in the queue. Any other error kills the worker
+	 * (its connection is in an unknown state) and is passed on.
+	 *
+	 * @param worker
+	 *            the worker
+	 * @param pending
+	 *            the batches to evaluate
+	 */
+	private void serve(Worker worker, Queue<List<Individual>> pending) {
+		Deque<List<Individual>> inFlight = new ArrayDeque<List<Individual>>();
+
+		try {
+			while (true) {
+				List<Individual> batch;
+				while (inFlight.size() < PIPELINE_DEPTH
+						&& (batch = pending.poll()) != null) {
+					inFlight.add(batch);
+					send(worker, batch);
+				}
+
+				if (inFlight.isEmpty()) {
+					return;
+				}
+
+				receive(worker, inFlight.peek());
+				inFlight.remove();
+			}
+		} catch (IOException e) {
+			logger.error("Worker " + worker.index
+					+ " failed, reassigning its batches: " + e);
+			pending.addAll(inFlight);
+			worker.kill();
+		} catch (RuntimeException e) {
+			worker.kill();
+			throw e;
+		}
+	}
+
+	/**
+	 * Sends a batch of individuals to the worker.
+	 */
+	private void send(Worker worker, List<Individual> batch)
+			throws IOException {
+		ByteBuffer encoded = this.codec.encode(batch);
+		byte[] bytes = new byte[encoded.remaining()];
+		encoded.get(bytes);
+
+		worker.out.writeInt(bytes.length);
+		worker.out.write(bytes);
+		worker.out.flush();
+	}
+
+	/**
+	 * Reads the fitness of a batch from the worker into the batch's
+	 * individuals.
+	 */
+	private static void receive(Worker worker, List<Individual> batch)
+			throws IOException {
+		int count = worker.in.readInt();
+		if (count != batch.size()) {
+			throw new StreamCorruptedException("Expected " + batch.size()
+					+ " results, got " + count);
+		}
+
+		for (Individual individual : batch) {
+			individual.setFitness(worker.in.readDouble());
+			individual.setHits(worker.in.readInt());
+			individual.setIsOptimal(worker.in.readBoolean());
+			individual.setIsEvaluated(true);
+		}
+	}
+
+	/**
+	 * Starts the workers that aren't running, and waits for them to connect.
+	 */
+	private void startWorkers() {
+		int starting = 0;
+		for (Worker worker : this.workers) {
+			if (!worker.isAlive()) {
+				try {
+					worker.process = startProcess(worker.index);
+					starting++;
+				} catch (IOException e) {
+					logger.error("Couldn't start worker " + worker.index, e);
+				}
+			}
+		}
+
+		for (int i = 0; i < starting; i++) {
+			try {
+				connect(this.server.accept());
+			} catch (SocketTimeoutException e) {
+				logger.error("Timed out waiting for the workers to connect");
+				break;
+			} catch (IOException e) {
+				logger.error("Worker failed to connect", e);
+			}
+		}
+
+		// Don't leave processes that never connected running.
+		for (Worker worker : this.workers) {
+			if (!worker.isAlive()) {
+				worker.kill();
+			}
+		}
+	}
+
+	/**
+	 * Sets up a new connection from a worker: the worker sends its index, and
+	 * gets the run's parameters and the problem's seed.
+	 */
+	private void connect(Socket socket) throws IOException {
+		socket.setTcpNoDelay(true);
+		socket.setSoTimeout(this.config.getWorkerTimeout());
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				socket.getInputStream()));
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				socket.getOutputStream()));
+
+		int index = in.readInt();
+		if (index < 0 || index >= this.workers.length
+				|| this.workers[index].isAlive()) {
+			socket.close();
+			throw new StreamCorruptedException("Unexpected worker " + index);
+		}
+
+		ByteArrayOutputStream params = new ByteArrayOutputStream();
+		this.config.getParameters().store(params, null);
+		out.writeInt(params.size());
+		params.writeTo(out);
+		out.writeLong(this.seed);
+		out.flush();
+
+		Worker worker = this.workers[index];
+		worker.in = in;
+		worker.out = out;
+		worker.socket = socket;
+	}
+
+	/**
+	 * Starts a worker process, on this JVM's classpath.
+	 *
+	 * @param index
+	 *            the worker's index
+	 * @return the process
+	 * @throws IOException
+	 */
+	private Process startProcess(final int index) throws IOException {
+		String java = System.getProperty("java.home") + File.separator + "bin"
+				+ File.separator + "java";
+		ProcessBuilder builder = new ProcessBuilder(java, "-cp",
+				System.getProperty("java.class.path"),
+				EvalWorker.class.getName(), Integer.toString(this.server
+						.getLocalPort()), Integer.toString(index));
+		builder.redirectErrorStream(true);
+
+		final Process process = builder.start();
+
+		// Pass the worker's output on, so it doesn't block on a full pipe.
+		Thread output = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					BufferedReader reader = new BufferedReader(
+							new InputStreamReader(process.getInputStream()));
+					String line;
+					while ((line = reader.readLine()) != null) {
+						logger.debug("Worker " + index + ": " + line);
+					}
+				} catch (IOException e) {
+					logger.debug(e);
+				}
+			}
+		}, "gp-worker-output-" + index);
+		output.setDaemon(true);
+		output.start();
+
+		return process;
+	}
+
+	/**
+	 * Kills the given worker, as if it had crashed. For testing.
+	 *
+	 * @param index
+	 *            the worker's index
+	 */
+	void killProcess(int index) {
+		Process process = this.workers[index].process;
+		if (process != null) {
+			process.destroy();
+		}
+	}
+
+	/**
+	 * @return the number of workers that are up
+	 */
+	public int getNumAlive() {
+		int alive = 0;
+		for (Worker worker : this.workers) {
+			if (worker.isAlive()) {
+				alive++;
+			}
+		}
+
+		return alive;
+	}
+
+	/**
+	 * Stops the workers (they exit once their connection is closed).
+	 */
+	public void shutdown() {
+		for (Worker worker : this.workers) {
+			worker.kill();
+		}
+		this.links.shutdown();
+
+		try {
+			this.server.close();
+		} catch (IOException e) {
+			logger.debug(e);
+		}
+	}
+}
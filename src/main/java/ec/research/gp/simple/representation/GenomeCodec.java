@@ -0,0 +1,435 @@
+package ec.research.gp.simple.representation;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import ec.research.gp.simple.regression.nodes.R;
+import ec.research.gp.simple.representation.Individual.REPRESENTATION;
+import ec.research.gp.simple.util.Config;
+
+/**
+ * A compact binary encoding of individuals, for checkpoints and for shipping
+ * populations between processes. Each node is its opcode in the run's
+ * {@link Primitives} as a varint (one byte for up to 128 primitives), with
+ * the raw bits of the value following an R node, so constants come back
+ * exactly. The tree is preceded by the individual's ID, fitness, hits, age,
+ * layer, flags and tag.
+ *
+ * The opcodes depend on the function and terminal sets, so both ends must use
+ * the same configuration.
+ *
+ * A population is written as a magic number, the number of individuals and
+ * the individuals; over a channel it's preceded by its length in bytes.
+ *
+ */
+public class GenomeCodec {
+	// Marks the start of an encoded population ("GPB1").
+	private static final int MAGIC = 0x47504231;
+
+	// Flag bits.
+	private static final int EVALUATED = 1;
+	private static final int OPTIMAL = 2;
+	private static final int HAS_TAG = 4;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	// The run's Config, for the opcodes and the representation.
+	private final Config config;
+
+	/**
+	 * Creates a codec for the primitives of the given Config.
+	 *
+	 * @param config
+	 *            the Config for the run
+	 */
+	public GenomeCodec(Config config) {
+		this.config = config;
+	}
+
+	/**
+	 * Encodes the given individuals.
+	 *
+	 * @param individuals
+	 *            the individuals
+	 * @return a buffer holding the encoded population, ready to be read
+	 */
+	public ByteBuffer encode(Collection<Individual> individuals) {
+		Output out = new Output(64 * individuals.size() + 16);
+
+		out.putInt(MAGIC);
+		out.putVarLong(individuals.size());
+		for (Individual individual : individuals) {
+			encode(individual, out);
+		}
+
+		return out.finish();
+	}
+
+	/**
+	 * Decodes a population encoded by encode(), from the buffer's position
+	 * on. Individuals get the representation of the run's Config.
+	 *
+	 * @param buffer
+	 *            the buffer
+	 * @return the individuals
+	 * @throws IOException
+	 *             if the buffer doesn't hold a valid population
+	 */
+	public List<Individual> decode(ByteBuffer buffer) throws IOException {
+		try {
+			if (buffer.getInt() != MAGIC) {
+				throw new StreamCorruptedException("Not an encoded population");
+			}
+
+			// Every individual takes more than a byte.
+			long count = getVarLong(buffer);
+			if (count > buffer.remaining()) {
+				throw new StreamCorruptedException("Bad population size "
+						+ count);
+			}
+
+			List<Individual> individuals = new ArrayList<Individual>(
+					(int) count);
+			for (int i = 0; i < count; i++) {
+				individuals.add(decodeIndividual(buffer));
+			}
+
+			return individuals;
+		} catch (BufferUnderflowException e) {
+			throw new EOFException("Truncated population");
+		}
+	}
+
+	/**
+	 * Writes the given individuals to the channel, preceded by their length.
+	 *
+	 * @param individuals
+	 *            the individuals
+	 * @param channel
+	 *            the channel to write to
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	public void write(Collection<Individual> individuals,
+			WritableByteChannel channel) throws IOException {
+		ByteBuffer body = encode(individuals);
+		ByteBuffer length = ByteBuffer.allocate(4);
+		length.putInt(body.remaining());
+		length.flip();
+
+		while (length.hasRemaining()) {
+			channel.write(length);
+		}
+		while (body.hasRemaining()) {
+			channel.write(body);
+		}
+	}
+
+	/**
+	 * Reads a population written by write() from the channel.
+	 *
+	 * @param channel
+	 *            the channel to read from
+	 * @return the individuals
+	 * @throws IOException
+	 *             if reading fails or the data isn't a valid population
+	 */
+	public List<Individual> read(ReadableByteChannel channel)
+			throws IOException {
+		ByteBuffer length = ByteBuffer.allocate(4);
+		readFully(channel, length);
+
+		int size = length.getInt();
+		if (size < 0) {
+			throw new StreamCorruptedException("Bad population length "
+					+ size);
+		}
+
+		ByteBuffer body = ByteBuffer.allocate(size);
+		readFully(channel, body);
+
+		return decode(body);
+	}
+
+	/**
+	 * Fills the buffer from the channel, and flips it.
+	 */
+	private static void readFully(ReadableByteChannel channel,
+			ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				throw new EOFException("Channel closed mid-population");
+			}
+		}
+		buffer.flip();
+	}
+
+	/**
+	 * Encodes a single individual.
+	 */
+	private void encode(Individual individual, Output out) {
+		String tag = individual.getTag();
+		int flags = (individual.isEvaluated() ? EVALUATED : 0)
+				| (individual.isOptimal() ? OPTIMAL : 0)
+				| (tag != null ? HAS_TAG : 0);
+
+		out.putVarLong(individual.getId());
+		out.putVarLong(zigZag(individual.getIdGeneration()));
+		out.putDouble(individual.getFitness());
+		out.putVarLong(zigZag(individual.getHits()));
+		out.putVarLong(zigZag(individual.getAge()));
+		out.putVarLong(zigZag(individual.getCurrentLayer()));
+		out.putByte(flags);
+		if (tag != null) {
+			byte[] bytes = tag.getBytes(UTF8);
+			out.putVarLong(bytes.length);
+			out.putBytes(bytes);
+		}
+
+		Primitives primitives = this.config.getPrimitives();
+		LinearTree genome = individual.getGenome();
+
+		if (genome != null) {
+			out.putVarLong(genome.size());
+
+			int constPos = 0;
+			for (int pos = 0; pos < genome.size(); pos++) {
+				int opcode = genome.getOpcode(pos);
+				out.putVarLong(opcode);
+				if (primitives.isConstant(opcode)) {
+					out.putDouble(genome.getPooledConstant(constPos++));
+				}
+			}
+		} else {
+			Node root = individual.getRoot();
+			out.putVarLong(root.sizeFrom());
+			encode(root, primitives, out);
+		}
+	}
+
+	/**
+	 * Encodes the subtree rooted at the given node, in preorder.
+	 */
+	private static void encode(Node node, Primitives primitives, Output out) {
+		int opcode = primitives.opcodeOf(node);
+		out.putVarLong(opcode);
+		if (primitives.isConstant(opcode)) {
+			out.putDouble(((R) node).getValue());
+		}
+
+		for (int i = 0; i < node.getNumChildren(); i++) {
+			encode(node.getChild(i), primitives, out);
+		}
+	}
+
+	/**
+	 * Decodes a single individual.
+	 */
+	private Individual decodeIndividual(ByteBuffer in) throws IOException {
+		Individual individual = new Individual();
+
+		long id = getVarLong(in);
+		individual.setId(id, unZigZag(getVarLong(in)));
+		individual.setFitness(in.getDouble());
+		individual.setHits(unZigZag(getVarLong(in)));
+		individual.setAge(unZigZag(getVarLong(in)));
+		individual.setCurrentLayer(unZigZag(getVarLong(in)));
+
+		int flags = in.get();
+		if ((flags & HAS_TAG) != 0) {
+			long length = getVarLong(in);
+			if (length > in.remaining()) {
+				throw new StreamCorruptedException("Bad tag length " + length);
+			}
+
+			byte[] bytes = new byte[(int) length];
+			in.get(bytes);
+			individual.setTag(new String(bytes, UTF8));
+		}
+
+		long size = getVarLong(in);
+		if (size > in.remaining()) {
+			throw new StreamCorruptedException("Bad tree size " + size);
+		}
+
+		Node root = decodeTree(in, (int) size);
+		individual.setRoot(root);
+		individual.setDepth(root.getSubtreeHeight());
+		individual.numberAndCountNodes();
+
+		// Fitness setters may clear the flags, so set them last.
+		individual.setIsEvaluated((flags & EVALUATED) != 0);
+		individual.setIsOptimal((flags & OPTIMAL) != 0);
+
+		REPRESENTATION representation = this.config.getRepresentation();
+		if (representation == REPRESENTATION.LINEAR) {
+			individual.linearize(this.config.getPrimitives());
+		} else if (representation == REPRESENTATION.PERSISTENT) {
+			individual.setIsPersistent(true);
+			individual.numberAndCountNodes();
+		}
+
+		return individual;
+	}
+
+	/**
+	 * Decodes a tree of the given size.
+	 */
+	private Node decodeTree(ByteBuffer in, int size) throws IOException {
+		Primitives primitives = this.config.getPrimitives();
+		int numOpcodes = primitives.getNumFunctions()
+				+ primitives.getNumTerminals();
+		boolean trackLineage = this.config.doTrackLineage();
+
+		Node[] nodes = new Node[size];
+		for (int pos = 0; pos < size; pos++) {
+			int opcode = (int) getVarLong(in);
+			if (opcode < 0 || opcode >= numOpcodes) {
+				throw new StreamCorruptedException("Bad opcode " + opcode);
+			}
+
+			Node node;
+			try {
+				node = primitives.getNode(opcode).lightClone();
+			} catch (CloneNotSupportedException e) {
+				throw new IllegalStateException(e);
+			}
+			if (primitives.isConstant(opcode)) {
+				((R) node).setValue(in.getDouble());
+			}
+			if (trackLineage) {
+				node.setId();
+				node.setMemId(node.getId());
+			}
+			nodes[pos] = node;
+		}
+
+		// Link each subtree before attaching it, so the cached subtree info is
+		// complete by the time it reaches the root.
+		int end = link(nodes, 0);
+		if (end != size) {
+			throw new StreamCorruptedException("Bad tree of " + size
+					+ " nodes");
+		}
+
+		return nodes[0];
+	}
+
+	/**
+	 * Links the subtree starting at the given position, returning the
+	 * position after it.
+	 */
+	private static int link(Node[] nodes, int pos) throws IOException {
+		if (pos >= nodes.length) {
+			throw new StreamCorruptedException("Truncated tree");
+		}
+
+		Node node = nodes[pos];
+		int child = pos + 1;
+		for (int i = 0; i < node.getNumChildren(); i++) {
+			int after = link(nodes, child);
+			nodes[child].setParent(node);
+			node.setChild(i, nodes[child]);
+			child = after;
+		}
+
+		return child;
+	}
+
+	/**
+	 * Maps signed numbers to unsigned ones so small negatives stay short.
+	 */
+	private static long zigZag(int value) {
+		return (value << 1) ^ (value >> 31);
+	}
+
+	private static int unZigZag(long value) {
+		int n = (int) value;
+		return (n >>> 1) ^ -(n & 1);
+	}
+
+	/**
+	 * Reads an unsigned LEB128 varint.
+	 */
+	private static long getVarLong(ByteBuffer in) throws IOException {
+		long value = 0;
+
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = in.get();
+			value |= (long) (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+
+		throw new StreamCorruptedException("Bad varint");
+	}
+
+	/**
+	 * A growable output buffer.
+	 */
+	private static class Output {
+		private ByteBuffer buffer;
+
+		Output(int capacity) {
+			this.buffer = ByteBuffer.allocate(capacity);
+		}
+
+		private void ensure(int bytes) {
+			if (this.buffer.remaining() < bytes) {
+				ByteBuffer grown = ByteBuffer.allocate(Math.max(
+						2 * this.buffer.capacity(), this.buffer.position()
+								+ bytes));
+				this.buffer.flip();
+				grown.put(this.buffer);
+				this.buffer = grown;
+			}
+		}
+
+		void putByte(int value) {
+			ensure(1);
+			this.buffer.put((byte) value);
+		}
+
+		void putBytes(byte[] bytes) {
+			ensure(bytes.length);
+			this.buffer.put(bytes);
+		}
+
+		void putInt(int value) {
+			ensure(4);
+			this.buffer.putInt(value);
+		}
+
+		void putDouble(double value) {
+			ensure(8);
+			this.buffer.putDouble(value);
+		}
+
+		/**
+		 * Writes an unsigned LEB128 varint.
+		 */
+		void putVarLong(long value) {
+			ensure(10);
+			while ((value & ~0x7fL) != 0) {
+				this.buffer.put((byte) ((value & 0x7f) | 0x80));
+				value >>>= 7;
+			}
+			this.buffer.put((byte) value);
+		}
+
+		ByteBuffer finish() {
+			this.buffer.flip();
+			return this.buffer;
+		}
+	}
+}
@@ -0,0 +1,375 @@
+package ec.research.gp.simple.representation;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+
+import ec.research.gp.simple.regression.nodes.R;
+import ec.research.gp.simple.util.Config;
+
+/**
+ * Parses lisp-style genotypes (as written by Individual.toString()) into
+ * individuals in a single pass over the characters, building the tree as the
+ * tokens go by. Files of genotypes, one per line, can be parsed by several
+ * threads at once.
+ *
+ * A parser only reads the run's Config, so one parser can be shared by any
+ * number of threads.
+ *
+ */
+public class GenotypeParser {
+	// The number of lines handed to a thread at a time.
+	private static final int BATCH_SIZE = 1024;
+
+	private static final Logger logger = Logger.getLogger(GenotypeParser.class);
+
+	// The run's Config, which maps the tokens to nodes.
+	private final Config config;
+
+	/**
+	 * Creates a parser for the nodes of the given Config.
+	 *
+	 * @param config
+	 *            the Config for the run
+	 */
+	public GenotypeParser(Config config) {
+		this.config = config;
+	}
+
+	/**
+	 * Parses a single genotype.
+	 *
+	 * @param genotype
+	 *            the lisp-style genotype
+	 * @return the individual, or null if the genotype has tokens that aren't
+	 *         nodes of the run, or isn't exactly one complete tree
+	 * @throws CloneNotSupportedException
+	 */
+	public Individual parse(CharSequence genotype)
+			throws CloneNotSupportedException {
+		Individual ind = new Individual();
+		int length = genotype.length();
+		int numNodes = 0;
+
+		// The functions still waiting for children, and how many they have.
+		Node[] open = new Node[16];
+		int[] filled = new int[16];
+		int numOpen = 0;
+
+		int pos = 0;
+		while (pos < length) {
+			// Skip to the next token
+			if (isDelimiter(genotype.charAt(pos))) {
+				pos++;
+				continue;
+			}
+
+			int start = pos;
+			while (pos < length && !isDelimiter(genotype.charAt(pos))) {
+				pos++;
+			}
+			String token = genotype.subSequence(start, pos).toString();
+
+			Node node = newNode(token);
+			if (node == null) {
+				logger.error(token + " is not mapped. Returning null!");
+				return null;
+			}
+			node.setNodeNumber(numNodes++);
+
+			if (numOpen == 0) {
+				// Nothing can follow the root's subtree
+				if (ind.getRoot() != null) {
+					logger.error("Unexpected " + token
+							+ " after the end of the tree. Returning null!");
+					return null;
+				}
+
+				ind.setRoot(node);
+			} else {
+				// Add the node to the innermost open function
+				Node parent = open[numOpen - 1];
+				int index = filled[numOpen - 1]++;
+				parent.setChild(index, node);
+				node.setParent(parent);
+
+				// Close the function once it's full
+				if (index == parent.getNumChildren() - 1) {
+					numOpen--;
+				}
+			}
+
+			// A function waits for its children
+			if (!node.isTerminal()) {
+				if (numOpen == open.length) {
+					Node[] grownOpen = new Node[2 * open.length];
+					int[] grownFilled = new int[2 * open.length];
+					System.arraycopy(open, 0, grownOpen, 0, numOpen);
+					System.arraycopy(filled, 0, grownFilled, 0, numOpen);
+					open = grownOpen;
+					filled = grownFilled;
+				}
+				open[numOpen] = node;
+				filled[numOpen] = 0;
+				numOpen++;
+			}
+		}
+
+		if (ind.getRoot() == null) {
+			logger.error("Empty genotype. Returning null!");
+			return null;
+		}
+		if (numOpen != 0) {
+			logger.error("Genotype ends inside the tree. Returning null!");
+			return null;
+		}
+
+		ind.setNumNodes(numNodes);
+		ind.setDepth(ind.getRoot().getSubtreeHeight());
+
+		return ind;
+	}
+
+	/**
+	 * Parses every genotype in the given file, one per line, using the given
+	 * number of threads. See parseAll().
+	 *
+	 * @param fileName
+	 *            the file of genotypes
+	 * @param numThreads
+	 *            the number of threads to parse with
+	 * @return the individuals, in the order of the file
+	 * @throws IOException
+	 *             if the file can't be read
+	 */
+	public List<Individual> parseFile(String fileName, int numThreads)
+			throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(fileName));
+
+		try {
+			return parseAll(reader, numThreads);
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Parses every genotype read from the given reader, one per line, using
+	 * the given number of threads. The lines are read as they're needed and
+	 * handed to the threads in batches, so only a few batches are held in
+	 * memory at once. Blank lines, and lines that don't parse (which are
+	 * logged), are skipped.
+	 *
+	 * @param reader
+	 *            the reader of genotypes
+	 * @param numThreads
+	 *            the number of threads to parse with
+	 * @return the individuals, in the order they were read
+	 * @throws IOException
+	 *             if the reader fails
+	 */
+	public List<Individual> parseAll(BufferedReader reader, int numThreads)
+			throws IOException {
+		List<Individual> individuals = new ArrayList<Individual>();
+		int threads = Math.max(1, numThreads);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+		// Cache the prototypes' hashes now, so that the threads cloning them
+		// only ever read them.
+		for (Node node : this.config.getFunctionSet()) {
+			node.getStructuralHash();
+		}
+		for (Node node : this.config.getTerminalSet()) {
+			node.getStructuralHash();
+		}
+
+		// The batches being parsed, oldest first.
+		LinkedList<Future<List<Individual>>> pending = new LinkedList<Future<List<Individual>>>();
+
+		try {
+			List<String> batch = new ArrayList<String>(BATCH_SIZE);
+			String line;
+
+			while ((line = reader.readLine()) != null) {
+				batch.add(line);
+
+				if (batch.size() == BATCH_SIZE) {
+					pending.add(executor.submit(new ParseBatch(batch)));
+					batch = new ArrayList<String>(BATCH_SIZE);
+
+					// Don't read too far ahead of the threads.
+					if (pending.size() > 2 * threads) {
+						individuals.addAll(getResult(pending.removeFirst()));
+					}
+				}
+			}
+			if (!batch.isEmpty()) {
+				pending.add(executor.submit(new ParseBatch(batch)));
+			}
+
+			while (!pending.isEmpty()) {
+				individuals.addAll(getResult(pending.removeFirst()));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		return individuals;
+	}
+
+	/**
+	 * Waits for a batch to be parsed.
+	 */
+	private List<Individual> getResult(Future<List<Individual>> future)
+			throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while parsing genotypes");
+		} catch (ExecutionException e) {
+			throw new IOException("Failed to parse genotypes", e.getCause());
+		}
+	}
+
+	/**
+	 * Parses a batch of lines.
+	 */
+	private class ParseBatch implements Callable<List<Individual>> {
+		private final List<String> lines;
+
+		ParseBatch(List<String> lines) {
+			this.lines = lines;
+		}
+
+		@Override
+		public List<Individual> call() throws CloneNotSupportedException {
+			List<Individual> individuals = new ArrayList<Individual>(
+					this.lines.size());
+
+			for (String line : this.lines) {
+				if (line.trim().length() == 0) {
+					continue;
+				}
+
+				Individual ind = parse(line);
+				if (ind != null) {
+					individuals.add(ind);
+				}
+			}
+
+			return individuals;
+		}
+	}
+
+	/**
+	 * @return a new node for the given token: a clone of the mapped node, or
+	 *         a constant if the token is a number, or null
+	 * @throws CloneNotSupportedException
+	 */
+	private Node newNode(String token) throws CloneNotSupportedException {
+		Node node;
+		Node mappedNode = this.config.getMappedNode(token);
+
+		if (mappedNode != null) {
+			node = mappedNode.clone();
+		} else if (isNumber(token)) {
+			R constant = new R();
+			constant.setValue(Double.parseDouble(token));
+			node = constant;
+		} else {
+			return null;
+		}
+
+		if (this.config.doTrackLineage()) {
+			node.setId();
+			node.setMemId(node.getId());
+		}
+
+		return node;
+	}
+
+	/**
+	 * @return whether or not the character ends a token
+	 */
+	private static boolean isDelimiter(char c) {
+		return c == ' ' || c == '(' || c == ')' || c == '\t';
+	}
+
+	/**
+	 * @return whether or not the character is an (ASCII) digit
+	 */
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	/**
+	 * Checks whether the token is a number as written by Double.toString()
+	 * (or typed by hand): an optional sign, digits with an optional decimal
+	 * point, and an optional exponent, or NaN or Infinity.
+	 *
+	 * @param token
+	 *            the token
+	 * @return whether or not Double.parseDouble() accepts the token
+	 */
+	static boolean isNumber(String token) {
+		int length = token.length();
+		int pos = 0;
+
+		if (pos < length
+				&& (token.charAt(pos) == '-' || token.charAt(pos) == '+')) {
+			pos++;
+		}
+
+		String rest = token.substring(pos);
+		if (rest.equals("NaN") || rest.equals("Infinity")) {
+			return true;
+		}
+
+		int digits = 0;
+		while (pos < length && isDigit(token.charAt(pos))) {
+			pos++;
+			digits++;
+		}
+		if (pos < length && token.charAt(pos) == '.') {
+			pos++;
+			while (pos < length && isDigit(token.charAt(pos))) {
+				pos++;
+				digits++;
+			}
+		}
+		if (digits == 0) {
+			return false;
+		}
+
+		if (pos < length
+				&& (token.charAt(pos) == 'e' || token.charAt(pos) == 'E')) {
+			pos++;
+			if (pos < length
+					&& (token.charAt(pos) == '-' || token.charAt(pos) == '+')) {
+				pos++;
+			}
+
+			int expDigits = 0;
+			while (pos < length && isDigit(token.charAt(pos))) {
+				pos++;
+				expDigits++;
+			}
+			if (expDigits == 0) {
+				return false;
+			}
+		}
+
+		return pos == length;
+	}
+}
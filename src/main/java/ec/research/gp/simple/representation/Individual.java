@@ -3,15 +3,12 @@ package ec.research.gp.simple.representation;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Stack;
-import java.util.UUID;
 
-import org.apache.commons.lang3.builder.EqualsBuilder;
-import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.log4j.Logger;
 
-import ec.research.gp.simple.regression.nodes.R;
 import ec.research.gp.simple.util.Config;
 import ec.research.gp.simple.util.Context;
+import ec.research.gp.simple.util.IdGenerator;
 
 
 
@@ -20,8 +17,19 @@ import ec.research.gp.simple.util.Context;
  * 
  */
 public class Individual implements Cloneable, Comparable<Individual> {
-	// The individual's ID, which is a UUID with |generation appended.
-	private String id;
+	// How an individual stores its tree: as a graph of Node objects (TREE), as
+	// flat arrays (LINEAR, see LinearTree), or as a graph of Node objects which
+	// are never modified, so that offspring share the unchanged subtrees of
+	// their parents (PERSISTENT).
+	public static enum REPRESENTATION {
+		TREE, LINEAR, PERSISTENT
+	};
+
+	// The individual's ID (IdGenerator.NO_ID until it's set).
+	private long id = IdGenerator.NO_ID;
+
+	// The generation in which the individual got its ID.
+	private int idGeneration;
 
 	// Holds a tag which can be used for grouping individuals.
 	private String tag;
@@ -29,6 +37,26 @@ public class Individual implements Cloneable, Comparable<Individual> {
 	// Holds the root of the tree.
 	private Node root;
 
+	// Holds the tree instead of root if the individual is LINEAR.
+	private LinearTree genome;
+
+	// Whether the tree is PERSISTENT: its nodes may be shared with other
+	// individuals, so they're never modified, and their parent pointers and
+	// node numbers aren't kept.
+	private boolean isPersistent;
+
+	// The nodes of the tree in preorder (null for LINEAR individuals), and the
+	// positions of its functions and terminals, used to choose crossover
+	// points. Built on demand and cleared whenever the tree changes.
+	private Node[] nodeIndex;
+	private int[] functionPositions;
+	private int[] terminalPositions;
+
+	// The tree's string (see toString()) and the structural hash of the tree
+	// it was built from, so that it's only rebuilt once the tree changes.
+	private String genotype;
+	private long genotypeHash;
+
 	// Holds the depth of the tree
 	private int depth;
 
@@ -161,33 +189,49 @@ public class Individual implements Cloneable, Comparable<Individual> {
 	}
 
 	/**
-	 * Sets the individual's ID to a new UUID with |generation appended.
+	 * Sets the individual's ID to a new ID from the given generation.
 	 * 
 	 * @param gen
 	 *            the individual's generation number
 	 */
 	public void setId(int gen) {
-		UUID uuid = UUID.randomUUID();
-		id = uuid.toString() + "|" + gen;
+		setId(IdGenerator.nextId(), gen);
 	}
 
 	/**
-	 * Sets the individual's ID to the requested string.
+	 * Sets the individual's ID to the requested ID.
 	 * 
 	 * @param id
 	 *            the id to which to set the individual's id
+	 * @param gen
+	 *            the generation in which the ID was given
 	 */
-	public void setId(String id) {
+	public void setId(long id, int gen) {
 		this.id = id;
+		this.idGeneration = gen;
 	}
 
 	/**
-	 * @return the individual's ID.
+	 * @return the individual's ID (IdGenerator.NO_ID if it doesn't have one).
 	 */
-	public String getId() {
+	public long getId() {
 		return id;
 	}
 
+	/**
+	 * @return whether or not the individual has an ID.
+	 */
+	public boolean hasId() {
+		return id != IdGenerator.NO_ID;
+	}
+
+	/**
+	 * @return the generation in which the individual got its ID.
+	 */
+	public int getIdGeneration() {
+		return idGeneration;
+	}
+
 	/**
 	 * Sets the individual's tag to the requested value.
 	 * 
@@ -328,11 +372,13 @@ public class Individual implements Cloneable, Comparable<Individual> {
 		}
 
 		// Otherwise, just make sure that the max depth/size aren't violated
-		boolean depthGood = crossPoint.getDepth() + nodeToSwap.depthFrom() <= context
-				.getConfig().getMaxDepth();
+		boolean depthGood = crossPoint.getDepth()
+				+ nodeToSwap.getSubtreeHeight() <= context.getConfig()
+				.getMaxDepth();
 
-		boolean sizeGood = (recipientSize - crossPoint.sizeFrom())
-				+ nodeToSwap.sizeFrom() <= context.getConfig().getMaxSize();
+		boolean sizeGood = (recipientSize - crossPoint.getSubtreeSize())
+				+ nodeToSwap.getSubtreeSize() <= context.getConfig()
+				.getMaxSize();
 
 		return (depthGood && sizeGood);
 
@@ -418,8 +464,8 @@ public class Individual implements Cloneable, Comparable<Individual> {
 		children[1].numberAndCountNodes();
 
 		// Set the depth also...
-		children[0].setDepth(children[0].getRoot().depthFrom());
-		children[1].setDepth(children[1].getRoot().depthFrom());
+		children[0].setDepth(children[0].getRoot().getSubtreeHeight());
+		children[1].setDepth(children[1].getRoot().getSubtreeHeight());
 
 		// This better not ever happen!
 		if (children[0].getDepth() > context.getConfig().getMaxDepth()
@@ -440,6 +486,269 @@ public class Individual implements Cloneable, Comparable<Individual> {
 		return children;
 	}
 
+	/**
+	 * Chooses a random crossover point by its position (preorder number),
+	 * picking the chosen kind of node (function or terminal) uniformly, in constant
+	 * time once the tree has been indexed.
+	 * 
+	 * @param context
+	 *            the Context for the run
+	 * @return the position of the chosen node
+	 */
+	public int getRandomPoint(Context context) {
+		// Do we select a function node or a terminal?
+		boolean doCrossFunc = context.nextBool(context.getConfig()
+				.getCrossFuncProbability());
+
+		if (functionPositions == null) {
+			buildNodeIndex();
+		}
+
+		// Pick uniformly from the chosen kind of node. A single node tree has
+		// no functions, so it gives its root either way.
+		int[] positions = doCrossFunc ? functionPositions : terminalPositions;
+		if (positions.length == 0) {
+			positions = terminalPositions;
+		}
+
+		return positions[context.randBetween(0, positions.length - 1)];
+	}
+
+	/**
+	 * Builds the node index used to choose crossover points now, if it isn't
+	 * built yet. Threads that breed from the same parents only read the index
+	 * then, rather than racing to build it.
+	 */
+	public void indexNodes() {
+		if (functionPositions == null) {
+			buildNodeIndex();
+		}
+	}
+
+	/**
+	 * Indexes the tree's nodes for getRandomPoint(): the nodes in preorder,
+	 * and the positions of the functions and of the terminals.
+	 */
+	private void buildNodeIndex() {
+		int size;
+		if (genome != null) {
+			size = genome.size();
+		} else {
+			List<Node> nodes = getAllNodes();
+			nodeIndex = nodes.toArray(new Node[nodes.size()]);
+			size = nodeIndex.length;
+		}
+
+		int numTerminals = 0;
+		for (int pos = 0; pos < size; pos++) {
+			if (isTerminalAt(pos)) {
+				numTerminals++;
+			}
+		}
+
+		int[] functions = new int[size - numTerminals];
+		int[] terminals = new int[numTerminals];
+		int f = 0, t = 0;
+		for (int pos = 0; pos < size; pos++) {
+			if (isTerminalAt(pos)) {
+				terminals[t++] = pos;
+			} else {
+				functions[f++] = pos;
+			}
+		}
+
+		functionPositions = functions;
+		terminalPositions = terminals;
+	}
+
+	/**
+	 * Clears the node index used to choose crossover points. This must be
+	 * called when the tree is modified in place; setRoot() and
+	 * numberAndCountNodes() already do.
+	 */
+	public void clearNodeIndex() {
+		nodeIndex = null;
+		functionPositions = null;
+		terminalPositions = null;
+	}
+
+	/**
+	 * @param pos
+	 *            a node's position (its preorder number)
+	 * @return whether or not the node at the position is a terminal
+	 */
+	private boolean isTerminalAt(int pos) {
+		if (genome != null) {
+			return genome.isTerminal(pos);
+		} else if (nodeIndex != null) {
+			return nodeIndex[pos].isTerminal();
+		}
+		return root.getNodeAt(pos).isTerminal();
+	}
+
+	/**
+	 * The position-based version of crossPointGood().
+	 * 
+	 * @param pos
+	 *            the crossover point in this individual
+	 * @param donor
+	 *            the individual giving the subtree
+	 * @param donorPos
+	 *            the root of the subtree in the donor
+	 * @param context
+	 *            the Context
+	 * @return true if the crossover point is acceptable or false otherwise
+	 */
+	public boolean crossPointGood(int pos, Individual donor, int donorPos,
+			Context context) {
+		// If the crosspoint is the root, then it's just fine.
+		if (pos == 0) {
+			return true;
+		}
+
+		int depth, size, donorHeight, donorSize;
+		if (genome != null) {
+			depth = genome.getDepth(pos);
+			size = genome.getSize(pos);
+			donorHeight = donor.getGenome().depthFrom(donorPos);
+			donorSize = donor.getGenome().getSize(donorPos);
+		} else {
+			depth = root.getDepthAt(pos);
+			size = root.getNodeAt(pos).getSubtreeSize();
+			Node subtree = donor.getRoot().getNodeAt(donorPos);
+			donorHeight = subtree.getSubtreeHeight();
+			donorSize = subtree.getSubtreeSize();
+		}
+
+		// Otherwise, just make sure that the max depth/size aren't violated
+		boolean depthGood = depth + donorHeight <= context.getConfig()
+				.getMaxDepth();
+
+		boolean sizeGood = (numNodes - size) + donorSize <= context
+				.getConfig().getMaxSize();
+
+		return (depthGood && sizeGood);
+	}
+
+	/**
+	 * Creates the child of a position-based crossover: a copy of this
+	 * individual with the subtree at the given position replaced by the
+	 * donor's subtree at the given position. LINEAR individuals splice their
+	 * arrays; PERSISTENT individuals copy only the path from the root to the
+	 * crossover point, sharing the rest of the tree and the donor's subtree.
+	 * 
+	 * @return the child
+	 * @throws CloneNotSupportedException
+	 */
+	private Individual crossChild(int pos, Individual donor, int donorPos)
+			throws CloneNotSupportedException {
+		Individual child = new Individual();
+
+		if (genome != null) {
+			child.setGenome(genome.splice(pos, donor.getGenome(), donorPos));
+		} else {
+			child.setRoot(root.replaceAt(pos,
+					donor.getRoot().getNodeAt(donorPos)));
+			child.setIsPersistent(true);
+		}
+
+		return child;
+	}
+
+	/**
+	 * Subtree crossover for LINEAR and PERSISTENT individuals, choosing and
+	 * checking the crossover points exactly as subtreeCrossover() does, but by
+	 * position instead of through node numbers and parent pointers, which
+	 * these individuals don't keep. A TREE parent2 is linearized for crossover
+	 * with a LINEAR individual, so both children are LINEAR.
+	 * 
+	 * @param parent2
+	 *            the individual to crossover with this individual
+	 * @param context
+	 *            the Context for the run
+	 * @return an array of the two children that were produced
+	 * @throws CloneNotSupportedException
+	 */
+	public Individual[] pointCrossover(Individual parent2, Context context)
+			throws CloneNotSupportedException {
+		Individual children[] = new Individual[2];
+		boolean p1CrossPointGood = false, p2CrossPointGood = false;
+		boolean child1IsCopy = false, child2IsCopy = false;
+		int p1CrossPoint = 0, p2CrossPoint = 0;
+
+		Individual other = parent2;
+		if (isLinear() && !parent2.isLinear()) {
+			other = parent2.lightClone();
+			other.linearize(genome.getPrimitives());
+		}
+
+		for (int i = 0; i < context.getConfig().getMaxCrossAttempts()
+				&& (!p1CrossPointGood && !p2CrossPointGood); i++) {
+
+			// Get a point in p1
+			if (!p1CrossPointGood) {
+				p1CrossPoint = getRandomPoint(context);
+			}
+
+			// Get a point in p2
+			if (!p2CrossPointGood) {
+				p2CrossPoint = other.getRandomPoint(context);
+			}
+
+			p1CrossPointGood = crossPointGood(p1CrossPoint, other,
+					p2CrossPoint, context);
+			p2CrossPointGood = other.crossPointGood(p2CrossPoint, this,
+					p1CrossPoint, context);
+		}
+
+		// Swap in the other subtree where the point is good, otherwise copy
+		// the parent.
+		if (p1CrossPointGood) {
+			children[0] = crossChild(p1CrossPoint, other, p2CrossPoint);
+		} else {
+			children[0] = this.lightClone();
+			child1IsCopy = true;
+		}
+
+		if (p2CrossPointGood) {
+			children[1] = other.crossChild(p2CrossPoint, this, p1CrossPoint);
+		} else {
+			children[1] = other.lightClone();
+			child2IsCopy = true;
+		}
+
+		children[0].numberAndCountNodes();
+		children[1].numberAndCountNodes();
+
+		children[0].setDepth(children[0].isLinear() ? children[0].getGenome()
+				.depth() : children[0].getRoot().getSubtreeHeight());
+		children[1].setDepth(children[1].isLinear() ? children[1].getGenome()
+				.depth() : children[1].getRoot().getSubtreeHeight());
+
+		// This better not ever happen!
+		if (children[0].getDepth() > context.getConfig().getMaxDepth()
+				|| children[1].getDepth() > context.getConfig().getMaxDepth()) {
+			logger.fatal("Max depth was exceeded by crossover! Exiting.");
+			logger.debug(String.format("cross points good? %b: %b",
+					p1CrossPointGood, p2CrossPointGood));
+			System.exit(1);
+		}
+
+		// Check if either cross point is the root node
+		if (p1CrossPoint == 0) {
+			this.isRootCrossPoint = true;
+		}
+		if (p2CrossPoint == 0) {
+			parent2.setIsRootCrossPoint(true);
+		}
+
+		// Set the tracking info
+		setTrackingInfo(this, parent2, children, child1IsCopy, child2IsCopy,
+				context.getConfig());
+
+		return children;
+	}
+
 	/**
 	 * Crosses the individual with the requested individual. Based on the ECJ
 	 * implementation, this tries at most max times to find an acceptable
@@ -450,6 +759,9 @@ public class Individual implements Cloneable, Comparable<Individual> {
 	 */
 	public Individual[] crossover(Individual parent2, Context context)
 			throws CloneNotSupportedException {
+		if (isLinear() || isPersistent) {
+			return pointCrossover(parent2, context);
+		}
 		return subtreeCrossover(parent2, context);
 	}
 
@@ -521,8 +833,13 @@ public class Individual implements Cloneable, Comparable<Individual> {
 	 * @return the node with the given node number.
 	 */
 	public Node findNode(int nodeNumber) {
+		// PERSISTENT trees aren't numbered, so go by position.
+		if (isPersistent) {
+			return root.getNodeAt(nodeNumber);
+		}
+
 		// Start at root and get the node. There's gotta be a better way.
-		Node ret = findNode(nodeNumber, root);
+		Node ret = findNode(nodeNumber, getRoot());
 
 		if (ret == null) {
 			logger.warn("NODE NOT FOUND!! RETURNING NULL.");
@@ -558,58 +875,121 @@ public class Individual implements Cloneable, Comparable<Individual> {
 	public List<Node> getAllNodes() {
 		List<Node> nodes = new ArrayList<Node>();
 
-		collectAllNodes(this.root, nodes);
+		collectAllNodes(getRoot(), nodes);
 
 		return nodes;
 	}
 
 	/**
-	 * Chooses a random node in this individual's tree.
+	 * Chooses a random node in this individual's tree. The nodes are indexed
+	 * by kind on the first call, so that later calls (until the tree changes)
+	 * take constant time.
 	 * 
 	 * @return a reference to the chosen node.
 	 */
 	public Node getRandomNode(Context context) {
-		// Do we select a function node or a terminal?
-		boolean doCrossFunc = context.nextBool(context.getConfig()
-				.getCrossFuncProbability());
-
-		// Let's get all the nodes into an array to save later expense
-		List<Node> allNodes = getAllNodes();
-
-		Node node = null;
-
-		while (node == null || (doCrossFunc && node.isTerminal())
-				|| (!doCrossFunc && !node.isTerminal())) {
+		int pos = getRandomPoint(context);
 
-			node = allNodes.get(context.randBetween(0, allNodes.size() - 1));
-
-			if (numNodes == 1) {
-				break;
-			}
+		// LINEAR individuals don't keep Node objects to index.
+		if (genome != null) {
+			return getRoot().getNodeAt(pos);
 		}
 
-		return node;
+		return nodeIndex[pos];
 	}
 
 	/**
-	 * Sets the given node to be the root of the tree.
+	 * Sets the given node to be the root of the tree. A LINEAR individual
+	 * becomes a TREE individual.
 	 * 
 	 * @param node
 	 *            a pointer to the node to set as the root
 	 */
 	public void setRoot(Node node) {
-
+		clearNodeIndex();
+		genome = null;
 		root = node;
 	}
 
 	/**
+	 * Returns the root of the tree. For a LINEAR individual this is a new
+	 * Node tree built from the genome on each call, so callers should hold on
+	 * to it rather than call this repeatedly, and changing it doesn't change
+	 * the individual.
+	 * 
 	 * @return the root of the tree
 	 */
 	public Node getRoot() {
+		if (genome != null) {
+			try {
+				return genome.toTree();
+			} catch (CloneNotSupportedException e) {
+				logger.fatal(e);
+				System.exit(1);
+			}
+		}
 
 		return root;
 	}
 
+	/**
+	 * Sets the given linear tree as the individual's genotype, making the
+	 * individual LINEAR.
+	 * 
+	 * @param genome
+	 *            the linear tree
+	 */
+	public void setGenome(LinearTree genome) {
+		clearNodeIndex();
+		root = null;
+		this.genome = genome;
+	}
+
+	/**
+	 * @return the individual's linear tree, or null if it isn't LINEAR
+	 */
+	public LinearTree getGenome() {
+		return genome;
+	}
+
+	/**
+	 * Sets whether or not the individual's tree is PERSISTENT, i.e. may share
+	 * nodes with other individuals.
+	 * 
+	 * @param isPersistent
+	 *            whether or not the tree is persistent
+	 */
+	public void setIsPersistent(boolean isPersistent) {
+		this.isPersistent = isPersistent;
+	}
+
+	/**
+	 * @return whether or not the individual's tree is PERSISTENT
+	 */
+	public boolean isPersistent() {
+		return isPersistent;
+	}
+
+	/**
+	 * @return whether or not the individual stores its tree as a LinearTree
+	 */
+	public boolean isLinear() {
+		return genome != null;
+	}
+
+	/**
+	 * Converts this individual's Node tree to a linear tree, which from then
+	 * on replaces it.
+	 * 
+	 * @param primitives
+	 *            the opcode table for the run
+	 */
+	public void linearize(Primitives primitives) {
+		if (genome == null) {
+			setGenome(LinearTree.fromTree(root, primitives));
+		}
+	}
+
 	/**
 	 * Sets the depth of the tree. Use with care!
 	 * 
@@ -648,10 +1028,19 @@ public class Individual implements Cloneable, Comparable<Individual> {
 
 	/**
 	 * Returns a string representation of the individual, which is just the
-	 * lisp-style representation of the tree just like ECJ does it.
+	 * lisp-style representation of the tree just like ECJ does it. The string
+	 * is cached until the tree changes (as told by its structural hash).
 	 */
 	public String toString() {
-		return root.subtreeToString();
+		// The string is still good if the tree hasn't changed since.
+		long hash = getStructuralHash();
+		if (genotype == null || hash != genotypeHash) {
+			genotype = (genome != null) ? genome.toString() : root
+					.subtreeToString();
+			genotypeHash = hash;
+		}
+
+		return genotype;
 	}
 
 	/**
@@ -669,91 +1058,7 @@ public class Individual implements Cloneable, Comparable<Individual> {
 	 */
 	public static Individual fromString(String genotype, Config config)
 			throws CloneNotSupportedException {
-		Individual ind = new Individual();
-		Stack<Node> nodeStack = new Stack<Node>();
-		String[] nodeStrings = genotype.split(" ");
-
-		for (int i = 0; i < nodeStrings.length; i++) {
-			String nodeString = nodeStrings[i].replaceAll("\\(|\\)", "");
-			Node mappedNode = null;
-
-			// First see if it's a mapped node
-			mappedNode = config.getMappedNode(nodeString);
-
-			// Otherwise, see if the node is a constant node
-			if (mappedNode == null) {
-				try {
-					double constant = Double.parseDouble(nodeString);
-					mappedNode = new R();
-					((R) mappedNode).setValue(constant);
-				} catch (Exception e) {
-					// Do nothing.
-				}
-			}
-
-			if (mappedNode != null) {
-				// Grab a clone for the individual to own
-				Node node = mappedNode.clone();
-				node.setId();
-				node.setMemId(node.getId());
-				node.setNodeNumber(i);
-
-				// Either we're at the beginning or we have a single node tree.
-				if (i == 0) {
-					ind.setRoot(node);
-
-					// Single node tree
-					if (node.isTerminal()) {
-						break;
-					}
-
-					// Push the node onto the stack
-					else {
-						nodeStack.push(node);
-					}
-				}
-
-				// Now we need to pop from the stack and keep building
-				else {
-					// First pop the current node and see if it's done
-					Node currentNode = nodeStack.pop();
-
-					int childIndex = 0;
-					for (childIndex = 0; childIndex < currentNode
-							.getNumChildren(); childIndex++) {
-						if (currentNode.getChild(childIndex) == null) {
-							currentNode.setChild(childIndex, node);
-							node.setParent(currentNode);
-
-							break;
-						}
-					}
-
-					// Push the current node back on if we're not done
-					if (childIndex < currentNode.getNumChildren() - 1) {
-						nodeStack.push(currentNode);
-					}
-
-					// If the next node is a function, push it as well
-					if (!node.isTerminal()) {
-						nodeStack.push(node);
-					}
-				}
-			} else {
-				logger.error(nodeStrings[i].replaceAll("\\(|\\)", "")
-						+ " is not mapped. Returning null!");
-				return null;
-			}
-
-		}
-
-		// Set the number of nodes
-		ind.setNumNodes(nodeStrings.length);
-
-		// Set the depth
-		ind.setDepth(ind.getRoot().depthFrom());
-
-		return ind;
+		return new GenotypeParser(config).parse(genotype);
 	}
 
 	/**
@@ -798,6 +1103,20 @@ public class Individual implements Cloneable, Comparable<Individual> {
 	 * modification to the individual's tree.
 	 */
 	public void numberAndCountNodes() {
+		clearNodeIndex();
+
+		// Linear trees are always numbered: a node's number is its position.
+		if (genome != null) {
+			numNodes = genome.size();
+			return;
+		}
+
+		// Shared nodes can't hold a number; PERSISTENT trees go by position.
+		if (isPersistent) {
+			numNodes = root.getSubtreeSize();
+			return;
+		}
+
 		numNodes = 0;
 		numberAndCountNodes(root);
 	}
@@ -811,7 +1130,27 @@ public class Individual implements Cloneable, Comparable<Individual> {
 	 * @return true if the trees are equal or false otherwise
 	 */
 	public boolean treesEqual(Individual other) {
-		return root.subtreeToString().equals(other.getRoot().subtreeToString());
+		// Trees with different hashes can't be equal.
+		if (getStructuralHash() != other.getStructuralHash()) {
+			return false;
+		}
+
+		if (genome == null && other.genome == null) {
+			return root.subtreeEquals(other.root);
+		}
+		return toString().equals(other.toString());
+	}
+
+	/**
+	 * @return the structural hash of the individual's tree (see
+	 *         Node.getStructuralHash()), which is the same for equal trees
+	 *         whatever their representation
+	 */
+	public long getStructuralHash() {
+		if (genome != null) {
+			return genome.getStructuralHash();
+		}
+		return root.getStructuralHash();
 	}
 
 	/**
@@ -820,7 +1159,14 @@ public class Individual implements Cloneable, Comparable<Individual> {
 	 */
 	public Individual clone() throws CloneNotSupportedException {
 		Individual newIndividual = (Individual) super.clone();
-		newIndividual.setRoot(root.clone());
+		if (genome != null) {
+			newIndividual.setGenome(genome.copy());
+		} else if (isPersistent) {
+			// Nothing modifies a persistent tree, so the copy can share it.
+			newIndividual.setRoot(root);
+		} else {
+			newIndividual.setRoot(root.clone());
+		}
 		newIndividual.setNumNodes(numNodes);
 		newIndividual.setDepth(depth);
 		newIndividual.setFitness(fitness);
@@ -829,7 +1175,7 @@ public class Individual implements Cloneable, Comparable<Individual> {
 		newIndividual.setIsEvaluated(isEvaluated);
 		newIndividual.setIsOptimal(isOptimal);
 		newIndividual.setTag(tag);
-		newIndividual.setId(id);
+		newIndividual.setId(id, idGeneration);
 		newIndividual.setCurrentLayer(currentLayer);
 		newIndividual.numberAndCountNodes();
 
@@ -844,7 +1190,14 @@ public class Individual implements Cloneable, Comparable<Individual> {
 	 */
 	public Individual lightClone() throws CloneNotSupportedException {
 		Individual newIndividual = (Individual) super.clone();
-		newIndividual.setRoot(root.clone());
+		if (genome != null) {
+			newIndividual.setGenome(genome.copy());
+		} else if (isPersistent) {
+			// Nothing modifies a persistent tree, so the copy can share it.
+			newIndividual.setRoot(root);
+		} else {
+			newIndividual.setRoot(root.clone());
+		}
 		newIndividual.setNumNodes(numNodes);
 		newIndividual.setDepth(depth);
 		newIndividual.setFitness(fitness);
@@ -916,12 +1269,11 @@ public class Individual implements Cloneable, Comparable<Individual> {
 
 		Individual ind = (Individual) other;
 
-		return new EqualsBuilder().append(id, ind.getId()).isEquals();
+		return id == ind.getId();
 	}
 
 	@Override
 	public int hashCode() {
-		return new HashCodeBuilder(17, 37).append(id).toHashCode();
-
+		return (int) (id ^ (id >>> 32));
 	}
 }
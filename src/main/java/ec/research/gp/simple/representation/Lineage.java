@@ -0,0 +1,24 @@
+package ec.research.gp.simple.representation;
+
+/**
+ * The lineage IDs of a node, as defined by McPhee/Hopper, GECCO '99: its ID,
+ * memID and mutID. Nodes only carry one of these when lineage is tracked (see
+ * Config.trackLineage), and it's never modified, so clones can share it.
+ *
+ */
+final class Lineage {
+	// The node's ID.
+	final long id;
+
+	// The node's memID.
+	final long memId;
+
+	// The node's mutID.
+	final long mutId;
+
+	Lineage(long id, long memId, long mutId) {
+		this.id = id;
+		this.memId = memId;
+		this.mutId = mutId;
+	}
+}
@@ -0,0 +1,491 @@
+package ec.research.gp.simple.representation;
+
+import java.util.List;
+
+import ec.research.gp.simple.regression.nodes.R;
+
+/**
+ * A tree stored as flat arrays instead of a graph of {@link Node} objects: the
+ * nodes' opcodes (indexes in the run's {@link Primitives}) in prefix order,
+ * the size of the subtree rooted at each node, and a pool holding the values
+ * of the R nodes in the order they appear. A node's subtree is the range
+ * [i, i + size(i)) of the arrays, and its first child (if any) is at i + 1, so
+ * subtree crossover is an array splice and point mutation a write in place.
+ *
+ * Since the constants are pooled in prefix order too, the constants of a
+ * subtree are also a contiguous range of the pool.
+ *
+ */
+public class LinearTree {
+	// The table the opcodes index.
+	private final Primitives primitives;
+
+	// The opcodes, in prefix order.
+	private int[] code;
+
+	// The size of the subtree rooted at each node.
+	private int[] sizes;
+
+	// The values of the R nodes, in prefix order.
+	private double[] constants;
+
+	// The structural hash of the tree, valid if isHashed is set.
+	private long structuralHash;
+	private boolean isHashed;
+
+	private LinearTree(Primitives primitives, int[] code, int[] sizes,
+			double[] constants) {
+		this.primitives = primitives;
+		this.code = code;
+		this.sizes = sizes;
+		this.constants = constants;
+	}
+
+	/**
+	 * Flattens the tree rooted at the given node.
+	 *
+	 * @param root
+	 *            the root of the tree
+	 * @param primitives
+	 *            the table of opcodes for the run
+	 * @return the linear tree
+	 * @throws IllegalArgumentException
+	 *             if the tree has nodes which aren't in the table
+	 */
+	public static LinearTree fromTree(Node root, Primitives primitives) {
+		List<Node> nodes = root.subtreeFrom();
+		int size = nodes.size();
+		int numConstants = 0;
+		for (Node node : nodes) {
+			if (node instanceof R) {
+				numConstants++;
+			}
+		}
+
+		LinearTree tree = new LinearTree(primitives, new int[size],
+				new int[size], new double[numConstants]);
+		tree.flatten(root, 0, 0);
+
+		return tree;
+	}
+
+	/**
+	 * Recursive helper for fromTree() which writes the subtree rooted at the
+	 * given node at the given positions.
+	 *
+	 * @param node
+	 *            the current node
+	 * @param pos
+	 *            the node's position in the code
+	 * @param constPos
+	 *            the position in the pool of the subtree's first constant
+	 * @return the position of the next constant after the subtree
+	 */
+	private int flatten(Node node, int pos, int constPos) {
+		int opcode = this.primitives.opcodeOf(node);
+		this.code[pos] = opcode;
+
+		if (this.primitives.isConstant(opcode)) {
+			this.constants[constPos++] = ((R) node).getValue();
+		}
+
+		int next = pos + 1;
+		for (int i = 0; i < node.getNumChildren(); i++) {
+			constPos = flatten(node.getChild(i), next, constPos);
+			next += this.sizes[next];
+		}
+		this.sizes[pos] = next - pos;
+
+		return constPos;
+	}
+
+	/**
+	 * Builds the Node tree equivalent to this tree, with every node numbered
+	 * and linked to its parent. The nodes are new objects, so modifying them
+	 * doesn't change this tree.
+	 *
+	 * @return the root of the new tree
+	 * @throws CloneNotSupportedException
+	 */
+	public Node toTree() throws CloneNotSupportedException {
+		Node[] built = new Node[1];
+		build(0, 0, built);
+
+		return built[0];
+	}
+
+	/**
+	 * Recursive helper for toTree().
+	 *
+	 * @param pos
+	 *            the position of the node to build
+	 * @param constPos
+	 *            the position in the pool of the subtree's first constant
+	 * @param out
+	 *            holds the built node on return
+	 * @return the position of the next constant after the subtree
+	 * @throws CloneNotSupportedException
+	 */
+	private int build(int pos, int constPos, Node[] out)
+			throws CloneNotSupportedException {
+		int opcode = this.code[pos];
+		Node node = this.primitives.getNode(opcode).lightClone();
+		node.setNodeNumber(pos);
+
+		if (this.primitives.isConstant(opcode)) {
+			((R) node).setValue(this.constants[constPos++]);
+		}
+
+		int child = pos + 1;
+		for (int i = 0; i < node.getNumChildren(); i++) {
+			constPos = build(child, constPos, out);
+			node.setChild(i, out[0]);
+			out[0].setParent(node);
+			child += this.sizes[child];
+		}
+
+		out[0] = node;
+		return constPos;
+	}
+
+	/**
+	 * @return a copy of this tree, which can be modified independently
+	 */
+	public LinearTree copy() {
+		LinearTree copy = new LinearTree(this.primitives, this.code.clone(),
+				this.sizes.clone(), this.constants.clone());
+		copy.structuralHash = this.structuralHash;
+		copy.isHashed = this.isHashed;
+
+		return copy;
+	}
+
+	/**
+	 * @return the table of opcodes used by this tree
+	 */
+	public Primitives getPrimitives() {
+		return this.primitives;
+	}
+
+	/**
+	 * @return the number of nodes in the tree
+	 */
+	public int size() {
+		return this.code.length;
+	}
+
+	/**
+	 * @param pos
+	 *            the node's position (its preorder number)
+	 * @return the opcode of the node
+	 */
+	public int getOpcode(int pos) {
+		return this.code[pos];
+	}
+
+	/**
+	 * @param pos
+	 *            the node's position (its preorder number)
+	 * @return the number of nodes in the subtree rooted at the node
+	 */
+	public int getSize(int pos) {
+		return this.sizes[pos];
+	}
+
+	/**
+	 * @param pos
+	 *            the node's position (its preorder number)
+	 * @return whether or not the node is a terminal
+	 */
+	public boolean isTerminal(int pos) {
+		return this.primitives.isTerminal(this.code[pos]);
+	}
+
+	/**
+	 * @param pos
+	 *            the position of an R node
+	 * @return the value of the constant
+	 */
+	public double getConstant(int pos) {
+		return this.constants[constantIndex(pos)];
+	}
+
+	/**
+	 * @param index
+	 *            an index in the constant pool
+	 * @return the value of the index-th R node (in prefix order)
+	 */
+	double getPooledConstant(int index) {
+		return this.constants[index];
+	}
+
+	/**
+	 * Sets the value of an R node.
+	 *
+	 * @param pos
+	 *            the position of an R node
+	 * @param value
+	 *            the new value
+	 */
+	public void setConstant(int pos, double value) {
+		this.constants[constantIndex(pos)] = value;
+		this.isHashed = false;
+	}
+
+	/**
+	 * Replaces the node at the given position with one of the same arity,
+	 * keeping its subtree. A new R node gets the value 0.0 until its constant
+	 * is set.
+	 *
+	 * @param pos
+	 *            the node's position (its preorder number)
+	 * @param opcode
+	 *            the opcode of the new node
+	 * @throws IllegalArgumentException
+	 *             if the arities don't match
+	 */
+	public void setOpcode(int pos, int opcode) {
+		int oldOpcode = this.code[pos];
+		if (this.primitives.getArity(oldOpcode) != this.primitives
+				.getArity(opcode)) {
+			throw new IllegalArgumentException("Arity of "
+					+ this.primitives.getNode(opcode) + " doesn't match "
+					+ this.primitives.getNode(oldOpcode));
+		}
+
+		boolean wasConstant = this.primitives.isConstant(oldOpcode);
+		boolean isConstant = this.primitives.isConstant(opcode);
+
+		// Keep the pool in step if a constant comes or goes.
+		if (wasConstant != isConstant) {
+			int index = constantIndex(pos);
+			int newLength = this.constants.length + (isConstant ? 1 : -1);
+			double[] newConstants = new double[newLength];
+
+			System.arraycopy(this.constants, 0, newConstants, 0, index);
+			if (isConstant) {
+				System.arraycopy(this.constants, index, newConstants,
+						index + 1, this.constants.length - index);
+			} else {
+				System.arraycopy(this.constants, index + 1, newConstants,
+						index, newLength - index);
+			}
+			this.constants = newConstants;
+		}
+
+		this.code[pos] = opcode;
+		this.isHashed = false;
+	}
+
+	/**
+	 * @return the structural hash of the tree, the same as
+	 *         {@link Node#getStructuralHash()} gives for the equivalent Node
+	 *         tree
+	 */
+	public long getStructuralHash() {
+		if (!this.isHashed) {
+			long[] hash = new long[1];
+			hash(0, 0, hash);
+			this.structuralHash = hash[0];
+			this.isHashed = true;
+		}
+
+		return this.structuralHash;
+	}
+
+	/**
+	 * Recursive helper for getStructuralHash().
+	 *
+	 * @param pos
+	 *            the position of the node to hash
+	 * @param constPos
+	 *            the position in the pool of the subtree's first constant
+	 * @param out
+	 *            holds the subtree's hash on return
+	 * @return the position of the next constant after the subtree
+	 */
+	private int hash(int pos, int constPos, long[] out) {
+		int opcode = this.code[pos];
+		long hash;
+
+		// An R node's label is its value (see R.labelHash()).
+		if (this.primitives.isConstant(opcode)) {
+			hash = Node.mixHash(Double
+					.doubleToLongBits(this.constants[constPos++]));
+		} else {
+			hash = Node.mixHash(this.primitives.getLabelHash(opcode));
+		}
+
+		int child = pos + 1;
+		for (int i = 0; i < this.primitives.getArity(opcode); i++) {
+			constPos = hash(child, constPos, out);
+			hash = Node.foldHash(hash, out[0]);
+			child += this.sizes[child];
+		}
+
+		out[0] = hash;
+		return constPos;
+	}
+
+	/**
+	 * @return the depth of the tree (0 for a single node)
+	 */
+	public int depth() {
+		return depthFrom(0);
+	}
+
+	/**
+	 * @param pos
+	 *            the node's position (its preorder number)
+	 * @return the depth of the subtree rooted at the node
+	 */
+	public int depthFrom(int pos) {
+		int maxDepth = 0;
+		int arity = this.primitives.getArity(this.code[pos]);
+
+		int child = pos + 1;
+		for (int i = 0; i < arity; i++) {
+			maxDepth = Math.max(maxDepth, 1 + depthFrom(child));
+			child += this.sizes[child];
+		}
+
+		return maxDepth;
+	}
+
+	/**
+	 * @param pos
+	 *            the node's position (its preorder number)
+	 * @return the node's distance from the root (0 for the root)
+	 */
+	public int getDepth(int pos) {
+		int depth = 0;
+		int node = 0;
+
+		// Walk down from the root into the child whose range holds pos.
+		while (node != pos) {
+			int child = node + 1;
+			while (child + this.sizes[child] <= pos) {
+				child += this.sizes[child];
+			}
+			node = child;
+			depth++;
+		}
+
+		return depth;
+	}
+
+	/**
+	 * Creates a new tree where the subtree at the given position is replaced
+	 * by a copy of the donor's subtree at the given position. Neither this tree
+	 * nor the donor is modified.
+	 *
+	 * @param pos
+	 *            the position of the subtree to replace in this tree
+	 * @param donor
+	 *            the tree holding the subtree to copy in
+	 * @param donorPos
+	 *            the position of the subtree in the donor
+	 * @return the new tree
+	 */
+	public LinearTree splice(int pos, LinearTree donor, int donorPos) {
+		int oldSize = this.sizes[pos];
+		int newSize = donor.sizes[donorPos];
+		int tail = this.code.length - pos - oldSize;
+		int delta = newSize - oldSize;
+
+		int[] newCode = new int[this.code.length + delta];
+		System.arraycopy(this.code, 0, newCode, 0, pos);
+		System.arraycopy(donor.code, donorPos, newCode, pos, newSize);
+		System.arraycopy(this.code, pos + oldSize, newCode, pos + newSize,
+				tail);
+
+		int[] newSizes = new int[newCode.length];
+		System.arraycopy(this.sizes, 0, newSizes, 0, pos);
+		System.arraycopy(donor.sizes, donorPos, newSizes, pos, newSize);
+		System.arraycopy(this.sizes, pos + oldSize, newSizes, pos + newSize,
+				tail);
+
+		// The subtrees that held the replaced one (its ancestors) change size.
+		for (int i = 0; i < pos; i++) {
+			if (i + this.sizes[i] > pos) {
+				newSizes[i] += delta;
+			}
+		}
+
+		// The subtrees' constants are contiguous in the pools, too.
+		int constStart = constantIndex(pos);
+		int oldConsts = constantIndex(pos + oldSize) - constStart;
+		int donorStart = donor.constantIndex(donorPos);
+		int newConsts = donor.constantIndex(donorPos + newSize) - donorStart;
+		int constTail = this.constants.length - constStart - oldConsts;
+
+		double[] newConstants = new double[this.constants.length
+				+ newConsts - oldConsts];
+		System.arraycopy(this.constants, 0, newConstants, 0, constStart);
+		System.arraycopy(donor.constants, donorStart, newConstants,
+				constStart, newConsts);
+		System.arraycopy(this.constants, constStart + oldConsts,
+				newConstants, constStart + newConsts, constTail);
+
+		return new LinearTree(this.primitives, newCode, newSizes,
+				newConstants);
+	}
+
+	/**
+	 * @param pos
+	 *            a position in the code (or the code's length)
+	 * @return the number of constants before the given position, i.e. the
+	 *         index in the pool of the first constant from there on
+	 */
+	private int constantIndex(int pos) {
+		int index = 0;
+		for (int i = 0; i < pos; i++) {
+			if (this.primitives.isConstant(this.code[i])) {
+				index++;
+			}
+		}
+
+		return index;
+	}
+
+	/**
+	 * Returns the lisp-style representation of the tree, the same as
+	 * {@link Node#subtreeToString()} gives for the equivalent Node tree.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder buffer = new StringBuilder();
+		int constPos = 0;
+
+		// Counts the children still to come for each open function.
+		int[] pending = new int[this.code.length];
+		int open = 0;
+
+		for (int pos = 0; pos < this.code.length; pos++) {
+			int opcode = this.code[pos];
+
+			if (pos > 0) {
+				buffer.append(" ");
+			}
+
+			if (this.primitives.isConstant(opcode)) {
+				buffer.append(Double.toString(this.constants[constPos++]));
+			} else if (this.primitives.isTerminal(opcode)) {
+				buffer.append(this.primitives.getNode(opcode).toString());
+			} else {
+				buffer.append("(").append(
+						this.primitives.getNode(opcode).toString());
+				pending[open++] = this.primitives.getArity(opcode);
+				continue;
+			}
+
+			// Close every function whose last child this was.
+			while (open > 0 && --pending[open - 1] == 0) {
+				buffer.append(")");
+				open--;
+			}
+		}
+
+		return buffer.toString();
+	}
+}
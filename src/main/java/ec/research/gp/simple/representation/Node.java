@@ -1,12 +1,13 @@
 package ec.research.gp.simple.representation;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.UUID;
 
 import org.apache.log4j.Logger;
 
 import ec.research.gp.simple.problem.Problem;
+import ec.research.gp.simple.util.IdGenerator;
 
 
 
@@ -44,97 +45,114 @@ public abstract class Node implements Cloneable {
 	protected Node children[];
 
 	/**
-	 * Holds the ID of the node, as defined by McPhee/Hopper, GECCO '99 .
+	 * Holds the node's ID, memID and mutID, as defined by McPhee/Hopper, GECCO
+	 * '99, or null if they haven't been set (e.g. lineage isn't tracked).
 	 */
-	private UUID id;
+	private Lineage lineage;
+
 	/**
-	 * Holds the memID of the node, as defined by McPhee/Hopper, GECCO '99 .
+	 * Whether or not this node was the crossover point.
 	 */
-	private UUID memId;
+	private boolean isCrossPoint;
 
 	/**
-	 * Holds the "mutant ID, which gets generated when a mutation occurs."
+	 * The number of nodes in the subtree rooted at this node. Kept up to date
+	 * by setChild() (and the swaps and clones), following the parent pointers
+	 * to the root.
 	 */
-	private UUID mutId;
+	private int subtreeSize = 1;
 
 	/**
-	 * Whether or not this node was the crossover point.
+	 * The height of the subtree rooted at this node (0 for a terminal). Kept up
+	 * to date along with subtreeSize.
 	 */
-	private boolean isCrossPoint;
+	private int subtreeHeight;
 
 	/**
-	 * Sets the node's ID to a random UUID.
+	 * The structural hash of the subtree rooted at this node (see
+	 * getStructuralHash()), valid if isHashed is set. Kept up to date along
+	 * with subtreeSize.
+	 */
+	private long structuralHash;
+	private boolean isHashed;
+
+	/**
+	 * Sets the node's ID to a new ID.
 	 */
 	public void setId() {
-		this.id = UUID.randomUUID();
+		setId(IdGenerator.nextId());
 	}
 
 	/**
-	 * Sets the node's ID to the given UUID.
+	 * Sets the node's ID to the given ID.
 	 * 
 	 * @param id
-	 *            the UUID to which to set the node's ID
+	 *            the ID to which to set the node's ID
 	 */
-	public void setId(UUID id) {
-		this.id = id;
+	public void setId(long id) {
+		this.lineage = new Lineage(id, getMemId(), getMutId());
 	}
 
 	/**
-	 * Sets the node's memID to a random UUID.
+	 * Sets the node's memID to a new ID.
 	 */
 	public void setMemId() {
-		this.memId = UUID.randomUUID();
+		setMemId(IdGenerator.nextId());
 	}
 
 	/**
-	 * Sets the node's memID to the given UUID.
+	 * Sets the node's memID to the given ID.
 	 * 
 	 * @param memId
-	 *            the UUID to which to set the node's memID
+	 *            the ID to which to set the node's memID
 	 */
-	public void setMemId(UUID memId) {
-		this.memId = memId;
+	public void setMemId(long memId) {
+		this.lineage = new Lineage(getId(), memId, getMutId());
 	}
 
 	/**
-	 * Sets the node's mutID to a random UUID.
+	 * Sets the node's mutID to a new ID.
 	 */
 	public void setMutId() {
-		this.mutId = UUID.randomUUID();
+		setMutId(IdGenerator.nextId());
 	}
 
 	/**
-	 * Sets the node's mutID to the given UUID.
+	 * Sets the node's mutID to the given ID.
 	 * 
 	 * @param mutId
-	 *            the UUID to which to set the node's mutID
+	 *            the ID to which to set the node's mutID
 	 */
-	public void setMutId(UUID mutId) {
-		this.mutId = mutId;
+	public void setMutId(long mutId) {
+		this.lineage = new Lineage(getId(), getMemId(), mutId);
 	}
 
 	/**
 	 * 
-	 * @return the node's ID, as defined by McPhee/Hopper, GECCO '99.
+	 * @return the node's ID, as defined by McPhee/Hopper, GECCO '99 (or
+	 *         IdGenerator.NO_ID if it isn't set).
 	 */
-	public UUID getId() {
-		return this.id;
+	public long getId() {
+		return (this.lineage == null) ? IdGenerator.NO_ID : this.lineage.id;
 	}
 
 	/**
 	 * 
-	 * @return the node's memID, as defined by McPhee/Hopper, GECCO '99.
+	 * @return the node's memID, as defined by McPhee/Hopper, GECCO '99 (or
+	 *         IdGenerator.NO_ID if it isn't set).
 	 */
-	public UUID getMemId() {
-		return this.memId;
+	public long getMemId() {
+		return (this.lineage == null) ? IdGenerator.NO_ID
+				: this.lineage.memId;
 	}
 
 	/**
 	 * 
-	 * @return the nodes mutId.
+	 * @return the nodes mutId (or IdGenerator.NO_ID if it isn't set).
 	 */
-	public UUID getMutId() {
-		return this.mutId;
+	public long getMutId() {
+		return (this.lineage == null) ? IdGenerator.NO_ID
+				: this.lineage.mutId;
 	}
 
 	/**
@@ -159,96 +177,90 @@ public abstract class Node implements Cloneable {
 	}
 
 	/**
-	 * Private helper that prints a lisp-style tree starting at the subtree
-	 * rooted at this node, basically the same way that ECJ does it.
+	 * Writes the lisp-style tree starting at the subtree rooted at this node,
+	 * basically the same way that ECJ does it, to the given output. Each node
+	 * is written once, straight to the output, so this takes time linear in
+	 * the size of the tree.
 	 * 
-	 * @param buffer
-	 *            the StringBuilder holding the current string as we traverse
-	 * @return a lisp-style tree starting at the subtree rooted at this node,
-	 *         basically the same way that ECJ does it.
+	 * @param out
+	 *            where to write the tree
+	 * @throws IOException
+	 *             if writing to the output fails
 	 */
-	private String subtreeToString(StringBuilder buffer) {
+	public void appendSubtree(Appendable out) throws IOException {
 		// Once we've reached the terminal in this branch just append the
 		// toString
 		if (isTerminal) {
-			buffer.append(toString());
-			return buffer.toString();
+			out.append(toString());
 		} else {
 			// Otherwise, append toString and keep traversing on all the
 			// children
-			buffer.append("(" + toString());
+			out.append('(').append(toString());
 
 			for (int i = 0; i < numChildren; i++) {
-				buffer.append(" ");
-				children[i].subtreeToString(buffer);
+				out.append(' ');
+				children[i].appendSubtree(out);
 			}
-			buffer.append(")");
+			out.append(')');
 		}
-		return buffer.toString();
 	}
 
 	/**
-	 * Creates the in-fix expression as in ECJ's pseudo-C style method.
+	 * Private helper that builds the in-fix expression as in ECJ's pseudo-C
+	 * style method.
 	 * 
 	 * @param buffer
-	 * @return
+	 *            the StringBuilder holding the current string as we traverse
 	 */
-	private String subtreeToCString(StringBuilder buffer) {
+	private void subtreeToCString(StringBuilder buffer) {
 		if (this.isTerminal) {
 			buffer.append(toString());
 		} else if (this.numChildren == 1) {
-			buffer.append(toString() + "(");
+			buffer.append(toString()).append('(');
 			this.children[0].subtreeToCString(buffer);
-			buffer.append(")");
+			buffer.append(')');
 		} else if (this.numChildren == 2) {
-			buffer.append("(");
+			buffer.append('(');
 			this.children[0].subtreeToCString(buffer);
-			buffer.append(" " + toString() + " ");
+			buffer.append(' ').append(toString()).append(' ');
 			this.children[1].subtreeToCString(buffer);
-			buffer.append(")");
+			buffer.append(')');
 		} else {
-			buffer.append(toString() + "(");
+			buffer.append(toString()).append('(');
 			for (int i = 0; i < this.numChildren; i++) {
 				if (i > 0) {
 					buffer.append(", ");
 				}
 				this.children[i].subtreeToCString(buffer);
 			}
-			buffer.append(")");
+			buffer.append(')');
 		}
-
-		return buffer.toString();
 	}
 
 	/**
-	 * Private helper that prints a lisp-style tree starting at the subtree
+	 * Private helper that builds a lisp-style tree starting at the subtree
 	 * rooted at this node, basically the same way that ECJ does it except using
 	 * the node numbers instead of the node's toString() value.
 	 * 
 	 * @param buffer
 	 *            the StringBuilder holding the current string as we traverse
-	 * @return a lisp-style tree starting at the subtree rooted at this node,
-	 *         basically the same way that ECJ does it except using the node
-	 *         numbers instead of the node's toString() value.
 	 */
-	private String subtreeToNumberedString(StringBuilder buffer) {
+	private void subtreeToNumberedString(StringBuilder buffer) {
 		// Once we've reached the terminal in this branch just append the
-		// toString
+		// number
 		if (isTerminal) {
 			buffer.append(nodeNumber);
-			return buffer.toString();
 		} else {
-			// Otherwise, append toString and keep traversing on all the
+			// Otherwise, append the number and keep traversing on all the
 			// children
-			buffer.append("(" + nodeNumber);
+			buffer.append('(').append(nodeNumber);
 
 			for (int i = 0; i < numChildren; i++) {
-				buffer.append(" ");
+				buffer.append(' ');
 				children[i].subtreeToNumberedString(buffer);
 			}
-			buffer.append(")");
+			buffer.append(')');
 		}
-		return buffer.toString();
 	}
 
 	/**
@@ -367,7 +379,16 @@ public abstract class Node implements Cloneable {
 	 *         basically the same way that ECJ does it.
 	 */
 	public String subtreeToString() {
-		return subtreeToString(new StringBuilder());
+		StringBuilder buffer = new StringBuilder(4 * this.subtreeSize);
+
+		try {
+			appendSubtree(buffer);
+		} catch (IOException e) {
+			// A StringBuilder doesn't throw.
+			throw new IllegalStateException(e);
+		}
+
+		return buffer.toString();
 	}
 
 	/**
@@ -376,7 +397,10 @@ public abstract class Node implements Cloneable {
 	 *         numbers instead of their toString() values.
 	 */
 	public String subtreeToNumberedString() {
-		return subtreeToNumberedString(new StringBuilder());
+		StringBuilder buffer = new StringBuilder();
+		subtreeToNumberedString(buffer);
+
+		return buffer.toString();
 	}
 
 	/**
@@ -385,7 +409,10 @@ public abstract class Node implements Cloneable {
 	 * @return
 	 */
 	public String subtreeToCString() {
-		return subtreeToCString(new StringBuilder());
+		StringBuilder buffer = new StringBuilder();
+		subtreeToCString(buffer);
+
+		return buffer.toString();
 	}
 
 	/**
@@ -476,6 +503,183 @@ public abstract class Node implements Cloneable {
 		return subtreeFrom().size();
 	}
 
+	/**
+	 * Returns the cached size of the subtree rooted at this node, which is the
+	 * same as sizeFrom() without the traversal. Only trees whose children have
+	 * their parent pointers set are kept up to date (as all trees built by
+	 * the GP are); use sizeFrom() for anything else.
+	 * 
+	 * @return the number of nodes in the subtree rooted at this node
+	 */
+	public int getSubtreeSize() {
+		return this.subtreeSize;
+	}
+
+	/**
+	 * Returns the cached height of the subtree rooted at this node, which is
+	 * the same as depthFrom() without the traversal (see getSubtreeSize()).
+	 * 
+	 * @return the depth of the subtree rooted at this node
+	 */
+	public int getSubtreeHeight() {
+		return this.subtreeHeight;
+	}
+
+	/**
+	 * Returns the structural hash of the subtree rooted at this node: a 64-bit
+	 * Merkle-style hash of the node's label (its toString() value) and its
+	 * children's hashes, so that equal subtrees have equal hashes and
+	 * different ones almost certainly don't. Like the subtree size, it's
+	 * cached and kept up to date as the tree changes.
+	 * 
+	 * @return the structural hash of the subtree rooted at this node
+	 */
+	public long getStructuralHash() {
+		if (!this.isHashed) {
+			this.structuralHash = computeHash();
+			this.isHashed = true;
+		}
+
+		return this.structuralHash;
+	}
+
+	/**
+	 * @return the structural hash of this node, from its label and its
+	 *         children's cached hashes
+	 */
+	private long computeHash() {
+		long hash = mixHash(labelHash());
+
+		for (int i = 0; i < this.numChildren; i++) {
+			Node child = this.children[i];
+			hash = foldHash(hash, (child == null) ? 0L : child
+					.getStructuralHash());
+		}
+
+		return hash;
+	}
+
+	/**
+	 * Returns the hash of the node's label, which goes into the structural
+	 * hash. Nodes with the same toString() value must have the same label
+	 * hash; subclasses can override this with something cheaper than hashing
+	 * the string.
+	 * 
+	 * @return the hash of the node's label
+	 */
+	protected long labelHash() {
+		return toString().hashCode();
+	}
+
+	/**
+	 * Must be called by subclasses when the node's label (toString() value)
+	 * changes after it's built, so that the structural hashes get updated.
+	 */
+	protected void labelChanged() {
+		this.isHashed = false;
+
+		if (this.parent != null) {
+			this.parent.updateSubtreeInfo();
+		}
+	}
+
+	/**
+	 * Scrambles the bits of a hash (the MurmurHash3 finalizer).
+	 */
+	static long mixHash(long hash) {
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+
+		return hash;
+	}
+
+	/**
+	 * Folds the hash of the next child into a node's structural hash.
+	 */
+	static long foldHash(long hash, long childHash) {
+		return mixHash(hash * 31 + childHash);
+	}
+
+	/**
+	 * Compares the subtree rooted at this node to the one rooted at the other
+	 * node, which are equal if they have the same shape and labels (i.e. the
+	 * same subtreeToString()). The structural hashes are compared first, so
+	 * the traversal only happens when they match.
+	 * 
+	 * @param other
+	 *            the root of the other subtree
+	 * @return whether or not the subtrees are equal
+	 */
+	public boolean subtreeEquals(Node other) {
+		if (other == this) {
+			return true;
+		}
+
+		if (getStructuralHash() != other.getStructuralHash()) {
+			return false;
+		}
+
+		return sameSubtree(other);
+	}
+
+	/**
+	 * Recursive helper for subtreeEquals() which compares the nodes one by
+	 * one.
+	 */
+	private boolean sameSubtree(Node other) {
+		if (this.numChildren != other.numChildren
+				|| !toString().equals(other.toString())) {
+			return false;
+		}
+
+		for (int i = 0; i < this.numChildren; i++) {
+			if (!this.children[i].sameSubtree(other.children[i])) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Recomputes the cached subtree size, height and structural hash of this
+	 * node from its children, then does the same for its ancestors until one
+	 * doesn't change.
+	 */
+	protected void updateSubtreeInfo() {
+		Node node = this;
+
+		while (node != null) {
+			int size = 1;
+			int height = 0;
+
+			for (int i = 0; i < node.numChildren; i++) {
+				Node child = node.children[i];
+				if (child != null) {
+					size += child.subtreeSize;
+					height = Math.max(height, child.subtreeHeight + 1);
+				}
+			}
+			long hash = node.computeHash();
+
+			// The ancestors are already up to date with this node.
+			if (node.isHashed && size == node.subtreeSize
+					&& height == node.subtreeHeight
+					&& hash == node.structuralHash) {
+				break;
+			}
+
+			node.subtreeSize = size;
+			node.subtreeHeight = height;
+			node.structuralHash = hash;
+			node.isHashed = true;
+			node = node.parent;
+		}
+	}
+
 	/**
 	 * Returns the node's depth, which is the number of edges that must be
 	 * traversed, starting at the root, in order to reach this node O(n).
@@ -509,6 +713,8 @@ public abstract class Node implements Cloneable {
 	 */
 	public void setChild(int index, Node node) {
 		children[index] = node;
+
+		updateSubtreeInfo();
 	}
 
 	/**
@@ -565,13 +771,19 @@ public abstract class Node implements Cloneable {
 	public Node lightClone() throws CloneNotSupportedException {
 		Node node = (Node) super.clone();
 
+		// The clone starts out detached, without children.
+		node.parent = null;
 		node.numChildren = this.numChildren;
 		node.children = new Node[node.numChildren];
+		node.subtreeSize = 1;
+		node.subtreeHeight = 0;
+
+		// A terminal's hash stays the same; a function's changes with its
+		// children.
+		node.isHashed = this.isHashed && this.numChildren == 0;
 
-		// Set the ID, memID, and mutID
-		node.setId(this.id);
-		node.setMemId(this.memId);
-		node.setMutId(this.mutId);
+		// The ID, memID, and mutID never change, so they're shared.
+		node.lineage = this.lineage;
 
 		return node;
 	}
@@ -588,11 +800,6 @@ public abstract class Node implements Cloneable {
 			}
 		}
 
-		// Set the ID, memID, and mutID
-		node.setId(this.id);
-		node.setMemId(this.memId);
-		node.setMutId(this.mutId);
-
 		return node;
 	}
 
@@ -622,6 +829,100 @@ public abstract class Node implements Cloneable {
 			newNode.children[i] = children[i].swapNode(node1, node2);
 			newNode.children[i].setParent(newNode);
 		}
+		newNode.updateSubtreeInfo();
+
+		return newNode;
+	}
+
+	/**
+	 * Finds the node at the given position (preorder number) in the subtree
+	 * rooted at this node, using the cached subtree sizes instead of node
+	 * numbers, so it works for trees that share nodes.
+	 * 
+	 * @param index
+	 *            the position of the node (0 for this node)
+	 * @return the node at the position
+	 */
+	public Node getNodeAt(int index) {
+		Node node = this;
+
+		while (index > 0) {
+			// Skip the node itself, then the children before the one we want.
+			index--;
+			for (int i = 0; i < node.numChildren; i++) {
+				Node child = node.children[i];
+				if (index < child.subtreeSize) {
+					node = child;
+					break;
+				}
+				index -= child.subtreeSize;
+			}
+		}
+
+		return node;
+	}
+
+	/**
+	 * Gets the depth (distance from this node) of the node at the given
+	 * position, without following parent pointers.
+	 * 
+	 * @param index
+	 *            the position of the node (0 for this node)
+	 * @return the depth of the node below this one
+	 */
+	public int getDepthAt(int index) {
+		Node node = this;
+		int depth = 0;
+
+		while (index > 0) {
+			index--;
+			for (int i = 0; i < node.numChildren; i++) {
+				Node child = node.children[i];
+				if (index < child.subtreeSize) {
+					node = child;
+					break;
+				}
+				index -= child.subtreeSize;
+			}
+			depth++;
+		}
+
+		return depth;
+	}
+
+	/**
+	 * Persistent version of swapNode(): puts the given node in place of the
+	 * node at the given position, copying only the nodes on the path from
+	 * this node down to it. Everything else, including the new node's
+	 * subtree, is shared with the original trees rather than cloned, so
+	 * neither tree may be modified in place afterwards. The copied nodes don't
+	 * become the parents of the shared ones.
+	 * 
+	 * @param index
+	 *            the position of the node to replace (0 for this node)
+	 * @param node
+	 *            the node (and subtree) to put in its place
+	 * @return the root of the new tree
+	 * @throws CloneNotSupportedException
+	 */
+	public Node replaceAt(int index, Node node)
+			throws CloneNotSupportedException {
+		if (index == 0) {
+			return node;
+		}
+
+		Node newNode = lightClone();
+		int offset = index - 1;
+		for (int i = 0; i < numChildren; i++) {
+			Node child = children[i];
+			if (offset >= 0 && offset < child.subtreeSize) {
+				newNode.children[i] = child.replaceAt(offset, node);
+			} else {
+				newNode.children[i] = child;
+			}
+			offset -= child.subtreeSize;
+		}
+		newNode.updateSubtreeInfo();
 
 		return newNode;
 	}
@@ -660,11 +961,91 @@ public abstract class Node implements Cloneable {
 			newNode.children[i] = children[i].swapNodes(pairs);
 			newNode.children[i].setParent(newNode);
 		}
+		newNode.updateSubtreeInfo();
 
 		return newNode;
 	}
 
 	public abstract Object evaluate(Problem problem, Object data);
 
+	/**
+	 * Evaluates the subtree rooted at this node on a single boolean fitness
+	 * case, without boxing the input or the result. Boolean nodes override
+	 * this; the default falls back to {@link #evaluate(Problem, Object)}.
+	 * 
+	 * @param problem
+	 *            the problem being evaluated
+	 * @param data
+	 *            the fitness case (input bit string)
+	 * @return the result of the subtree on the fitness case
+	 */
+	public boolean evaluateBoolean(Problem problem, int data) {
+		return (Boolean) evaluate(problem, data);
+	}
+
+	/**
+	 * Evaluates the subtree rooted at this node on a single numeric fitness
+	 * case, without boxing the input or the result. Numeric nodes override
+	 * this; the default falls back to {@link #evaluate(Problem, Object)}.
+	 * 
+	 * @param problem
+	 *            the problem being evaluated
+	 * @param data
+	 *            the fitness case (input value)
+	 * @return the result of the subtree on the fitness case
+	 */
+	public double evaluateDouble(Problem problem, double data) {
+		return (Double) evaluate(problem, data);
+	}
+
+	/**
+	 * Evaluates the subtree rooted at this node on all of the boolean fitness
+	 * cases at once. Each fitness case is one bit of a long[] column (case i is
+	 * bit i%64 of word i/64), so a single word-wise operation evaluates 64
+	 * cases.
+	 *
+	 * Function nodes write their result into scratch[slot] and evaluate child
+	 * k into scratch[slot + k + 1]; terminals may simply return the problem's
+	 * input column. The scratch buffer must therefore have at least
+	 * 3*depth+1 rows, each as long as a column.
+	 *
+	 * Nodes that don't support column evaluation throw an
+	 * {@link UnsupportedOperationException}.
+	 *
+	 * @param problem
+	 *            the problem being evaluated
+	 * @param scratch
+	 *            the scratch columns
+	 * @param slot
+	 *            the row of the scratch buffer this node may write to
+	 * @return the column holding this node's result (must not be modified)
+	 */
+	public long[] evaluateColumn(Problem problem, long[][] scratch, int slot) {
+		throw new UnsupportedOperationException(String.format(
+				"%s does not support column evaluation", getClass()
+						.getSimpleName()));
+	}
+
+	/**
+	 * Evaluates the subtree rooted at this node on all of the numeric fitness
+	 * cases at once, in the same way (and with the same scratch slot layout)
+	 * as {@link #evaluateColumn(Problem, long[][], int)}, but with one double
+	 * per fitness case.
+	 *
+	 * @param problem
+	 *            the problem being evaluated
+	 * @param scratch
+	 *            the scratch columns
+	 * @param slot
+	 *            the row of the scratch buffer this node may write to
+	 * @return the column holding this node's result (must not be modified)
+	 */
+	public double[] evaluateColumn(Problem problem, double[][] scratch,
+			int slot) {
+		throw new UnsupportedOperationException(String.format(
+				"%s does not support column evaluation", getClass()
+						.getSimpleName()));
+	}
+
 	public abstract String toString();
 }
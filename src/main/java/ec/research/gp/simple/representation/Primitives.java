@@ -0,0 +1,214 @@
+package ec.research.gp.simple.representation;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ec.research.gp.simple.regression.nodes.R;
+import ec.research.gp.simple.util.Context;
+
+/**
+ * The table of primitives (the function set followed by the terminal set)
+ * whose indexes are the opcodes of a {@link LinearTree}. One table is shared
+ * by every linear tree of a run.
+ *
+ */
+public class Primitives {
+	// The prototype node for each opcode.
+	private final Node[] nodes;
+
+	// The arity of each opcode.
+	private final int[] arities;
+
+	// The label hash (see Node.labelHash()) of each opcode.
+	private final long[] labelHashes;
+
+	// The number of functions; opcodes from here on are terminals.
+	private final int numFunctions;
+
+	// The opcode of the ephemeral random constant (R), or -1 if there's none.
+	private final int constOpcode;
+
+	// Maps a node's toString() value to its opcode.
+	private final Map<String, Integer> opcodes;
+
+	// The function opcodes of each arity (empty for arities without any).
+	private final int[][] functionsByArity;
+
+	/**
+	 * Builds the table for the given function and terminal sets.
+	 *
+	 * @param functionSet
+	 *            the function set
+	 * @param terminalSet
+	 *            the terminal set
+	 */
+	public Primitives(List<Node> functionSet, List<Node> terminalSet) {
+		this.numFunctions = functionSet.size();
+		this.nodes = new Node[functionSet.size() + terminalSet.size()];
+		this.arities = new int[this.nodes.length];
+		this.labelHashes = new long[this.nodes.length];
+		this.opcodes = new HashMap<String, Integer>();
+
+		int rOpcode = -1;
+		for (int i = 0; i < this.nodes.length; i++) {
+			Node node = (i < this.numFunctions) ? functionSet.get(i)
+					: terminalSet.get(i - this.numFunctions);
+
+			this.nodes[i] = node;
+			this.arities[i] = node.getNumChildren();
+			this.labelHashes[i] = node.labelHash();
+
+			if (node instanceof R) {
+				if (rOpcode < 0) {
+					rOpcode = i;
+				}
+			} else if (!this.opcodes.containsKey(node.toString())) {
+				this.opcodes.put(node.toString(), i);
+			}
+		}
+		this.constOpcode = rOpcode;
+
+		// Group the functions by arity.
+		int maxArity = 0;
+		for (int i = 0; i < this.numFunctions; i++) {
+			maxArity = Math.max(maxArity, this.arities[i]);
+		}
+
+		int[] counts = new int[maxArity + 1];
+		for (int i = 0; i < this.numFunctions; i++) {
+			counts[this.arities[i]]++;
+		}
+
+		this.functionsByArity = new int[maxArity + 1][];
+		for (int arity = 0; arity <= maxArity; arity++) {
+			this.functionsByArity[arity] = new int[counts[arity]];
+			counts[arity] = 0;
+		}
+		for (int i = 0; i < this.numFunctions; i++) {
+			int arity = this.arities[i];
+			this.functionsByArity[arity][counts[arity]++] = i;
+		}
+	}
+
+	/**
+	 * Picks a random function with the given arity, uniformly, with a single
+	 * random draw.
+	 *
+	 * @param arity
+	 *            the number of children
+	 * @param context
+	 *            the Context for the run
+	 * @return the function's opcode, or -1 if there's no function with the
+	 *         arity
+	 */
+	public int getRandomFunction(int arity, Context context) {
+		if (arity >= this.functionsByArity.length
+				|| this.functionsByArity[arity].length == 0) {
+			return -1;
+		}
+
+		int[] functions = this.functionsByArity[arity];
+		return functions[context.randBetween(0, functions.length - 1)];
+	}
+
+	/**
+	 * Picks a random terminal, uniformly.
+	 *
+	 * @param context
+	 *            the Context for the run
+	 * @return the terminal's opcode
+	 */
+	public int getRandomTerminal(Context context) {
+		return this.numFunctions
+				+ context.randBetween(0, getNumTerminals() - 1);
+	}
+
+	/**
+	 * Gets the opcode for the given node.
+	 *
+	 * @param node
+	 *            the node, which must be of a type in the function or terminal
+	 *            set
+	 * @return the node's opcode
+	 * @throws IllegalArgumentException
+	 *             if the node isn't in the function or terminal set
+	 */
+	public int opcodeOf(Node node) {
+		if (node instanceof R) {
+			if (this.constOpcode < 0) {
+				throw new IllegalArgumentException(
+						"R is not in the terminal set");
+			}
+			return this.constOpcode;
+		}
+
+		Integer opcode = this.opcodes.get(node.toString());
+		if (opcode == null) {
+			throw new IllegalArgumentException(node.toString()
+					+ " is not in the function or terminal set");
+		}
+
+		return opcode;
+	}
+
+	/**
+	 * @param opcode
+	 *            the opcode
+	 * @return the prototype node for the opcode (not to be modified)
+	 */
+	public Node getNode(int opcode) {
+		return this.nodes[opcode];
+	}
+
+	/**
+	 * @param opcode
+	 *            the opcode
+	 * @return the number of children of the opcode's node
+	 */
+	public int getArity(int opcode) {
+		return this.arities[opcode];
+	}
+
+	/**
+	 * @param opcode
+	 *            the opcode
+	 * @return the label hash of the opcode's node (meaningless for R, whose
+	 *         label is its value)
+	 */
+	long getLabelHash(int opcode) {
+		return this.labelHashes[opcode];
+	}
+
+	/**
+	 * @param opcode
+	 *            the opcode
+	 * @return whether or not the opcode is a terminal
+	 */
+	public boolean isTerminal(int opcode) {
+		return opcode >= this.numFunctions;
+	}
+
+	/**
+	 * @param opcode
+	 *            the opcode
+	 * @return whether or not the opcode is the ephemeral random constant
+	 */
+	public boolean isConstant(int opcode) {
+		return opcode == this.constOpcode;
+	}
+
+	/**
+	 * @return the number of functions (i.e. the opcode of the first terminal)
+	 */
+	public int getNumFunctions() {
+		return this.numFunctions;
+	}
+
+	/**
+	 * @return the number of terminals
+	 */
+	public int getNumTerminals() {
+		return this.nodes.length - this.numFunctions;
+	}
+}
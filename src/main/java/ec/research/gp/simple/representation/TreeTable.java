@@ -0,0 +1,72 @@
+package ec.research.gp.simple.representation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts how many times each distinct tree has been seen, for weeding out
+ * duplicate individuals. Trees are looked up by their structural hash, so they
+ * are only compared node by node when their hashes collide, and no strings are
+ * built.
+ *
+ */
+public class TreeTable {
+	// The trees seen so far and their counts, by structural hash. A bucket
+	// only holds more than one entry on a hash collision.
+	private final Map<Long, List<Entry>> buckets = new HashMap<Long, List<Entry>>();
+
+	// The number of distinct trees.
+	private int size;
+
+	/**
+	 * A distinct tree and the number of times it has been seen.
+	 */
+	private static class Entry {
+		final Individual individual;
+		int count;
+
+		Entry(Individual individual) {
+			this.individual = individual;
+		}
+	}
+
+	/**
+	 * Records the given individual's tree.
+	 * 
+	 * @param individual
+	 *            the individual, whose tree must not be modified afterwards
+	 * @return the number of times the tree has been seen, including this one
+	 *         (so 1 if it's new)
+	 */
+	public int add(Individual individual) {
+		Long hash = individual.getStructuralHash();
+		List<Entry> bucket = this.buckets.get(hash);
+
+		if (bucket == null) {
+			bucket = new ArrayList<Entry>(1);
+			this.buckets.put(hash, bucket);
+		}
+
+		for (Entry entry : bucket) {
+			if (entry.individual.treesEqual(individual)) {
+				return ++entry.count;
+			}
+		}
+
+		Entry entry = new Entry(individual);
+		entry.count = 1;
+		bucket.add(entry);
+		this.size++;
+
+		return 1;
+	}
+
+	/**
+	 * @return the number of distinct trees seen
+	 */
+	public int size() {
+		return this.size;
+	}
+}
@@ -7,6 +7,7 @@ import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
+import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -20,9 +21,15 @@ import org.apache.log4j.Logger;
 import ec.research.gp.simple.bool.nodes.Di;
 import ec.research.gp.simple.gp.GP;
 import ec.research.gp.simple.gp.GP.STOP_ON;
+import ec.research.gp.simple.gp.IslandModel;
+import ec.research.gp.simple.gp.IslandModel.TOPOLOGY;
 import ec.research.gp.simple.multiplexer.nodes.Ai;
 import ec.research.gp.simple.problem.Problem;
+import ec.research.gp.simple.problem.Problem.EVAL_MODE;
+import ec.research.gp.simple.representation.Individual;
+import ec.research.gp.simple.representation.Individual.REPRESENTATION;
 import ec.research.gp.simple.representation.Node;
+import ec.research.gp.simple.representation.Primitives;
 
 
 
@@ -75,6 +82,18 @@ public class Config {
 	@Option(value = "numThreads", desc = "Holds the number of threads to use (currently for evals).")
 	private int numThreads;
 
+	@Option(value = "deterministic", desc = "Whether or not a seed reproduces the run exactly, whatever numThreads is: the threads only compute fitness, and the evaluations are then counted, checked for a new best and logged in population order.")
+	private boolean deterministic;
+
+	@Option(value = "numWorkers", desc = "The number of worker processes to evaluate on (0, the default, evaluates in this process). The workers are local JVMs, started by the run, that get batches of individuals over loopback TCP.")
+	private int numWorkers;
+
+	@Option(value = "workerBatchSize", desc = "The number of individuals sent to a worker process at a time")
+	private int workerBatchSize;
+
+	@Option(value = "workerTimeout", desc = "How long (ms) to wait for a worker process to answer before it's treated as crashed (0 waits forever)")
+	private int workerTimeout;
+
 	@Option(value = "stopOn", desc = "Holds the stop-on criteria type (default is GENERATION).")
 	private STOP_ON stopOn;
 
@@ -111,6 +130,21 @@ public class Config {
 	@Option(value = "problem", desc = "The problem instance to evolve on")
 	private Problem problem;
 
+	@Option(value = "evalMode", desc = "How trees are run over the fitness cases: TREE (one case at a time), COLUMN (all cases at once: bit-sliced for boolean problems, double[] columns for regression) or POSTFIX (tree flattened to a postfix program, run on every case)")
+	private EVAL_MODE evalMode;
+
+	@Option(value = "compileThreshold", desc = "Compile trees to bytecode when a problem has at least this many fitness cases (0 never compiles)")
+	private int compileThreshold;
+
+	@Option(value = "compileCacheSize", desc = "Max number of compiled trees to cache (by genotype)")
+	private int compileCacheSize;
+
+	@Option(value = "representation", desc = "How individuals store their trees: TREE (a graph of Node objects), LINEAR (prefix opcode arrays, see LinearTree) or PERSISTENT (Node graphs that offspring share with their parents, copying only the changed paths)")
+	private REPRESENTATION representation;
+
+	@Option(value = "trackLineage", desc = "Whether or not nodes get McPhee/Hopper lineage IDs (ID, memID and mutID). Without them nodes don't carry the IDs at all.")
+	private boolean trackLineage;
+
 	@Option(value = "functionSet", desc = "The function set for the problem. Add .i for each node.")
 	private List<Node> functionSet;
 
@@ -168,9 +202,30 @@ public class Config {
 	@Option(value = "doSizeBreakTies", desc = "Whether or not to try to break ties by size", cat = "[ParetoGP]")
 	private boolean doSizeBreakTies;
 
+	@Option(value = "numTrials", desc = "The number of independent trials to run in this process, each with its own seed and trialN output directory. 1 (the default) runs a single trial.", cat = "[Batch]")
+	private int numTrials;
+
+	@Option(value = "trialThreads", desc = "The max number of trials running at once (0, the default, is one per core)", cat = "[Batch]")
+	private int trialThreads;
+
+	@Option(value = "numIslands", desc = "The number of islands, each running its own GP (of the gp class) on its own thread. 1 (the default) runs a single GP.", cat = "[Islands]")
+	private int numIslands;
+
+	@Option(value = "migrationInterval", desc = "How often (generations) each island sends its best individuals to another island", cat = "[Islands]")
+	private int migrationInterval;
+
+	@Option(value = "migrationSize", desc = "The number of individuals an island sends at each migration", cat = "[Islands]")
+	private int migrationSize;
+
+	@Option(value = "migrationTopology", desc = "Where islands send their individuals: RING (to the next island) or RANDOM (to a random other island)", cat = "[Islands]")
+	private TOPOLOGY migrationTopology;
+
 	// Node mappings to make Individual.fromString() easier
 	private Map<String, Node> nodeMappings;
 
+	// The opcode table for LINEAR individuals, built from the node sets.
+	private Primitives primitives;
+
 	// Holds the config params for any classes that might need special params
 	private Properties params;
 
@@ -367,6 +422,33 @@ public class Config {
 		init();
 	}
 
+	/**
+	 * Creates a new Config object with the same settings as the given one
+	 * (see getParameters()), but its own problem and node sets.
+	 * 
+	 * @param other
+	 *            the config to copy
+	 */
+	public Config(Config other) {
+		this(other.getParameters(), other.seed);
+	}
+
+	/**
+	 * Creates a new Config object with the given parameters (e.g. from
+	 * getParameters() in another process) and seed.
+	 * 
+	 * @param params
+	 *            the parameters
+	 * @param seed
+	 *            the seed (even if the parameters have one)
+	 */
+	public Config(Properties params, long seed) {
+		this.params = (Properties) params.clone();
+
+		init();
+		this.seed = seed;
+	}
+
 	/**
 	 * Initializes and sets all the parameters that were either present in the
 	 * config file or were overridden with setParameter." This is called by the
@@ -394,6 +476,7 @@ public class Config {
 		// Setup the terminal set
 		this.terminalSet = new ArrayList<Node>();
 		setupNodeSet("terminalSet", this.terminalSet);
+		this.primitives = new Primitives(this.functionSet, this.terminalSet);
 
 		// Setup the output directory
 		this.outputDir = params.getProperty("outputDir", "output");
@@ -425,10 +508,42 @@ public class Config {
 		this.numThreads = Integer.parseInt(params
 				.getProperty("numThreads", "2"));
 
+		// Set whether multi-threaded runs are reproducible (default is no)
+		this.deterministic = Boolean.parseBoolean(params.getProperty(
+				"deterministic", "false"));
+
+		// Set the number of worker processes (default is none)
+		this.numWorkers = Integer.parseInt(params.getProperty("numWorkers",
+				"0"));
+		this.workerBatchSize = Integer.parseInt(params.getProperty(
+				"workerBatchSize", "64"));
+		this.workerTimeout = Integer.parseInt(params.getProperty(
+				"workerTimeout", "300000"));
+
 		// Set the STOP_ON type
 		this.stopOn = GP.STOP_ON.valueOf(params.getProperty("stopOn",
 				"GENERATIONS"));
 
+		// Set the evaluation mode (default is column-at-a-time)
+		this.evalMode = Problem.EVAL_MODE.valueOf(params.getProperty(
+				"evalMode", "COLUMN"));
+
+		// Set the compile threshold (default is to never compile)
+		this.compileThreshold = Integer.parseInt(params.getProperty(
+				"compileThreshold", "0"));
+
+		// Set the compiled tree cache size
+		this.compileCacheSize = Integer.parseInt(params.getProperty(
+				"compileCacheSize", "1000"));
+
+		// Set the tree representation (default is Node trees)
+		this.representation = Individual.REPRESENTATION.valueOf(params
+				.getProperty("representation", "TREE"));
+
+		// Set whether nodes get lineage IDs (default is yes)
+		this.trackLineage = Boolean.parseBoolean(params.getProperty(
+				"trackLineage", "true"));
+
 		// Set the max-depth for the trees
 		this.maxDepth = Integer.parseInt(params.getProperty("maxDepth", "17"));
 
@@ -534,6 +649,26 @@ public class Config {
 		// Do we try to break ties by size?
 		this.doSizeBreakTies = Boolean.parseBoolean(this.params.getProperty(
 				"doSizeBreakTies", "true"));
+
+		// Set the number of trials (default is a single trial)
+		this.numTrials = Integer.parseInt(this.params.getProperty("numTrials",
+				"1"));
+		this.trialThreads = Integer.parseInt(this.params.getProperty(
+				"trialThreads", "0"));
+
+		// Set the number of islands (default is a single GP)
+		this.numIslands = Integer.parseInt(this.params.getProperty(
+				"numIslands", "1"));
+
+		// Set how often and how many individuals migrate between islands
+		this.migrationInterval = Integer.parseInt(this.params.getProperty(
+				"migrationInterval", "10"));
+		this.migrationSize = Integer.parseInt(this.params.getProperty(
+				"migrationSize", "5"));
+
+		// Set where they migrate to
+		this.migrationTopology = IslandModel.TOPOLOGY.valueOf(this.params
+				.getProperty("migrationTopology", "RING"));
 	}
 
 	/**
@@ -567,6 +702,7 @@ public class Config {
 		for (Node node : functionSet) {
 			this.nodeMappings.put(node.toString(), node);
 		}
+		this.primitives = new Primitives(this.functionSet, this.terminalSet);
 
 	}
 
@@ -590,6 +726,7 @@ public class Config {
 		for (Node node : terminalSet) {
 			this.nodeMappings.put(node.toString(), node);
 		}
+		this.primitives = new Primitives(this.functionSet, this.terminalSet);
 	}
 
 	/**
@@ -600,6 +737,15 @@ public class Config {
 		return terminalSet;
 	}
 
+	/**
+	 * 
+	 * @return the opcode table (function set, then terminal set) for LINEAR
+	 *         individuals
+	 */
+	public Primitives getPrimitives() {
+		return this.primitives;
+	}
+
 	/**
 	 * Gets the node associated with the given string value. Must be a node from
 	 * the function or terminal set.
@@ -760,6 +906,68 @@ public class Config {
 		this.numThreads = n;
 	}
 
+	/**
+	 * Sets whether or not multi-threaded runs are reproducible.
+	 * 
+	 * @param deterministic
+	 *            whether or not a seed should reproduce the run exactly
+	 */
+	public void setDeterministic(boolean deterministic) {
+		this.deterministic = deterministic;
+	}
+
+	/**
+	 * @return whether or not a seed reproduces the run exactly, whatever the
+	 *         number of threads (default is false)
+	 */
+	public boolean isDeterministic() {
+		return this.deterministic;
+	}
+
+	/**
+	 * Sets the number of worker processes to evaluate on.
+	 * 
+	 * @param numWorkers
+	 *            the number of workers (0 to evaluate in this process)
+	 */
+	public void setNumWorkers(int numWorkers) {
+		this.numWorkers = numWorkers;
+	}
+
+	/**
+	 * @return the number of worker processes to evaluate on (default is 0,
+	 *         evaluate in this process)
+	 */
+	public int getNumWorkers() {
+		return this.numWorkers;
+	}
+
+	/**
+	 * @return the number of individuals sent to a worker at a time (default
+	 *         is 64)
+	 */
+	public int getWorkerBatchSize() {
+		return this.workerBatchSize;
+	}
+
+	/**
+	 * Sets how long to wait for a worker process to answer.
+	 * 
+	 * @param workerTimeout
+	 *            the timeout (ms), or 0 to wait forever
+	 */
+	public void setWorkerTimeout(int workerTimeout) {
+		this.workerTimeout = workerTimeout;
+	}
+
+	/**
+	 * @return how long (ms) to wait for a worker process to answer before
+	 *         it's treated as crashed (default is 5 minutes)
+	 */
+	public int getWorkerTimeout() {
+		return this.workerTimeout;
+	}
+
 	/**
 	 * 
 	 * @return the stop-on type (default is by max num generations)
@@ -768,6 +976,89 @@ public class Config {
 		return this.stopOn;
 	}
 
+	/**
+	 * Sets the evaluation mode used by the problems.
+	 * 
+	 * @param evalMode
+	 *            how trees are run over the fitness cases
+	 */
+	public void setEvalMode(EVAL_MODE evalMode) {
+		this.evalMode = evalMode;
+	}
+
+	/**
+	 * 
+	 * @return how trees are run over the fitness cases (default is COLUMN)
+	 */
+	public EVAL_MODE getEvalMode() {
+		return this.evalMode;
+	}
+
+	/**
+	 * Sets the number of fitness cases from which trees get compiled.
+	 * 
+	 * @param compileThreshold
+	 *            the min number of fitness cases to compile for (0 never
+	 *            compiles)
+	 */
+	public void setCompileThreshold(int compileThreshold) {
+		this.compileThreshold = compileThreshold;
+	}
+
+	/**
+	 * 
+	 * @return the min number of fitness cases to compile trees for (0 means
+	 *         never)
+	 */
+	public int getCompileThreshold() {
+		return this.compileThreshold;
+	}
+
+	/**
+	 * 
+	 * @return the max number of compiled trees to cache
+	 */
+	public int getCompileCacheSize() {
+		return this.compileCacheSize;
+	}
+
+	/**
+	 * Sets how new individuals store their trees.
+	 * 
+	 * @param representation
+	 *            the tree representation
+	 */
+	public void setRepresentation(REPRESENTATION representation) {
+		this.representation = representation;
+	}
+
+	/**
+	 * 
+	 * @return how individuals store their trees (default is TREE)
+	 */
+	public REPRESENTATION getRepresentation() {
+		return this.representation;
+	}
+
+	/**
+	 * Sets whether or not nodes get lineage IDs.
+	 * 
+	 * @param trackLineage
+	 *            whether or not to track lineage
+	 */
+	public void setTrackLineage(boolean trackLineage) {
+		this.trackLineage = trackLineage;
+	}
+
+	/**
+	 * 
+	 * @return whether or not nodes get McPhee/Hopper lineage IDs (default is
+	 *         true)
+	 */
+	public boolean doTrackLineage() {
+		return this.trackLineage;
+	}
+
 	/**
 	 * Sets the max depth for a tree to the given depth.
 	 * 
@@ -1079,6 +1370,35 @@ public class Config {
 		this.params.setProperty(paramName, value);
 	}
 
+	/**
+	 * @return a copy of all the parameters (from the file and setParameter()),
+	 *         with the current value of every option that's a plain value, so
+	 *         that anything changed with a setter is included. The problem and
+	 *         node sets are only there as they were given in the file.
+	 */
+	public Properties getParameters() {
+		Properties parameters = (Properties) this.params.clone();
+
+		for (Field field : Config.class.getDeclaredFields()) {
+			Class<?> type = field.getType();
+			if (field.getAnnotation(Option.class) == null
+					|| !(type.isPrimitive() || type.isEnum() || type == String.class)) {
+				continue;
+			}
+
+			try {
+				Object value = field.get(this);
+				if (value != null) {
+					parameters.setProperty(field.getName(), value.toString());
+				}
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		return parameters;
+	}
+
 	/**
 	 * Gets a named parameter's value.
 	 * 
@@ -1211,4 +1531,77 @@ public class Config {
 	public String getObjectives() {
 		return this.objectives;
 	}
+
+	/**
+	 * Sets the number of trials to run.
+	 * 
+	 * @param numTrials
+	 *            the number of independent trials
+	 */
+	public void setNumTrials(int numTrials) {
+		this.numTrials = numTrials;
+	}
+
+	/**
+	 * @return the number of independent trials to run (default is 1)
+	 */
+	public int getNumTrials() {
+		return this.numTrials;
+	}
+
+	/**
+	 * Sets the max number of trials running at once.
+	 * 
+	 * @param trialThreads
+	 *            the max number of trials at once (0 for one per core)
+	 */
+	public void setTrialThreads(int trialThreads) {
+		this.trialThreads = trialThreads;
+	}
+
+	/**
+	 * @return the max number of trials running at once (default is 0, one per
+	 *         core)
+	 */
+	public int getTrialThreads() {
+		return this.trialThreads;
+	}
+
+	/**
+	 * Sets the number of islands.
+	 * 
+	 * @param numIslands
+	 *            the number of islands (1 for a single GP)
+	 */
+	public void setNumIslands(int numIslands) {
+		this.numIslands = numIslands;
+	}
+
+	/**
+	 * @return the number of islands (default is 1, a single GP)
+	 */
+	public int getNumIslands() {
+		return this.numIslands;
+	}
+
+	/**
+	 * @return how often (generations) islands send individuals to each other
+	 */
+	public int getMigrationInterval() {
+		return this.migrationInterval;
+	}
+
+	/**
+	 * @return the number of individuals an island sends at each migration
+	 */
+	public int getMigrationSize() {
+		return this.migrationSize;
+	}
+
+	/**
+	 * @return where islands send their individuals (default is RING)
+	 */
+	public TOPOLOGY getMigrationTopology() {
+		return this.migrationTopology;
+	}
 }
@@ -1,9 +1,20 @@
 package ec.research.gp.simple.util;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 
+import ec.research.gp.simple.problem.Problem;
+import ec.research.gp.simple.remote.RemoteEvaluator;
 import ec.research.gp.statistics.Statistics;
 
 
@@ -20,6 +31,40 @@ public class Context {
 	 */
 	private Random rand;
 
+	// The seed the generator was last seeded with.
+	private long seed;
+
+	/**
+	 * The seed the generator had when the problem set up its fitness cases
+	 * (see initProblem()), so that worker processes can set up the same ones.
+	 */
+	private long problemSeed;
+
+	/**
+	 * The random stream of the task running on the current thread, if it has
+	 * its own (see withStream()). Threads without one use rand.
+	 */
+	private final ThreadLocal<Random> streams = new ThreadLocal<Random>();
+
+	/**
+	 * The worker threads shared by the run's parallel loops (evaluation,
+	 * tagging), started on first use and kept until shutdown().
+	 */
+	private ExecutorService workers;
+
+	/**
+	 * Set on the worker threads, so that runAll() called from a task (e.g.
+	 * tagging for a stats checkpoint during evaluation) runs inline instead
+	 * of waiting on the workers it's keeping busy.
+	 */
+	private final ThreadLocal<Boolean> onWorker = new ThreadLocal<Boolean>();
+
+	/**
+	 * The worker processes the run evaluates on, if numWorkers is set,
+	 * started on first use and kept until shutdown().
+	 */
+	private RemoteEvaluator remoteEvaluator;
+
 	/**
 	 * Log4J logger for error/debug messages, etc.
 	 */
@@ -39,6 +84,8 @@ public class Context {
 
 		logger.info("Seed: " + config.getSeed());
 		rand.setSeed(cfg.getSeed());
+		this.seed = cfg.getSeed();
+		this.problemSeed = this.seed;
 	}
 
 	/**
@@ -73,7 +120,7 @@ public class Context {
 	 * @return the next random boolean, given the probability to use
 	 */
 	public boolean nextBool(double probability) {
-		return rand.nextDouble() <= probability;
+		return random().nextDouble() <= probability;
 	}
 
 	/**
@@ -86,7 +133,7 @@ public class Context {
 	 * @return a random number between min and max
 	 */
 	public int randBetween(int min, int max) {
-		return rand.nextInt(max - min + 1) + min;
+		return random().nextInt(max - min + 1) + min;
 	}
 
 	/**
@@ -99,20 +146,214 @@ public class Context {
 	 * @return a random double between min and max
 	 */
 	public double randBetween(double min, double max) {
-		return min + (max - min) * rand.nextDouble();
+		return min + (max - min) * random().nextDouble();
 	}
 
 	/**
 	 * @return a random number in the range [0, 1]
 	 */
 	public double randDouble() {
-		return rand.nextDouble();
+		return random().nextDouble();
 	}
 
 	/**
-	 * @return a reference to this run's random number generator. Use with care.
+	 * @return a reference to this run's random number generator (or the
+	 *         current task's stream, see withStream()). Use with care.
 	 */
 	public Random getRand() {
-		return this.rand;
+		return random();
+	}
+
+	/**
+	 * Reseeds the run's random number generator.
+	 * 
+	 * @param seed
+	 *            the new seed
+	 */
+	public void setSeed(long seed) {
+		logger.info("Seed: " + seed);
+		this.rand.setSeed(seed);
+		this.seed = seed;
+	}
+
+	/**
+	 * Sets up the given problem with this context, and remembers the seed the
+	 * generator had, which is what the problem's fitness cases depend on.
+	 * 
+	 * @param problem
+	 *            the problem
+	 * @throws Exception
+	 *             if the problem can't be set up
+	 */
+	public void initProblem(Problem problem) throws Exception {
+		this.problemSeed = this.seed;
+		problem.init(this);
+	}
+
+	/**
+	 * @return the seed the generator had when the problem was set up (or the
+	 *         run's seed, if it wasn't set up with initProblem())
+	 */
+	public long getProblemSeed() {
+		return this.problemSeed;
+	}
+
+	/**
+	 * @return a seed for a new random stream, drawn from the current one
+	 */
+	public long nextSeed() {
+		return random().nextLong();
+	}
+
+	/**
+	 * Wraps the task so that it draws its random numbers from its own stream,
+	 * seeded with the given seed, instead of the run's generator. Tasks that
+	 * run in parallel then don't contend for the generator, and what each one
+	 * draws doesn't depend on how the threads interleave: seeds drawn in
+	 * order with nextSeed() give the same results for the same run seed,
+	 * however many threads there are.
+	 * 
+	 * @param seed
+	 *            the seed of the task's stream
+	 * @param task
+	 *            the task
+	 * @return the wrapped task
+	 */
+	public Runnable withStream(final long seed, final Runnable task) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				Random previous = streams.get();
+				streams.set(new Random(seed));
+				try {
+					task.run();
+				} finally {
+					streams.set(previous);
+				}
+			}
+		};
+	}
+
+	/**
+	 * @return the current thread's random stream
+	 */
+	private Random random() {
+		Random stream = this.streams.get();
+		return (stream != null) ? stream : this.rand;
+	}
+
+	/**
+	 * Runs the given tasks on the run's worker threads and waits for all of
+	 * them to finish. The workers (numThreads of them) are started on the
+	 * first call and reused by every call after, so the per-generation loops
+	 * don't pay for starting threads. A single task, tasks for a single
+	 * worker, or tasks from a task already running on a worker, are simply
+	 * run in order on the calling thread.
+	 * 
+	 * If a task fails, the others still run to the end, then its exception
+	 * is thrown to the caller (as it would be from a task run inline), or an
+	 * IllegalStateException if it isn't unchecked.
+	 * 
+	 * @param tasks
+	 *            the tasks to run
+	 */
+	public void runAll(List<? extends Runnable> tasks) {
+		if (tasks.size() == 1 || this.config.getNumThreads() <= 1
+				|| this.onWorker.get() != null) {
+			for (Runnable task : tasks) {
+				task.run();
+			}
+			return;
+		}
+
+		ExecutorService executor = getWorkers();
+		List<Future<?>> futures = new ArrayList<Future<?>>(tasks.size());
+		for (Runnable task : tasks) {
+			futures.add(executor.submit(task));
+		}
+
+		Throwable failure = null;
+		for (Future<?> future : futures) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				failure = e;
+			} catch (ExecutionException e) {
+				if (failure == null) {
+					failure = e.getCause();
+				}
+			}
+		}
+
+		if (failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		} else if (failure instanceof Error) {
+			throw (Error) failure;
+		} else if (failure != null) {
+			throw new IllegalStateException("Worker task failed", failure);
+		}
+	}
+
+	/**
+	 * Stops the worker threads (and processes). They're started again if
+	 * runAll() is called after this.
+	 */
+	public synchronized void shutdown() {
+		if (this.workers != null) {
+			this.workers.shutdown();
+			this.workers = null;
+		}
+		if (this.remoteEvaluator != null) {
+			this.remoteEvaluator.shutdown();
+			this.remoteEvaluator = null;
+		}
+	}
+
+	/**
+	 * @return the run's worker processes, starting them if need be. They're
+	 *         started again if this is called after shutdown().
+	 */
+	public synchronized RemoteEvaluator getRemoteEvaluator() {
+		if (this.remoteEvaluator == null) {
+			try {
+				this.remoteEvaluator = new RemoteEvaluator(this.config,
+						this.problemSeed);
+			} catch (IOException e) {
+				logger.fatal("Couldn't start the worker processes", e);
+				System.exit(1);
+			}
+		}
+
+		return this.remoteEvaluator;
+	}
+
+	/**
+	 * @return the worker threads, starting them if need be
+	 */
+	private synchronized ExecutorService getWorkers() {
+		if (this.workers == null) {
+			final AtomicInteger count = new AtomicInteger();
+
+			// Daemon threads, so a run that never calls shutdown() can exit.
+			this.workers = Executors.newFixedThreadPool(
+					Math.max(1, this.config.getNumThreads()),
+					new ThreadFactory() {
+						@Override
+						public Thread newThread(final Runnable task) {
+							Thread thread = new Thread(new Runnable() {
+								@Override
+								public void run() {
+									onWorker.set(Boolean.TRUE);
+									task.run();
+								}
+							}, "gp-worker-" + count.incrementAndGet());
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+		}
+
+		return this.workers;
 	}
 }
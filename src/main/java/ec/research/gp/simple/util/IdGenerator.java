@@ -0,0 +1,27 @@
+package ec.research.gp.simple.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out the IDs of individuals and nodes: a process-wide sequence, so
+ * IDs are unique within a run without the cost of UUIDs (a synchronized
+ * SecureRandom per ID). Safe to call from several threads at once.
+ *
+ */
+public final class IdGenerator {
+	// Means "no ID yet", so the sequence starts after it.
+	public static final long NO_ID = 0L;
+
+	// The last ID handed out.
+	private static final AtomicLong lastId = new AtomicLong(NO_ID);
+
+	private IdGenerator() {
+	}
+
+	/**
+	 * @return a new ID, never NO_ID
+	 */
+	public static long nextId() {
+		return lastId.incrementAndGet();
+	}
+}
@@ -75,9 +75,6 @@ public class LayeredGPStatistics extends Statistics {
 			Config config) throws IOException {
 		super(config);
 
-		// Get the current time so we can organize our output with a timestamp.
-		String timestamp = TIMESTAMP_FORMAT.format(this.startTime);
-
 		this.population = population;
 		this.totalLayers = config.getNumLayers();
 
@@ -92,25 +89,26 @@ public class LayeredGPStatistics extends Statistics {
 	 * Convenience method to collect stats on the fitness in each layer. We
 	 * collect the average and max fitness for each layer.
 	 * 
-	 * @param generation
-	 *            the current generation number
+	 * @param snapshot
+	 *            the snapshot of the stat point
+	 * @param layerFitness
+	 *            the fitness of each layer's individuals at the stat point
 	 */
-	public void layerFitnessStats(int generation) {
+	public void layerFitnessStats(Snapshot snapshot, double[][] layerFitness) {
 		// Output the generation number first
 		StringBuilder output = new StringBuilder();
-		output.append(String
-				.format("%s\t%s", generation, this.totalEvaluations));
+		output.append(String.format("%s\t%s", snapshot.generation,
+				snapshot.totalEvaluations));
 
 		// For each layer, output the max (for now) fitness.
-		for (int i = 0; i < population.size(); i++) {
-			Vector<Individual> layer = population.get(i);
+		for (int i = 0; i < layerFitness.length; i++) {
+			double[] layer = layerFitness[i];
 
-			if (!layer.isEmpty()) {
+			if (layer.length > 0) {
 				// Find the average and max fitness for the layer.
 				double avgFitness = 0, maxFitness = 0;
 
-				for (Individual individual : layer) {
-					double fitness = individual.getFitness();
+				for (double fitness : layer) {
 					avgFitness += fitness;
 
 					if (fitness > maxFitness) {
@@ -118,7 +116,7 @@ public class LayeredGPStatistics extends Statistics {
 					}
 				}
 
-				avgFitness /= layer.size();
+				avgFitness /= layer.length;
 
 				output.append(String.format("\t%f:%f", avgFitness, maxFitness));
 			} else {
@@ -127,7 +125,7 @@ public class LayeredGPStatistics extends Statistics {
 		}
 
 		// Fill zeroes for non-existent layers.
-		for (int i = population.size(); i < totalLayers; i++) {
+		for (int i = layerFitness.length; i < totalLayers; i++) {
 			output.append("\t0:0");
 		}
 
@@ -141,11 +139,28 @@ public class LayeredGPStatistics extends Statistics {
 
 	@Override
 	public void postEvaluationStats(int generation) {
-		// Do the layer fitness stats.
-		layerFitnessStats(generation);
+		final Snapshot snapshot = takeSnapshot(generation, null);
+
+		// Copy the layers' fitness, for the worker.
+		final double[][] layerFitness = new double[this.population.size()][];
+		for (int i = 0; i < layerFitness.length; i++) {
+			Vector<Individual> layer = this.population.get(i);
+			layerFitness[i] = new double[layer.size()];
+			for (int j = 0; j < layerFitness[i].length; j++) {
+				layerFitness[i][j] = layer.get(j).getFitness();
+			}
+		}
 
-		// Output the tree stats
-		treeStats(generation);
+		submit(new Runnable() {
+			@Override
+			public void run() {
+				// Do the layer fitness stats.
+				layerFitnessStats(snapshot, layerFitness);
+
+				// Output the tree stats
+				treeStats(snapshot);
+			}
+		});
 	}
 
 	@Override
@@ -75,25 +75,28 @@ public class SimpleGPStatistics extends Statistics {
 		this.population = population;
 
 		// Save the seed.
-		saveSeed(TIMESTAMP_FORMAT.format(this.startTime));
+		saveSeed(this.timestamp);
 
 		// Setup all the output file writers
-		setupOutput(TIMESTAMP_FORMAT.format(this.startTime));
+		setupOutput(this.timestamp);
 	}
 
 	/**
-	 * Convenience method to collect and output stats on fitness.
+	 * Convenience method to output stats on fitness.
 	 * 
 	 * The output format is tab-delimited: generation, total evaluations, best
 	 * fitness, average fitness
 	 * 
-	 * @param generation
-	 *            the current generation
+	 * @param snapshot
+	 *            the snapshot of the stat point
+	 * @param best
+	 *            the best fitness at the stat point
+	 * @param avg
+	 *            the average fitness at the stat point
 	 */
-	public void fitnessStats(int generation) {
-		Utils.writeOutput(String.format("%s\t%s\t%s\t%s", generation,
-				this.totalEvaluations, this.bestFitness, this.avgFitness),
-				this.fitnessOutput);
+	public void fitnessStats(Snapshot snapshot, double best, double avg) {
+		Utils.writeOutput(String.format("%s\t%s\t%s\t%s", snapshot.generation,
+				snapshot.totalEvaluations, best, avg), this.fitnessOutput);
 	}
 
 	/**
@@ -111,14 +114,27 @@ public class SimpleGPStatistics extends Statistics {
 		this.avgFitness = avg;
 	}
 
+	/**
+	 * Takes a snapshot of the stats and hands it to the stats worker, so the
+	 * evaluations can go on while the stats are computed and written.
+	 */
 	public void postEvaluationStats(int generation) {
-		fitnessStats(generation);
-
-		// Output the tree stats
-		treeStats(generation);
-
-		// Output the tree tag stats
-		treeTagStats(generation, this.population);
+		final Snapshot snapshot = takeSnapshot(generation, this.population);
+		final double best = this.bestFitness;
+		final double avg = this.avgFitness;
+
+		submit(new Runnable() {
+			@Override
+			public void run() {
+				fitnessStats(snapshot, best, avg);
+
+				// Output the tree stats
+				treeStats(snapshot);
+
+				// Output the tree tag stats
+				treeTagStats(snapshot);
+			}
+		});
 	}
 
 	public void preGenerationStats(int generationNum) {
@@ -4,9 +4,15 @@ import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
+import java.util.Collection;
 import java.util.Date;
 import java.util.Map;
-import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.log4j.Logger;
 
 import ec.research.gp.pareto.DiversityUtils;
 import ec.research.gp.simple.representation.Individual;
@@ -28,12 +34,15 @@ public abstract class Statistics {
 	private BufferedWriter treeTagStatsOutput;
 
 	// Timestamp format to append to the end of each file for multiple runs.
-	protected static final SimpleDateFormat TIMESTAMP_FORMAT = new SimpleDateFormat(
-			"yyyy-MM-dd-HHmm.ssS");
+	// (SimpleDateFormat isn't thread-safe, so each run formats its own.)
+	protected static final String TIMESTAMP_FORMAT = "yyyy-MM-dd-HHmm.ssS";
 
 	// Holds the start time which will get appended to output file names
 	protected Date startTime;
 
+	// Holds the formatted start time
+	protected String timestamp;
+
 	// Config object for the run, shared with subclasses.
 	protected Config config;
 
@@ -55,6 +64,13 @@ public abstract class Statistics {
 	// Most recent generation where post-eval stats were output.
 	protected int lastOutputGen;
 
+	// The thread that computes and writes the stats taken at each stat point,
+	// in order, so the run doesn't wait for them. Started on first use.
+	private ExecutorService worker;
+
+	// Log4J Logger for any output/messages
+	private static final Logger logger = Logger.getLogger(Statistics.class);
+
 	// The path to the tree stats file.
 	private static final String TREE_STATS_FILE = "size";
 
@@ -70,7 +86,8 @@ public abstract class Statistics {
 	public Statistics(Config config) throws IOException {
 		this.config = config;
 		this.startTime = new Date(System.currentTimeMillis());
-		String timestamp = TIMESTAMP_FORMAT.format(this.startTime);
+		this.timestamp = new SimpleDateFormat(TIMESTAMP_FORMAT)
+				.format(this.startTime);
 
 		// Setup the output writers
 		this.treeStatsOutput = new BufferedWriter(new FileWriter(
@@ -108,39 +125,150 @@ public abstract class Statistics {
 	}
 
 	/**
-	 * Convenience method to collect and output stats on the tree
-	 * size/depth/etc.
+	 * What the stats of a stat point are computed from, copied out of the run
+	 * so that the stats can be computed and written later, by the stats
+	 * worker, while the run goes on.
+	 */
+	public static class Snapshot {
+		// The generation of the stat point
+		public final int generation;
+
+		// The total evaluations at the stat point
+		public final long totalEvaluations;
+
+		// The average tree size and depth
+		public final double avgTreeSize;
+		public final double avgTreeDepth;
+
+		// The individuals, if the stats need them. Their trees don't change
+		// once they're in the population.
+		public final Individual[] individuals;
+
+		// The individuals' fitness at the stat point
+		public final double[] fitness;
+
+		Snapshot(int generation, long totalEvaluations, double avgTreeSize,
+				double avgTreeDepth, Individual[] individuals, double[] fitness) {
+			this.generation = generation;
+			this.totalEvaluations = totalEvaluations;
+			this.avgTreeSize = avgTreeSize;
+			this.avgTreeDepth = avgTreeDepth;
+			this.individuals = individuals;
+			this.fitness = fitness;
+		}
+	}
+
+	/**
+	 * Takes a snapshot of the current stats info and, if the tree tags are
+	 * tracked, of the given individuals and their fitness.
 	 * 
 	 * @param generation
 	 *            the current generation
+	 * @param population
+	 *            the individuals to collect the tag stats on, or null for no
+	 *            tag stats
+	 * @return the snapshot
 	 */
-	public void treeStats(int generation) {
-		// Write the tree stats output
-		Utils.writeOutput(String.format("%s\t%s\t%s\t%s", generation,
-				this.totalEvaluations, this.avgTreeSize, this.avgTreeDepth),
-				this.treeStatsOutput);
+	protected Snapshot takeSnapshot(int generation,
+			Collection<Individual> population) {
+		Individual[] individuals = null;
+		double[] fitness = null;
+
+		if (population != null && this.config.doTrackTreeTags()) {
+			individuals = population.toArray(new Individual[population.size()]);
+			fitness = new double[individuals.length];
+			for (int i = 0; i < individuals.length; i++) {
+				fitness[i] = individuals[i].getFitness();
+			}
+		}
+
+		return new Snapshot(generation, this.totalEvaluations,
+				this.avgTreeSize, this.avgTreeDepth, individuals, fitness);
 	}
 
 	/**
-	 * Collects stats on the tree tags at various levels.
+	 * Hands the given task to the stats worker, which runs the tasks one at a
+	 * time in the order they're given.
 	 * 
-	 * @param generation
-	 *            the current population
+	 * @param task
+	 *            the task computing and writing some stats
+	 */
+	protected synchronized void submit(Runnable task) {
+		if (this.worker == null) {
+			// A daemon thread, so a run that never calls finish() can exit.
+			this.worker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable task) {
+					Thread thread = new Thread(task, "gp-stats");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+
+		this.worker.submit(task);
+	}
+
+	/**
+	 * Waits for the stats worker to write everything it's been given. The
+	 * worker is started again if more stats are submitted.
+	 */
+	public void finish() {
+		ExecutorService finished;
+		synchronized (this) {
+			finished = this.worker;
+			this.worker = null;
+		}
+
+		if (finished != null) {
+			try {
+				// The tasks run in order, so this one runs last.
+				finished.submit(new Runnable() {
+					@Override
+					public void run() {
+					}
+				}).get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				logger.error(e);
+			}
+			finished.shutdown();
+		}
+	}
+
+	/**
+	 * Convenience method to collect and output stats on the tree
+	 * size/depth/etc.
 	 * 
-	 * @param population
-	 *            the population to collect the stats on
+	 * @param snapshot
+	 *            the snapshot of the stat point
+	 */
+	public void treeStats(Snapshot snapshot) {
+		// Write the tree stats output
+		Utils.writeOutput(String.format("%s\t%s\t%s\t%s", snapshot.generation,
+				snapshot.totalEvaluations, snapshot.avgTreeSize,
+				snapshot.avgTreeDepth), this.treeStatsOutput);
+	}
+
+	/**
+	 * Collects stats on the tree tags at various levels, if they're tracked.
+	 * 
+	 * @param snapshot
+	 *            the snapshot of the stat point, with its individuals
 	 */
-	public void treeTagStats(int generation, Vector<Individual> population) {
+	public void treeTagStats(Snapshot snapshot) {
 		// Should we even bother?
-		if (this.config.doTrackTreeTags()) {
+		if (snapshot.individuals != null) {
 			StringBuilder tagOutput = new StringBuilder();
-			tagOutput.append(String.format("%s\t%s", generation,
-					this.totalEvaluations));
+			tagOutput.append(String.format("%s\t%s", snapshot.generation,
+					snapshot.totalEvaluations));
 
 			for (int i = 0; i <= this.config.getMaxTagTrackingLevel(); i++) {
 				// Collect the tags at from level i
 				Map<String, double[]> tagStats = this.diversityUtils
-						.getIndividualTags(population, i,
+						.getIndividualTags(snapshot.individuals,
+								snapshot.fitness, i,
 								this.config.getTagTrackingDepth());
 
 				for (String tag : tagStats.keySet()) {
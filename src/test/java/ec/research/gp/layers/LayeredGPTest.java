@@ -2,6 +2,7 @@ package ec.research.gp.layers;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.Vector;
@@ -15,6 +16,7 @@ import org.junit.Test;
 import ec.research.gp.layers.LayeredGP;
 import ec.research.gp.simple.problem.ProblemRunner;
 import ec.research.gp.simple.representation.Individual;
+import ec.research.gp.simple.representation.Individual.REPRESENTATION;
 import ec.research.gp.simple.util.Config;
 import ec.research.gp.simple.util.Context;
 
@@ -100,6 +102,30 @@ public class LayeredGPTest {
 		}
 	}
 
+	/**
+	 * Make sure that the LayeredGP also runs on LINEAR individuals.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testStepEvalsLinear() throws Exception {
+		alpsConfig.setRepresentation(REPRESENTATION.LINEAR);
+		try {
+			alpsGP = new LayeredGP(alpsContext);
+			alpsGP.init();
+			alpsGP.step();
+
+			for (Vector<Individual> layer : alpsGP.getLayeredPopulation()) {
+				for (Individual ind : layer) {
+					assertTrue(ind.isLinear());
+					assertEquals(true, ind.isEvaluated());
+				}
+			}
+		} finally {
+			alpsConfig.setRepresentation(REPRESENTATION.TREE);
+		}
+	}
+
 	/**
 	 * Tests that the individual we try to move up is removed from its previous
 	 * layer, using the moveUp method that works on the individual's index in
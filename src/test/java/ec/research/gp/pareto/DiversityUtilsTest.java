@@ -821,4 +821,40 @@ public class DiversityUtilsTest {
 			assertTrue(inds.get(i).getTag() == null);
 		}
 	}
+
+	/**
+	 * Makes sure that the tag stats from saved fitness values match the ones
+	 * from the individuals themselves.
+	 * 
+	 * @throws CloneNotSupportedException
+	 */
+	@Test
+	public void testIndividualTagsFromSnapshot()
+			throws CloneNotSupportedException {
+		String[] genotypes = { "(+ (* x x) x)", "(+ (* x x) (- x x))",
+				"(- x (* x x))", "(+ x x)" };
+		Vector<Individual> individuals = new Vector<Individual>();
+		double[] fitness = new double[genotypes.length];
+
+		for (int i = 0; i < genotypes.length; i++) {
+			Individual ind = Individual.fromString(genotypes[i], config);
+			fitness[i] = 0.1 * (i + 1);
+			ind.setFitness(fitness[i]);
+			individuals.add(ind);
+		}
+
+		for (int level = 0; level < 2; level++) {
+			Map<String, double[]> expected = diversityUtils.getIndividualTags(
+					individuals, level, 1);
+			Map<String, double[]> actual = diversityUtils.getIndividualTags(
+					individuals.toArray(new Individual[individuals.size()]),
+					fitness, level, 1);
+
+			assertEquals(expected.keySet(), actual.keySet());
+			for (String tag : expected.keySet()) {
+				assertEquals(expected.get(tag)[0], actual.get(tag)[0], 1e-12);
+				assertEquals(expected.get(tag)[1], actual.get(tag)[1], 1e-12);
+			}
+		}
+	}
 }
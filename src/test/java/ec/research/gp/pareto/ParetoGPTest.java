@@ -3,7 +3,8 @@ package ec.research.gp.pareto;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
-
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.log4j.PropertyConfigurator;
 import org.junit.BeforeClass;
@@ -12,8 +13,10 @@ import org.junit.Test;
 import ec.research.gp.pareto.ParetoGP;
 import ec.research.gp.simple.problem.ProblemRunner;
 import ec.research.gp.simple.representation.Individual;
+import ec.research.gp.simple.representation.Individual.REPRESENTATION;
 import ec.research.gp.simple.util.Config;
 import ec.research.gp.simple.util.Context;
+import ec.research.gp.simple.util.IdGenerator;
 
 
 /**
@@ -90,4 +93,79 @@ public class ParetoGPTest {
 			assertTrue(ind.getTag() != null);
 		}
 	}
+
+	/**
+	 * Make sure that the ParetoGP also runs on LINEAR individuals.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testStepEvalsLinear() throws Exception {
+		context.getConfig().setRepresentation(REPRESENTATION.LINEAR);
+		try {
+			ParetoGP linearGP = new ParetoGP(context);
+			linearGP.init();
+			linearGP.step();
+
+			for (Individual ind : linearGP.getPopulation()) {
+				assertTrue(ind.isLinear());
+				assertEquals(true, ind.isEvaluated());
+				assertTrue(ind.getTag() != null);
+			}
+		} finally {
+			context.getConfig().setRepresentation(REPRESENTATION.TREE);
+		}
+	}
+
+	/**
+	 * Make sure that a deterministic run gives the same results whatever IDs
+	 * other runs in this JVM have already taken.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testDeterministicRuns() throws Exception {
+		List<String> firstRun = runDeterministic();
+
+		// Skip a chunk of IDs, as a run before this one would.
+		for (int i = 0; i < 12345; i++) {
+			IdGenerator.nextId();
+		}
+
+		assertEquals(firstRun, runDeterministic());
+	}
+
+	/**
+	 * Runs a few generations of a seeded ParetoGP in deterministic mode.
+	 * 
+	 * @return the evaluation count, the best individual and the final
+	 *         population
+	 */
+	private static List<String> runDeterministic() throws Exception {
+		Config cfg = new Config(
+				"src/test/resources/paretoGPRegression.properties");
+		cfg.setOutputDir("testOutput");
+		cfg.setNumThreads(4);
+		cfg.setDeterministic(true);
+
+		Context ctx = new Context(cfg);
+		cfg.getProblem().init(ctx);
+
+		ParetoGP run = new ParetoGP(ctx);
+		run.init();
+		for (int i = 0; i < 20; i++) {
+			run.step();
+		}
+		ctx.shutdown();
+
+		List<String> results = new ArrayList<String>();
+		results.add(Long.toString(run.getNumEvaluations()));
+		results.add(run.getBestIndividual().toString());
+		for (Individual ind : run.getPopulation()) {
+			results.add(String.format("%s %s %s", ind.getAge(),
+					ind.getFitness(), ind));
+		}
+
+		return results;
+	}
 }
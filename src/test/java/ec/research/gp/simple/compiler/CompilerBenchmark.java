@@ -0,0 +1,146 @@
+package ec.research.gp.simple.compiler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.PropertyConfigurator;
+
+import ec.research.gp.simple.gp.GP;
+import ec.research.gp.simple.multiplexer.Multiplexer;
+import ec.research.gp.simple.parity.NParity;
+import ec.research.gp.simple.problem.Problem;
+import ec.research.gp.simple.problem.Problem.EVAL_MODE;
+import ec.research.gp.simple.problem.ProblemRunner;
+import ec.research.gp.simple.regression.SymbolicRegression;
+import ec.research.gp.simple.representation.Individual;
+import ec.research.gp.simple.util.Config;
+import ec.research.gp.simple.util.Context;
+
+/**
+ * Compares the time to evaluate a population of random trees interpreted
+ * (TREE, COLUMN and POSTFIX eval modes) and compiled, for growing numbers of fitness
+ * cases, to find where compiling starts to pay off (i.e. a good value for
+ * compileThreshold). The "cold" compiled times include compiling and loading
+ * every tree (each round starts with an empty cache), as for a population of
+ * new genotypes; the "cached" times are for genotypes that were already
+ * compiled (e.g. elites and duplicates), once the JIT has seen them.
+ *
+ * Not a unit test; run it by hand, e.g. from the IDE, or with
+ * "mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=ec.research.gp.simple.compiler.CompilerBenchmark".
+ *
+ */
+public class CompilerBenchmark {
+	// How many random individuals to evaluate per round.
+	private static final int POP_SIZE = 500;
+
+	// Rounds per measurement (the first round of each is a warm-up).
+	private static final int ROUNDS = 4;
+
+	public static void main(String[] args) throws Exception {
+		PropertyConfigurator.configure("log4j.properties.unittest");
+		ProblemRunner.checkDirs("testOutput");
+
+		System.out.println(String.format(
+				"%-16s %8s %10s %10s %10s %10s %10s", "problem", "cases",
+				"tree ms", "column ms", "postfix ms", "cold ms", "cached ms"));
+
+		for (int numTestPoints : new int[] { 20, 100, 1000, 10000, 100000 }) {
+			Config config = setupConfig("src/test/resources/regression.properties");
+			config.setParameter("numTestPoints",
+					Integer.toString(numTestPoints));
+			run("regression", new SymbolicRegression(), config, numTestPoints);
+		}
+
+		for (int k = 1; k <= 3; k++) {
+			Config config = setupConfig("src/test/resources/multiplexer.properties");
+			config.setParameter("numAddressBits", Integer.toString(k));
+			int n = (1 << k) + k;
+			run(String.format("%d-multiplexer", n), new Multiplexer(),
+					config, 1 << n);
+		}
+
+		for (int n : new int[] { 5, 8, 11, 14 }) {
+			Config config = setupConfig("src/test/resources/paretoNParity.properties");
+			config.setParameter("n", Integer.toString(n));
+			run(String.format("%d-parity", n), new NParity(), config, 1 << n);
+		}
+	}
+
+	private static Config setupConfig(String path) throws Exception {
+		Config config = new Config(path);
+		config.setOutputDir("testOutput");
+
+		return config;
+	}
+
+	/**
+	 * Times the evaluation strategies on the same random population and
+	 * prints one row of the table.
+	 */
+	private static void run(String name, Problem problem, Config config,
+			int numCases) throws Exception {
+		Context context = new Context(config);
+		problem.init(context);
+
+		GP gp = new GP(context);
+		List<Individual> population = new ArrayList<Individual>();
+		for (int i = 0; i < POP_SIZE; i++) {
+			population.add(gp.getRandomIndividual(i % 2));
+		}
+
+		config.setCompileThreshold(0);
+		config.setEvalMode(EVAL_MODE.TREE);
+		double treeMs = time(problem, context, population, false);
+
+		config.setEvalMode(EVAL_MODE.COLUMN);
+		double columnMs = time(problem, context, population, false);
+
+		config.setEvalMode(EVAL_MODE.POSTFIX);
+		double postfixMs = time(problem, context, population, false);
+		config.setEvalMode(EVAL_MODE.COLUMN);
+
+		config.setCompileThreshold(1);
+		double coldMs = time(problem, context, population, true);
+		double cachedMs = time(problem, context, population, false);
+		config.setCompileThreshold(0);
+
+		System.out.println(String.format(
+				"%-16s %8d %10.2f %10.2f %10.2f %10.2f %10.2f", name,
+				numCases, treeMs, columnMs, postfixMs, coldMs, cachedMs));
+	}
+
+	/**
+	 * @return the mean time (ms) to evaluate the population, over all rounds
+	 *         but the first
+	 */
+	private static double time(Problem problem, Context context,
+			List<Individual> population, boolean freshCompiler)
+			throws Exception {
+		long total = 0;
+
+		for (int round = 0; round < ROUNDS; round++) {
+			// Re-init so that every round starts with an empty compile cache.
+			if (freshCompiler) {
+				problem.init(context);
+			}
+
+			List<Individual> inds = new ArrayList<Individual>();
+			for (Individual ind : population) {
+				inds.add(ind.clone());
+			}
+
+			long start = System.nanoTime();
+			for (Individual ind : inds) {
+				problem.fitness(ind);
+			}
+			long elapsed = System.nanoTime() - start;
+
+			if (round > 0) {
+				total += elapsed;
+			}
+		}
+
+		return total / (ROUNDS - 1) / 1e6;
+	}
+}
@@ -0,0 +1,101 @@
+package ec.research.gp.simple.compiler;
+
+import org.apache.log4j.PropertyConfigurator;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ec.research.gp.simple.gp.GP;
+import ec.research.gp.simple.multiplexer.Multiplexer;
+import ec.research.gp.simple.parity.NParity;
+import ec.research.gp.simple.problem.EvalModeCheck;
+import ec.research.gp.simple.problem.Problem.EVAL_MODE;
+import ec.research.gp.simple.problem.ProblemRunner;
+import ec.research.gp.simple.regression.SymbolicRegression;
+import ec.research.gp.simple.util.Config;
+import ec.research.gp.simple.util.Context;
+
+/**
+ * Tests that flattened (postfix) trees evaluate exactly like the interpreted
+ * ones.
+ * 
+ */
+public class PostfixProgramTest {
+	private static Context regressionContext;
+	private static SymbolicRegression regression;
+	private static GP regressionGP;
+
+	private static Context muxContext;
+	private static Multiplexer mux;
+	private static GP muxGP;
+
+	private static Context parityContext;
+	private static NParity parity;
+	private static GP parityGP;
+
+	@BeforeClass
+	public static void setup() throws Exception {
+		// Make log4j be quiet!
+		PropertyConfigurator.configure("log4j.properties.unittest");
+
+		// Setup the output directory so the test won't fail if it was deleted.
+		ProblemRunner.checkDirs("testOutput");
+
+		// Setup the problems
+		regressionContext = setupContext("src/test/resources/regression.properties");
+		regression = new SymbolicRegression();
+		regression.init(regressionContext);
+		regressionGP = new GP(regressionContext);
+
+		muxContext = setupContext("src/test/resources/multiplexer.properties");
+		mux = new Multiplexer();
+		mux.init(muxContext);
+		muxGP = new GP(muxContext);
+
+		parityContext = setupContext("src/test/resources/paretoNParity.properties");
+		parity = new NParity();
+		parity.init(parityContext);
+		parityGP = new GP(parityContext);
+	}
+
+	private static Context setupContext(String path) throws Exception {
+		Config config = new Config(path);
+
+		// Make sure config points to the test output directory
+		config.setOutputDir("testOutput");
+
+		return new Context(config);
+	}
+
+	/**
+	 * Tests flattened regression trees against the interpreter.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testRegressionPostfixMatchesTree() throws Exception {
+		EvalModeCheck.assertMatchesTree(regressionContext, regression,
+				regressionGP, EVAL_MODE.POSTFIX);
+	}
+
+	/**
+	 * Tests flattened multiplexer trees against the interpreter.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testMultiplexerPostfixMatchesTree() throws Exception {
+		EvalModeCheck.assertMatchesTree(muxContext, mux, muxGP,
+				EVAL_MODE.POSTFIX);
+	}
+
+	/**
+	 * Tests flattened parity trees against the interpreter.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testParityPostfixMatchesTree() throws Exception {
+		EvalModeCheck.assertMatchesTree(parityContext, parity, parityGP,
+				EVAL_MODE.POSTFIX);
+	}
+}
@@ -0,0 +1,173 @@
+package ec.research.gp.simple.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.log4j.PropertyConfigurator;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ec.research.gp.simple.gp.GP;
+import ec.research.gp.simple.multiplexer.Multiplexer;
+import ec.research.gp.simple.parity.NParity;
+import ec.research.gp.simple.problem.Problem;
+import ec.research.gp.simple.problem.Problem.EVAL_MODE;
+import ec.research.gp.simple.problem.ProblemRunner;
+import ec.research.gp.simple.regression.SymbolicRegression;
+import ec.research.gp.simple.representation.Individual;
+import ec.research.gp.simple.util.Config;
+import ec.research.gp.simple.util.Context;
+
+/**
+ * Tests that compiled trees evaluate exactly like the interpreted ones.
+ * 
+ */
+public class TreeCompilerTest {
+	private static Context regressionContext;
+	private static SymbolicRegression regression;
+	private static GP regressionGP;
+
+	private static Context muxContext;
+	private static Multiplexer mux;
+	private static GP muxGP;
+
+	private static Context parityContext;
+	private static NParity parity;
+	private static GP parityGP;
+
+	@BeforeClass
+	public static void setup() throws Exception {
+		// Make log4j be quiet!
+		PropertyConfigurator.configure("log4j.properties.unittest");
+
+		// Setup the output directory so the test won't fail if it was deleted.
+		ProblemRunner.checkDirs("testOutput");
+
+		// Setup the problems
+		regressionContext = setupContext("src/test/resources/regression.properties");
+		regression = new SymbolicRegression();
+		regression.init(regressionContext);
+		regressionGP = new GP(regressionContext);
+
+		muxContext = setupContext("src/test/resources/multiplexer.properties");
+		mux = new Multiplexer();
+		mux.init(muxContext);
+		muxGP = new GP(muxContext);
+
+		parityContext = setupContext("src/test/resources/paretoNParity.properties");
+		parity = new NParity();
+		parity.init(parityContext);
+		parityGP = new GP(parityContext);
+	}
+
+	private static Context setupContext(String path) throws Exception {
+		Config config = new Config(path);
+
+		// Make sure config points to the test output directory
+		config.setOutputDir("testOutput");
+
+		return new Context(config);
+	}
+
+	/**
+	 * Evaluates random individuals both compiled and interpreted (one at a
+	 * time) and makes sure the hits and fitness are exactly the same.
+	 */
+	private void checkCompiledMatchesTree(Context context, Problem problem,
+			GP gp) throws Exception {
+		for (int i = 0; i < 200; i++) {
+			Individual compiledInd = gp.getRandomIndividual(i % 2);
+			Individual treeInd = compiledInd.clone();
+
+			context.getConfig().setCompileThreshold(1);
+			problem.fitness(compiledInd);
+
+			context.getConfig().setCompileThreshold(0);
+			context.getConfig().setEvalMode(EVAL_MODE.TREE);
+			problem.fitness(treeInd);
+			context.getConfig().setEvalMode(EVAL_MODE.COLUMN);
+
+			assertEquals(treeInd.getHits(), compiledInd.getHits());
+			assertTrue(treeInd.getFitness() == compiledInd.getFitness());
+		}
+	}
+
+	/**
+	 * Tests compiled regression trees against the interpreter.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testRegressionCompiledMatchesTree() throws Exception {
+		checkCompiledMatchesTree(regressionContext, regression, regressionGP);
+	}
+
+	/**
+	 * Tests compiled multiplexer trees against the interpreter.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testMultiplexerCompiledMatchesTree() throws Exception {
+		checkCompiledMatchesTree(muxContext, mux, muxGP);
+	}
+
+	/**
+	 * Tests compiled parity trees against the interpreter.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testParityCompiledMatchesTree() throws Exception {
+		checkCompiledMatchesTree(parityContext, parity, parityGP);
+	}
+
+	/**
+	 * Makes sure the protected division and log compile to the same
+	 * protection as the interpreted nodes.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testProtectedOperators() throws Exception {
+		TreeCompiler compiler = new TreeCompiler(regression, 10);
+		Individual div = Individual.fromString("(% x (- x x))",
+				regressionContext.getConfig());
+		Individual log = Individual.fromString("(RLOG (- x x))",
+				regressionContext.getConfig());
+
+		double[] xs = new double[] { -2.0, 0.0, 0.5 };
+		double[] out = new double[xs.length];
+
+		compiler.compileDouble(div.getRoot()).evaluate(xs, out);
+		for (int i = 0; i < xs.length; i++) {
+			assertTrue(out[i] == xs[i]);
+		}
+
+		compiler.compileDouble(log.getRoot()).evaluate(xs, out);
+		for (int i = 0; i < xs.length; i++) {
+			assertTrue(out[i] == 0.0);
+		}
+	}
+
+	/**
+	 * Makes sure compiled programs are cached by genotype.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testCachedByGenotype() throws Exception {
+		TreeCompiler compiler = new TreeCompiler(mux, 10);
+		Individual ind1 = Individual.fromString(
+				"(IF (AND A0 A1) D3 (IF A0 D1 (IF A1 D2 D0)))",
+				muxContext.getConfig());
+		Individual ind2 = ind1.clone();
+
+		BooleanProgram program = compiler.compileBoolean(ind1.getRoot());
+		assertNotNull(program);
+		assertSame(program, compiler.compileBoolean(ind2.getRoot()));
+		assertEquals(1, compiler.getCacheSize());
+	}
+}
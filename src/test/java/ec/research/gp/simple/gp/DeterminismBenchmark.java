@@ -0,0 +1,91 @@
+package ec.research.gp.simple.gp;
+
+import org.apache.log4j.PropertyConfigurator;
+
+import ec.research.gp.simple.problem.ProblemRunner;
+import ec.research.gp.simple.regression.SymbolicRegression;
+import ec.research.gp.simple.util.Config;
+import ec.research.gp.simple.util.Context;
+
+/**
+ * Measures what deterministic mode costs: runs the same seeded symbolic
+ * regression with and without it, taking turns at going first so that both
+ * see the same JIT and machine state, and prints the mean time per
+ * generation of each.
+ *
+ * Not a unit test; run it by hand, e.g. from the IDE, or with
+ * "mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=ec.research.gp.simple.gp.DeterminismBenchmark"; the
+ * number of threads can be given as an argument.
+ *
+ */
+public class DeterminismBenchmark {
+	// Generations per run.
+	private static final int GENERATIONS = 30;
+
+	// Runs per mode (the first run of each is a warm-up).
+	private static final int ROUNDS = 11;
+
+	// The number of fitness cases.
+	private static final int NUM_CASES = 200;
+
+	public static void main(String[] args) throws Exception {
+		PropertyConfigurator.configure("log4j.properties.unittest");
+		ProblemRunner.checkDirs("testOutput");
+
+		// One thread per core, unless given.
+		int numThreads = (args.length > 0) ? Integer.parseInt(args[0])
+				: Runtime.getRuntime().availableProcessors();
+
+		long[] totals = new long[2];
+		for (int round = 0; round < ROUNDS; round++) {
+			for (int turn = 0; turn < 2; turn++) {
+				int mode = (round + turn) % 2;
+				long time = run(numThreads, mode == 1);
+				if (round > 0) {
+					totals[mode] += time;
+				}
+			}
+		}
+
+		double perGen = (ROUNDS - 1) * GENERATIONS * 1e6;
+		double plain = totals[0] / perGen;
+		double deterministic = totals[1] / perGen;
+
+		System.out.println(String.format("%d threads, %d fitness cases",
+				numThreads, NUM_CASES));
+		System.out.println(String.format("default:       %8.2f ms/generation",
+				plain));
+		System.out.println(String.format(
+				"deterministic: %8.2f ms/generation (%+.1f%%)", deterministic,
+				100 * (deterministic - plain) / plain));
+	}
+
+	/**
+	 * @return the time (ns) it takes to run GENERATIONS generations
+	 */
+	private static long run(int numThreads, boolean deterministic)
+			throws Exception {
+		Config config = new Config(
+				"src/test/resources/simpleRegression.properties");
+		config.setOutputDir("testOutput");
+		config.setSeed(1404514792162L);
+		config.setNumThreads(numThreads);
+		config.setDeterministic(deterministic);
+		config.setParameter("numTestPoints", Integer.toString(NUM_CASES));
+
+		Context context = new Context(config);
+		new SymbolicRegression().init(context);
+
+		GP gp = new GP(context);
+		long start = System.nanoTime();
+		gp.init();
+		for (int i = 0; i < GENERATIONS; i++) {
+			gp.step();
+		}
+		long time = System.nanoTime() - start;
+
+		context.shutdown();
+		return time;
+	}
+}
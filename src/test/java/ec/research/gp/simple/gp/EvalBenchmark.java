@@ -0,0 +1,173 @@
+package ec.research.gp.simple.gp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.PropertyConfigurator;
+
+import ec.research.gp.simple.problem.Problem;
+import ec.research.gp.simple.problem.ProblemRunner;
+import ec.research.gp.simple.regression.SymbolicRegression;
+import ec.research.gp.simple.representation.Individual;
+import ec.research.gp.simple.util.Config;
+import ec.research.gp.simple.util.Context;
+
+/**
+ * Compares splitting a population into one equal-count chunk per thread (as
+ * evaluatePop() used to) with the shared {@link EvalQueue} that evaluate()
+ * uses now, on populations whose sizes are skewed in different ways. For
+ * each, it prints the wall time and the utilization: the time the threads
+ * spent working over the threads times the wall time, so 100% means no
+ * thread ever waited for the others.
+ *
+ * Not a unit test; run it by hand, e.g. from the IDE, or with
+ * "mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=ec.research.gp.simple.gp.EvalBenchmark"; the number of
+ * threads can be given as an argument.
+ *
+ */
+public class EvalBenchmark {
+	// How many random individuals to evaluate per round.
+	private static final int POP_SIZE = 2000;
+
+	// The number of fitness cases.
+	private static final int NUM_CASES = 500;
+
+	// Rounds per measurement (the first round of each is a warm-up).
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) throws Exception {
+		PropertyConfigurator.configure("log4j.properties.unittest");
+		ProblemRunner.checkDirs("testOutput");
+
+		// One thread per core, unless given.
+		int numThreads = (args.length > 0) ? Integer.parseInt(args[0])
+				: Runtime.getRuntime().availableProcessors();
+
+		Config config = new Config("src/test/resources/regression.properties");
+		config.setOutputDir("testOutput");
+		config.setNumThreads(numThreads);
+		config.setParameter("numTestPoints", Integer.toString(NUM_CASES));
+
+		Context context = new Context(config);
+		Problem problem = new SymbolicRegression();
+		problem.init(context);
+
+		GP gp = new GP(context);
+		List<Individual> random = new ArrayList<Individual>();
+		for (int i = 0; i < POP_SIZE; i++) {
+			Individual ind = gp.getRandomIndividual(i % 2);
+			ind.numberAndCountNodes();
+			random.add(ind);
+		}
+
+		// Largest trees at the end, so they all land in the last chunk.
+		List<Individual> sorted = new ArrayList<Individual>(random);
+		Collections.sort(sorted, new Comparator<Individual>() {
+			@Override
+			public int compare(Individual ind1, Individual ind2) {
+				return ind1.getNumNodes() - ind2.getNumNodes();
+			}
+		});
+
+		System.out.println(String.format("%d threads, %d individuals, "
+				+ "%d fitness cases", numThreads, POP_SIZE, NUM_CASES));
+		System.out.println(String.format("%-22s %10s %8s %10s %8s",
+				"population", "chunks ms", "util", "queue ms", "util"));
+
+		run("random sizes", random, 0.0, problem, context);
+		run("sorted by size", sorted, 0.0, problem, context);
+		run("random, first 2/3 done", random, 2.0 / 3, problem, context);
+		run("sorted, first 2/3 done", sorted, 2.0 / 3, problem, context);
+
+		context.shutdown();
+	}
+
+	/**
+	 * Times both schedules on the population, with the given fraction of it
+	 * already evaluated, and prints one row of the table.
+	 */
+	private static void run(String name, List<Individual> population,
+			double evaluatedFraction, Problem problem, Context context)
+			throws Exception {
+		double[] chunks = time(population, evaluatedFraction, false, problem,
+				context);
+		double[] queue = time(population, evaluatedFraction, true, problem,
+				context);
+
+		System.out.println(String.format(
+				"%-22s %10.2f %7.1f%% %10.2f %7.1f%%", name, chunks[0],
+				100 * chunks[1], queue[0], 100 * queue[1]));
+	}
+
+	/**
+	 * @return the mean wall time (ms) and utilization over all rounds but the
+	 *         first
+	 */
+	private static double[] time(List<Individual> population,
+			double evaluatedFraction, boolean useQueue, final Problem problem,
+			Context context) throws Exception {
+		int numThreads = context.getConfig().getNumThreads();
+		long totalWall = 0;
+		long totalBusy = 0;
+
+		for (int round = 0; round < ROUNDS; round++) {
+			// Fresh copies, the first ones already evaluated (e.g. survivors).
+			List<Individual> inds = new ArrayList<Individual>();
+			for (int i = 0; i < population.size(); i++) {
+				Individual ind = population.get(i).clone();
+				ind.setIsEvaluated(i < evaluatedFraction * population.size());
+				inds.add(ind);
+			}
+
+			List<Iterable<Individual>> parts = new ArrayList<Iterable<Individual>>();
+			if (useQueue) {
+				EvalQueue queue = new EvalQueue(inds, true);
+				for (int i = 0; i < numThreads; i++) {
+					parts.add(queue);
+				}
+			} else {
+				int chunkSize = inds.size() / numThreads;
+				for (int i = 0; i < numThreads; i++) {
+					int start = i * chunkSize;
+					int end = (i == numThreads - 1) ? inds.size()
+							: (start + chunkSize);
+					parts.add(inds.subList(start, end));
+				}
+			}
+
+			final AtomicLong busy = new AtomicLong();
+			List<Runnable> tasks = new ArrayList<Runnable>();
+			for (final Iterable<Individual> part : parts) {
+				tasks.add(new Runnable() {
+					@Override
+					public void run() {
+						long start = System.nanoTime();
+						for (Individual ind : part) {
+							if (!ind.isEvaluated()) {
+								problem.fitness(ind);
+							}
+						}
+						busy.addAndGet(System.nanoTime() - start);
+					}
+				});
+			}
+
+			long start = System.nanoTime();
+			context.runAll(tasks);
+			long wall = System.nanoTime() - start;
+
+			if (round > 0) {
+				totalWall += wall;
+				totalBusy += busy.get();
+			}
+		}
+
+		double utilization = (double) totalBusy
+				/ ((double) totalWall * numThreads);
+		return new double[] { totalWall / (ROUNDS - 1) / 1e6, utilization };
+	}
+}
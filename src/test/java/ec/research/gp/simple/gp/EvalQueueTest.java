@@ -0,0 +1,110 @@
+package ec.research.gp.simple.gp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.log4j.PropertyConfigurator;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ec.research.gp.simple.problem.ProblemRunner;
+import ec.research.gp.simple.representation.Individual;
+import ec.research.gp.simple.util.Config;
+import ec.research.gp.simple.util.Context;
+
+/**
+ * Tests the {@link EvalQueue}.
+ *
+ */
+public class EvalQueueTest {
+	private static List<Individual> population;
+
+	@BeforeClass
+	public static void setup() throws Exception {
+		// Make log4j be quiet!
+		PropertyConfigurator.configure("log4j.properties.unittest");
+
+		// Setup the output directory so the test won't fail if it was deleted.
+		ProblemRunner.checkDirs("testOutput");
+
+		Config config = new Config("src/test/resources/regression.properties");
+		config.setOutputDir("testOutput");
+		GP gp = new GP(new Context(config));
+
+		population = new ArrayList<Individual>();
+		for (int i = 0; i < 100; i++) {
+			Individual ind = gp.getRandomIndividual(i % 2);
+			ind.numberAndCountNodes();
+			population.add(ind);
+		}
+	}
+
+	/**
+	 * Makes sure that the queue's iterators split the unevaluated
+	 * individuals between them, each one going to exactly one iterator, and
+	 * hand out the largest ones first.
+	 */
+	@Test
+	public void testIterators() {
+		for (int i = 0; i < population.size(); i++) {
+			population.get(i).setIsEvaluated(i % 3 == 0);
+		}
+
+		EvalQueue queue = new EvalQueue(population, true);
+		assertEquals(66, queue.size());
+
+		List<Iterator<Individual>> iterators = new ArrayList<Iterator<Individual>>();
+		for (int i = 0; i < 3; i++) {
+			iterators.add(queue.iterator());
+		}
+
+		// Take turns, unevenly, as threads would.
+		Set<Individual> seen = Collections
+				.newSetFromMap(new IdentityHashMap<Individual, Boolean>());
+		int lastSize = Integer.MAX_VALUE;
+		int turn = 0;
+		while (seen.size() < queue.size()) {
+			Iterator<Individual> iterator = iterators.get(turn++ % 3);
+			for (int i = 0; i < turn % 4 && iterator.hasNext(); i++) {
+				Individual ind = iterator.next();
+				assertFalse(ind.isEvaluated());
+				assertTrue(seen.add(ind));
+				assertTrue(ind.getNumNodes() <= lastSize);
+				lastSize = ind.getNumNodes();
+			}
+		}
+
+		for (Iterator<Individual> iterator : iterators) {
+			assertFalse(iterator.hasNext());
+		}
+	}
+
+	/**
+	 * Makes sure that without sorting, the individuals keep their order.
+	 */
+	@Test
+	public void testPopulationOrder() {
+		for (Individual ind : population) {
+			ind.setIsEvaluated(false);
+		}
+
+		List<Individual> expected = new ArrayList<Individual>(population);
+		List<Individual> actual = new ArrayList<Individual>();
+		for (Individual ind : new EvalQueue(population, false)) {
+			actual.add(ind);
+		}
+
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertTrue(expected.get(i) == actual.get(i));
+		}
+	}
+}
@@ -4,6 +4,8 @@ import static org.junit.Assert.assertEquals;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 
 import org.apache.log4j.PropertyConfigurator;
@@ -15,8 +17,10 @@ import ec.research.gp.simple.gp.GP;
 import ec.research.gp.simple.problem.ProblemRunner;
 import ec.research.gp.simple.regression.SymbolicRegression;
 import ec.research.gp.simple.representation.Individual;
+import ec.research.gp.simple.representation.Individual.REPRESENTATION;
 import ec.research.gp.simple.util.Config;
 import ec.research.gp.simple.util.Context;
+import ec.research.gp.simple.util.IdGenerator;
 
 
 /**
@@ -89,4 +93,197 @@ public class GPTest {
 			assertEquals(true, ind.isEvaluated());
 		}
 	}
+
+	/**
+	 * Make sure that the evaluation threads count every evaluation exactly
+	 * once.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testEvaluationCount() throws Exception {
+		gp.init();
+		assertEquals(config.getPopSize(), gp.getNumEvaluations());
+
+		// Re-evaluate part of the population.
+		for (int i = 0; i < gp.getPopulation().size(); i += 3) {
+			gp.getPopulation().get(i).setIsEvaluated(false);
+		}
+		gp.evaluatePop();
+		assertEquals(config.getPopSize() + (config.getPopSize() + 2) / 3,
+				gp.getNumEvaluations());
+	}
+
+	/**
+	 * Make sure that a run on LINEAR individuals evolves exactly the same
+	 * population as a run on Node trees with the same seed.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testLinearMatchesTree() throws Exception {
+		List<String> treePop = runGenerations(REPRESENTATION.TREE, 1, 3);
+		List<String> linearPop = runGenerations(REPRESENTATION.LINEAR, 1, 3);
+
+		assertEquals(treePop, linearPop);
+	}
+
+	/**
+	 * Make sure that a run on PERSISTENT individuals evolves exactly the same
+	 * population as a run on Node trees with the same seed.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testPersistentMatchesTree() throws Exception {
+		List<String> treePop = runGenerations(REPRESENTATION.TREE, 1, 3);
+		List<String> persistentPop = runGenerations(
+				REPRESENTATION.PERSISTENT, 1, 3);
+
+		assertEquals(treePop, persistentPop);
+	}
+
+	/**
+	 * Make sure that breeding on several threads gives exactly the same
+	 * population as breeding on one, with the same seed, and fills every slot.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testBreedMatchesAcrossThreads() throws Exception {
+		List<String> serialPop = runGenerations(REPRESENTATION.TREE, 1, 3);
+		List<String> parallelPop = runGenerations(REPRESENTATION.TREE, 4, 3);
+
+		assertEquals(serialPop, parallelPop);
+		assertEquals(400, parallelPop.size());
+	}
+
+	/**
+	 * Make sure that in deterministic mode, a seeded run counts the same
+	 * evaluations, finds the same best individual and breeds the same
+	 * population (IDs included) whatever the number of threads.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testDeterministicRuns() throws Exception {
+		List<String> serialRun = runDeterministic(1, 3);
+
+		assertEquals(serialRun, runDeterministic(4, 3));
+		assertEquals(serialRun, runDeterministic(4, 3));
+	}
+
+	/**
+	 * Make sure that the evaluation stats checkpoints of a multi-threaded run
+	 * are output in order, each with its own count.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testStatsCheckpointsInOrder() throws Exception {
+		Config cfg = new Config(
+				"src/test/resources/simpleRegression.properties");
+		cfg.setParameter("statCollectEvals", "3");
+		cfg.init();
+		cfg.setOutputDir("testOutput");
+		cfg.setNumThreads(4);
+
+		Context ctx = new Context(cfg);
+		new SymbolicRegression().init(ctx);
+
+		final List<Long> outputs = new ArrayList<Long>();
+		GP run = new GP(ctx) {
+			@Override
+			protected void checkEvaluationStats(long evaluation) {
+				synchronized (this.lock) {
+					long last = this.lastFitnessOutput;
+					super.checkEvaluationStats(evaluation);
+					if (this.lastFitnessOutput != last) {
+						outputs.add(this.lastFitnessOutput);
+					}
+				}
+			}
+		};
+		run.init();
+		for (int i = 0; i < 5; i++) {
+			run.step();
+		}
+		ctx.shutdown();
+
+		assertEquals(run.getNumEvaluations() / 3, outputs.size());
+		for (int i = 0; i < outputs.size(); i++) {
+			assertEquals(3L * (i + 1), outputs.get(i).longValue());
+		}
+	}
+
+	/**
+	 * Runs a few generations of a seeded GP in deterministic mode.
+	 * 
+	 * @return the evaluation count, the best individual and the final
+	 *         population, with their IDs relative to the first ID of the run
+	 */
+	private static List<String> runDeterministic(int numThreads,
+			int generations) throws Exception {
+		Config cfg = new Config(
+				"src/test/resources/simpleRegression.properties");
+		cfg.setOutputDir("testOutput");
+		cfg.setSeed(1404514792162L);
+		cfg.setNumThreads(numThreads);
+		cfg.setDeterministic(true);
+
+		Context ctx = new Context(cfg);
+		new SymbolicRegression().init(ctx);
+
+		long firstId = IdGenerator.nextId();
+		GP run = new GP(ctx);
+		run.init();
+		for (int i = 0; i < generations; i++) {
+			run.step();
+		}
+
+		List<String> results = new ArrayList<String>();
+		results.add(Long.toString(run.getNumEvaluations()));
+		results.add(run.getBestIndividual().toString());
+		for (Individual ind : run.getPopulation()) {
+			results.add(String.format("%d %s %s", ind.getId() - firstId,
+					ind.getFitness(), ind));
+		}
+		ctx.shutdown();
+
+		return results;
+	}
+
+	/**
+	 * Runs a few generations of a seeded GP with the given representation.
+	 * 
+	 * @return the genotypes of the final population
+	 */
+	private static List<String> runGenerations(REPRESENTATION representation,
+			int numThreads, int generations) throws Exception {
+		Config cfg = new Config("src/test/resources/regression.properties");
+		cfg.setOutputDir("testOutput");
+		cfg.setRepresentation(representation);
+		cfg.setNumThreads(numThreads);
+
+		Context ctx = new Context(cfg);
+		new SymbolicRegression().init(ctx);
+
+		GP run = new GP(ctx);
+		run.init();
+		for (int i = 0; i < generations; i++) {
+			run.step();
+		}
+
+		List<String> genotypes = new ArrayList<String>();
+		for (Individual ind : run.getPopulation()) {
+			assertEquals(representation == REPRESENTATION.LINEAR,
+					ind.isLinear());
+			assertEquals(representation == REPRESENTATION.PERSISTENT,
+					ind.isPersistent());
+			genotypes.add(ind.toString());
+		}
+		ctx.shutdown();
+
+		return genotypes;
+	}
 }
@@ -0,0 +1,127 @@
+package ec.research.gp.simple.gp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Vector;
+
+import org.apache.log4j.PropertyConfigurator;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ec.research.gp.simple.problem.ProblemRunner;
+import ec.research.gp.simple.representation.Individual;
+import ec.research.gp.simple.util.Config;
+import ec.research.gp.simple.util.Context;
+
+/**
+ * Tests the {@link IslandModel} class for functionality.
+ *
+ */
+public class IslandModelTest {
+	@BeforeClass
+	public static void setup() {
+		// Make log4j be quiet!
+		PropertyConfigurator.configure("log4j.properties.unittest");
+
+		// Setup the output directory so the test won't fail if it was deleted.
+		ProblemRunner.checkDirs("testOutput");
+	}
+
+	/**
+	 * Make sure that the islands share the evaluation budget, and stop soon
+	 * after it's used up.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testSharedBudget() throws Exception {
+		Config config = getConfig();
+		config.setParameter("migrationTopology", "RANDOM");
+		config.init();
+		config.setOutputDir("testOutput");
+
+		IslandModel islands = new IslandModel(config);
+		islands.evolve();
+
+		// Each island may finish the generation it's in.
+		long evaluations = islands.getNumEvaluations();
+		assertTrue(evaluations >= 2000);
+		assertTrue(evaluations < 2000 + 3 * 64);
+
+		long sum = 0;
+		for (GP island : islands.getIslands()) {
+			sum += island.getNumEvaluations();
+			assertEquals(64, island.getPopulation().size());
+		}
+		assertEquals(evaluations, sum);
+	}
+
+	/**
+	 * Make sure that immigrants take the place of the worst individuals.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testImmigrate() throws Exception {
+		Config config = getConfig();
+		GP island = new GP(new Context(config));
+		island.init();
+
+		Vector<Individual> population = island.getPopulation();
+		Individual best = island.getEmigrants(1).get(0);
+
+		// The fitness values we expect: the worst one is replaced.
+		List<Double> expected = getFitness(population);
+		expected.remove(0);
+		expected.add(best.getFitness());
+		Collections.sort(expected);
+
+		List<Individual> immigrants = new ArrayList<Individual>();
+		immigrants.add(best);
+		island.immigrate(immigrants);
+
+		assertEquals(expected, getFitness(population));
+
+		boolean found = false;
+		for (Individual individual : population) {
+			found |= (individual == best);
+		}
+		assertTrue(found);
+	}
+
+	/**
+	 * @return the sorted fitness values of the individuals
+	 */
+	private static List<Double> getFitness(List<Individual> individuals) {
+		List<Double> fitness = new ArrayList<Double>();
+		for (Individual individual : individuals) {
+			fitness.add(individual.getFitness());
+		}
+		Collections.sort(fitness);
+
+		return fitness;
+	}
+
+	/**
+	 * @return the test config: 3 islands of 64 sharing 2000 evaluations
+	 */
+	private static Config getConfig() throws Exception {
+		Config config = new Config(
+				"src/test/resources/simpleRegression.properties");
+		config.setParameter("popSize", "64");
+		config.setParameter("numElites", "4");
+		config.setParameter("numEvaluations", "2000");
+		config.setParameter("numIslands", "3");
+		config.setParameter("migrationInterval", "2");
+		config.setParameter("migrationSize", "3");
+		config.init();
+		config.setOutputDir("testOutput");
+		config.setSeed(1404514792162L);
+
+		return config;
+	}
+}
@@ -0,0 +1,110 @@
+package ec.research.gp.simple.gp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+import org.apache.log4j.PropertyConfigurator;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ec.research.gp.simple.problem.ProblemRunner;
+import ec.research.gp.simple.representation.Individual;
+import ec.research.gp.simple.util.Config;
+import ec.research.gp.simple.util.Context;
+
+/**
+ * Tests the {@link SteadyStateGP} class for functionality.
+ *
+ */
+public class SteadyStateGPTest {
+	@BeforeClass
+	public static void setup() {
+		// Make log4j be quiet!
+		PropertyConfigurator.configure("log4j.properties.unittest");
+
+		// Setup the output directory so the test won't fail if it was deleted.
+		ProblemRunner.checkDirs("testOutput");
+	}
+
+	/**
+	 * Make sure that a step is a generation's worth of births, and that the
+	 * population stays full and evaluated.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testStep() throws Exception {
+		Context context = new Context(getConfig());
+		SteadyStateGP gp = new SteadyStateGP(context);
+		gp.init();
+		gp.step();
+		gp.step();
+		context.shutdown();
+
+		assertEquals(256, gp.getPopulation().size());
+		for (Individual ind : gp.getPopulation()) {
+			assertTrue(ind.isEvaluated());
+		}
+
+		// Replicated offspring aren't evaluated again.
+		assertTrue(gp.getNumEvaluations() > 256);
+		assertTrue(gp.getNumEvaluations() <= 3 * 256);
+	}
+
+	/**
+	 * Make sure that the workers stop exactly at the evaluation budget.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testEvaluationBudget() throws Exception {
+		Config config = getConfig();
+		config.setParameter("numEvaluations", "3000");
+		config.init();
+		config.setOutputDir("testOutput");
+
+		SteadyStateGP gp = new SteadyStateGP(new Context(config));
+		gp.init();
+		gp.evolve();
+
+		assertEquals(3000, gp.getNumEvaluations());
+		assertTrue(gp.doTerminate());
+	}
+
+	/**
+	 * Make sure that a run stopping on generations does all its births.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testGenerations() throws Exception {
+		Config config = getConfig();
+		config.setParameter("stopOn", "GENERATIONS");
+		config.setParameter("numGenerations", "5");
+		config.init();
+		config.setOutputDir("testOutput");
+
+		SteadyStateGP gp = new SteadyStateGP(new Context(config));
+		gp.init();
+		gp.evolve();
+
+		assertTrue(gp.doTerminate());
+		assertEquals(256, gp.getPopulation().size());
+	}
+
+	/**
+	 * @return the test config for symbolic regression
+	 */
+	private static Config getConfig() throws FileNotFoundException,
+			IOException {
+		Config config = new Config(
+				"src/test/resources/simpleRegression.properties");
+		config.setOutputDir("testOutput");
+		config.setSeed(1404514792162L);
+
+		return config;
+	}
+}
@@ -1,5 +1,6 @@
 package ec.research.gp.simple.multiplexer;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Vector;
@@ -14,6 +15,8 @@ import ec.research.gp.pareto.ParetoGP;
 import ec.research.gp.simple.bool.nodes.D0;
 import ec.research.gp.simple.gp.GP;
 import ec.research.gp.simple.multiplexer.Multiplexer;
+import ec.research.gp.simple.problem.EvalModeCheck;
+import ec.research.gp.simple.problem.Problem.EVAL_MODE;
 import ec.research.gp.simple.problem.ProblemRunner;
 import ec.research.gp.simple.representation.Individual;
 import ec.research.gp.simple.util.Config;
@@ -259,4 +262,15 @@ public class MultiplexerTest {
 			assertTrue(ind.getFitness() == 1.0);
 		}
 	}
+
+	/**
+	 * Tests that the bit-sliced column evaluation gives exactly the same hits
+	 * and fitness as the case-by-case tree evaluation on random trees.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testColumnEvalMatchesTreeEval() throws Exception {
+		EvalModeCheck.assertMatchesTree(context, mux, gp, EVAL_MODE.COLUMN);
+	}
 }
@@ -16,6 +16,7 @@ import ec.research.gp.simple.operators.PointMutation;
 import ec.research.gp.simple.problem.ProblemRunner;
 import ec.research.gp.simple.regression.nodes.R;
 import ec.research.gp.simple.representation.Individual;
+import ec.research.gp.simple.representation.Node;
 import ec.research.gp.simple.util.Config;
 import ec.research.gp.simple.util.Context;
 
@@ -132,4 +133,116 @@ public class PointMutationTest {
 		assertEquals(ind.getRoot().subtreeToNumberedString(), mutant.getRoot()
 				.subtreeToNumberedString());
 	}
+
+	/**
+	 * Makes sure that the cached subtree sizes and heights are still right
+	 * after nodes are replaced.
+	 * 
+	 * @throws CloneNotSupportedException
+	 */
+	@Test
+	public void testSubtreeInfo() throws CloneNotSupportedException {
+		Individual ind = Individual.fromString("(+ x (* x (- (% x x) 1)))",
+				config);
+		config.setMutationProbability(1.0);
+		Individual mutant = PointMutation.mutate(ind, context);
+
+		for (Node node : mutant.getAllNodes()) {
+			assertEquals(node.sizeFrom(), node.getSubtreeSize());
+			assertEquals(node.depthFrom(), node.getSubtreeHeight());
+		}
+
+		// The hash follows the mutated nodes and constants.
+		assertEquals(Individual.fromString(mutant.toString(), config)
+				.getStructuralHash(), mutant.getStructuralHash());
+	}
+
+	/**
+	 * Makes sure that mutating a PERSISTENT individual gives the same mutant
+	 * as mutating the Node tree, without changing the (shared) original.
+	 * 
+	 * @throws CloneNotSupportedException
+	 */
+	@Test
+	public void testPersistentMatchesTree() throws CloneNotSupportedException {
+		String genotype = "(+ x (* 0.5 (- (% x x) (SIN 1.5))))";
+		config.setMutationProbability(0.5);
+
+		for (long seed = 0; seed < 20; seed++) {
+			Individual ind = Individual.fromString(genotype, config);
+			context.getRand().setSeed(seed);
+			Individual expected = PointMutation.mutate(ind, context);
+
+			Individual persistent = Individual.fromString(genotype, config);
+			persistent.setIsPersistent(true);
+			context.getRand().setSeed(seed);
+			Individual mutant = PointMutation.mutate(persistent, context);
+
+			assertEquals(expected.toString(), mutant.toString());
+			assertEquals(genotype, persistent.toString());
+		}
+	}
+
+	/**
+	 * Makes sure that linear point mutation makes the same changes as the tree
+	 * version.
+	 * 
+	 * @throws CloneNotSupportedException
+	 */
+	@Test
+	public void testLinearMatchesTree() throws CloneNotSupportedException {
+		String genotype = "(+ x (* 0.5 (- (% x x) (SIN 1.5))))";
+		config.setMutationProbability(0.5);
+
+		for (long seed = 0; seed < 20; seed++) {
+			Individual ind = Individual.fromString(genotype, config);
+			context.getRand().setSeed(seed);
+			Individual expected = PointMutation.mutate(ind, context);
+
+			Individual linear = Individual.fromString(genotype, config);
+			linear.linearize(config.getPrimitives());
+			context.getRand().setSeed(seed);
+			Individual mutant = PointMutation.mutate(linear, context);
+
+			assertEquals(expected.toString(), mutant.toString());
+			assertEquals(genotype, linear.toString());
+		}
+	}
+
+	/**
+	 * Makes sure that the skip-sampled mutation sites hit each node with the
+	 * mutation probability.
+	 */
+	@Test
+	public void testNextSiteRate() {
+		int size = 1000;
+		int trials = 200;
+		config.setMutationProbability(0.1);
+		context.getRand().setSeed(42);
+
+		int[] hits = new int[size];
+		int total = 0;
+		for (int t = 0; t < trials; t++) {
+			int last = -1;
+			for (int i = PointMutation.nextSite(-1, size, context); i < size; i = PointMutation
+					.nextSite(i, size, context)) {
+				assertTrue(i > last);
+				hits[i]++;
+				total++;
+				last = i;
+			}
+		}
+
+		// Expect 0.1 * 1000 * 200 = 20000 mutations overall (sd ~134).
+		assertTrue(Math.abs(total - 20000) < 1000);
+
+		// And the same rate at the start and the end of the tree.
+		int head = 0, tail = 0;
+		for (int i = 0; i < 100; i++) {
+			head += hits[i];
+			tail += hits[size - 1 - i];
+		}
+		assertTrue(Math.abs(head - 2000) < 300);
+		assertTrue(Math.abs(tail - 2000) < 300);
+	}
 }
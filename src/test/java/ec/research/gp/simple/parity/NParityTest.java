@@ -1,5 +1,6 @@
 package ec.research.gp.simple.parity;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Vector;
@@ -12,6 +13,8 @@ import ec.research.gp.layers.LayeredGP;
 import ec.research.gp.pareto.ParetoGP;
 import ec.research.gp.simple.gp.GP;
 import ec.research.gp.simple.parity.NParity;
+import ec.research.gp.simple.problem.EvalModeCheck;
+import ec.research.gp.simple.problem.Problem.EVAL_MODE;
 import ec.research.gp.simple.problem.ProblemRunner;
 import ec.research.gp.simple.representation.Individual;
 import ec.research.gp.simple.util.Config;
@@ -255,4 +258,16 @@ public class NParityTest {
 			assertTrue(ind.getFitness() == 1.0);
 		}
 	}
+
+	/**
+	 * Tests that the bit-sliced column evaluation gives exactly the same hits
+	 * and fitness as the case-by-case tree evaluation on random trees.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testColumnEvalMatchesTreeEval() throws Exception {
+		EvalModeCheck.assertMatchesTree(context, nParity, gp,
+				EVAL_MODE.COLUMN);
+	}
 }
@@ -0,0 +1,128 @@
+package ec.research.gp.simple.problem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.log4j.PropertyConfigurator;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ec.research.gp.simple.problem.BatchRunner.TrialResult;
+import ec.research.gp.simple.util.Config;
+
+/**
+ * Tests the {@link BatchRunner} class for functionality.
+ *
+ */
+public class BatchRunnerTest {
+	@BeforeClass
+	public static void setup() {
+		// Make log4j be quiet!
+		PropertyConfigurator.configure("log4j.properties.unittest");
+
+		// Setup the output directory so the test won't fail if it was deleted.
+		ProblemRunner.checkDirs("testOutput/batch");
+	}
+
+	/**
+	 * Make sure that every trial runs to the end in its own directory, and
+	 * that trials running at once don't affect each other: a seeded batch
+	 * gives the same results one trial at a time as four at a time.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testTrials() throws Exception {
+		List<TrialResult> concurrent = runBatch(4);
+		List<TrialResult> serial = runBatch(1);
+
+		assertEquals(6, concurrent.size());
+		for (int i = 0; i < concurrent.size(); i++) {
+			TrialResult result = concurrent.get(i);
+
+			assertEquals(i, result.trial);
+			assertNotNull(result.best);
+			assertTrue(result.evaluations >= 1000);
+			assertTrue(new File("testOutput/batch/trial" + i).isDirectory());
+
+			assertEquals(serial.get(i).seed, result.seed);
+			assertEquals(serial.get(i).evaluations, result.evaluations);
+			assertEquals(serial.get(i).best.toString(), result.best.toString());
+		}
+	}
+
+	/**
+	 * Make sure that a trial that fails on its worker threads is recorded as
+	 * failed, and doesn't stop the others, with a single GP or islands.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testFailingTrial() throws Exception {
+		long seed = 1404514792162L;
+
+		// Fail the second trial.
+		Random seeds = new Random(seed);
+		seeds.nextLong();
+		FailingRegression.failingSeed = seeds.nextLong();
+
+		for (int numIslands = 1; numIslands <= 2; numIslands++) {
+			Config config = new Config(
+					"src/test/resources/simpleRegression.properties");
+			config.setParameter("problem",
+					"ec.research.gp.simple.problem.FailingRegression");
+			config.init();
+			config.setPopSize(64);
+			config.setNumEvaluations(500);
+			config.setOutputDir("testOutput/batch");
+			config.setSeed(seed);
+			config.setNumTrials(3);
+			config.setTrialThreads(1);
+			config.setNumIslands(numIslands);
+
+			// Evaluate on the worker threads, however many cores there are.
+			List<TrialResult> results = new BatchRunner(config) {
+				@Override
+				protected TrialResult runTrial(int trial, long trialSeed,
+						int numThreads) {
+					return super.runTrial(trial, trialSeed, 4);
+				}
+			}.run();
+
+			assertEquals(3, results.size());
+			assertNotNull(results.get(0).best);
+			assertNull(results.get(1).best);
+			assertNotNull(results.get(2).best);
+			assertTrue(results.get(2).evaluations >= 500);
+		}
+	}
+
+	/**
+	 * Runs a seeded batch of 6 trials.
+	 *
+	 * @param trialThreads
+	 *            the max number of trials at once
+	 * @return the trials' results
+	 */
+	private static List<TrialResult> runBatch(int trialThreads)
+			throws Exception {
+		Config config = new Config(
+				"src/test/resources/simpleRegression.properties");
+		config.setPopSize(64);
+		config.setNumElites(4);
+		config.setNumEvaluations(1000);
+		config.setDeterministic(true);
+		config.setOutputDir("testOutput/batch");
+		config.setSeed(1404514792162L);
+		config.setNumTrials(6);
+		config.setTrialThreads(trialThreads);
+
+		return new BatchRunner(config).run();
+	}
+}
@@ -0,0 +1,54 @@
+package ec.research.gp.simple.problem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import ec.research.gp.simple.gp.GP;
+import ec.research.gp.simple.problem.Problem.EVAL_MODE;
+import ec.research.gp.simple.representation.Individual;
+import ec.research.gp.simple.util.Context;
+
+/**
+ * Checks an eval mode against the case-by-case tree evaluation, for the
+ * problems' tests.
+ *
+ */
+public class EvalModeCheck {
+	/**
+	 * Evaluates random individuals in the given mode and with the tree
+	 * interpreter (one at a time), and makes sure the hits and fitness are
+	 * exactly the same. The config's eval mode is put back afterwards.
+	 *
+	 * @param context
+	 *            the problem's context
+	 * @param problem
+	 *            the problem to evaluate on
+	 * @param gp
+	 *            the GP to get random individuals from
+	 * @param mode
+	 *            the eval mode to check
+	 * @throws Exception
+	 */
+	public static void assertMatchesTree(Context context, Problem problem,
+			GP gp, EVAL_MODE mode) throws Exception {
+		EVAL_MODE previous = context.getConfig().getEvalMode();
+
+		try {
+			for (int i = 0; i < 200; i++) {
+				Individual modeInd = gp.getRandomIndividual(i % 2);
+				Individual treeInd = modeInd.clone();
+
+				context.getConfig().setEvalMode(mode);
+				problem.fitness(modeInd);
+
+				context.getConfig().setEvalMode(EVAL_MODE.TREE);
+				problem.fitness(treeInd);
+
+				assertEquals(treeInd.getHits(), modeInd.getHits());
+				assertTrue(treeInd.getFitness() == modeInd.getFitness());
+			}
+		} finally {
+			context.getConfig().setEvalMode(previous);
+		}
+	}
+}
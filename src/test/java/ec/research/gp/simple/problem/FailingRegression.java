@@ -0,0 +1,23 @@
+package ec.research.gp.simple.problem;
+
+import ec.research.gp.simple.regression.SymbolicRegression;
+import ec.research.gp.simple.representation.Individual;
+
+/**
+ * Symbolic regression whose fitness throws in the run (or trial) set up with
+ * the given seed, for testing how failures are handled.
+ *
+ */
+public class FailingRegression extends SymbolicRegression {
+	// The problem seed of the run to fail
+	static volatile long failingSeed;
+
+	@Override
+	public void fitness(Individual individual) {
+		if (this.context.getProblemSeed() == failingSeed) {
+			throw new IllegalStateException("Failing on purpose");
+		}
+
+		super.fitness(individual);
+	}
+}
@@ -1,5 +1,6 @@
 package ec.research.gp.simple.regression;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Vector;
@@ -11,6 +12,8 @@ import org.junit.Test;
 import ec.research.gp.layers.LayeredGP;
 import ec.research.gp.pareto.ParetoGP;
 import ec.research.gp.simple.gp.GP;
+import ec.research.gp.simple.problem.EvalModeCheck;
+import ec.research.gp.simple.problem.Problem.EVAL_MODE;
 import ec.research.gp.simple.problem.ProblemRunner;
 import ec.research.gp.simple.regression.SymbolicRegression;
 import ec.research.gp.simple.regression.nodes.ADD;
@@ -375,4 +378,16 @@ public class SymbolicRegressionTest {
 			assertTrue(ind.getFitness() == 1.0);
 		}
 	}
+
+	/**
+	 * Tests that the column evaluation gives exactly the same hits and fitness
+	 * as the point-by-point tree evaluation on random trees.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testColumnEvalMatchesTreeEval() throws Exception {
+		EvalModeCheck.assertMatchesTree(context, symbolicRegression, gp,
+				EVAL_MODE.COLUMN);
+	}
 }
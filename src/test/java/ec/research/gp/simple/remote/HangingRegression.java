@@ -0,0 +1,28 @@
+package ec.research.gp.simple.remote;
+
+import ec.research.gp.simple.regression.SymbolicRegression;
+import ec.research.gp.simple.representation.Individual;
+
+/**
+ * Symbolic regression whose fitness never returns in a worker process, for
+ * testing the worker timeout.
+ *
+ */
+public class HangingRegression extends SymbolicRegression {
+	// Whether or not fitness() hangs. The test clears it in its own process,
+	// but not in the workers.
+	static volatile boolean hang = true;
+
+	@Override
+	public void fitness(Individual individual) {
+		while (hang) {
+			try {
+				Thread.sleep(1000);
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+
+		super.fitness(individual);
+	}
+}
@@ -0,0 +1,238 @@
+package ec.research.gp.simple.remote;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.PropertyConfigurator;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ec.research.gp.simple.gp.GP;
+import ec.research.gp.simple.gp.IslandModel;
+import ec.research.gp.simple.problem.Problem;
+import ec.research.gp.simple.problem.ProblemRunner;
+import ec.research.gp.simple.representation.Individual;
+import ec.research.gp.simple.util.Config;
+import ec.research.gp.simple.util.Context;
+
+/**
+ * Tests the {@link RemoteEvaluator} class for functionality, on worker
+ * processes started on this machine.
+ *
+ */
+public class RemoteEvaluatorTest {
+	private static Config config;
+
+	private static GP gp;
+
+	private static RemoteEvaluator evaluator;
+
+	@BeforeClass
+	public static void setup() throws Exception {
+		// Make log4j be quiet!
+		PropertyConfigurator.configure("log4j.properties.unittest");
+
+		// Setup the output directory so the test won't fail if it was deleted.
+		ProblemRunner.checkDirs("testOutput");
+
+		config = new Config("src/test/resources/simpleRegression.properties");
+		config.setParameter("workerBatchSize", "16");
+		config.init();
+		config.setOutputDir("testOutput");
+		config.setSeed(1404514792162L);
+
+		// Evaluated here, for comparing.
+		gp = new GP(new Context(config));
+		gp.init();
+
+		config.setNumWorkers(2);
+		evaluator = new RemoteEvaluator(config, config.getSeed());
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		evaluator.shutdown();
+	}
+
+	/**
+	 * Make sure that the workers compute the same fitness as this process.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testEvaluate() throws Exception {
+		List<Individual> copies = getUnevaluatedCopies();
+		evaluator.evaluate(copies, null);
+
+		assertEquals(2, evaluator.getNumAlive());
+		assertSameFitness(copies);
+	}
+
+	/**
+	 * Make sure that the batches of a worker that dies are evaluated by the
+	 * others, and that the worker is restarted for the next batches.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testWorkerCrash() throws Exception {
+		evaluator.killProcess(0);
+
+		List<Individual> copies = getUnevaluatedCopies();
+		evaluator.evaluate(copies, null);
+		assertSameFitness(copies);
+		assertTrue(evaluator.getNumAlive() >= 1);
+
+		copies = getUnevaluatedCopies();
+		evaluator.evaluate(copies, null);
+		assertSameFitness(copies);
+		assertEquals(2, evaluator.getNumAlive());
+	}
+
+	/**
+	 * Make sure that a GP evaluating on worker processes runs exactly like a
+	 * deterministic run in this process.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testRemoteRun() throws Exception {
+		assertEquals(runGenerations(0), runGenerations(2));
+	}
+
+	/**
+	 * Make sure that a worker that stops answering is treated like one that
+	 * crashed: it's killed, and its batches are evaluated elsewhere (here).
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 60000)
+	public void testWorkerTimeout() throws Exception {
+		Config cfg = new Config(
+				"src/test/resources/simpleRegression.properties");
+		cfg.setParameter("problem",
+				"ec.research.gp.simple.remote.HangingRegression");
+		cfg.init();
+		cfg.setOutputDir("testOutput");
+		cfg.setSeed(1404514792162L);
+		cfg.setNumWorkers(1);
+		cfg.setWorkerTimeout(1000);
+
+		HangingRegression.hang = false;
+		Problem problem = cfg.getProblem();
+		problem.init(new Context(cfg));
+
+		RemoteEvaluator hanging = new RemoteEvaluator(cfg, cfg.getSeed());
+		try {
+			List<Individual> copies = getUnevaluatedCopies();
+			hanging.evaluate(copies, problem);
+
+			assertEquals(0, hanging.getNumAlive());
+			assertSameFitness(copies);
+		} finally {
+			hanging.shutdown();
+		}
+	}
+
+	/**
+	 * Make sure that the islands' workers evaluate on the fitness cases the
+	 * islands' problems were set up with (from the run's seed), not on ones
+	 * from each island's own seed.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testIslandWorkers() throws Exception {
+		Config cfg = new Config(
+				"src/test/resources/simpleRegression.properties");
+		cfg.setOutputDir("testOutput");
+		cfg.setSeed(1404514792162L);
+		cfg.setPopSize(64);
+		cfg.setNumEvaluations(200);
+		cfg.setNumIslands(2);
+
+		// Evaluated here, on the fitness cases from the run's seed.
+		Config local = new Config(cfg);
+		new GP(new Context(local));
+
+		cfg.setNumWorkers(1);
+		IslandModel islands = new IslandModel(cfg);
+		islands.evolve();
+
+		for (GP island : islands.getIslands()) {
+			for (Individual individual : island.getPopulation()) {
+				Individual copy = individual.clone();
+				copy.setIsEvaluated(false);
+				local.getProblem().fitness(copy);
+
+				assertEquals(copy.getFitness(), individual.getFitness(), 0.0);
+				assertEquals(copy.getHits(), individual.getHits());
+			}
+		}
+	}
+
+	/**
+	 * Runs a few generations of a seeded GP.
+	 *
+	 * @return the evaluation count and the fitness of the final population
+	 */
+	private static List<String> runGenerations(int numWorkers)
+			throws Exception {
+		Config cfg = new Config(
+				"src/test/resources/simpleRegression.properties");
+		cfg.setOutputDir("testOutput");
+		cfg.setSeed(1404514792162L);
+		cfg.setDeterministic(true);
+		cfg.setNumWorkers(numWorkers);
+
+		Context ctx = new Context(cfg);
+		GP run = new GP(ctx);
+		run.init();
+		for (int i = 0; i < 3; i++) {
+			run.step();
+		}
+		ctx.shutdown();
+
+		List<String> results = new ArrayList<String>();
+		results.add(Long.toString(run.getNumEvaluations()));
+		for (Individual ind : run.getPopulation()) {
+			results.add(ind.getFitness() + " " + ind.getHits());
+		}
+
+		return results;
+	}
+
+	/**
+	 * @return unevaluated copies of the population
+	 */
+	private static List<Individual> getUnevaluatedCopies() throws Exception {
+		List<Individual> copies = new ArrayList<Individual>();
+		for (Individual individual : gp.getPopulation()) {
+			Individual copy = individual.clone();
+			copy.setIsEvaluated(false);
+			copy.setFitness(0);
+			copy.setHits(0);
+			copies.add(copy);
+		}
+
+		return copies;
+	}
+
+	/**
+	 * Checks the copies against the population evaluated in this process.
+	 */
+	private static void assertSameFitness(List<Individual> copies) {
+		for (int i = 0; i < copies.size(); i++) {
+			Individual original = gp.getPopulation().get(i);
+			Individual copy = copies.get(i);
+
+			assertTrue(copy.isEvaluated());
+			assertEquals(original.getFitness(), copy.getFitness(), 0.0);
+			assertEquals(original.getHits(), copy.getHits());
+		}
+	}
+}
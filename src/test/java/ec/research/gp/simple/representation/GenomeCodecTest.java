@@ -0,0 +1,170 @@
+package ec.research.gp.simple.representation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.PropertyConfigurator;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ec.research.gp.simple.gp.GP;
+import ec.research.gp.simple.problem.ProblemRunner;
+import ec.research.gp.simple.representation.Individual.REPRESENTATION;
+import ec.research.gp.simple.util.Config;
+import ec.research.gp.simple.util.Context;
+
+/**
+ * Tests the {@link GenomeCodec}.
+ *
+ */
+public class GenomeCodecTest {
+	private static Config config;
+
+	private static GP gp;
+
+	@BeforeClass
+	public static void setup() throws Exception {
+		// Make log4j be quiet!
+		PropertyConfigurator.configure("log4j.properties.unittest");
+
+		// Setup the output directory so the test won't fail if it was deleted.
+		ProblemRunner.checkDirs("testOutput");
+
+		config = new Config("src/test/resources/regression.properties");
+		config.setOutputDir("testOutput");
+		gp = new GP(new Context(config));
+	}
+
+	/**
+	 * @return some random individuals with their fields set
+	 */
+	private static List<Individual> randomPopulation(int size)
+			throws CloneNotSupportedException {
+		List<Individual> population = new ArrayList<Individual>();
+
+		for (int i = 0; i < size; i++) {
+			Individual ind = gp.getRandomIndividual(i % 2);
+			ind.setId(i);
+			ind.setFitness(1.0 / (i + 3));
+			ind.setHits(i);
+			ind.setAge(i % 7);
+			ind.setCurrentLayer(i % 3);
+			ind.setIsEvaluated(i % 2 == 0);
+			if (i % 4 == 0) {
+				ind.setTag("tag-" + i);
+			}
+			population.add(ind);
+		}
+
+		return population;
+	}
+
+	/**
+	 * Checks that the decoded individuals match the originals.
+	 */
+	private static void assertDecoded(List<Individual> expected,
+			List<Individual> actual) {
+		assertEquals(expected.size(), actual.size());
+
+		for (int i = 0; i < expected.size(); i++) {
+			Individual e = expected.get(i);
+			Individual a = actual.get(i);
+
+			assertEquals(e.toString(), a.toString());
+			assertEquals(e.getStructuralHash(), a.getStructuralHash());
+			assertEquals(e.getId(), a.getId());
+			assertEquals(e.getIdGeneration(), a.getIdGeneration());
+			assertEquals(Double.doubleToLongBits(e.getFitness()),
+					Double.doubleToLongBits(a.getFitness()));
+			assertEquals(e.getHits(), a.getHits());
+			assertEquals(e.getAge(), a.getAge());
+			assertEquals(e.getCurrentLayer(), a.getCurrentLayer());
+			assertEquals(e.isEvaluated(), a.isEvaluated());
+			assertEquals(e.isOptimal(), a.isOptimal());
+			assertEquals(e.getTag(), a.getTag());
+			assertEquals(e.getRoot().sizeFrom(), a.getNumNodes());
+			assertEquals(e.getRoot().depthFrom(), a.getDepth());
+		}
+	}
+
+	/**
+	 * Makes sure that encoding and decoding random individuals gives them
+	 * back exactly, constants included.
+	 *
+	 * @throws IOException
+	 * @throws CloneNotSupportedException
+	 */
+	@Test
+	public void testRoundTrip() throws IOException,
+			CloneNotSupportedException {
+		GenomeCodec codec = new GenomeCodec(config);
+		List<Individual> population = randomPopulation(200);
+
+		assertDecoded(population, codec.decode(codec.encode(population)));
+	}
+
+	/**
+	 * Makes sure that linear individuals are encoded like their trees.
+	 *
+	 * @throws IOException
+	 * @throws CloneNotSupportedException
+	 */
+	@Test
+	public void testLinear() throws IOException,
+			CloneNotSupportedException {
+		GenomeCodec codec = new GenomeCodec(config);
+		List<Individual> population = randomPopulation(50);
+
+		ByteBuffer expected = codec.encode(population);
+		for (Individual ind : population) {
+			ind.linearize(config.getPrimitives());
+		}
+		assertEquals(expected, codec.encode(population));
+
+		// And come back linear if the run is.
+		config.setRepresentation(REPRESENTATION.LINEAR);
+		try {
+			List<Individual> decoded = codec.decode(codec.encode(population));
+			assertDecoded(population, decoded);
+			for (Individual ind : decoded) {
+				assertTrue(ind.isLinear());
+			}
+		} finally {
+			config.setRepresentation(REPRESENTATION.TREE);
+		}
+	}
+
+	/**
+	 * Makes sure that populations survive a trip through a channel, and that
+	 * a truncated one is rejected.
+	 *
+	 * @throws IOException
+	 * @throws CloneNotSupportedException
+	 */
+	@Test
+	public void testChannel() throws IOException,
+			CloneNotSupportedException {
+		GenomeCodec codec = new GenomeCodec(config);
+		List<Individual> population = randomPopulation(20);
+
+		Pipe pipe = Pipe.open();
+		codec.write(population, pipe.sink());
+		assertDecoded(population, codec.read(pipe.source()));
+
+		ByteBuffer encoded = codec.encode(population);
+		encoded.limit(encoded.limit() / 2);
+		try {
+			codec.decode(encoded);
+			fail("Decoded a truncated population");
+		} catch (IOException e) {
+			// Expected
+		}
+	}
+}
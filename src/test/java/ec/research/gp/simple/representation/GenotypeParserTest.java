@@ -0,0 +1,149 @@
+package ec.research.gp.simple.representation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.List;
+
+import org.apache.log4j.PropertyConfigurator;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ec.research.gp.simple.gp.GP;
+import ec.research.gp.simple.problem.ProblemRunner;
+import ec.research.gp.simple.util.Config;
+import ec.research.gp.simple.util.Context;
+
+/**
+ * Tests the {@link GenotypeParser}.
+ *
+ */
+public class GenotypeParserTest {
+	private static Config config;
+
+	private static GP gp;
+
+	@BeforeClass
+	public static void setup() throws Exception {
+		// Make log4j be quiet!
+		PropertyConfigurator.configure("log4j.properties.unittest");
+
+		// Setup the output directory so the test won't fail if it was deleted.
+		ProblemRunner.checkDirs("testOutput");
+
+		config = new Config("src/test/resources/regression.properties");
+		config.setOutputDir("testOutput");
+		gp = new GP(new Context(config));
+	}
+
+	/**
+	 * Makes sure that parsing random trees' strings gives back the same trees,
+	 * numbered, linked to their parents and with the right size and depth.
+	 *
+	 * @throws CloneNotSupportedException
+	 */
+	@Test
+	public void testRoundTrip() throws CloneNotSupportedException {
+		GenotypeParser parser = new GenotypeParser(config);
+
+		for (int i = 0; i < 200; i++) {
+			Individual expected = gp.getRandomIndividual(i % 2);
+			Individual ind = parser.parse(expected.toString());
+
+			assertEquals(expected.toString(), ind.toString());
+			assertEquals(expected.getStructuralHash(), ind.getStructuralHash());
+			assertEquals(expected.getNumNodes(), ind.getNumNodes());
+			assertEquals(expected.getRoot().depthFrom(), ind.getDepth());
+
+			List<Node> nodes = ind.getAllNodes();
+			for (int j = 0; j < nodes.size(); j++) {
+				assertEquals(j, nodes.get(j).getNodeNumber());
+				assertTrue(j == 0 || nodes.get(j).getParent() != null);
+			}
+		}
+	}
+
+	/**
+	 * Makes sure that tokens after the end of the tree are rejected rather
+	 * than starting a new tree.
+	 *
+	 * @throws CloneNotSupportedException
+	 */
+	@Test
+	public void testTrailingTokens() throws CloneNotSupportedException {
+		GenotypeParser parser = new GenotypeParser(config);
+
+		assertNull(parser.parse("(COS (SIN (RLOG (COS x)))) (- x x)"));
+		assertNull(parser.parse("(+ x x) x"));
+		assertNull(parser.parse("x x"));
+		assertEquals("x", parser.parse(" x ").toString());
+	}
+
+	/**
+	 * Makes sure that a genotype that stops before its tree is complete is
+	 * rejected rather than giving a tree with missing children.
+	 *
+	 * @throws CloneNotSupportedException
+	 */
+	@Test
+	public void testTruncated() throws CloneNotSupportedException {
+		GenotypeParser parser = new GenotypeParser(config);
+
+		assertNull(parser.parse("(COS (SIN"));
+		assertNull(parser.parse("(+ x (* x"));
+		assertNull(parser.parse("(+ x"));
+	}
+
+	/**
+	 * Makes sure that numbers are told apart from other tokens without
+	 * Double.parseDouble() throwing.
+	 */
+	@Test
+	public void testIsNumber() {
+		String[] numbers = { "1", "-1.5", "+2.", "0.25", ".5", "1.0E-4",
+				"3e+10", "NaN", "-Infinity" };
+		String[] others = { "x", "-", "+", ".", "1e", "1.5.2", "e5", "SIN",
+				"1x", "--1" };
+
+		for (String token : numbers) {
+			assertTrue(token, GenotypeParser.isNumber(token));
+			Double.parseDouble(token);
+		}
+		for (String token : others) {
+			assertFalse(token, GenotypeParser.isNumber(token));
+		}
+	}
+
+	/**
+	 * Makes sure that parsing a stream of genotypes in parallel keeps their
+	 * order, and skips the blank, unmapped and incomplete lines.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testParseAll() throws Exception {
+		StringBuilder lines = new StringBuilder();
+		String[] expected = new String[3000];
+
+		for (int i = 0; i < expected.length; i++) {
+			expected[i] = gp.getRandomIndividual(i % 2).toString();
+			lines.append(expected[i]).append('\n');
+
+			if (i % 1000 == 0) {
+				lines.append("\n(+ x FOO)\n(+ x\n");
+			}
+		}
+
+		List<Individual> individuals = new GenotypeParser(config).parseAll(
+				new BufferedReader(new StringReader(lines.toString())), 4);
+
+		assertEquals(expected.length, individuals.size());
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], individuals.get(i).toString());
+		}
+	}
+}
@@ -18,11 +18,13 @@ import org.junit.Test;
 import ec.research.gp.simple.multiplexer.Multiplexer;
 import ec.research.gp.simple.multiplexer.nodes.A0;
 import ec.research.gp.simple.multiplexer.nodes.A1;
+import ec.research.gp.simple.operators.PointMutation;
 import ec.research.gp.simple.problem.ProblemRunner;
 import ec.research.gp.simple.representation.Individual;
 import ec.research.gp.simple.representation.Node;
 import ec.research.gp.simple.util.Config;
 import ec.research.gp.simple.util.Context;
+import ec.research.gp.simple.util.IdGenerator;
 
 
 /**
@@ -246,6 +248,24 @@ public class IndividualTest {
 		assertEquals(true, ind.getRoot().evaluate(mux, 3));
 	}
 
+	/**
+	 * Make sure the unboxed evaluateBoolean() agrees with evaluate() on every
+	 * input of the 6-multiplexer.
+	 * 
+	 * @throws CloneNotSupportedException
+	 */
+	@Test
+	public void testEvaluateBooleanMatchesEvaluate()
+			throws CloneNotSupportedException {
+		Individual ind = Individual.fromString(
+				"(IF (AND A0 A1) D3 (IF A0 (NOT D1) (OR D2 D0)))", config);
+
+		for (int i = 0; i < 64; i++) {
+			assertEquals(ind.getRoot().evaluate(mux, i), ind.getRoot()
+					.evaluateBoolean(mux, i));
+		}
+	}
+
 	/**
 	 * Tests that the number of nodes is set correctly when creating an
 	 * individual from string.
@@ -411,6 +431,112 @@ public class IndividualTest {
 		assertTrue(ind.getRandomNode(new Context(config)).isTerminal());
 	}
 
+	/**
+	 * Tests that getRandomNode() picks every node of the chosen kind, and that
+	 * its index follows changes to the tree.
+	 * 
+	 * @throws CloneNotSupportedException
+	 */
+	@Test
+	public void testGetRandomNodeIndex() throws CloneNotSupportedException {
+		Individual ind = Individual.fromString("(AND (AND D1 D2) (OR D0 D1))",
+				config);
+		Context context = new Context(config);
+		config.setCrossFuncProbability(1.0);
+
+		// All three functions come up.
+		HashSet<Node> seen = new HashSet<Node>();
+		for (int i = 0; i < 200; i++) {
+			Node node = ind.getRandomNode(context);
+			assertFalse(node.isTerminal());
+			seen.add(node);
+		}
+		assertEquals(3, seen.size());
+
+		// A new tree gets a new index.
+		Node root = new A0();
+		ind.setRoot(root);
+		ind.numberAndCountNodes();
+		assertTrue(ind.getRandomNode(context) == root);
+
+		// So does a tree modified in place.
+		ind = Individual.fromString("(AND D1 D2)", config);
+		config.setCrossFuncProbability(0.0);
+		ind.getRandomNode(context);
+		Node leaf = new A0();
+		PointMutation.replaceNode(ind, ind.findNode(1), leaf);
+
+		seen.clear();
+		for (int i = 0; i < 200; i++) {
+			seen.add(ind.getRandomNode(context));
+		}
+		assertEquals(2, seen.size());
+		assertTrue(seen.contains(leaf));
+	}
+
+	/**
+	 * Tests that new IDs are unique and that clones keep them (and so are
+	 * equal).
+	 * 
+	 * @throws CloneNotSupportedException
+	 */
+	@Test
+	public void testIds() throws CloneNotSupportedException {
+		Individual ind1 = Individual.fromString("(AND D1 D2)", config);
+		Individual ind2 = Individual.fromString("(AND D1 D2)", config);
+		assertFalse(ind1.hasId());
+
+		ind1.setId(3);
+		ind2.setId(3);
+		assertTrue(ind1.hasId());
+		assertEquals(3, ind1.getIdGeneration());
+		assertFalse(ind1.equals(ind2));
+
+		Individual clone = ind1.clone();
+		assertEquals(ind1, clone);
+		assertEquals(ind1.hashCode(), clone.hashCode());
+		assertEquals(3, clone.getIdGeneration());
+	}
+
+	/**
+	 * Tests that nodes only get lineage IDs when lineage is tracked.
+	 * 
+	 * @throws CloneNotSupportedException
+	 */
+	@Test
+	public void testTrackLineage() throws CloneNotSupportedException {
+		Individual ind = Individual.fromString("(AND D1 D2)", config);
+		Node root = ind.getRoot();
+		assertTrue(root.getId() != IdGenerator.NO_ID);
+		assertEquals(root.getId(), root.getMemId());
+		assertTrue(root.getId() != root.getChild(0).getId());
+		assertEquals(root.getId(), root.clone().getId());
+
+		config.setTrackLineage(false);
+		try {
+			ind = Individual.fromString("(AND D1 D2)", config);
+			assertEquals(IdGenerator.NO_ID, ind.getRoot().getId());
+			assertEquals(IdGenerator.NO_ID, ind.getRoot().getMemId());
+		} finally {
+			config.setTrackLineage(true);
+		}
+	}
+
+	/**
+	 * Tests that the cached string follows changes made to the tree in place.
+	 * 
+	 * @throws CloneNotSupportedException
+	 */
+	@Test
+	public void testToStringCache() throws CloneNotSupportedException {
+		Individual ind = Individual.fromString("(AND D1 (OR D0 D1))", config);
+		assertEquals("(AND D1 (OR D0 D1))", ind.toString());
+		assertTrue(ind.toString() == ind.toString());
+
+		PointMutation.replaceNode(ind, ind.findNode(3), new A0());
+		assertEquals("(AND D1 (OR A0 D1))", ind.toString());
+	}
+
 	@Test
 	public void testCrossPointGoodSizeBad() throws CloneNotSupportedException {
 		Individual ind1 = Individual.fromString("(AND (AND D1 D2) (OR D0 D1))",
@@ -0,0 +1,177 @@
+package ec.research.gp.simple.representation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.log4j.PropertyConfigurator;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ec.research.gp.simple.gp.GP;
+import ec.research.gp.simple.problem.ProblemRunner;
+import ec.research.gp.simple.regression.nodes.R;
+import ec.research.gp.simple.util.Config;
+import ec.research.gp.simple.util.Context;
+
+/**
+ * Tests the {@link LinearTree} against the Node trees it stands in for.
+ *
+ */
+public class LinearTreeTest {
+	private static Config config;
+
+	private static Context context;
+
+	private static GP gp;
+
+	@BeforeClass
+	public static void setup() throws Exception {
+		// Make log4j be quiet!
+		PropertyConfigurator.configure("log4j.properties.unittest");
+
+		// Setup the output directory so the test won't fail if it was deleted.
+		ProblemRunner.checkDirs("testOutput");
+
+		config = new Config("src/test/resources/regression.properties");
+		config.setOutputDir("testOutput");
+		context = new Context(config);
+		gp = new GP(context);
+	}
+
+	/**
+	 * Makes sure that flattening and rebuilding random trees keeps the
+	 * genotype, size and depth.
+	 *
+	 * @throws CloneNotSupportedException
+	 */
+	@Test
+	public void testRoundTrip() throws CloneNotSupportedException {
+		for (int i = 0; i < 200; i++) {
+			Individual ind = gp.getRandomIndividual(i % 2);
+			Node root = ind.getRoot();
+			LinearTree tree = LinearTree.fromTree(root, config.getPrimitives());
+
+			assertEquals(root.subtreeToString(), tree.toString());
+			assertEquals(root.subtreeToString(), tree.toTree()
+					.subtreeToString());
+			assertEquals(root.sizeFrom(), tree.size());
+			assertEquals(root.depthFrom(), tree.depth());
+			assertEquals(root.getStructuralHash(), tree.getStructuralHash());
+		}
+	}
+
+	/**
+	 * Makes sure that the rebuilt tree is numbered in preorder and linked to
+	 * its parents, as a tree from Individual.fromString() would be.
+	 *
+	 * @throws CloneNotSupportedException
+	 */
+	@Test
+	public void testToTreeNumbersAndParents()
+			throws CloneNotSupportedException {
+		Individual ind = Individual.fromString("(+ (SIN x) (* x 1.5))",
+				config);
+		Node root = LinearTree.fromTree(ind.getRoot(), config.getPrimitives())
+				.toTree();
+
+		Individual rebuilt = new Individual();
+		rebuilt.setRoot(root);
+		for (Node node : rebuilt.getAllNodes()) {
+			if (node != root) {
+				assertTrue(node.getParent() != null);
+			}
+			assertEquals(ind.findNode(node.getNodeNumber()).toString(),
+					node.toString());
+		}
+	}
+
+	/**
+	 * Makes sure that splicing gives the same trees as swapNode() at every
+	 * pair of crossover points.
+	 *
+	 * @throws CloneNotSupportedException
+	 */
+	@Test
+	public void testSpliceMatchesSwapNode() throws CloneNotSupportedException {
+		Individual ind1 = Individual.fromString(
+				"(+ (SIN 0.25) (* x (% 1.5 x)))", config);
+		Individual ind2 = Individual.fromString(
+				"(- (COS (EXP -2.0)) (RLOG 3.0))", config);
+		ind1.numberAndCountNodes();
+		ind2.numberAndCountNodes();
+
+		LinearTree tree1 = LinearTree.fromTree(ind1.getRoot(),
+				config.getPrimitives());
+		LinearTree tree2 = LinearTree.fromTree(ind2.getRoot(),
+				config.getPrimitives());
+
+		for (int p1 = 0; p1 < tree1.size(); p1++) {
+			for (int p2 = 0; p2 < tree2.size(); p2++) {
+				Node expected = ind1.getRoot().swapNode(ind1.findNode(p1),
+						ind2.findNode(p2));
+				LinearTree spliced = tree1.splice(p1, tree2, p2);
+
+				assertEquals(expected.subtreeToString(), spliced.toString());
+				assertEquals(expected.sizeFrom(), spliced.size());
+				assertEquals(expected.depthFrom(), spliced.depth());
+				assertEquals(expected.subtreeToString(), LinearTree
+						.fromTree(expected, config.getPrimitives()).toString());
+				for (int i = 0; i < spliced.size(); i++) {
+					assertEquals(LinearTree.fromTree(expected,
+							config.getPrimitives()).getSize(i), spliced
+							.getSize(i));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Makes sure that the node depths and subtree depths match the Node tree's.
+	 *
+	 * @throws CloneNotSupportedException
+	 */
+	@Test
+	public void testDepths() throws CloneNotSupportedException {
+		Individual ind = Individual.fromString(
+				"(+ (SIN (COS x)) (* x (% 1.5 (EXP x))))", config);
+		ind.numberAndCountNodes();
+		LinearTree tree = LinearTree.fromTree(ind.getRoot(),
+				config.getPrimitives());
+
+		for (int i = 0; i < tree.size(); i++) {
+			assertEquals(ind.findNode(i).getDepth(), tree.getDepth(i));
+			assertEquals(ind.findNode(i).depthFrom(), tree.depthFrom(i));
+		}
+	}
+
+	/**
+	 * Makes sure that swapping terminals to and from R keeps the constant pool
+	 * in step with the code.
+	 *
+	 * @throws CloneNotSupportedException
+	 */
+	@Test
+	public void testSetOpcodeConstants() throws CloneNotSupportedException {
+		Individual ind = Individual.fromString("(+ 1.0 (* x 3.0))",
+				config);
+		Primitives primitives = config.getPrimitives();
+		LinearTree tree = LinearTree.fromTree(ind.getRoot(), primitives);
+
+		int rOpcode = primitives.opcodeOf(new R());
+		int xOpcode = tree.getOpcode(3);
+
+		// x becomes a constant between the two others.
+		tree.setOpcode(3, rOpcode);
+		tree.setConstant(3, 2.0);
+		assertEquals("(+ 1.0 (* 2.0 3.0))", tree.toString());
+
+		// And the first constant becomes x.
+		tree.setOpcode(1, xOpcode);
+		assertEquals("(+ x (* 2.0 3.0))", tree.toString());
+		assertEquals(3.0, tree.getConstant(4), 0.0);
+
+		// Functions keep their subtree.
+		tree.setOpcode(2, primitives.opcodeOf(config.getMappedNode("-")));
+		assertEquals("(+ x (- 2.0 3.0))", tree.toString());
+	}
+}
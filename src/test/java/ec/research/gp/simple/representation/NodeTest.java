@@ -4,6 +4,7 @@ import static org.junit.Assert.*;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.StringWriter;
 import java.util.ArrayList;
 
 
@@ -150,4 +151,141 @@ public class NodeTest {
 		assertEquals(expected1, c1Root.subtreeToString());
 		assertEquals(expected2, c2Root.subtreeToString());
 	}
+
+	/**
+	 * Tests that the cached subtree sizes and heights match sizeFrom() and
+	 * depthFrom() after parsing, cloning and both kinds of swaps.
+	 * 
+	 * @throws CloneNotSupportedException
+	 */
+	@Test
+	public void testCachedSubtreeInfo() throws CloneNotSupportedException {
+		Individual ind1 = Individual.fromString(
+				"(AND (AND D0 D1) (AND D1 (OR D2 (NAND D3 D0))))", config);
+		Individual ind2 = Individual.fromString(
+				"(OR (OR D0 D1) (OR D1 (AND D2 D3)))", config);
+
+		assertSubtreeInfo(ind1.getRoot());
+		assertSubtreeInfo(ind1.getRoot().clone());
+
+		for (int i = 0; i < ind1.getNumNodes(); i++) {
+			for (int j = 0; j < ind2.getNumNodes(); j++) {
+				assertSubtreeInfo(ind1.getRoot().swapNode(ind1.findNode(i),
+						ind2.findNode(j)));
+			}
+		}
+
+		ArrayList<Node[]> pairs = new ArrayList<Node[]>();
+		pairs.add(new Node[] { ind1.findNode(1), ind2.findNode(6) });
+		pairs.add(new Node[] { ind1.findNode(5), ind2.findNode(0) });
+		assertSubtreeInfo(ind1.getRoot().swapNodes(pairs));
+	}
+
+	/**
+	 * Tests that replaceAt() gives the same trees as swapNode(), copying only
+	 * the path to the crossover point and leaving the parents untouched.
+	 * 
+	 * @throws CloneNotSupportedException
+	 */
+	@Test
+	public void testReplaceAtMatchesSwapNode()
+			throws CloneNotSupportedException {
+		Individual ind1 = Individual.fromString(
+				"(AND (AND D0 D1) (AND D1 (OR D2 (NAND D3 D0))))", config);
+		Individual ind2 = Individual.fromString(
+				"(OR (OR D0 D1) (OR D1 (AND D2 D3)))", config);
+		String genotype1 = ind1.toString();
+
+		for (int i = 0; i < ind1.getNumNodes(); i++) {
+			assertTrue(ind1.getRoot().getNodeAt(i) == ind1.findNode(i));
+			assertEquals(ind1.findNode(i).getDepth(), ind1.getRoot()
+					.getDepthAt(i));
+
+			for (int j = 0; j < ind2.getNumNodes(); j++) {
+				Node expected = ind1.getRoot().swapNode(ind1.findNode(i),
+						ind2.findNode(j));
+				Node child = ind1.getRoot().replaceAt(i, ind2.findNode(j));
+
+				assertEquals(expected.subtreeToString(),
+						child.subtreeToString());
+				assertSubtreeInfo(child);
+
+				// The donated subtree is shared, not copied.
+				assertTrue(child.getNodeAt(i) == ind2.findNode(j));
+			}
+		}
+
+		assertEquals(genotype1, ind1.toString());
+	}
+
+	/**
+	 * Tests that equal trees, however they were built, have the same
+	 * structural hash, that different ones don't, and that subtreeEquals()
+	 * agrees with the genotypes.
+	 * 
+	 * @throws CloneNotSupportedException
+	 */
+	@Test
+	public void testStructuralHash() throws CloneNotSupportedException {
+		String[] genotypes = { "(AND D0 D1)", "(AND D1 D0)", "(OR D0 D1)",
+				"(AND (AND D0 D1) D2)", "(AND D0 (AND D1 D2))", "D0", "D1" };
+
+		for (String genotype1 : genotypes) {
+			Node tree1 = Individual.fromString(genotype1, config).getRoot();
+			assertEquals(tree1.getStructuralHash(), tree1.clone()
+					.getStructuralHash());
+
+			for (String genotype2 : genotypes) {
+				Node tree2 = Individual.fromString(genotype2, config)
+						.getRoot();
+				boolean equal = genotype1.equals(genotype2);
+
+				assertEquals(equal,
+						tree1.getStructuralHash() == tree2.getStructuralHash());
+				assertEquals(equal, tree1.subtreeEquals(tree2));
+			}
+		}
+
+		// The table counts each distinct tree separately.
+		TreeTable table = new TreeTable();
+		for (String genotype : genotypes) {
+			assertEquals(1, table.add(Individual.fromString(genotype, config)));
+		}
+		assertEquals(2, table.add(Individual.fromString("(OR D0 D1)", config)));
+		assertEquals(genotypes.length, table.size());
+	}
+
+	/**
+	 * Tests that streaming a tree gives the same string as subtreeToString().
+	 * 
+	 * @throws IOException
+	 * @throws CloneNotSupportedException
+	 */
+	@Test
+	public void testAppendSubtree() throws IOException,
+			CloneNotSupportedException {
+		String genotype = "(AND (OR D0 D1) (NAND D3 (NOR D2 D2)))";
+		Node root = Individual.fromString(genotype, config).getRoot();
+
+		StringWriter out = new StringWriter();
+		root.appendSubtree(out);
+
+		assertEquals(genotype, out.toString());
+		assertEquals(genotype, root.subtreeToString());
+		assertEquals("(0 (1 2 3) (4 5 (6 7 8)))", root.subtreeToNumberedString());
+	}
+
+	/**
+	 * Asserts that every node of the tree has the right cached subtree size,
+	 * height and structural hash.
+	 */
+	private static void assertSubtreeInfo(Node root)
+			throws CloneNotSupportedException {
+		for (Node node : root.subtreeFrom()) {
+			assertEquals(node.sizeFrom(), node.getSubtreeSize());
+			assertEquals(node.depthFrom(), node.getSubtreeHeight());
+			assertEquals(Individual.fromString(node.subtreeToString(), config)
+					.getRoot().getStructuralHash(), node.getStructuralHash());
+		}
+	}
 }
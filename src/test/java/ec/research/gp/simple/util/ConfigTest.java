@@ -1,5 +1,6 @@
 package ec.research.gp.simple.util;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.io.FileNotFoundException;
@@ -9,6 +10,7 @@ import java.lang.reflect.Field;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import ec.research.gp.simple.problem.Problem.EVAL_MODE;
 import ec.research.gp.simple.util.Config;
 
 
@@ -38,4 +40,39 @@ public class ConfigTest {
 
 		assertTrue(seed.getAnnotation(Config.Option.class) != null);
 	}
+
+	/**
+	 * Makes sure that a copy keeps what was changed with the setters, and gets
+	 * its own problem and node sets.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testCopy() throws Exception {
+		Config original = new Config(
+				"src/test/resources/simpleRegression.properties");
+		original.setDeterministic(true);
+		original.setPopSize(17);
+		original.setNumWorkers(3);
+		original.setMaxDepth(5);
+		original.setEvalMode(EVAL_MODE.POSTFIX);
+		original.setMutationProbability(0.125);
+		original.setSeed(42L);
+		original.setOutputDir("testOutput/copy");
+
+		Config copy = new Config(original);
+
+		assertTrue(copy.isDeterministic());
+		assertEquals(17, copy.getPopSize());
+		assertEquals(3, copy.getNumWorkers());
+		assertEquals(5, copy.getMaxDepth());
+		assertEquals(EVAL_MODE.POSTFIX, copy.getEvalMode());
+		assertTrue(copy.getMutationProbability() == 0.125);
+		assertEquals(42L, copy.getSeed());
+		assertEquals("testOutput/copy", copy.getOutputDir());
+
+		assertTrue(copy.getProblem() != original.getProblem());
+		assertTrue(copy.getFunctionSet().get(0) != original.getFunctionSet()
+				.get(0));
+	}
 }
@@ -0,0 +1,101 @@
+package ec.research.gp.simple.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.PropertyConfigurator;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests the {@link Context}'s worker threads.
+ *
+ */
+public class ContextTest {
+	private static Config config;
+
+	@BeforeClass
+	public static void setup() throws Exception {
+		// Make log4j be quiet!
+		PropertyConfigurator.configure("log4j.properties.unittest");
+
+		config = new Config("src/test/resources/regression.properties");
+		config.setNumThreads(3);
+	}
+
+	/**
+	 * Makes sure that runAll() runs every task, reusing the same threads from
+	 * call to call, and that they're started again after shutdown().
+	 */
+	@Test
+	public void testRunAll() {
+		Context context = new Context(config);
+		final AtomicInteger count = new AtomicInteger();
+		final Set<Thread> threads = Collections
+				.synchronizedSet(new HashSet<Thread>());
+
+		List<Runnable> tasks = new ArrayList<Runnable>();
+		for (int i = 0; i < 6; i++) {
+			tasks.add(new Runnable() {
+				@Override
+				public void run() {
+					count.incrementAndGet();
+					threads.add(Thread.currentThread());
+				}
+			});
+		}
+
+		for (int i = 0; i < 50; i++) {
+			context.runAll(tasks);
+		}
+		assertEquals(300, count.get());
+		assertTrue(threads.size() <= 3);
+		assertTrue(!threads.contains(Thread.currentThread()));
+
+		context.shutdown();
+		context.runAll(tasks);
+		assertEquals(306, count.get());
+		context.shutdown();
+	}
+
+	/**
+	 * Makes sure that runAll() called from tasks already running on the
+	 * workers runs inline rather than waiting for workers that are all busy.
+	 */
+	@Test(timeout = 10000)
+	public void testNestedRunAll() {
+		final Context context = new Context(config);
+		final AtomicInteger count = new AtomicInteger();
+
+		final List<Runnable> inner = new ArrayList<Runnable>();
+		for (int i = 0; i < 6; i++) {
+			inner.add(new Runnable() {
+				@Override
+				public void run() {
+					count.incrementAndGet();
+				}
+			});
+		}
+
+		List<Runnable> outer = new ArrayList<Runnable>();
+		for (int i = 0; i < 3; i++) {
+			outer.add(new Runnable() {
+				@Override
+				public void run() {
+					context.runAll(inner);
+				}
+			});
+		}
+
+		context.runAll(outer);
+		assertEquals(18, count.get());
+		context.shutdown();
+	}
+}